@@ -0,0 +1,200 @@
+package ch.zhaw.pm2.multichat.client.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.FlowControl.DEFAULT_WINDOW;
+import static ch.zhaw.pm2.multichat.protocol.connection.PayloadAssembler.DEFAULT_MAX_SIZE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createAcknowledgementPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createResumePayload;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.connection.FlowControl;
+import ch.zhaw.pm2.multichat.protocol.connection.PayloadAssembler;
+import ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * A class representing the connection of the client to a chat server. Every payload sent is
+ * sequenced by the {@link FlowControl} of the connection. While the window of the server does not
+ * allow sending another payload, the payload is kept back until the server acknowledges earlier
+ * ones. The methods of this class are called by the UI thread as well as the listener thread and
+ * are therefore synchronized.
+ * <p>
+ * Payloads with a large content are sent in chunks, alternating with the other payloads kept back,
+ * so a large message does not hold back the messages sent after it. Payloads received in chunks
+ * are reassembled by the connection.
+ * <p>
+ * If the connection is lost, it is suspended and a new connection resuming its session takes over
+ * its flow control and the payloads kept back. Payloads sent to the lost connection afterwards are
+ * passed on to the new one. Once the server has confirmed the session, the payloads it has not
+ * acknowledged are sent again.
+ */
+public class ClientConnection extends Connection<Payload> {
+
+    private final Queue<Payload> pendingPayloads = new ArrayDeque<>();
+    private final Queue<PayloadChunker> streams = new ArrayDeque<>();
+    private FlowControl flowControl = new FlowControl(DEFAULT_WINDOW);
+    private PayloadAssembler assembler = new PayloadAssembler(DEFAULT_MAX_SIZE);
+    private boolean chunkTurn;
+    private boolean suspended;
+    private boolean resuming;
+    private ClientConnection successor;
+
+    /**
+     * Creates a new ClientConnection object with the specified network connection.
+     *
+     * @param networkConnection the network connection to the server
+     */
+    public ClientConnection(NetworkEndpoint<Payload> networkConnection) {
+        super(networkConnection);
+    }
+
+    /**
+     * Creates a new ClientConnection object with the specified network connection, which resumes
+     * the session of the given lost connection. The payloads sent are kept back until the server
+     * has confirmed the session.
+     *
+     * @param networkConnection the new network connection to the server
+     * @param previous          the lost connection whose session is resumed
+     */
+    public ClientConnection(NetworkEndpoint<Payload> networkConnection,
+        ClientConnection previous) {
+        super(networkConnection);
+        synchronized (previous) {
+            flowControl = previous.flowControl;
+            assembler = previous.assembler;
+            pendingPayloads.addAll(previous.pendingPayloads);
+            previous.pendingPayloads.clear();
+            streams.addAll(previous.streams);
+            previous.streams.clear();
+            previous.successor = this;
+        }
+        setUsername(previous.getUsername());
+        setSessionToken(previous.getSessionToken());
+        resuming = true;
+    }
+
+    /**
+     * Sends the provided payload if the window of the server allows it, otherwise the payload is
+     * sent as soon as earlier payloads have been acknowledged. A payload with a large content is
+     * sent in chunks. If the connection has been lost, the payload is kept back for the connection
+     * resuming its session.
+     *
+     * @param payload The payload to send.
+     */
+    @Override
+    public synchronized void sendPayload(Payload payload) {
+        if (successor != null) {
+            successor.sendPayload(payload);
+            return;
+        }
+
+        if (PayloadChunker.requiresChunking(payload)) {
+            streams.add(new PayloadChunker(payload));
+        } else {
+            pendingPayloads.add(payload);
+        }
+
+        if (!suspended && !resuming) {
+            sendPendingPayloads();
+        }
+    }
+
+    /**
+     * Suspends the sending of payloads after the connection has been lost, so they can be sent by
+     * the connection resuming its session.
+     */
+    public synchronized void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * Sends the request to resume the session on this connection. It acknowledges the payloads
+     * received on the lost connection, so the server only sends the missed payloads again.
+     */
+    public synchronized void requestResume() {
+        super.sendPayload(
+            createResumePayload(getUsername(), getSessionToken(), flowControl.acknowledge()));
+    }
+
+    /**
+     * Completes resuming the session after the server has confirmed it. The payloads not
+     * acknowledged by the server are sent again, followed by the payloads kept back.
+     */
+    public synchronized void completeResume() {
+        resuming = false;
+        for (Payload payload : flowControl.getUnacknowledgedPayloads()) {
+            super.sendPayload(payload);
+        }
+        sendPendingPayloads();
+    }
+
+    /**
+     * Processes the delivery information of a payload received from the server. The payloads kept
+     * back are sent as far as the window allows, and if the server awaits an acknowledgement and
+     * nothing else is sent, a pure acknowledgement is sent.
+     *
+     * @param delivery the delivery information of the received payload
+     */
+    public synchronized void receiveDelivery(Delivery delivery) {
+        flowControl.receive(delivery);
+
+        boolean sent = !resuming && sendPendingPayloads();
+        if (!sent && flowControl.isAcknowledgementDue()) {
+            super.sendPayload(createAcknowledgementPayload(flowControl.acknowledge()));
+        }
+    }
+
+    /**
+     * Adds the given chunk to the payload being reassembled on this connection.
+     *
+     * @param chunk the received chunk
+     * @return the complete payload if the chunk is the last one, null otherwise
+     * @throws ChatProtocolException if the payload exceeds the maximum size
+     */
+    public synchronized Payload assembleChunk(Payload chunk) throws ChatProtocolException {
+        return assembler.append(chunk);
+    }
+
+    /**
+     * Returns the time the server took to acknowledge the most recently acknowledged payload.
+     *
+     * @return the latency of the last acknowledged payload
+     */
+    public synchronized Duration getDeliveryLatency() {
+        return flowControl.getLastDeliveryLatency();
+    }
+
+    /**
+     * Sends the payloads kept back and the chunks of the streamed payloads as far as the window
+     * allows it. Every payload kept back is followed by a single chunk.
+     */
+    private boolean sendPendingPayloads() {
+        boolean sent = false;
+        while ((!pendingPayloads.isEmpty() || !streams.isEmpty()) && flowControl.hasCredit()) {
+            super.sendPayload(flowControl.send(pollPendingPayload()));
+            sent = true;
+        }
+        return sent;
+    }
+
+    private Payload pollPendingPayload() {
+        if (!streams.isEmpty() && (chunkTurn || pendingPayloads.isEmpty())) {
+            chunkTurn = false;
+            PayloadChunker stream = streams.peek();
+            Payload chunk = stream.next();
+            if (!stream.hasNext()) {
+                streams.poll();
+            }
+            return chunk;
+        }
+
+        chunkTurn = true;
+        return pendingPayloads.poll();
+    }
+
+}
@@ -1,17 +1,18 @@
 package ch.zhaw.pm2.multichat.client.connection;
 
 import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createErrorMessage;
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_RESUME;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
 import static java.util.Objects.requireNonNull;
-import static javafx.application.Platform.runLater;
 
 import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
-import ch.zhaw.pm2.multichat.protocol.connection.Connection;
 import ch.zhaw.pm2.multichat.protocol.connection.ConnectionListener;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,6 +22,7 @@ import java.util.Map;
  */
 public class ClientConnectionListener extends ConnectionListener<Payload> {
 
+    private final ClientConnection clientConnection;
     private final ChatWindowModel model;
 
     /**
@@ -30,10 +32,11 @@ public class ClientConnectionListener extends ConnectionListener<Payload> {
      * @param payloadHandlers a map of payload types to their corresponding payload handlers
      * @param model           the chat window model
      */
-    public ClientConnectionListener(final Connection<Payload> connection,
+    public ClientConnectionListener(final ClientConnection connection,
         final Map<PayloadType, PayloadHandler<Payload>> payloadHandlers,
         final ChatWindowModel model) {
         super(connection, payloadHandlers);
+        this.clientConnection = connection;
         this.model = requireNonNull(model);
     }
 
@@ -48,6 +51,40 @@ public class ClientConnectionListener extends ConnectionListener<Payload> {
         return payload.type();
     }
 
+    /**
+     * Returns the parts of the given batch payload.
+     *
+     * @param payload the batch payload to get the parts from
+     * @return the parts of the given batch payload, in the order they have to be handled
+     */
+    @Override
+    protected List<Payload> getBatchParts(Payload payload) {
+        return payload.parts();
+    }
+
+    /**
+     * Passes the given chunk to the connection, which reassembles the payload it belongs to.
+     *
+     * @param chunk The received chunk.
+     * @return The complete payload if the chunk is the last one, null otherwise.
+     * @throws ChatProtocolException if the payload exceeds the maximum size.
+     */
+    @Override
+    protected Payload assembleChunk(Payload chunk) throws ChatProtocolException {
+        return clientConnection.assembleChunk(chunk);
+    }
+
+    /**
+     * Passes the delivery information of the given Payload object to the flow control of the
+     * connection.
+     *
+     * @param payload The received Payload object.
+     */
+    @Override
+    protected void performDeliveryTracking(Payload payload) {
+        clientConnection.receiveDelivery(payload.delivery());
+    }
+
     /**
      * Creates an ErrorPayload object for a given error message.
      *
@@ -60,14 +97,20 @@ public class ClientConnectionListener extends ConnectionListener<Payload> {
     }
 
     /**
-     * Performs the disconnection sequence when a connection is lost or closed. This includes
-     * clearing the messages in the ChatWindowModel, adding a disconnection error message, and
-     * disconnecting the model from the connection.
+     * Performs the disconnection sequence when a connection is lost or closed. If the connection
+     * of a confirmed session is lost, the session is resumed on a new connection. Otherwise, or if
+     * the session can not be resumed, this includes clearing the messages in the ChatWindowModel,
+     * adding a disconnection error message, and disconnecting the model from the connection.
      */
     @Override
     protected void performDisconnection() {
-        runLater(() -> {
-            if (getConnection().isState(CONNECTED)) {
+        if (clientConnection.isState(CONNECTED) && clientConnection.getSessionToken() != null
+            && model.resumeSession(clientConnection)) {
+            return;
+        }
+
+        model.enqueueUpdate(() -> {
+            if (getConnection().isState(CONNECTED) || getConnection().isState(CONFIRM_RESUME)) {
                 model.clearMessages();
                 model.addMessage(createErrorMessage("Disconnected due to connection error"));
             }
@@ -17,6 +17,8 @@ import ch.zhaw.pm2.multichat.protocol.NetworkHandler;
 import ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType;
 import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import java.net.URL;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.ResourceBundle;
 import java.util.Set;
@@ -35,7 +37,9 @@ import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * A class representing the controller for the chat application.
+ * A class representing the controller for the chat application. Besides messages, the message field
+ * accepts the commands {@code /file <path>} to offer a file to the addressed user and
+ * {@code /accept <id>} to accept an offered file.
  */
 @Slf4j
 public class ChatWindowController implements Initializable {
@@ -45,6 +49,8 @@ public class ChatWindowController implements Initializable {
     private static final Pattern HOSTNAME_PATTERN = Pattern.compile(
         "[A-Za-z\\-]+(\\.[A-Za-z\\-]+)*");
     private static final Pattern USERNAME_PATTERN = Pattern.compile("\\S{0,50}");
+    private static final String FILE_COMMAND = "/file ";
+    private static final String ACCEPT_COMMAND = "/accept ";
 
     private BooleanBinding isServerAddressInvalidBinding;
     private ChatWindowModel model;
@@ -109,6 +115,7 @@ public class ChatWindowController implements Initializable {
         messageArea.setId("messageArea");
         messageArea.setFocusTraversable(false);
         messageArea.setPadding(new Insets(0, 5, 0, 5));
+        messageArea.setOnScrolledToTop(model::loadOlderMessages);
         rootPane.setCenter(messageArea);
 
         // Disable elements based on binding state
@@ -117,11 +124,11 @@ public class ChatWindowController implements Initializable {
         userNameField.disableProperty().bind(model.isConnectionEstablishedBinding());
         connectButton.setDisable(true);
         connectButton.disableProperty().bind(isServerAddressInvalidBinding);
-        sendButton.disableProperty().bind(model.isConnectionEstablishedBinding().not()
+        sendButton.disableProperty().bind(model.isSendingAllowedBinding().not()
             .or(Bindings.createBooleanBinding(
                 () -> MessageParser.parse(messageField.getText()).message().isBlank(),
                 messageField.textProperty())));
-        messageField.disableProperty().bind(model.isConnectionEstablishedBinding().not());
+        messageField.disableProperty().bind(model.isSendingAllowedBinding().not());
         clearButton.disableProperty().bind(model.isMessageListEmptyBinding());
         filterValue.disableProperty().bind(model.isMessageListEmptyBinding());
         filterOptionMenu.disableProperty().bind(model.isMessageListEmptyBinding());
@@ -174,12 +181,20 @@ public class ChatWindowController implements Initializable {
     private void onSendButtonClick() {
         try {
             MessageParserResult result = MessageParser.parse(messageField.getText().strip());
-            if (!result.message().isBlank()) {
-                model.send(result.receiver(), result.message());
+            String message = result.message();
+            if (message.startsWith(FILE_COMMAND)) {
+                model.offerFile(result.receiver(),
+                    Path.of(message.substring(FILE_COMMAND.length()).strip()));
+                messageField.clear();
+            } else if (message.startsWith(ACCEPT_COMMAND)) {
+                model.acceptFile(message.substring(ACCEPT_COMMAND.length()).strip());
+                messageField.clear();
+            } else if (!message.isBlank()) {
+                model.send(result.receiver(), message);
                 messageField.clear();
                 messageField.requestFocus();
             }
-        } catch (ChatProtocolException e) {
+        } catch (ChatProtocolException | InvalidPathException e) {
             model.addMessage(createErrorMessage(e.getMessage()));
         }
     }
@@ -206,6 +221,7 @@ public class ChatWindowController implements Initializable {
         connectButton.setText(switch (value) {
             case NEW, CONFIRM_CONNECT -> "Connecting...";
             case CONNECTED -> "Disconnect";
+            case CONFIRM_RESUME -> "Reconnecting...";
             case CONFIRM_DISCONNECT -> "Disconnecting...";
             case DISCONNECTED -> "Connect";
         });
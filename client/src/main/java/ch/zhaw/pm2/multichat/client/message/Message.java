@@ -2,11 +2,21 @@ package ch.zhaw.pm2.multichat.client.message;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.Objects;
+
 /**
  * A class representing a message sent between clients in the MultiChat application. A message
- * consists of a type, sender, receiver, and content.
+ * consists of a type, sender, receiver, and content. Since messages are immutable, the formatted
+ * message and its lower case search key are computed lazily on first use and cached afterwards.
  */
-public record Message(MessageType type, String sender, String receiver, String content) {
+public final class Message {
+
+    private final MessageType type;
+    private final String sender;
+    private final String receiver;
+    private final String content;
+    private String formattedMessage;
+    private String searchKey;
 
     /**
      * Constructs a new Message object with the given message type, sender, receiver, and content.
@@ -24,24 +34,106 @@ public record Message(MessageType type, String sender, String receiver, String c
     }
 
     /**
-     * Returns the formatted message for this object.
+     * Returns the type of the message.
+     *
+     * @return the type of the message
+     */
+    public MessageType type() {
+        return type;
+    }
+
+    /**
+     * Returns the sender of the message.
+     *
+     * @return the sender of the message
+     */
+    public String sender() {
+        return sender;
+    }
+
+    /**
+     * Returns the receiver of the message.
+     *
+     * @return the receiver of the message
+     */
+    public String receiver() {
+        return receiver;
+    }
+
+    /**
+     * Returns the content of the message.
+     *
+     * @return the content of the message
+     */
+    public String content() {
+        return content;
+    }
+
+    /**
+     * Returns the formatted message for this object. The message is formatted once and cached.
      *
      * @return the formatted message as a String
      */
     public String getMessage() {
-        return type.getFormattedMessage(this);
+        String message = formattedMessage;
+        if (message == null) {
+            message = type.getFormattedMessage(this);
+            formattedMessage = message;
+        }
+
+        return message;
     }
 
     /**
-     * Determines if the message satisfies the given message filter.
+     * Returns the lower case form of the formatted message, which is used to match the content of
+     * a {@link MessageFilter}. The search key is computed once and cached.
+     *
+     * @return the lower case formatted message
+     */
+    public String getSearchKey() {
+        String key = searchKey;
+        if (key == null) {
+            key = getMessage().toLowerCase();
+            searchKey = key;
+        }
+
+        return key;
+    }
+
+    /**
+     * Determines if the message satisfies the given message filter. To test many messages against
+     * the same filter, use {@link MessageFilter#compile()} instead, which prepares the filter only
+     * once.
      *
      * @param filter the message filter to apply
      * @return true if the message satisfies the filter, false otherwise
      */
     public boolean isFilterApplicable(MessageFilter filter) {
-        return filter.categories().contains(type.getCategory()) && getMessage().toLowerCase()
-            .contains(
-                filter.content().toLowerCase());
+        return filter.compile().test(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Message that = (Message) o;
+        return type == that.type && sender.equals(that.sender) && receiver.equals(that.receiver)
+            && content.equals(that.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, sender, receiver, content);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Message[type=%s, sender=%s, receiver=%s, content=%s]", type, sender,
+            receiver, content);
     }
 
 }
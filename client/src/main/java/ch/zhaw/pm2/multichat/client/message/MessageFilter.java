@@ -3,7 +3,8 @@ package ch.zhaw.pm2.multichat.client.message;
 import java.util.Set;
 
 /**
- * A class representing a filter for messages that can be applied to a chat window.
+ * A class representing a filter for messages that can be applied to a chat window. The content of
+ * the filter is interpreted as a {@link MessageQuery}.
  */
 public record MessageFilter(Set<MessageCategory> categories, String content) {
 
@@ -14,4 +15,28 @@ public record MessageFilter(Set<MessageCategory> categories, String content) {
         Set.of(MessageCategory.values()),
         "");
 
+    /**
+     * Compiles this filter into a query. The categories and the lower case phrase and terms are
+     * prepared once, so that the query can be applied to a large number of messages without
+     * allocating new strings for each of them.
+     *
+     * @return a query that tests whether a message satisfies this filter
+     */
+    public MessageQuery compile() {
+        return new MessageQuery(categories, content);
+    }
+
+    /**
+     * Determines whether this filter is a refinement of the given filter, i.e. whether every
+     * message satisfying this filter is guaranteed to satisfy the given filter as well.
+     *
+     * @param filter the filter to compare with
+     * @return true if this filter can only match a subset of the messages matched by the given
+     * filter, false otherwise
+     * @see MessageQuery#isNarrowing(MessageQuery)
+     */
+    public boolean isNarrowing(MessageFilter filter) {
+        return filter != null && compile().isNarrowing(filter.compile());
+    }
+
 }
@@ -0,0 +1,127 @@
+package ch.zhaw.pm2.multichat.client.message;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * A class representing a compiled {@link MessageFilter}. Whitespace separated terms prefixed with
+ * {@code from:} or {@code to:} only match the sender or the receiver of a message. The rest of the
+ * content is a phrase which has to be contained in the lower case formatted message as a whole,
+ * just like the content of a filter without such terms. All terms are matched case-insensitively.
+ */
+public class MessageQuery implements Predicate<Message> {
+
+    private static final String SENDER_PREFIX = "from:";
+    private static final String RECEIVER_PREFIX = "to:";
+
+    private final Set<MessageCategory> categories;
+    private final String phrase;
+    private final List<String> senderTerms = new ArrayList<>();
+    private final List<String> receiverTerms = new ArrayList<>();
+
+    /**
+     * Constructs a new MessageQuery object for the given categories and filter content.
+     *
+     * @param categories the accepted message categories
+     * @param content    the filter content to parse into a phrase and scoped terms
+     */
+    public MessageQuery(Set<MessageCategory> categories, String content) {
+        this.categories = EnumSet.noneOf(MessageCategory.class);
+        this.categories.addAll(categories);
+
+        String lowerCaseContent = content.toLowerCase();
+        StringJoiner remainder = new StringJoiner(" ");
+        for (String token : lowerCaseContent.trim().split("\\s+")) {
+            if (token.startsWith(SENDER_PREFIX)) {
+                addTerm(senderTerms, token.substring(SENDER_PREFIX.length()));
+            } else if (token.startsWith(RECEIVER_PREFIX)) {
+                addTerm(receiverTerms, token.substring(RECEIVER_PREFIX.length()));
+            } else if (!token.isEmpty()) {
+                remainder.add(token);
+            }
+        }
+
+        boolean scoped = !senderTerms.isEmpty() || !receiverTerms.isEmpty();
+        this.phrase = scoped ? remainder.toString() : lowerCaseContent;
+    }
+
+    /**
+     * Returns the lower case phrase which has to be contained in the formatted message.
+     *
+     * @return the phrase matched against the formatted message
+     */
+    public String getPhrase() {
+        return phrase;
+    }
+
+    /**
+     * Tests whether the given message satisfies this query.
+     *
+     * @param message the message to test
+     * @return true if the message satisfies this query, false otherwise
+     */
+    @Override
+    public boolean test(Message message) {
+        return categories.contains(message.type().getCategory())
+            && message.getSearchKey().contains(phrase)
+            && containsAll(message.sender(), senderTerms)
+            && containsAll(message.receiver(), receiverTerms);
+    }
+
+    /**
+     * Determines whether this query is a refinement of the given query, i.e. whether every message
+     * satisfying this query is guaranteed to satisfy the given query as well. This is the case if
+     * this query accepts the same or fewer categories, its phrase contains the phrase of the given
+     * query and every scoped term of the given query is contained in a term of the same scope.
+     *
+     * @param query the query to compare with
+     * @return true if this query can only match a subset of the messages matched by the given
+     * query, false otherwise
+     */
+    public boolean isNarrowing(MessageQuery query) {
+        return query.categories.containsAll(categories) && phrase.contains(query.phrase)
+            && isRefinement(senderTerms, query.senderTerms)
+            && isRefinement(receiverTerms, query.receiverTerms);
+    }
+
+    private static void addTerm(List<String> terms, String term) {
+        if (!term.isEmpty()) {
+            terms.add(term);
+        }
+    }
+
+    private static boolean isRefinement(List<String> terms, List<String> previousTerms) {
+        for (String previousTerm : previousTerms) {
+            if (terms.stream().noneMatch(term -> term.contains(previousTerm))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean containsAll(String value, List<String> terms) {
+        for (String term : terms) {
+            if (!containsIgnoreCase(value, term)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(String value, String lowerCaseTerm) {
+        for (int i = 0; i <= value.length() - lowerCaseTerm.length(); i++) {
+            if (value.regionMatches(true, i, lowerCaseTerm, 0, lowerCaseTerm.length())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -1,41 +1,68 @@
 package ch.zhaw.pm2.multichat.client.model;
 
 import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createErrorMessage;
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createInfoMessage;
 import static ch.zhaw.pm2.multichat.client.message.MessageFilter.ALL_FILTER_OPTIONS;
+import static ch.zhaw.pm2.multichat.client.transcript.TranscriptStore.DEFAULT_DIRECTORY;
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.EVERYONE;
 import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.openConnection;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_CONNECT;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_DISCONNECT;
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_RESUME;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.DISCONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createAcceptPayload;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createConnectPayload;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createDisconnectPayload;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createOfferPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ACCEPT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONFIRM;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.DISCONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.OFFER;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.SESSION;
 import static java.lang.String.format;
 import static javafx.collections.FXCollections.unmodifiableObservableList;
 
+import ch.zhaw.pm2.multichat.client.connection.ClientConnection;
 import ch.zhaw.pm2.multichat.client.connection.ClientConnectionListener;
 import ch.zhaw.pm2.multichat.client.message.Message;
 import ch.zhaw.pm2.multichat.client.message.MessageFilter;
+import ch.zhaw.pm2.multichat.client.payload.AcceptPayloadHandler;
 import ch.zhaw.pm2.multichat.client.payload.ConfirmPayloadHandler;
 import ch.zhaw.pm2.multichat.client.payload.ConnectPayloadHandler;
 import ch.zhaw.pm2.multichat.client.payload.DisconnectPayloadHandler;
 import ch.zhaw.pm2.multichat.client.payload.ErrorPayloadHandler;
 import ch.zhaw.pm2.multichat.client.payload.MessagePayloadHandler;
-import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.client.payload.OfferPayloadHandler;
+import ch.zhaw.pm2.multichat.client.payload.SessionPayloadHandler;
+import ch.zhaw.pm2.multichat.client.transcript.TranscriptStore;
+import ch.zhaw.pm2.multichat.client.transfer.FileTransfer;
+import ch.zhaw.pm2.multichat.client.utils.PulseUpdateQueue;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkConnection;
+import ch.zhaw.pm2.multichat.protocol.TlsContextFactory;
 import ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType;
 import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.FileOffer;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.property.ObjectProperty;
@@ -43,6 +70,7 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.ObservableList;
+import javax.net.ssl.SSLContext;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -51,24 +79,63 @@ import lombok.extern.slf4j.Slf4j;
  * disconnect, and manage the state of the connection, retrieve and filter the messages, add a
  * message, and clear the message list. It also provides the binding and properties for the
  * username, connection state, message list, and waiting for the response status.
+ * <p>
+ * While connected, all messages are appended to the local {@link TranscriptStore} of the user on
+ * the server. Only a window of the most recent messages is kept in memory, older messages are paged
+ * in from the transcript on request.
+ * <p>
+ * Files can be offered to other users. Once an offer has been accepted, the file is sent on a
+ * separate data connection by a background thread, so the chat stays responsive. Received files
+ * are stored in the {@link #DOWNLOAD_DIRECTORY}.
+ * <p>
+ * If a trust store is configured as described in {@link TlsContextFactory}, the connections to the
+ * server are encrypted with TLS. The same TLS context is used for all connections, so resuming a
+ * session after a lost connection also resumes the TLS session. Files can not be transferred over
+ * TLS.
  */
 @Slf4j
 public class ChatWindowModel {
 
+    /**
+     * The directory in which received files are stored.
+     */
+    public static final Path DOWNLOAD_DIRECTORY = Path.of(System.getProperty("user.home"),
+        "Downloads", "multichat");
+
+    private static final int WINDOW_SIZE = 1000;
+    private static final int PAGE_SIZE = 200;
+    private static final int RESUME_ATTEMPTS = 5;
+    private static final long RESUME_INITIAL_DELAY_MILLIS = 500;
+
     private final MessageListModel messages = new MessageListModel();
+    private final List<Message> pendingMessages = new ArrayList<>();
+    private final PulseUpdateQueue updateQueue = new PulseUpdateQueue(this::flushPendingMessages);
     private final StringProperty usernameProperty = new SimpleStringProperty();
     private final Map<PayloadType, PayloadHandler<Payload>> payloadHandlers = new EnumMap<>(
         PayloadType.class);
     private final ObjectProperty<ConnectionStateType> stateProperty = new SimpleObjectProperty<>(
         DISCONNECTED);
     private final BooleanBinding isWaitingForResponseBinding = Bindings.or(
-        stateProperty.isEqualTo(CONFIRM_CONNECT), stateProperty.isEqualTo(CONFIRM_DISCONNECT));
-    private final BooleanBinding isConnectionEstablishedBinding = stateProperty.isEqualTo(
-        CONNECTED);
+        stateProperty.isEqualTo(CONFIRM_CONNECT), stateProperty.isEqualTo(CONFIRM_DISCONNECT))
+        .or(stateProperty.isEqualTo(CONFIRM_RESUME));
+    private final BooleanBinding isConnectionEstablishedBinding = Bindings.or(
+        stateProperty.isEqualTo(CONNECTED), stateProperty.isEqualTo(CONFIRM_RESUME));
+    private final BooleanBinding isSendingAllowedBinding = Bindings.or(
+        stateProperty.isEqualTo(CONNECTED), stateProperty.isEqualTo(CONFIRM_CONNECT))
+        .or(stateProperty.isEqualTo(CONFIRM_RESUME));
     private final BooleanBinding isMessageListEmptyBinding = messages.getSizeBinding().isEqualTo(
         0);
+    private final Map<String, Path> offeredFiles = new HashMap<>();
+    private final Map<String, ReceivedOffer> receivedOffers = new HashMap<>();
     private final FilteredMessageListModel filteredMessages;
-    private Connection<Payload> connection;
+    private ClientConnection connection;
+    private SSLContext tlsContext;
+    private boolean isTlsContextLoaded;
+    private String host;
+    private int port;
+    private TranscriptStore transcript;
+    private int windowStart;
+    private int windowCapacity = WINDOW_SIZE;
 
     /**
      * Constructs a new ChatWindowModel object. Initializes the filteredMessages attribute as a new
@@ -133,6 +200,10 @@ public class ChatWindowModel {
         if (connection != null) {
             connection.setState(state);
         }
+
+        if (state == DISCONNECTED) {
+            closeTranscript();
+        }
     }
 
     /**
@@ -176,6 +247,17 @@ public class ChatWindowModel {
         return isConnectionEstablishedBinding.get();
     }
 
+    /**
+     * Returns a BooleanBinding that represents whether messages can be sent. Messages can already
+     * be sent while the connection is waiting for its confirmation, they are pipelined behind the
+     * connect request.
+     *
+     * @return A BooleanBinding that is true if messages can be sent, false otherwise.
+     */
+    public BooleanBinding isSendingAllowedBinding() {
+        return isSendingAllowedBinding;
+    }
+
     /**
      * Returns a BooleanBinding representing whether the message list is empty or not.
      *
@@ -205,19 +287,85 @@ public class ChatWindowModel {
     }
 
     /**
-     * Adds a new message to the list.
+     * Enqueues an update to be executed on the JavaFX application thread together with the other
+     * pending updates. This method may be called from any thread, e.g. the connection listener
+     * thread.
+     *
+     * @param update the update to execute
+     */
+    public void enqueueUpdate(Runnable update) {
+        updateQueue.execute(update);
+    }
+
+    /**
+     * Adds a new message to the list. The message is collected and appended together with all
+     * other messages of the current drain of the update queue, so that observers are only notified
+     * once per drain.
      *
      * @param message message that is added.
      */
     public void addMessage(Message message) {
-        messages.add(message);
+        if (pendingMessages.isEmpty()) {
+            updateQueue.requestPulse();
+        }
+        pendingMessages.add(message);
     }
 
     /**
-     * Deletes all messages.
+     * Deletes all messages, including the ones not yet appended in the current drain. The messages
+     * are only removed from the window, pending messages are still written to the transcript.
      */
     public void clearMessages() {
+        flushPendingMessages();
         messages.clear();
+
+        if (transcript != null) {
+            windowStart = transcript.size();
+            windowCapacity = WINDOW_SIZE;
+        }
+    }
+
+    /**
+     * Opens the transcript of the current user on the connected server and shows its most recent
+     * messages. Only the index and the tail of the transcript are read. Messages shown before the
+     * connection has been confirmed are appended to the transcript. If the transcript can not be
+     * opened, the messages are only kept in memory.
+     */
+    public void openTranscript() {
+        closeTranscript();
+        flushPendingMessages();
+
+        TranscriptStore store = null;
+        try {
+            store = TranscriptStore.open(DEFAULT_DIRECTORY, host, port, getUsername());
+            store.appendAll(messages);
+            int size = store.size();
+            windowStart = Math.max(0, size - WINDOW_SIZE);
+            windowCapacity = WINDOW_SIZE;
+            messages.setAll(store.read(windowStart, size));
+            transcript = store;
+        } catch (IOException e) {
+            log.error("Could not open transcript", e);
+            addMessage(createErrorMessage(format("Could not open transcript: %s", e.getMessage())));
+            closeQuietly(store);
+        }
+    }
+
+    /**
+     * Pages in the messages of the transcript preceding the oldest message in the window. The
+     * window grows by the loaded messages, so that they are not evicted by the next incoming
+     * messages. If there is no transcript or no older message, this method does nothing.
+     */
+    public void loadOlderMessages() {
+        if (transcript == null || windowStart == 0) {
+            return;
+        }
+
+        int from = Math.max(0, windowStart - PAGE_SIZE);
+        List<Message> page = transcript.read(from, windowStart);
+        messages.prependAll(page);
+        windowCapacity += page.size();
+        windowStart = from;
     }
 
     /**
@@ -225,25 +373,30 @@ public class ChatWindowModel {
      * established, an error message is added to the chat window and the method returns. Otherwise,
      * the connection is established and a new thread is started to listen for incoming payloads. A
      * "connect" payload is sent to the server with the username of the client, and the client state
-     * is set to CONFIRM_CONNECT. If an I/O exception or chat protocol exception occurs, an error
-     * message is added to the chat window and the disconnect() method is called to clean up.
+     * is set to CONFIRM_CONNECT. Messages can be sent right away, without waiting for the
+     * confirmation: the server handles them once the registration has succeeded or rejects them
+     * together with the connect request. If an I/O exception or chat protocol exception occurs, an
+     * error message is added to the chat window and the disconnect() method is called to clean up.
      *
      * @param host the host to connect to
      * @param port the port to connect to
      */
     public void connect(String host, int port) {
         clearMessages();
-        
+
         if (!isState(DISCONNECTED)) {
             addMessage(createErrorMessage("Connection is already established"));
             return;
         }
 
+        this.host = host;
+        this.port = port;
+
         setState(NEW);
         setFilter(ALL_FILTER_OPTIONS);
 
         try {
-            connection = new Connection<>(openConnection(host, port));
+            connection = new ClientConnection(openNetworkConnection());
             new Thread(new ClientConnectionListener(connection, payloadHandlers, this)).start();
 
             if (!isState(NEW)) {
@@ -259,6 +412,57 @@ public class ChatWindowModel {
         }
     }
 
+    /**
+     * Tries to resume the session of the given lost connection on a new connection to the same
+     * server, so the user neither has to register again nor misses any messages. Messages sent in
+     * the meantime are kept back until the server has confirmed the session. This method is called
+     * by the listener thread of the lost connection and retries opening the new connection with a
+     * growing delay, staying well within the grace period the server keeps the session for.
+     *
+     * @param previous the lost connection
+     * @return true if the session is being resumed, false if no new connection could be opened
+     */
+    public boolean resumeSession(ClientConnection previous) {
+        previous.suspend();
+        enqueueUpdate(() -> {
+            setState(CONFIRM_RESUME);
+            addMessage(createInfoMessage("Connection lost, resuming session..."));
+        });
+
+        long delay = RESUME_INITIAL_DELAY_MILLIS;
+        for (int attempt = 1; attempt <= RESUME_ATTEMPTS; attempt++) {
+            try {
+                ClientConnection resumed = new ClientConnection(openNetworkConnection(),
+                    previous);
+                resumed.setState(CONFIRM_RESUME);
+                enqueueUpdate(() -> connection = resumed);
+                new Thread(new ClientConnectionListener(resumed, payloadHandlers, this)).start();
+                resumed.requestResume();
+                return true;
+            } catch (IOException e) {
+                log.error(format("Resume attempt %d failed: %s", attempt, e.getMessage()));
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            delay *= 2;
+        }
+
+        return false;
+    }
+
+    /**
+     * Completes resuming the session after the server has confirmed it, so the messages kept back
+     * and the ones the server has not received before the connection was lost are sent.
+     */
+    public void completeResume() {
+        connection.completeResume();
+    }
+
     /**
      * Disconnects from the chat server. If the connection is not established, this method does
      * nothing. Otherwise, a "disconnect" payload is sent to the server with the username of the
@@ -286,15 +490,16 @@ public class ChatWindowModel {
     }
 
     /**
-     * Sends a message to the specified receiver through the established connection. If the
-     * connection is not established or the message is empty, it will add an error message to the
-     * chat.
+     * Sends a message to the specified receiver through the established connection. While the
+     * connection is waiting for its confirmation, the message is pipelined behind the connect
+     * request. If the connection is neither established nor waiting for its confirmation or the
+     * message is empty, it will add an error message to the chat.
      *
      * @param receiver the username of the message recipient
      * @param content  the content of the message
      */
     public void send(String receiver, String content) {
-        if (connection == null || connection.getState() != CONNECTED) {
+        if (connection == null || !isSendingAllowedBinding.get()) {
             addMessage(createErrorMessage("Connection is not established"));
             return;
         }
@@ -307,6 +512,198 @@ public class ChatWindowModel {
         connection.sendPayload(createMessagePayload(getUsername(), receiver, content));
     }
 
+    /**
+     * Offers the given file to the given user. The file is sent once the user has accepted the
+     * offer. Files can only be offered to a single user.
+     *
+     * @param receiver the username of the user the file is offered to
+     * @param file     the file to offer
+     */
+    public void offerFile(String receiver, Path file) {
+        if (connection == null || !isState(CONNECTED)) {
+            addMessage(createErrorMessage("Connection is not established"));
+            return;
+        }
+
+        if (EVERYONE.equals(receiver)) {
+            addMessage(createErrorMessage("Files can only be offered to a single user"));
+            return;
+        }
+
+        if (tlsContext != null) {
+            addMessage(createErrorMessage("Files can not be transferred over TLS"));
+            return;
+        }
+
+        try {
+            if (!Files.isRegularFile(file)) {
+                throw new IOException(format("%s is not a file", file));
+            }
+
+            FileOffer offer = new FileOffer(UUID.randomUUID().toString(),
+                file.getFileName().toString(), Files.size(file));
+            offeredFiles.put(offer.transferId(), file);
+            connection.sendPayload(createOfferPayload(getUsername(), receiver, offer));
+            addMessage(createInfoMessage(
+                format("Offered %s (%d bytes) to %s", offer.name(), offer.size(), receiver)));
+        } catch (IOException e) {
+            addMessage(createErrorMessage(format("Could not offer file: %s", e.getMessage())));
+        }
+    }
+
+    /**
+     * Shows the offer of a file by another user, which the user can accept by its transfer id.
+     *
+     * @param sender the username of the user offering the file
+     * @param offer  the offered file
+     */
+    public void receiveOffer(String sender, FileOffer offer) {
+        receivedOffers.put(offer.transferId(), new ReceivedOffer(sender, offer));
+        addMessage(createInfoMessage(
+            format("%s offers %s (%d bytes), send /accept %s to receive it", sender, offer.name(),
+                offer.size(), offer.transferId())));
+    }
+
+    /**
+     * Accepts the offer of a file with the given transfer id and starts receiving the file in the
+     * background. The file is stored in the {@link #DOWNLOAD_DIRECTORY}.
+     *
+     * @param transferId the id of the transfer
+     */
+    public void acceptFile(String transferId) {
+        ReceivedOffer received = receivedOffers.remove(transferId);
+        if (received == null) {
+            addMessage(createErrorMessage(format("There is no offer %s", transferId)));
+            return;
+        }
+
+        if (connection == null || !isState(CONNECTED)) {
+            addMessage(createErrorMessage("Connection is not established"));
+            return;
+        }
+
+        FileOffer offer = received.offer();
+        String username = getUsername();
+        connection.sendPayload(createAcceptPayload(username, received.sender(), transferId));
+        runTransfer(offer.name(), () -> {
+            Files.createDirectories(DOWNLOAD_DIRECTORY);
+            Path target = DOWNLOAD_DIRECTORY.resolve(Path.of(offer.name()).getFileName());
+            try {
+                FileTransfer.download(host, port, username, transferId, target, offer.size());
+            } catch (FileAlreadyExistsException e) {
+                target = DOWNLOAD_DIRECTORY.resolve(
+                    Path.of(format("%s-%s", transferId, target.getFileName())).getFileName());
+                FileTransfer.download(host, port, username, transferId, target, offer.size());
+            }
+            return target;
+        });
+    }
+
+    /**
+     * Starts sending the offered file with the given transfer id in the background, after the
+     * receiver has accepted the offer.
+     *
+     * @param transferId the id of the transfer
+     */
+    public void startUpload(String transferId) {
+        Path file = offeredFiles.remove(transferId);
+        if (file == null) {
+            log.error(format("Ignoring acceptance of unknown transfer %s", transferId));
+            return;
+        }
+
+        String username = getUsername();
+        runTransfer(file.getFileName().toString(), () -> {
+            FileTransfer.upload(host, port, username, transferId, file);
+            return file;
+        });
+    }
+
+    /**
+     * Opens a new network connection to the server, encrypted with TLS if a trust store is
+     * configured. The TLS context is created by the first call and reused afterwards.
+     *
+     * @return the new network connection
+     * @throws IOException if the connection can not be opened or TLS is misconfigured
+     */
+    private NetworkConnection<Payload> openNetworkConnection() throws IOException {
+        if (!isTlsContextLoaded) {
+            try {
+                tlsContext = TlsContextFactory.createFromSystemProperties().orElse(null);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(format("Invalid TLS configuration: %s", e.getMessage()), e);
+            }
+            isTlsContextLoaded = true;
+        }
+
+        return tlsContext == null ? openConnection(host, port, new PayloadCodec())
+            : openConnection(host, port, tlsContext, new PayloadCodec());
+    }
+
+    private void runTransfer(String name, TransferTask task) {
+        addMessage(createInfoMessage(format("Transferring %s...", name)));
+        Thread thread = new Thread(() -> {
+            try {
+                Path file = task.run();
+                enqueueUpdate(() -> addMessage(
+                    createInfoMessage(format("Transferred %s (%s)", name, file))));
+            } catch (IOException e) {
+                log.error(format("Transfer of %s failed", name), e);
+                enqueueUpdate(() -> addMessage(createErrorMessage(
+                    format("Transfer of %s failed: %s", name, e.getMessage()))));
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Appends all messages collected during the current drain to the message list in one bulk
+     * operation and to the transcript. If the window exceeds its capacity, the oldest messages are
+     * evicted, since they can be paged in from the transcript again.
+     */
+    private void flushPendingMessages() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+
+        messages.addAll(pendingMessages);
+        if (transcript != null) {
+            try {
+                transcript.appendAll(pendingMessages);
+                int overflow = messages.size() - windowCapacity;
+                if (overflow > 0) {
+                    messages.evict(overflow);
+                    windowStart += overflow;
+                }
+            } catch (IOException e) {
+                log.error("Could not append to transcript", e);
+                closeTranscript();
+            }
+        }
+        pendingMessages.clear();
+    }
+
+    /**
+     * Closes the transcript, if one is open. The messages in the window are kept.
+     */
+    private void closeTranscript() {
+        closeQuietly(transcript);
+        transcript = null;
+    }
+
+    private static void closeQuietly(TranscriptStore store) {
+        if (store == null) {
+            return;
+        }
+
+        try {
+            store.close();
+        } catch (IOException e) {
+            log.error("Could not close transcript", e);
+        }
+    }
+
     /**
      * Initializes the payload handlers for each payload type. This method is called when the
      * ChatWindowModel is created.
@@ -317,6 +714,20 @@ public class ChatWindowModel {
         payloadHandlers.put(DISCONNECT, new DisconnectPayloadHandler(this));
         payloadHandlers.put(MESSAGE, new MessagePayloadHandler(this));
         payloadHandlers.put(ERROR, new ErrorPayloadHandler(this));
+        payloadHandlers.put(SESSION, new SessionPayloadHandler());
+        payloadHandlers.put(OFFER, new OfferPayloadHandler(this));
+        payloadHandlers.put(ACCEPT, new AcceptPayloadHandler(this));
+    }
+
+    private record ReceivedOffer(String sender, FileOffer offer) {
+
+    }
+
+    @FunctionalInterface
+    private interface TransferTask {
+
+        Path run() throws IOException;
+
     }
 
 }
@@ -1,40 +1,91 @@
 package ch.zhaw.pm2.multichat.client.model;
 
-import static javafx.application.Platform.runLater;
+import static ch.zhaw.pm2.multichat.client.message.MessageFilter.ALL_FILTER_OPTIONS;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 
 import ch.zhaw.pm2.multichat.client.message.Message;
 import ch.zhaw.pm2.multichat.client.message.MessageFilter;
+import ch.zhaw.pm2.multichat.client.message.MessageQuery;
 import ch.zhaw.pm2.multichat.client.utils.ConsumerTimeout;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javafx.application.Platform;
 import javafx.beans.Observable;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
+import javafx.collections.ListChangeListener.Change;
 import javafx.collections.ObservableListBase;
-import javafx.collections.transformation.FilteredList;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * A class representing a filtered list of messages. It is a JavaFX ObservableList that contains
  * messages and applies a filter to them. This class is used to display messages that match a
  * certain criteria, such as a specific keyword or a certain sender.
+ * <p>
+ * The filtering is done incrementally: messages appended to the source list are only tested
+ * against the active filter, a narrowing filter only re-checks the current matches and a widening
+ * filter only tests the messages that did not match before. Messages inserted at or removed from
+ * the start of the source list, e.g. when older messages are paged in or evicted, are handled
+ * incrementally as well.
+ * <p>
+ * Applying a new filter is done on a background thread against immutable snapshots of the
+ * messages and the current matches. Both lists are {@link SnapshotList}s, so taking the snapshots
+ * on the JavaFX application thread does not copy any message. Only the latest filter job is
+ * published, older jobs are cancelled. The result replaces the current matches in a single swap
+ * on the JavaFX application thread. If the phrase of the filter can be looked up in the trigram
+ * index of the {@link MessageListModel}, only the candidates found in the index are tested.
  */
+@Slf4j
 public class FilteredMessageListModel extends ObservableListBase<Message> {
 
-    private final FilteredList<Message> messages;
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+    private static final long FILTER_TIMEOUT = 200;
+
+    private final ExecutorService filterExecutor = newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final MessageListModel source;
+    private final Executor applicationThread;
     private final ObjectProperty<MessageFilter> filterProperty = new SimpleObjectProperty<>();
-    private final ConsumerTimeout<MessageFilter> consumerTimeout = new ConsumerTimeout<>(
-        this::refreshFilter, 200);
+    private final ConsumerTimeout<MessageFilter> consumerTimeout;
+    private SnapshotList<Message> matches = new SnapshotList<>();
+    private MessageFilter requestedFilter = ALL_FILTER_OPTIONS;
+    private MessageQuery activeQuery = ALL_FILTER_OPTIONS.compile();
+    private Future<?> filterJob;
+    private long filterJobGeneration;
+    private long sourceVersion;
 
     /**
      * Constructs a new FilteredMessageListModel object.
      *
      * @param messages The list of messages that the filter will be applied to.
      */
-    public FilteredMessageListModel(ObservableList<Message> messages) {
-        this.messages = new FilteredList<>(messages);
+    public FilteredMessageListModel(MessageListModel messages) {
+        this(messages, Platform::runLater, FILTER_TIMEOUT);
+    }
+
+    /**
+     * Constructs a new FilteredMessageListModel object which runs the updates of the list with the
+     * given executor instead of the JavaFX application thread, e.g. in tests.
+     *
+     * @param messages          The list of messages that the filter will be applied to.
+     * @param applicationThread The executor running the updates of the list.
+     * @param filterTimeout     The time without further filter changes after which the latest
+     *                          filter is applied, in milliseconds.
+     */
+    FilteredMessageListModel(MessageListModel messages, Executor applicationThread,
+        long filterTimeout) {
+        this.source = messages;
+        this.applicationThread = applicationThread;
+        this.consumerTimeout = new ConsumerTimeout<>(this::refreshFilter, filterTimeout);
+        this.matches.addAll(messages);
         filterProperty.addListener(this::onFilterChange);
-        ListChangeListener<Message> listener = this::fireChange;
-        this.messages.addListener(listener);
+        source.addListener(this::onSourceChange);
     }
 
     /**
@@ -54,7 +105,7 @@ public class FilteredMessageListModel extends ObservableListBase<Message> {
      */
     @Override
     public synchronized Message get(int index) {
-        return messages.get(index);
+        return matches.get(index);
     }
 
     /**
@@ -64,7 +115,7 @@ public class FilteredMessageListModel extends ObservableListBase<Message> {
      */
     @Override
     public synchronized int size() {
-        return messages.size();
+        return matches.size();
     }
 
     /**
@@ -84,7 +135,7 @@ public class FilteredMessageListModel extends ObservableListBase<Message> {
             return false;
         }
         FilteredMessageListModel that = (FilteredMessageListModel) o;
-        return messages.equals(that.messages);
+        return matches.equals(that.matches);
     }
 
     /**
@@ -94,7 +145,7 @@ public class FilteredMessageListModel extends ObservableListBase<Message> {
      */
     @Override
     public int hashCode() {
-        return messages.hashCode();
+        return matches.hashCode();
     }
 
     /**
@@ -110,17 +161,310 @@ public class FilteredMessageListModel extends ObservableListBase<Message> {
     }
 
     /**
-     * Refreshes the current filter by setting the predicate of the underlying filtered list. The
-     * predicate is set to a lambda expression that determines whether a message is applicable to
-     * the specified filter or not. The operation is executed asynchronously on the JavaFX
-     * application thread using {@link javafx.application.Platform#runLater(Runnable)}. This is to
-     * ensure that the update to the list is done on the JavaFX thread, which is required for
-     * thread-safety reasons.
+     * Called when the source list changes. Messages appended to the end of the source list are
+     * tested against the active filter and appended to the matches. Messages inserted at the start
+     * of the source list are tested and inserted at the start of the matches, and messages removed
+     * from the start of the source list are removed from the matches. Any other change causes the
+     * whole source list to be filtered again in the background.
+     *
+     * @param change the change of the source list
+     */
+    private synchronized void onSourceChange(Change<? extends Message> change) {
+        boolean prefixChanged = false;
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                refilterSource();
+                return;
+            } else if (!isAppend(change)) {
+                if (change.getFrom() != 0) {
+                    refilterSource();
+                    return;
+                }
+                prefixChanged = true;
+            }
+        }
+
+        if (prefixChanged) {
+            sourceVersion++;
+        }
+
+        change.reset();
+        beginChange();
+        while (change.next()) {
+            if (isAppend(change)) {
+                SnapshotList<Message> appendedMatches = filter(change.getAddedSubList(),
+                    activeQuery);
+                if (!appendedMatches.isEmpty()) {
+                    int from = matches.size();
+                    matches.addAll(appendedMatches);
+                    nextAdd(from, matches.size());
+                }
+            } else {
+                removeLeadingMatches(change.getRemoved());
+                SnapshotList<Message> insertedMatches = filter(change.getAddedSubList(),
+                    activeQuery);
+                if (!insertedMatches.isEmpty()) {
+                    matches.addAll(0, insertedMatches);
+                    nextAdd(0, insertedMatches.size());
+                }
+            }
+        }
+        endChange();
+    }
+
+    /**
+     * Determines whether the given change only appended messages to the end of the source list.
+     *
+     * @param change the change of the source list
+     * @return true if messages were only appended, false otherwise
+     */
+    private boolean isAppend(Change<? extends Message> change) {
+        return change.wasAdded() && !change.wasRemoved() && change.getTo() == source.size();
+    }
+
+    /**
+     * Removes the matches which are part of the given messages removed from the start of the
+     * source list. Since the matches preserve the order of the source list, these matches form a
+     * prefix of the matches.
+     *
+     * @param removed the messages removed from the start of the source list
+     */
+    private void removeLeadingMatches(List<? extends Message> removed) {
+        int count = 0;
+        for (Message message : removed) {
+            if (count < matches.size() && matches.get(count) == message) {
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            nextRemove(0, matches.snapshot().subList(0, count));
+            matches.removeFirst(count);
+        }
+    }
+
+    /**
+     * Filters the whole source list again after a change which can not be applied incrementally.
+     * Running filter jobs are invalidated.
+     */
+    private void refilterSource() {
+        sourceVersion++;
+        if (source.isEmpty()) {
+            publishMatches(new SnapshotList<>());
+        } else {
+            startFilterJob(requestedFilter, true);
+        }
+    }
+
+    /**
+     * Refreshes the current filter. The filter job is started on the JavaFX application thread
+     * using {@link Platform#runLater(Runnable)}, since taking the snapshot of the messages requires
+     * a consistent view of the lists.
      *
      * @param filter the new filter to apply to the list
      */
     private void refreshFilter(MessageFilter filter) {
-        runLater(() -> messages.setPredicate(m -> m.isFilterApplicable(filter)));
+        applicationThread.execute(() -> {
+            synchronized (this) {
+                requestedFilter = filter;
+                startFilterJob(filter, false);
+            }
+        });
+    }
+
+    /**
+     * Starts a background job applying the given filter and cancels the previous job. If the
+     * filter narrows the active filter, only the current matches are tested again. Otherwise, the
+     * candidates are looked up in the trigram index if possible. If the filter can not be looked
+     * up and it widens the active filter, the current matches are kept and only the remaining
+     * messages are tested. In all other cases, the whole source list is filtered. The job reads
+     * snapshots of the lists taken in constant time, up to the sizes they had when it was started.
+     *
+     * @param filter   the filter to apply
+     * @param fullScan true if the whole source list has to be filtered
+     */
+    private void startFilterJob(MessageFilter filter, boolean fullScan) {
+        if (filterJob != null) {
+            filterJob.cancel(true);
+        }
+
+        long generation = ++filterJobGeneration;
+        long version = sourceVersion;
+        List<Message> matchSnapshot = matches.snapshot();
+        List<Message> sourceSnapshot = source.snapshot();
+        int sourceSize = sourceSnapshot.size();
+        int firstSequence = source.getFirstSequence();
+        MessageQuery query = filter.compile();
+        boolean narrowing = !fullScan && query.isNarrowing(activeQuery);
+        boolean widening = !fullScan && !narrowing && activeQuery.isNarrowing(query);
+
+        filterJob = filterExecutor.submit(() -> {
+            try {
+                SnapshotList<Message> result;
+                int[] candidates = narrowing ? null : source.findCandidates(query.getPhrase());
+                if (narrowing) {
+                    result = filter(matchSnapshot, query);
+                } else if (candidates != null) {
+                    result = verify(candidates, sourceSnapshot, firstSequence, query);
+                } else if (widening) {
+                    result = widen(sourceSnapshot, matchSnapshot, query);
+                } else {
+                    result = filter(sourceSnapshot, query);
+                }
+
+                applicationThread.execute(() -> completeFilterJob(generation, version, sourceSize,
+                    filter, query, result));
+            } catch (CancellationException e) {
+                log.debug("Filter job has been superseded by a newer filter");
+            }
+        });
+    }
+
+    /**
+     * Completes a filter job on the JavaFX application thread. Results of outdated jobs are
+     * discarded. If the source list has been modified other than by appending messages while the
+     * job was running, the filter is applied again. Otherwise, the messages appended in the
+     * meantime are tested and appended to the result, which is then published.
+     *
+     * @param generation the generation of the completed job
+     * @param version    the version of the source list the job was started with
+     * @param sourceSize the size of the source list when the job was started
+     * @param filter     the filter applied by the job
+     * @param query      the compiled filter
+     * @param result     the matches computed by the job
+     */
+    private synchronized void completeFilterJob(long generation, long version, int sourceSize,
+        MessageFilter filter, MessageQuery query, SnapshotList<Message> result) {
+        if (generation != filterJobGeneration) {
+            return;
+        }
+
+        filterJob = null;
+        if (version != sourceVersion) {
+            startFilterJob(filter, true);
+            return;
+        }
+
+        result.addAll(filter(source.subList(sourceSize, source.size()), query));
+        activeQuery = query;
+        publishMatches(result);
+    }
+
+    /**
+     * Replaces the current matches with the given list and notifies the observers with a single
+     * change. If the matches did not change, no notification is sent.
+     *
+     * @param result the new matches
+     */
+    private void publishMatches(SnapshotList<Message> result) {
+        List<Message> previous = matches.snapshot();
+        if (isSameList(previous, result)) {
+            return;
+        }
+
+        matches = result;
+        beginChange();
+        if (!previous.isEmpty()) {
+            nextRemove(0, previous);
+        }
+        if (!result.isEmpty()) {
+            nextAdd(0, result.size());
+        }
+        endChange();
+    }
+
+    /**
+     * Filters the given messages with the given query. If the current thread is interrupted,
+     * e.g. because the filter job has been cancelled, a {@link CancellationException} is thrown.
+     *
+     * @param messages the messages to filter
+     * @param query    the query to apply
+     * @return the messages satisfying the query
+     */
+    private static SnapshotList<Message> filter(List<? extends Message> messages,
+        MessageQuery query) {
+        SnapshotList<Message> result = new SnapshotList<>();
+        int count = 0;
+        for (Message message : messages) {
+            checkCancellation(count++);
+            if (query.test(message)) {
+                result.add(message);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Tests the candidates found in the trigram index against the given query. Candidates which
+     * are not part of the given snapshot are ignored.
+     *
+     * @param candidates    the sorted sequence numbers of the candidates
+     * @param messages      the snapshot of the source list
+     * @param firstSequence the sequence number of the first message of the snapshot
+     * @param query         the query to apply
+     * @return the candidates satisfying the query
+     */
+    private static SnapshotList<Message> verify(int[] candidates, List<Message> messages,
+        int firstSequence, MessageQuery query) {
+        SnapshotList<Message> result = new SnapshotList<>();
+        for (int i = 0; i < candidates.length; i++) {
+            checkCancellation(i);
+            int position = candidates[i] - firstSequence;
+            if (position >= 0 && position < messages.size() && query.test(
+                messages.get(position))) {
+                result.add(messages.get(position));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Filters the given messages with a widening query. Messages that are part of the given
+     * previous matches are known to satisfy the query and are therefore not tested again.
+     *
+     * @param messages the messages to filter
+     * @param matches  the previous matches, a subsequence of the given messages
+     * @param query    the widening query
+     * @return the messages satisfying the query
+     */
+    private static SnapshotList<Message> widen(List<Message> messages, List<Message> matches,
+        MessageQuery query) {
+        SnapshotList<Message> result = new SnapshotList<>();
+        int matchIndex = 0;
+        int count = 0;
+        for (Message message : messages) {
+            checkCancellation(count++);
+            if (matchIndex < matches.size() && matches.get(matchIndex) == message) {
+                result.add(message);
+                matchIndex++;
+            } else if (query.test(message)) {
+                result.add(message);
+            }
+        }
+
+        return result;
+    }
+
+    private static void checkCancellation(int count) {
+        if (count % CANCELLATION_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static boolean isSameList(List<Message> previous, List<Message> result) {
+        if (previous.size() != result.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < previous.size(); i++) {
+            if (previous.get(i) != result.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
 }
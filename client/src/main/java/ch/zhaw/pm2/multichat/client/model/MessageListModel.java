@@ -1,11 +1,11 @@
 package ch.zhaw.pm2.multichat.client.model;
 
 import static javafx.beans.binding.Bindings.createIntegerBinding;
-import static javafx.collections.FXCollections.observableArrayList;
 
 import ch.zhaw.pm2.multichat.client.message.Message;
+import java.util.Collection;
+import java.util.List;
 import javafx.beans.binding.IntegerBinding;
-import javafx.collections.ObservableList;
 import javafx.collections.ObservableListBase;
 
 /**
@@ -13,21 +13,21 @@ import javafx.collections.ObservableListBase;
  * providing the necessary functionality to create an observable list. The class also exposes an
  * {@link IntegerBinding} that is bound to the size of the list, allowing clients to track the
  * number of messages in the list without the need to listen for changes to the list directly.
+ * All messages are kept in a {@link TrigramIndex}, which allows looking up the messages containing
+ * a given text without scanning the whole list.
+ * <p>
+ * The list may only hold a window of a longer transcript. Older messages can be prepended when
+ * they are paged in and the oldest messages can be evicted to keep the window small.
+ * <p>
+ * The messages are kept in a {@link SnapshotList}, so that a snapshot of the messages can be taken
+ * in constant time and filtered on another thread.
  */
 public class MessageListModel extends ObservableListBase<Message> {
 
-    private final ObservableList<Message> messages;
+    private final SnapshotList<Message> messages = new SnapshotList<>();
+    private final TrigramIndex index = new TrigramIndex();
     private final IntegerBinding sizeBinding = createIntegerBinding(this::size, this);
 
-    /**
-     * Creates a new instance of {@code MessageListModel} with an empty list of messages. The list
-     * is an observable list, so it can be observed for changes.
-     */
-    public MessageListModel() {
-        messages = observableArrayList();
-        messages.addListener(this::fireChange);
-    }
-
     /**
      * Adds the given message at the specified index in the list.
      *
@@ -36,7 +36,104 @@ public class MessageListModel extends ObservableListBase<Message> {
      */
     @Override
     public synchronized void add(int index, Message message) {
-        messages.add(index, message);
+        if (index == messages.size()) {
+            this.index.add(message);
+            messages.add(message);
+        } else {
+            messages.add(index, message);
+            this.index.rebuild(messages, this.index.getFirstSequence());
+        }
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    /**
+     * Appends all given messages to the end of the list. In contrast to adding the messages one by
+     * one, observers are notified with a single change.
+     *
+     * @param messages the messages to add to the list
+     * @return {@code true} if the list changed as a result of the call
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends Message> messages) {
+        if (messages.isEmpty()) {
+            return false;
+        }
+
+        int from = this.messages.size();
+        messages.forEach(index::add);
+        this.messages.addAll(messages);
+        beginChange();
+        nextAdd(from, this.messages.size());
+        endChange();
+        return true;
+    }
+
+    /**
+     * Replaces all messages of the list with the given messages. Observers are notified with a
+     * single change.
+     *
+     * @param messages the new messages of the list
+     * @return {@code true} if the list changed as a result of the call
+     */
+    @Override
+    public synchronized boolean setAll(Collection<? extends Message> messages) {
+        List<Message> removed = this.messages.snapshot();
+        index.rebuild(messages, 0);
+        this.messages.clear();
+        this.messages.addAll(messages);
+        beginChange();
+        if (!removed.isEmpty()) {
+            nextRemove(0, removed);
+        }
+        if (!this.messages.isEmpty()) {
+            nextAdd(0, this.messages.size());
+        }
+        endChange();
+        return true;
+    }
+
+    /**
+     * Inserts all given messages in front of the first message of the list, e.g. when older
+     * messages of a transcript are paged in. The index is rebuilt, so that the sequence numbers of
+     * the existing messages are retained.
+     *
+     * @param messages the older messages to insert
+     */
+    public synchronized void prependAll(Collection<? extends Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        this.messages.addAll(0, messages);
+        index.rebuild(this.messages, index.getFirstSequence() - messages.size());
+        beginChange();
+        nextAdd(0, messages.size());
+        endChange();
+    }
+
+    /**
+     * Removes the given number of messages from the start of the list.
+     *
+     * @param count the number of oldest messages to remove
+     */
+    public synchronized void evict(int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        int evicted = Math.min(count, messages.size());
+        if (evicted == 0) {
+            return;
+        }
+
+        List<Message> removed = messages.snapshot().subList(0, evicted);
+        index.evict(evicted);
+        messages.removeFirst(evicted);
+        beginChange();
+        nextRemove(0, removed);
+        endChange();
     }
 
     /**
@@ -55,7 +152,14 @@ public class MessageListModel extends ObservableListBase<Message> {
      */
     @Override
     public synchronized void clear() {
+        List<Message> removed = messages.snapshot();
+        index.clear();
         messages.clear();
+        if (!removed.isEmpty()) {
+            beginChange();
+            nextRemove(0, removed);
+            endChange();
+        }
     }
 
     /**
@@ -98,6 +202,39 @@ public class MessageListModel extends ObservableListBase<Message> {
         return messages.hashCode();
     }
 
+    /**
+     * Returns a snapshot of the messages, which is taken in constant time and does not change when
+     * the list is modified afterwards.
+     *
+     * @return an unmodifiable snapshot of the messages
+     */
+    public synchronized List<Message> snapshot() {
+        return messages.snapshot();
+    }
+
+    /**
+     * Returns the sequence number of the first message in the list. The message at index {@code i}
+     * has the sequence number {@code getFirstSequence() + i}.
+     *
+     * @return the sequence number of the first message in the list
+     */
+    public synchronized int getFirstSequence() {
+        return index.getFirstSequence();
+    }
+
+    /**
+     * Looks up the sequence numbers of all messages whose search key may contain the given lower
+     * case phrase. The candidates still have to be verified against the filter.
+     *
+     * @param phrase the lower case phrase to look up
+     * @return the sorted sequence numbers of the candidates, or {@code null} if the phrase is too
+     * short to be looked up in the index
+     * @see TrigramIndex#findCandidates(String)
+     */
+    public int[] findCandidates(String phrase) {
+        return index.findCandidates(phrase);
+    }
+
     /**
      * Returns the {@link IntegerBinding} that is bound to the size of the list.
      *
@@ -0,0 +1,220 @@
+package ch.zhaw.pm2.multichat.client.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list whose snapshots are taken in constant time. The elements are kept in an array which is
+ * never modified below the end of the list: appended elements are written behind the end and
+ * every other modification copies the elements into a new array. A snapshot only records the
+ * array and the bounds of the list, so it does not change when the list is modified afterwards.
+ * <p>
+ * Removing elements from the start of the list only moves the start. Once more than half of the
+ * array precedes the start, the remaining elements are copied into a new array, so that the
+ * removed elements can be garbage collected.
+ * <p>
+ * The list itself is not thread-safe. Its snapshots may be read by any thread they have been
+ * safely handed over to, e.g. by submitting a task to an executor.
+ *
+ * @param <E> the type of the elements
+ */
+class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] elements;
+    private int start;
+    private int end;
+
+    /**
+     * Constructs a new empty SnapshotList object.
+     */
+    SnapshotList() {
+        elements = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Constructs a new SnapshotList object containing the given elements.
+     *
+     * @param elements the initial elements of the list
+     */
+    SnapshotList(Collection<? extends E> elements) {
+        Object[] array = elements.toArray();
+        this.elements = Arrays.copyOf(array, Math.max(array.length, INITIAL_CAPACITY));
+        this.end = array.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        return (E) elements[start + index];
+    }
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+
+    /**
+     * Appends the given element. The element is written behind the end of the current array, or
+     * the elements are copied into a larger array if the current one is full.
+     *
+     * @param element the element to append
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(E element) {
+        ensureCapacity(1);
+        elements[end++] = element;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Inserts the given element at the given index. Elements which are not appended are inserted
+     * into a new array.
+     *
+     * @param index   the index to insert the element at
+     * @param element the element to insert
+     */
+    @Override
+    public void add(int index, E element) {
+        addAll(index, List.of(element));
+    }
+
+    /**
+     * Appends all given elements.
+     *
+     * @param elements the elements to append
+     * @return {@code true} if the list changed as a result of the call
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        Object[] array = elements.toArray();
+        ensureCapacity(array.length);
+        System.arraycopy(array, 0, this.elements, end, array.length);
+        end += array.length;
+        modCount++;
+        return array.length > 0;
+    }
+
+    /**
+     * Inserts all given elements at the given index. Elements which are not appended are inserted
+     * into a new array.
+     *
+     * @param index    the index to insert the elements at
+     * @param elements the elements to insert
+     * @return {@code true} if the list changed as a result of the call
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends E> elements) {
+        int size = size();
+        Objects.checkIndex(index, size + 1);
+        if (index == size) {
+            return addAll(elements);
+        }
+
+        Object[] array = elements.toArray();
+        Object[] copy = new Object[Math.max(2 * (size + array.length), INITIAL_CAPACITY)];
+        System.arraycopy(this.elements, start, copy, 0, index);
+        System.arraycopy(array, 0, copy, index, array.length);
+        System.arraycopy(this.elements, start + index, copy, index + array.length,
+            size - index);
+        this.elements = copy;
+        start = 0;
+        end = size + array.length;
+        modCount++;
+        return array.length > 0;
+    }
+
+    /**
+     * Removes the given number of elements from the start of the list.
+     *
+     * @param count the number of elements to remove
+     */
+    void removeFirst(int count) {
+        Objects.checkFromIndexSize(0, count, size());
+        start += count;
+        if (start > elements.length / 2) {
+            elements = Arrays.copyOfRange(elements, start,
+                start + Math.max(2 * size(), INITIAL_CAPACITY));
+            end -= start;
+            start = 0;
+        }
+        modCount++;
+    }
+
+    /**
+     * Removes all elements. The list continues with a new array.
+     */
+    @Override
+    public void clear() {
+        elements = new Object[INITIAL_CAPACITY];
+        start = 0;
+        end = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the current elements of the list. Later modifications of
+     * the list do not affect the snapshot.
+     *
+     * @return the snapshot of the list
+     */
+    List<E> snapshot() {
+        return new Snapshot<>(elements, start, end);
+    }
+
+    private void ensureCapacity(int count) {
+        if (end + count > elements.length) {
+            int size = size();
+            elements = Arrays.copyOfRange(elements, start,
+                start + Math.max(2 * (size + count), INITIAL_CAPACITY));
+            start = 0;
+            end = size;
+        }
+    }
+
+    /**
+     * An unmodifiable view of a range of an array, which is not modified within this range.
+     *
+     * @param <E> the type of the elements
+     */
+    private static class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+
+        private final Object[] elements;
+        private final int start;
+        private final int end;
+
+        private Snapshot(Object[] elements, int start, int end) {
+            this.elements = elements;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            Objects.checkIndex(index, size());
+            return (E) elements[start + index];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size());
+            return new Snapshot<>(elements, start + fromIndex, start + toIndex);
+        }
+
+    }
+
+}
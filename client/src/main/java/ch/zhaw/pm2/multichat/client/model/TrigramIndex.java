@@ -0,0 +1,212 @@
+package ch.zhaw.pm2.multichat.client.model;
+
+import ch.zhaw.pm2.multichat.client.message.Message;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class representing an incrementally maintained trigram index over the search keys of messages.
+ * Each indexed message is identified by a sequence number which increases with every added
+ * message. For every trigram, the index keeps the sorted sequence numbers of the messages whose
+ * search key contains the trigram. Evicting the oldest messages only moves the lower bound of the
+ * valid sequence numbers, the posting lists are compacted once enough messages have been evicted.
+ *
+ * <p>A lookup intersects the posting lists of all trigrams of the given phrase, starting with the
+ * shortest one. The result is a set of candidates which still have to be verified, since the
+ * trigrams of the phrase may appear at different positions of a message.</p>
+ */
+public class TrigramIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private int firstSequence;
+    private int nextSequence;
+    private int evictedSinceCompaction;
+
+    /**
+     * Returns the sequence number of the oldest indexed message.
+     *
+     * @return the sequence number of the oldest indexed message
+     */
+    public synchronized int getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * Adds the given message to the index and assigns it the next sequence number.
+     *
+     * @param message the message to add
+     */
+    public synchronized void add(Message message) {
+        int sequence = nextSequence++;
+        String searchKey = message.getSearchKey();
+        for (int i = 0; i <= searchKey.length() - GRAM_LENGTH; i++) {
+            postings.computeIfAbsent(gram(searchKey, i), key -> new PostingList()).add(sequence);
+        }
+    }
+
+    /**
+     * Removes the given number of oldest messages from the index.
+     *
+     * @param count the number of messages to evict
+     */
+    public synchronized void evict(int count) {
+        firstSequence = Math.min(firstSequence + count, nextSequence);
+        evictedSinceCompaction += count;
+        if (evictedSinceCompaction > nextSequence - firstSequence) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes all messages from the index.
+     */
+    public synchronized void clear() {
+        postings.clear();
+        firstSequence = 0;
+        nextSequence = 0;
+        evictedSinceCompaction = 0;
+    }
+
+    /**
+     * Clears the index and adds all given messages, starting with the given sequence number.
+     *
+     * @param messages      the messages to index
+     * @param firstSequence the sequence number of the first message
+     */
+    public synchronized void rebuild(Collection<? extends Message> messages, int firstSequence) {
+        clear();
+        this.firstSequence = firstSequence;
+        this.nextSequence = firstSequence;
+        messages.forEach(this::add);
+    }
+
+    /**
+     * Looks up the sequence numbers of all messages whose search key may contain the given lower
+     * case phrase. A phrase shorter than a trigram can not be looked up.
+     *
+     * @param phrase the lower case phrase to look up
+     * @return the sorted sequence numbers of the candidates, or {@code null} if the phrase is too
+     * short to be looked up in the index
+     */
+    public synchronized int[] findCandidates(String phrase) {
+        List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i <= phrase.length() - GRAM_LENGTH; i++) {
+            PostingList list = postings.get(gram(phrase, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+
+        if (lists.isEmpty()) {
+            return null;
+        }
+
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int[] candidates = lists.get(0).toArray(firstSequence);
+        int size = candidates.length;
+        for (int i = 1; i < lists.size() && size > 0; i++) {
+            size = lists.get(i).retainAll(candidates, size);
+        }
+
+        return Arrays.copyOf(candidates, size);
+    }
+
+    private void compact() {
+        Iterator<PostingList> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            PostingList list = iterator.next();
+            list.removeBelow(firstSequence);
+            if (list.size() == 0) {
+                iterator.remove();
+            }
+        }
+
+        evictedSinceCompaction = 0;
+    }
+
+    private static long gram(String value, int index) {
+        return ((long) value.charAt(index) << 32) | ((long) value.charAt(index + 1) << 16)
+            | value.charAt(index + 2);
+    }
+
+    /**
+     * A growable, sorted array of sequence numbers.
+     */
+    private static class PostingList {
+
+        private int[] sequences = new int[4];
+        private int size;
+
+        private int size() {
+            return size;
+        }
+
+        private void add(int sequence) {
+            if (size > 0 && sequences[size - 1] == sequence) {
+                return;
+            }
+            if (size == sequences.length) {
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            sequences[size++] = sequence;
+        }
+
+        private void removeBelow(int sequence) {
+            int from = lowerBound(sequence, 0);
+            System.arraycopy(sequences, from, sequences, 0, size - from);
+            size -= from;
+        }
+
+        private int[] toArray(int minimumSequence) {
+            int from = lowerBound(minimumSequence, 0);
+            return Arrays.copyOfRange(sequences, from, size);
+        }
+
+        /**
+         * Keeps only the first {@code length} values of the given sorted array which are also
+         * part of this list.
+         *
+         * @param candidates the sorted candidates, modified in place
+         * @param length     the number of valid candidates
+         * @return the number of remaining candidates
+         */
+        private int retainAll(int[] candidates, int length) {
+            int retained = 0;
+            int position = 0;
+            for (int i = 0; i < length && position < size; i++) {
+                position = lowerBound(candidates[i], position);
+                if (position < size && sequences[position] == candidates[i]) {
+                    candidates[retained++] = candidates[i];
+                }
+            }
+
+            return retained;
+        }
+
+        private int lowerBound(int sequence, int from) {
+            int low = from;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sequences[middle] < sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+    }
+
+}
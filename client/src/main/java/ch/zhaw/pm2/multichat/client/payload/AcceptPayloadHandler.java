@@ -0,0 +1,38 @@
+package ch.zhaw.pm2.multichat.client.payload;
+
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+
+/**
+ * A class representing a PayloadHandler for handling the acceptance of a file offered by this
+ * user. The associated ChatWindowModel starts sending the file.
+ */
+public class AcceptPayloadHandler implements PayloadHandler<Payload> {
+
+    private final ChatWindowModel model;
+
+    /**
+     * Constructs a new AcceptPayloadHandler with the given ChatWindowModel.
+     *
+     * @param model The ChatWindowModel associated with this AcceptPayloadHandler
+     */
+    public AcceptPayloadHandler(ChatWindowModel model) {
+        this.model = requireNonNull(model);
+    }
+
+    /**
+     * Handles the incoming accept payload by starting the upload of the accepted file.
+     *
+     * @param payload    The incoming accept payload
+     * @param connection The connection associated with this payload
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection) {
+        model.enqueueUpdate(() -> model.startUpload(payload.content()));
+    }
+
+}
@@ -3,11 +3,11 @@ package ch.zhaw.pm2.multichat.client.payload;
 import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createInfoMessage;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_CONNECT;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_DISCONNECT;
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONFIRM_RESUME;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.DISCONNECTED;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static javafx.application.Platform.runLater;
 
 import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
@@ -18,7 +18,9 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Class representing a handler that handles confirm payloads sent by the server. The confirm
  * payload is used to confirm connection and disconnection requests. This handler updates the chat
- * window model accordingly based on the state of the connection.
+ * window model accordingly based on the state of the connection. Once a connection is confirmed,
+ * the transcript of the user is opened. Once a resumed session is confirmed, the payloads kept back
+ * during the resume are sent.
  */
 @Slf4j
 public class ConfirmPayloadHandler implements PayloadHandler<Payload> {
@@ -43,10 +45,15 @@ public class ConfirmPayloadHandler implements PayloadHandler<Payload> {
      */
     @Override
     public void handle(Payload payload, Connection<Payload> connection) {
-        runLater(() -> {
+        model.enqueueUpdate(() -> {
             if (connection.isState(CONFIRM_CONNECT)) {
                 connection.setUsername(payload.receiver());
                 model.setUsername(connection.getUsername());
+                model.openTranscript();
+                model.addMessage(createInfoMessage(payload.content()));
+                model.setState(CONNECTED);
+            } else if (connection.isState(CONFIRM_RESUME)) {
+                model.completeResume();
                 model.addMessage(createInfoMessage(payload.content()));
                 model.setState(CONNECTED);
             } else if (connection.isState(CONFIRM_DISCONNECT)) {
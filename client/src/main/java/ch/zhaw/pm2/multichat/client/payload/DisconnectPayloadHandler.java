@@ -3,7 +3,6 @@ package ch.zhaw.pm2.multichat.client.payload;
 import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createInfoMessage;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.DISCONNECTED;
 import static java.util.Objects.requireNonNull;
-import static javafx.application.Platform.runLater;
 
 import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
@@ -36,7 +35,7 @@ public class DisconnectPayloadHandler implements PayloadHandler<Payload> {
      */
     @Override
     public void handle(Payload payload, Connection<Payload> connection) {
-        runLater(() -> {
+        model.enqueueUpdate(() -> {
             if (connection.isState(DISCONNECTED)) {
                 log.info("Connection is already disconnected");
                 return;
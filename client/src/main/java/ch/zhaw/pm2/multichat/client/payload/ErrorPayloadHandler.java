@@ -5,7 +5,6 @@ import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONF
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.DISCONNECTED;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static javafx.application.Platform.runLater;
 
 import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
@@ -47,7 +46,7 @@ public class ErrorPayloadHandler implements PayloadHandler<Payload> {
         }
 
         log.error(format("Received error from server: %s", payload.content()));
-        runLater(() -> {
+        model.enqueueUpdate(() -> {
             model.addMessage(createErrorMessage(payload.content()));
             if (connection.isState(CONFIRM_CONNECT)) {
                 model.setState(DISCONNECTED);
@@ -4,7 +4,6 @@ import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createConversa
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static javafx.application.Platform.runLater;
 
 import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
@@ -39,7 +38,7 @@ public class MessagePayloadHandler implements PayloadHandler<Payload> {
      */
     @Override
     public void handle(Payload payload, Connection<Payload> connection) {
-        runLater(() -> {
+        model.enqueueUpdate(() -> {
             if (!connection.isState(CONNECTED)) {
                 log.info(
                     format("Illegal state %s for content: %s", connection.getState(),
@@ -0,0 +1,49 @@
+package ch.zhaw.pm2.multichat.client.payload;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.client.model.ChatWindowModel;
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.FileOffer;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a PayloadHandler for handling the offers of files by other users. The offer
+ * is shown in the associated ChatWindowModel, so the user can accept it.
+ */
+@Slf4j
+public class OfferPayloadHandler implements PayloadHandler<Payload> {
+
+    private final ChatWindowModel model;
+
+    /**
+     * Constructs a new OfferPayloadHandler with the given ChatWindowModel.
+     *
+     * @param model The ChatWindowModel associated with this OfferPayloadHandler
+     */
+    public OfferPayloadHandler(ChatWindowModel model) {
+        this.model = requireNonNull(model);
+    }
+
+    /**
+     * Handles the incoming offer payload by passing the offered file to the associated
+     * ChatWindowModel. Offers with an invalid content are logged and ignored.
+     *
+     * @param payload    The incoming offer payload
+     * @param connection The connection associated with this payload
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection) {
+        try {
+            FileOffer offer = FileOffer.fromContent(payload.content());
+            model.enqueueUpdate(() -> model.receiveOffer(payload.sender(), offer));
+        } catch (ChatProtocolException e) {
+            log.error(format("Ignoring offer of %s: %s", payload.sender(), e.getMessage()));
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package ch.zhaw.pm2.multichat.client.payload;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+
+/**
+ * A class representing a PayloadHandler for handling session payloads received from the server.
+ * The session token is kept by the connection, so its session can be resumed if it is lost.
+ */
+public class SessionPayloadHandler implements PayloadHandler<Payload> {
+
+    /**
+     * Handles the given session payload by storing the session token in the connection.
+     *
+     * @param payload    The payload received from the server
+     * @param connection The connection handling the payload
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection) {
+        connection.setSessionToken(payload.content());
+    }
+
+}
@@ -0,0 +1,281 @@
+package ch.zhaw.pm2.multichat.client.transcript;
+
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.checkFromToIndex;
+
+import ch.zhaw.pm2.multichat.client.message.Message;
+import ch.zhaw.pm2.multichat.client.message.MessageType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A class representing the local transcript of the messages of one user on one server. The
+ * transcript consists of two append-only, memory-mapped files: a data file containing the encoded
+ * messages and an index file containing the number of messages followed by the offset of each
+ * message in the data file. The index allows reading any range of messages without decoding the
+ * messages before it, so that opening a transcript only has to read its tail.
+ * <p>
+ * A message is written to the data file before its offset is added to the index, and the number
+ * of messages is updated last. A transcript which has not been closed properly therefore still
+ * contains all messages that have been appended completely.
+ */
+public class TranscriptStore implements Closeable {
+
+    /**
+     * The directory in which the transcripts are stored by default.
+     */
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"),
+        ".multichat", "transcripts");
+
+    private static final int INITIAL_DATA_CAPACITY = 1 << 20;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    private static final int HEADER_SIZE = Long.BYTES;
+    private static final int ENTRY_SIZE = Long.BYTES;
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private MappedByteBuffer data;
+    private MappedByteBuffer index;
+    private int size;
+    private int dataEnd;
+
+    /**
+     * Constructs a new TranscriptStore object by mapping the given data and index files. Missing
+     * files are created.
+     *
+     * @param dataFile  the file containing the encoded messages
+     * @param indexFile the file containing the offsets of the messages
+     * @throws IOException if the files can not be mapped or are corrupted
+     */
+    private TranscriptStore(Path dataFile, Path indexFile) throws IOException {
+        dataChannel = FileChannel.open(dataFile, CREATE, READ, WRITE);
+        try {
+            indexChannel = FileChannel.open(indexFile, CREATE, READ, WRITE);
+        } catch (IOException e) {
+            dataChannel.close();
+            throw e;
+        }
+
+        try {
+            data = map(dataChannel, Math.max(INITIAL_DATA_CAPACITY, dataChannel.size()));
+            index = map(indexChannel, Math.max(INITIAL_INDEX_CAPACITY, indexChannel.size()));
+            size = readSize();
+            dataEnd = size == 0 ? 0 : getOffset(size - 1) + Integer.BYTES + data.getInt(
+                getOffset(size - 1));
+            if (dataEnd < 0 || dataEnd > data.capacity()) {
+                throw new IOException(format("Transcript %s is corrupted", dataFile));
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            dataChannel.close();
+            indexChannel.close();
+            throw e instanceof IOException ioException ? ioException
+                : new IOException(format("Transcript %s is corrupted", dataFile), e);
+        }
+    }
+
+    /**
+     * Opens the transcript of the given user on the given server. The transcripts of each server
+     * are stored in a separate subdirectory of the given directory.
+     *
+     * @param directory the directory containing the transcripts
+     * @param host      the host of the server
+     * @param port      the port of the server
+     * @param username  the name of the user
+     * @return the opened transcript
+     * @throws IOException if the transcript can not be opened
+     */
+    public static TranscriptStore open(Path directory, String host, int port, String username)
+        throws IOException {
+        Path serverDirectory = directory.resolve(toFileName(format("%s_%d", host, port)));
+        Files.createDirectories(serverDirectory);
+
+        String name = toFileName(username);
+        return new TranscriptStore(serverDirectory.resolve(name + ".dat"),
+            serverDirectory.resolve(name + ".idx"));
+    }
+
+    /**
+     * Returns the number of messages in the transcript.
+     *
+     * @return the number of messages in the transcript
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends the given message to the end of the transcript.
+     *
+     * @param message the message to append
+     * @throws IOException if the transcript can not be extended
+     */
+    public synchronized void append(Message message) throws IOException {
+        byte[] sender = message.sender().getBytes(UTF_8);
+        byte[] receiver = message.receiver().getBytes(UTF_8);
+        byte[] content = message.content().getBytes(UTF_8);
+        int length = 1 + 3 * Integer.BYTES + sender.length + receiver.length + content.length;
+        ensureCapacity((long) dataEnd + Integer.BYTES + length,
+            HEADER_SIZE + (long) (size + 1) * ENTRY_SIZE);
+
+        int position = dataEnd;
+        data.putInt(position, length);
+        data.put(position + Integer.BYTES, (byte) message.type().ordinal());
+        position = putBytes(position + Integer.BYTES + 1, sender);
+        position = putBytes(position, receiver);
+        position = putBytes(position, content);
+
+        index.putLong(HEADER_SIZE + size * ENTRY_SIZE, dataEnd);
+        dataEnd = position;
+        index.putLong(0, ++size);
+    }
+
+    /**
+     * Appends all given messages to the end of the transcript.
+     *
+     * @param messages the messages to append
+     * @throws IOException if the transcript can not be extended
+     */
+    public synchronized void appendAll(Collection<? extends Message> messages) throws IOException {
+        for (Message message : messages) {
+            append(message);
+        }
+    }
+
+    /**
+     * Reads the messages in the given range of the transcript. Only the requested messages are
+     * decoded.
+     *
+     * @param from the index of the first message to read, inclusive
+     * @param to   the index of the last message to read, exclusive
+     * @return the messages in the given range
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public synchronized List<Message> read(int from, int to) {
+        checkFromToIndex(from, to, size);
+        List<Message> messages = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            messages.add(decode(getOffset(i)));
+        }
+
+        return messages;
+    }
+
+    /**
+     * Writes all changes of the mapped files to the storage device and closes the files.
+     *
+     * @throws IOException if the files can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!dataChannel.isOpen()) {
+            return;
+        }
+
+        data.force();
+        index.force();
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    private Message decode(int offset) {
+        int position = offset + Integer.BYTES;
+        MessageType type = MESSAGE_TYPES[data.get(position++)];
+        String sender = getString(position);
+        position += Integer.BYTES + data.getInt(position);
+        String receiver = getString(position);
+        position += Integer.BYTES + data.getInt(position);
+        String content = getString(position);
+
+        return new Message(type, sender, receiver, content);
+    }
+
+    private String getString(int position) {
+        byte[] bytes = new byte[data.getInt(position)];
+        data.get(position + Integer.BYTES, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private int putBytes(int position, byte[] bytes) {
+        data.putInt(position, bytes.length);
+        data.put(position + Integer.BYTES, bytes);
+        return position + Integer.BYTES + bytes.length;
+    }
+
+    private int getOffset(int messageIndex) {
+        return (int) index.getLong(HEADER_SIZE + messageIndex * ENTRY_SIZE);
+    }
+
+    private int readSize() throws IOException {
+        long count = index.getLong(0);
+        if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE > index.capacity()) {
+            throw new IOException(format("Transcript index contains invalid size %d", count));
+        }
+
+        return (int) count;
+    }
+
+    /**
+     * Remaps the data and index files if the given number of bytes do not fit into the current
+     * mappings. The mapped size is at least doubled to keep the number of remappings low.
+     *
+     * @param dataSize  the required size of the data file
+     * @param indexSize the required size of the index file
+     * @throws IOException if the files can not be remapped or would exceed the maximum size
+     */
+    private void ensureCapacity(long dataSize, long indexSize) throws IOException {
+        if (dataSize > data.capacity()) {
+            data = map(dataChannel, grow(data.capacity(), dataSize));
+        }
+        if (indexSize > index.capacity()) {
+            index = map(indexChannel, grow(index.capacity(), indexSize));
+        }
+    }
+
+    private static long grow(int capacity, long requiredSize) {
+        return Math.max(Math.min(2L * capacity, Integer.MAX_VALUE), requiredSize);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Transcript exceeds the maximum size");
+        }
+
+        return channel.map(READ_WRITE, 0, size);
+    }
+
+    /**
+     * Converts the given name into a file name. Since names are compared case-insensitively, the
+     * name is converted to lower case. Every byte of its UTF-8 encoding which is not a lower case
+     * letter, a digit, a dot, a hyphen or an underscore is percent-encoded, so that distinct names
+     * never share a file.
+     *
+     * @param name the name to convert
+     * @return the file name for the given name
+     */
+    static String toFileName(String name) {
+        StringBuilder fileName = new StringBuilder();
+        for (byte b : name.toLowerCase().getBytes(UTF_8)) {
+            if (b >= 'a' && b <= 'z' || b >= '0' && b <= '9' || b == '.' || b == '-' || b == '_') {
+                fileName.append((char) b);
+            } else {
+                fileName.append(format("%%%02X", b & 0xFF));
+            }
+        }
+
+        return fileName.toString();
+    }
+
+}
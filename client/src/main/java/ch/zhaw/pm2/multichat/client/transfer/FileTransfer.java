@@ -0,0 +1,113 @@
+package ch.zhaw.pm2.multichat.client.transfer;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createTransferPayload;
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A class representing the data connections of file transfers. A file is not sent as payloads on
+ * the chat connection but on a separate data connection to the server, which starts with a single
+ * transfer payload followed by the raw data of the file. The server relays the data from the data
+ * connection of the sender to the one of the receiver.
+ * <p>
+ * The data is moved between the file and the socket with {@link FileChannel#transferTo} and
+ * {@link FileChannel#transferFrom}, so the operating system can copy it without passing it through
+ * the heap.
+ */
+public class FileTransfer {
+
+    private FileTransfer() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Sends the given file on a new data connection to the given server. Blocks until the whole
+     * file has been sent.
+     *
+     * @param host       the host of the server
+     * @param port       the port of the server
+     * @param username   the name of the user sending the file
+     * @param transferId the id of the transfer
+     * @param file       the file to send
+     * @throws IOException if the file can not be read or the data connection fails
+     */
+    public static void upload(String host, int port, String username, String transferId,
+        Path file) throws IOException {
+        try (SocketChannel channel = openDataConnection(host, port, username, transferId);
+            FileChannel fileChannel = FileChannel.open(file, READ)) {
+            long size = fileChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += fileChannel.transferTo(position, size - position, channel);
+            }
+            channel.shutdownOutput();
+        }
+    }
+
+    /**
+     * Receives a file of the given size on a new data connection to the given server and stores it
+     * in the given target file, which must not exist yet. Blocks until the whole file has been
+     * received. The target file is created before the data connection is opened, and if the
+     * transfer fails afterwards, the incomplete target file is deleted. An existing file is never
+     * touched.
+     *
+     * @param host       the host of the server
+     * @param port       the port of the server
+     * @param username   the name of the user receiving the file
+     * @param transferId the id of the transfer
+     * @param target     the file to store the received data in
+     * @param size       the size of the file in bytes
+     * @throws FileAlreadyExistsException if the target file already exists
+     * @throws IOException                if the file can not be written or the data connection
+     *                                    fails or ends before the whole file has been received
+     */
+    public static void download(String host, int port, String username, String transferId,
+        Path target, long size) throws IOException {
+        FileChannel fileChannel = FileChannel.open(target, CREATE_NEW, WRITE);
+        try (fileChannel;
+            SocketChannel channel = openDataConnection(host, port, username, transferId)) {
+            long position = 0;
+            while (position < size) {
+                long received = fileChannel.transferFrom(channel, position, size - position);
+                if (received == 0) {
+                    throw new EOFException(
+                        format("Transfer ended after %d of %d bytes", position, size));
+                }
+                position += received;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    private static SocketChannel openDataConnection(String host, int port, String username,
+        String transferId) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        try {
+            ByteBuffer frame = new PayloadCodec().encodeFrame(
+                createTransferPayload(username, transferId));
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+}
@@ -1,44 +1,60 @@
 package ch.zhaw.pm2.multichat.client.utils;
 
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
 /**
- * A class representing wrapper for a {@link Consumer} that imposes a minimum delay between
- * invocations This ensures that the consumer is not called too frequently.
+ * A class representing wrapper for a {@link Consumer} that debounces its invocations. The wrapped
+ * consumer is only called once no further input has been accepted for the given timeout, and it is
+ * always called with the latest input (trailing edge). This ensures that the consumer is not called
+ * too frequently, without losing the final update.
+ *
+ * <p>The wrapped consumer is invoked on a background thread.</p>
  *
  * @param <T> the type of the input to the consumer
  */
 public class ConsumerTimeout<T> implements Consumer<T> {
 
+    private static final ScheduledExecutorService SCHEDULER = newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "consumer-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+
     private final Consumer<T> consumer;
     private final long timeout;
-    private long lastCall;
+    private ScheduledFuture<?> pendingCall;
 
     /**
      * Constructs a new {@code ConsumerTimeout} object.
      *
      * @param consumer the consumer to be wrapped
-     * @param timeout  the minimum time between invocations, in milliseconds
+     * @param timeout  the time without further input after which the consumer is invoked, in
+     *                 milliseconds
      */
     public ConsumerTimeout(Consumer<T> consumer, long timeout) {
         this.consumer = consumer;
         this.timeout = timeout;
-        this.lastCall = System.currentTimeMillis();
     }
 
     /**
-     * Accepts the input argument, invoking the wrapped consumer only if the minimum time between
-     * invocations has elapsed since the last call.
+     * Accepts the input argument. A pending invocation with an older input is cancelled and the
+     * wrapped consumer is scheduled to be invoked with the given input after the timeout.
      *
      * @param t the input argument
      */
     @Override
-    public void accept(T t) {
-        long now = System.currentTimeMillis();
-        if (now - lastCall > timeout) {
-            consumer.accept(t);
-            lastCall = now;
+    public synchronized void accept(T t) {
+        if (pendingCall != null) {
+            pendingCall.cancel(false);
         }
+
+        pendingCall = SCHEDULER.schedule(() -> consumer.accept(t), timeout, MILLISECONDS);
     }
 
 }
@@ -0,0 +1,93 @@
+package ch.zhaw.pm2.multichat.client.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+
+/**
+ * A class representing a queue of UI updates that are applied in bulk on the JavaFX application
+ * thread. Updates can be submitted from any thread without locking and are executed in submission
+ * order. Only the first update submitted to an empty queue schedules a drain with
+ * {@link Platform#runLater(Runnable)}, so all updates submitted until the drain runs are executed
+ * together. After they have been executed, the configured pulse callback is invoked once, which
+ * allows the caller to apply the collected changes in bulk. Nothing is scheduled while no updates
+ * arrive.
+ */
+public class PulseUpdateQueue implements Executor {
+
+    private final Queue<Runnable> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable onPulse;
+    private final Executor applicationThread;
+
+    /**
+     * Constructs a new {@code PulseUpdateQueue} object.
+     *
+     * @param onPulse the callback invoked on the JavaFX application thread after the updates of a
+     *                drain have been executed
+     */
+    public PulseUpdateQueue(Runnable onPulse) {
+        this(onPulse, Platform::runLater);
+    }
+
+    /**
+     * Constructs a new {@code PulseUpdateQueue} object draining the updates on the given executor.
+     *
+     * @param onPulse           the callback invoked after the updates of a drain have been executed
+     * @param applicationThread the executor running the drains
+     */
+    PulseUpdateQueue(Runnable onPulse, Executor applicationThread) {
+        this.onPulse = requireNonNull(onPulse);
+        this.applicationThread = requireNonNull(applicationThread);
+    }
+
+    /**
+     * Enqueues the given update to be executed on the JavaFX application thread, together with the
+     * other updates submitted until the next drain.
+     *
+     * @param update the update to execute
+     */
+    @Override
+    public void execute(Runnable update) {
+        updates.add(requireNonNull(update));
+        scheduleDrain();
+    }
+
+    /**
+     * Makes sure the pulse callback is invoked by a drain, even if no update is submitted. A drain
+     * running at the moment invokes it after its updates. Must be called by the JavaFX application
+     * thread.
+     */
+    public void requestPulse() {
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            applicationThread.execute(this::drain);
+        }
+    }
+
+    /**
+     * Executes all queued updates and invokes the pulse callback. The drain is only marked as done
+     * afterwards, so updates submitted while it runs are either executed by it or schedule the
+     * next drain.
+     */
+    private void drain() {
+        Runnable update;
+        while ((update = updates.poll()) != null) {
+            update.run();
+        }
+
+        onPulse.run();
+        drainScheduled.set(false);
+        if (!updates.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+}
@@ -4,7 +4,6 @@ import static java.util.Objects.requireNonNull;
 
 import ch.zhaw.pm2.multichat.client.message.Message;
 import java.util.List;
-import java.util.stream.Collectors;
 import javafx.collections.ListChangeListener.Change;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TextArea;
@@ -12,12 +11,16 @@ import javafx.scene.layout.BorderPane;
 
 /**
  * A class representing a MessageListView used for displaying a list of messages in the JavaFX chat
- * message application.
+ * message application. Messages added to or removed from the start or the end of the list only
+ * update the affected text, any other change renders the whole list again.
  */
 public class MessageListView extends BorderPane {
 
+    private static final char LINE_SEPARATOR = '\n';
+
     private final ObservableList<Message> messageList;
     private TextArea textArea;
+    private Runnable onScrolledToTop;
 
     /**
      * Constructs a new instance of {@code MessageListView} with the specified
@@ -38,35 +41,83 @@ public class MessageListView extends BorderPane {
         textArea.setWrapText(true);
         setCenter(textArea);
         textArea.focusTraversableProperty().bind(focusTraversableProperty());
+        textArea.scrollTopProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue.doubleValue() <= 0 && oldValue.doubleValue() > 0
+                && onScrolledToTop != null) {
+                onScrolledToTop.run();
+            }
+        });
+    }
+
+    /**
+     * Sets the handler which is called when the user scrolls to the top of the messages, e.g. to
+     * load older messages.
+     *
+     * @param onScrolledToTop the handler to call, or {@code null} to remove the handler
+     */
+    public void setOnScrolledToTop(Runnable onScrolledToTop) {
+        this.onScrolledToTop = onScrolledToTop;
     }
 
     private void initializeMessageList() {
         messageList.addListener(this::refreshView);
-        textArea.clear();
-        refreshMessageList(messageList);
+        renderMessageList();
     }
 
     private void refreshView(Change<? extends Message> change) {
-        boolean entireListRefreshed = false;
-        while (change.next() && !entireListRefreshed) {
-            if (change.wasUpdated() || change.wasRemoved() || change.wasReplaced()
-                || change.wasPermutated()) {
-                textArea.clear();
-                entireListRefreshed = true;
+        while (change.next()) {
+            if (change.wasUpdated() || change.wasPermutated()) {
+                renderMessageList();
+                return;
             }
 
-            refreshMessageList(change.getAddedSubList());
+            if (change.getFrom() == 0) {
+                textArea.deleteText(0, getTextLength(change.getRemoved()));
+                textArea.insertText(0, toText(change.getAddedSubList()));
+            } else if (!change.wasRemoved() && change.getTo() == messageList.size()) {
+                textArea.appendText(toText(change.getAddedSubList()));
+            } else {
+                renderMessageList();
+                return;
+            }
         }
     }
 
-    private void refreshMessageList(List<? extends Message> list) {
-        textArea.appendText(
-            list.stream().map(Message::getMessage)
-                .collect(Collectors.joining(System.lineSeparator())));
+    private void renderMessageList() {
+        textArea.clear();
+        textArea.appendText(toText(messageList));
+    }
+
+    private static String toText(List<? extends Message> list) {
+        StringBuilder text = new StringBuilder();
+        for (Message message : list) {
+            text.append(message.getMessage()).append(LINE_SEPARATOR);
+        }
+
+        return text.toString();
+    }
 
-        if (!list.isEmpty()) {
-            textArea.appendText(System.lineSeparator());
+    /**
+     * Returns the length of the text displayed for the given messages. The text area drops all
+     * control characters except line feeds and tabs, so these are not counted.
+     *
+     * @param list the messages to measure
+     * @return the number of characters displayed for the messages
+     */
+    private static int getTextLength(List<? extends Message> list) {
+        int length = 0;
+        for (Message message : list) {
+            String text = message.getMessage();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n' || c == '\t' || (c >= ' ' && c != '\u007f')) {
+                    length++;
+                }
+            }
+            length++;
         }
+
+        return length;
     }
 
 }
@@ -0,0 +1,88 @@
+package ch.zhaw.pm2.multichat.client.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the matching of messages by {@link MessageQuery} and the detection of narrowing queries.
+ */
+class MessageQueryTest {
+
+    private static final Set<MessageCategory> ALL = Set.of(MessageCategory.values());
+
+    private final Message greeting = new Message(MessageType.CONVERSATION, "Alice", "Bob",
+        "Hello World");
+
+    @Test
+    void matchesWholePhraseCaseInsensitively() {
+        assertTrue(query("hello world").test(greeting));
+        assertTrue(query("O W").test(greeting));
+        assertFalse(query("world hello").test(greeting));
+        assertFalse(query("hello  world").test(greeting));
+    }
+
+    @Test
+    void keepsWhitespaceOfPhrase() {
+        assertEquals(" hello ", query(" Hello ").getPhrase());
+        assertTrue(query("] hello").test(greeting));
+        assertFalse(query("world ").test(greeting));
+    }
+
+    @Test
+    void emptyContentMatchesEveryMessage() {
+        assertTrue(query("").test(greeting));
+    }
+
+    @Test
+    void rejectsMessageOfOtherCategory() {
+        assertFalse(new MessageQuery(Set.of(MessageCategory.LOG), "hello").test(greeting));
+    }
+
+    @Test
+    void matchesScopedTermsAgainstSenderAndReceiver() {
+        assertTrue(query("from:ali to:BO").test(greeting));
+        assertFalse(query("from:bob").test(greeting));
+        assertFalse(query("to:alice").test(greeting));
+    }
+
+    @Test
+    void matchesRemainingContentAsPhrase() {
+        MessageQuery query = query("from:alice hello   world");
+
+        assertEquals("hello world", query.getPhrase());
+        assertTrue(query.test(greeting));
+        assertFalse(query("from:alice world hello").test(greeting));
+    }
+
+    @Test
+    void extendedPhraseIsNarrowing() {
+        assertTrue(query("hello").isNarrowing(query("")));
+        assertTrue(query("hello world").isNarrowing(query("lo wo")));
+        assertFalse(query("hello").isNarrowing(query("hello world")));
+        assertFalse(query("world hello").isNarrowing(query("hello world")));
+    }
+
+    @Test
+    void fewerCategoriesAreNarrowing() {
+        MessageQuery messages = new MessageQuery(Set.of(MessageCategory.MESSAGE), "hello");
+
+        assertTrue(messages.isNarrowing(query("hello")));
+        assertFalse(query("hello").isNarrowing(messages));
+    }
+
+    @Test
+    void refinedScopedTermsAreNarrowing() {
+        assertTrue(query("from:alice").isNarrowing(query("from:ali")));
+        assertTrue(query("from:alice to:bob").isNarrowing(query("from:alice")));
+        assertFalse(query("to:alice").isNarrowing(query("from:alice")));
+    }
+
+    private static MessageQuery query(String content) {
+        return new MessageQuery(ALL, content);
+    }
+
+}
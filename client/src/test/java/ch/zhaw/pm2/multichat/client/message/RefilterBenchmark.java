@@ -0,0 +1,99 @@
+package ch.zhaw.pm2.multichat.client.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the time of refiltering a message history of increasing size, when every message is
+ * formatted and lower-cased on every pass as before, with the compiled query reading the cached
+ * search key of every message. Only runs with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class RefilterBenchmark {
+
+    private static final int[] HISTORY_SIZES = {1_000, 10_000, 100_000};
+    private static final int ROUNDS = 5;
+    private static final MessageFilter FILTER = new MessageFilter(
+        Set.of(MessageCategory.values()), "Message 42");
+
+    @Test
+    void cachedSearchKeyRefiltersFasterThanFormattingEveryMessage() {
+        for (int size : HISTORY_SIZES) {
+            List<Message> history = createHistory(size);
+            MessageQuery query = FILTER.compile();
+            assertEquals(countUncached(history), countCached(history, query));
+
+            double uncached = 0;
+            double cached = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                uncached = measure(() -> countUncached(history));
+                cached = measure(() -> countCached(history, FILTER.compile()));
+            }
+
+            System.out.printf("%,d messages: uncached %.2f ms, cached %.2f ms%n", size, uncached,
+                cached);
+            assertTrue(cached < uncached);
+        }
+    }
+
+    private static List<Message> createHistory(int size) {
+        List<Message> history = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            history.add(i % 10 == 0 ? MessageFactory.createInfoMessage("Connected " + i)
+                : MessageFactory.createConversationMessage("Alice", "Bob", "Message " + i));
+        }
+
+        return history;
+    }
+
+    /**
+     * Filters the history as before the formatted message and search key were cached.
+     */
+    private static int countUncached(List<Message> history) {
+        int count = 0;
+        for (Message message : history) {
+            if (FILTER.categories().contains(message.type().getCategory())
+                && message.type().getFormattedMessage(message).toLowerCase()
+                .contains(FILTER.content().toLowerCase())) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static int countCached(List<Message> history, MessageQuery query) {
+        int count = 0;
+        for (Message message : history) {
+            if (query.test(message)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the time in milliseconds of a single refilter pass.
+     */
+    private static double measure(Refilter refilter) {
+        long start = System.nanoTime();
+        int count = refilter.run();
+        long nanos = System.nanoTime() - start;
+        assertTrue(count > 0);
+        return nanos / 1e6;
+    }
+
+    private interface Refilter {
+
+        int run();
+
+    }
+
+}
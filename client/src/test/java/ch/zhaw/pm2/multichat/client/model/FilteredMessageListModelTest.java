@@ -0,0 +1,165 @@
+package ch.zhaw.pm2.multichat.client.model;
+
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createConversationMessage;
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createInfoMessage;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.client.message.Message;
+import ch.zhaw.pm2.multichat.client.message.MessageCategory;
+import ch.zhaw.pm2.multichat.client.message.MessageFilter;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the incremental filtering of {@link FilteredMessageListModel} always yields the same
+ * messages as filtering the whole source list with the compiled filter. The test thread acts as
+ * the JavaFX application thread by running the queued updates of the model.
+ */
+class FilteredMessageListModelTest {
+
+    private static final Set<MessageCategory> ALL = Set.of(MessageCategory.values());
+
+    private final BlockingQueue<Runnable> applicationThread = new LinkedBlockingQueue<>();
+    private MessageListModel source;
+    private FilteredMessageListModel model;
+    private MessageFilter filter = MessageFilter.ALL_FILTER_OPTIONS;
+
+    @BeforeEach
+    void setUp() {
+        source = new MessageListModel();
+        source.addAll(List.of(
+            createConversationMessage("alice", "bob", "hello world"),
+            createConversationMessage("bob", "alice", "hello there"),
+            createInfoMessage("bob joined"),
+            createConversationMessage("alice", "carol", "help me"),
+            createConversationMessage("carol", "alice", "hello again"),
+            createConversationMessage("bob", "carol", "bye")));
+        model = new FilteredMessageListModel(source, applicationThread::add, 0);
+    }
+
+    @Test
+    void narrowingAndWideningMatchFullScan() throws InterruptedException {
+        for (String content : List.of("he", "hel", "hello", "hello w", "hello", "h", "",
+            "from:alice", "from:alice he", "from:ali", "by", "")) {
+            applyFilter(new MessageFilter(ALL, content));
+            assertMatchesFullScan();
+        }
+    }
+
+    @Test
+    void changingCategoriesMatchesFullScan() throws InterruptedException {
+        applyFilter(new MessageFilter(Set.of(MessageCategory.LOG), ""));
+        assertMatchesFullScan();
+        applyFilter(new MessageFilter(ALL, ""));
+        assertMatchesFullScan();
+        applyFilter(new MessageFilter(Set.of(MessageCategory.MESSAGE), "b"));
+        assertMatchesFullScan();
+    }
+
+    @Test
+    void appendedMessagesAreFilteredIncrementally() throws InterruptedException {
+        applyFilter(new MessageFilter(ALL, "he"));
+
+        source.add(createConversationMessage("bob", "alice", "hey"));
+        source.add(createConversationMessage("bob", "alice", "no"));
+        source.addAll(List.of(createInfoMessage("they left"), createInfoMessage("done")));
+
+        assertMatchesFullScan();
+        assertTrue(applicationThread.isEmpty());
+    }
+
+    @Test
+    void evictedAndPrependedMessagesAreFilteredIncrementally() throws InterruptedException {
+        applyFilter(new MessageFilter(ALL, "he"));
+
+        source.evict(2);
+        assertMatchesFullScan();
+        source.prependAll(List.of(createConversationMessage("dave", "bob", "hey"),
+            createConversationMessage("dave", "bob", "no")));
+        assertMatchesFullScan();
+        source.evict(10);
+        assertMatchesFullScan();
+        assertTrue(applicationThread.isEmpty());
+    }
+
+    @Test
+    void insertionInTheMiddleFallsBackToFullScan() throws InterruptedException {
+        applyFilter(new MessageFilter(ALL, "hello"));
+
+        source.add(2, createConversationMessage("bob", "alice", "hello from the middle"));
+        runNextTask();
+
+        assertMatchesFullScan();
+    }
+
+    @Test
+    void messagesAppendedWhileFilteringAreIncluded() throws InterruptedException {
+        filter = new MessageFilter(ALL, "hello");
+        model.setFilter(filter);
+        runNextTask();
+
+        source.add(createConversationMessage("bob", "alice", "hello late"));
+        runNextTask();
+
+        assertMatchesFullScan();
+    }
+
+    @Test
+    void evictionWhileFilteringRestartsFilterJob() throws InterruptedException {
+        filter = new MessageFilter(ALL, "hello");
+        model.setFilter(filter);
+        runNextTask();
+
+        source.evict(1);
+        runNextTask();
+        runNextTask();
+
+        assertMatchesFullScan();
+    }
+
+    @Test
+    void discardsResultOfSupersededFilterJob() throws InterruptedException {
+        List<Message> unfiltered = List.copyOf(model);
+        model.setFilter(new MessageFilter(ALL, "bye"));
+        runNextTask();
+        Runnable supersededCompletion = nextTask();
+        filter = new MessageFilter(ALL, "hello");
+        model.setFilter(filter);
+        runNextTask();
+        Runnable completion = nextTask();
+
+        supersededCompletion.run();
+        assertEquals(unfiltered, List.copyOf(model));
+        completion.run();
+        assertMatchesFullScan();
+    }
+
+    private void applyFilter(MessageFilter filter) throws InterruptedException {
+        this.filter = filter;
+        model.setFilter(filter);
+        runNextTask();
+        runNextTask();
+    }
+
+    private void runNextTask() throws InterruptedException {
+        nextTask().run();
+    }
+
+    private Runnable nextTask() throws InterruptedException {
+        Runnable task = applicationThread.poll(10, SECONDS);
+        assertNotNull(task);
+        return task;
+    }
+
+    private void assertMatchesFullScan() {
+        assertEquals(source.stream().filter(filter.compile()).toList(), List.copyOf(model));
+    }
+
+}
@@ -0,0 +1,68 @@
+package ch.zhaw.pm2.multichat.client.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the snapshots of a {@link SnapshotList} are not affected by later modifications.
+ */
+class SnapshotListTest {
+
+    @Test
+    void appendDoesNotChangeSnapshot() {
+        SnapshotList<Integer> list = new SnapshotList<>(List.of(1, 2, 3));
+        List<Integer> snapshot = list.snapshot();
+
+        for (int i = 4; i <= 100; i++) {
+            list.add(i);
+        }
+
+        assertEquals(List.of(1, 2, 3), snapshot);
+        assertEquals(100, list.size());
+        assertEquals(100, list.get(99));
+    }
+
+    @Test
+    void insertionDoesNotChangeSnapshot() {
+        SnapshotList<Integer> list = new SnapshotList<>(List.of(1, 2, 3));
+        List<Integer> snapshot = list.snapshot();
+
+        list.add(1, 9);
+        list.addAll(0, List.of(7, 8));
+
+        assertEquals(List.of(1, 2, 3), snapshot);
+        assertEquals(List.of(7, 8, 1, 9, 2, 3), list);
+    }
+
+    @Test
+    void removalFromStartDoesNotChangeSnapshot() {
+        SnapshotList<Integer> list = new SnapshotList<>();
+        for (int i = 0; i < 40; i++) {
+            list.add(i);
+        }
+        List<Integer> snapshot = list.snapshot();
+
+        list.removeFirst(5);
+        list.removeFirst(30);
+        list.add(40);
+
+        assertEquals(40, snapshot.size());
+        assertEquals(List.of(35, 36, 37, 38, 39, 40), list);
+        assertEquals(List.of(35, 36, 37, 38, 39), snapshot.subList(35, 40));
+    }
+
+    @Test
+    void clearDoesNotChangeSnapshot() {
+        SnapshotList<Integer> list = new SnapshotList<>(List.of(1, 2, 3));
+        List<Integer> snapshot = list.snapshot();
+
+        list.clear();
+        list.add(4);
+
+        assertEquals(List.of(1, 2, 3), snapshot);
+        assertEquals(List.of(4), list);
+    }
+
+}
@@ -0,0 +1,127 @@
+package ch.zhaw.pm2.multichat.client.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import ch.zhaw.pm2.multichat.client.message.Message;
+import ch.zhaw.pm2.multichat.client.message.MessageType;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the lookup of candidates by {@link TrigramIndex}, including eviction and rebuilding.
+ */
+class TrigramIndexTest {
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    @Test
+    void findsMessagesContainingPhrase() {
+        index.add(info("hello world"));
+        index.add(info("goodbye world"));
+        index.add(info("hello there"));
+
+        assertArrayEquals(new int[] {0, 2}, index.findCandidates("hello"));
+        assertArrayEquals(new int[] {0, 1}, index.findCandidates("world"));
+        assertArrayEquals(new int[] {0}, index.findCandidates("hello world"));
+    }
+
+    @Test
+    void intersectsPostingListsOfAllTrigrams() {
+        index.add(info("abcd"));
+        index.add(info("bcde"));
+        index.add(info("abcde"));
+
+        assertArrayEquals(new int[] {2}, index.findCandidates("abcde"));
+    }
+
+    @Test
+    void returnsCandidatesWithTrigramsAtOtherPositions() {
+        index.add(info("abcd xcde"));
+
+        assertArrayEquals(new int[] {0}, index.findCandidates("abcde"));
+    }
+
+    @Test
+    void findsNoCandidatesForUnknownTrigram() {
+        index.add(info("hello world"));
+
+        assertArrayEquals(new int[0], index.findCandidates("planet"));
+    }
+
+    @Test
+    void cannotLookUpPhraseShorterThanTrigram() {
+        index.add(info("hello world"));
+
+        assertNull(index.findCandidates("he"));
+    }
+
+    @Test
+    void excludesEvictedMessages() {
+        for (int i = 0; i < 4; i++) {
+            index.add(info("hello " + i));
+        }
+
+        index.evict(1);
+
+        assertEquals(1, index.getFirstSequence());
+        assertArrayEquals(new int[] {1, 2, 3}, index.findCandidates("hello"));
+    }
+
+    @Test
+    void keepsFindingRemainingMessagesAfterCompaction() {
+        for (int i = 0; i < 8; i++) {
+            index.add(info("message " + i));
+        }
+
+        index.evict(3);
+        index.evict(2);
+        index.add(info("message 8"));
+
+        assertEquals(5, index.getFirstSequence());
+        assertArrayEquals(new int[] {5, 6, 7, 8}, index.findCandidates("message"));
+        assertArrayEquals(new int[0], index.findCandidates("message 4"));
+        assertArrayEquals(new int[] {8}, index.findCandidates("message 8"));
+    }
+
+    @Test
+    void doesNotEvictBeyondNewestMessage() {
+        index.add(info("hello"));
+
+        index.evict(5);
+        index.add(info("hello again"));
+
+        assertEquals(1, index.getFirstSequence());
+        assertArrayEquals(new int[] {1}, index.findCandidates("hello"));
+    }
+
+    @Test
+    void clearRemovesAllMessages() {
+        index.add(info("hello world"));
+
+        index.clear();
+        index.add(info("goodbye"));
+
+        assertEquals(0, index.getFirstSequence());
+        assertArrayEquals(new int[0], index.findCandidates("hello"));
+        assertArrayEquals(new int[] {0}, index.findCandidates("goodbye"));
+    }
+
+    @Test
+    void rebuildStartsAtGivenSequence() {
+        index.add(info("stale"));
+
+        index.rebuild(List.of(info("hello"), info("world")), 10);
+
+        assertEquals(10, index.getFirstSequence());
+        assertArrayEquals(new int[0], index.findCandidates("stale"));
+        assertArrayEquals(new int[] {10}, index.findCandidates("hello"));
+        assertArrayEquals(new int[] {11}, index.findCandidates("world"));
+    }
+
+    private static Message info(String content) {
+        return new Message(MessageType.INFO, "", "", content);
+    }
+
+}
@@ -0,0 +1,217 @@
+package ch.zhaw.pm2.multichat.client.transcript;
+
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createConversationMessage;
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createErrorMessage;
+import static ch.zhaw.pm2.multichat.client.message.MessageFactory.createInfoMessage;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ch.zhaw.pm2.multichat.client.message.Message;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the file format of {@link TranscriptStore}: the records of the data file, the index file
+ * holding the number of messages followed by their offsets, and the recovery of a transcript
+ * whose last append has not completed.
+ */
+class TranscriptStoreTest {
+
+    private static final String HOST = "localhost";
+    private static final int PORT = 22243;
+    private static final String USERNAME = "alice";
+
+    private final List<Message> messages = List.of(
+        createConversationMessage("alice", "bob", "Hello Bob"),
+        createInfoMessage("Connected to server"),
+        createConversationMessage("bob", "alice", "Gr\u00fcezi, \u65e5\u672c"),
+        createErrorMessage(""));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAppendedMessages() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages);
+
+            assertEquals(messages.size(), store.size());
+            assertEquals(messages, store.read(0, messages.size()));
+            assertEquals(messages.subList(1, 3), store.read(1, 3));
+            assertEquals(List.of(), store.read(2, 2));
+        }
+    }
+
+    @Test
+    void rejectsRangeOutOfBounds() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages);
+
+            assertThrows(IndexOutOfBoundsException.class, () -> store.read(3, 5));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.read(2, 1));
+        }
+    }
+
+    @Test
+    void keepsMessagesAfterReopen() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages.subList(0, 2));
+        }
+
+        try (TranscriptStore store = open(USERNAME)) {
+            assertEquals(2, store.size());
+            store.appendAll(messages.subList(2, 4));
+        }
+
+        try (TranscriptStore store = open(USERNAME)) {
+            assertEquals(messages.size(), store.size());
+            assertEquals(messages.subList(3, 4), store.read(3, 4));
+            assertEquals(messages, store.read(0, messages.size()));
+        }
+    }
+
+    @Test
+    void writesCountAndOffsetsToIndex() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages.subList(0, 2));
+        }
+
+        ByteBuffer index = readFile(indexFile(USERNAME), 3 * Long.BYTES);
+        ByteBuffer data = readFile(dataFile(USERNAME), Integer.BYTES);
+        assertEquals(2, index.getLong(0));
+        assertEquals(0, index.getLong(Long.BYTES));
+        assertEquals(Integer.BYTES + data.getInt(0), index.getLong(2 * Long.BYTES));
+    }
+
+    @Test
+    void remapsFilesWhenTheyGrow() throws IOException {
+        List<Message> appended = new ArrayList<>();
+        String content = "x".repeat(64 * 1024);
+        for (int i = 0; i < 40; i++) {
+            appended.add(createConversationMessage("alice", "bob", i + content));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            appended.add(createInfoMessage(Integer.toString(i)));
+        }
+
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(appended);
+            assertEquals(appended.get(0), store.read(0, 1).get(0));
+            assertEquals(appended.subList(39, 41), store.read(39, 41));
+        }
+
+        try (TranscriptStore store = open(USERNAME)) {
+            assertEquals(appended.size(), store.size());
+            assertEquals(appended, store.read(0, appended.size()));
+        }
+    }
+
+    @Test
+    void ignoresIncompleteRecordAfterCrash() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages.subList(0, 2));
+        }
+
+        // simulate a crash after the record and its offset were written, but before the count
+        ByteBuffer index = readFile(indexFile(USERNAME), 3 * Long.BYTES);
+        ByteBuffer data = readFile(dataFile(USERNAME), Math.toIntExact(
+            index.getLong(2 * Long.BYTES) + Integer.BYTES));
+        long dataEnd = index.getLong(2 * Long.BYTES) + Integer.BYTES
+            + data.getInt(Math.toIntExact(index.getLong(2 * Long.BYTES)));
+        writeFile(dataFile(USERNAME), dataEnd, ByteBuffer.allocate(6).putInt(1000).put((byte) 0)
+            .put((byte) 7).flip());
+        writeFile(indexFile(USERNAME), 3 * Long.BYTES,
+            ByteBuffer.allocate(Long.BYTES).putLong(dataEnd).flip());
+
+        try (TranscriptStore store = open(USERNAME)) {
+            assertEquals(2, store.size());
+            assertEquals(messages.subList(0, 2), store.read(0, 2));
+            store.append(messages.get(2));
+        }
+
+        try (TranscriptStore store = open(USERNAME)) {
+            assertEquals(messages.subList(0, 3), store.read(0, 3));
+        }
+    }
+
+    @Test
+    void rejectsCorruptedIndex() throws IOException {
+        try (TranscriptStore store = open(USERNAME)) {
+            store.appendAll(messages);
+        }
+
+        writeFile(indexFile(USERNAME), 0, ByteBuffer.allocate(Long.BYTES).putLong(-1).flip());
+
+        assertThrows(IOException.class, () -> open(USERNAME));
+    }
+
+    @Test
+    void storesDistinctNamesInDistinctFiles() throws IOException {
+        List<String> names = List.of("a:b", "a/b", "a_b", "a%3Ab", "..");
+        for (String name : names) {
+            try (TranscriptStore store = open(name)) {
+                assertEquals(0, store.size());
+                store.append(createConversationMessage(name, "bob", "Hello"));
+            }
+        }
+
+        for (String name : names) {
+            try (TranscriptStore store = open(name)) {
+                assertEquals(name, store.read(0, store.size()).get(0).sender());
+            }
+        }
+    }
+
+    @Test
+    void ignoresCaseOfNames() throws IOException {
+        assertEquals(TranscriptStore.toFileName("alice"), TranscriptStore.toFileName("ALICE"));
+        assertNotEquals(TranscriptStore.toFileName("a:b"), TranscriptStore.toFileName("a_b"));
+
+        try (TranscriptStore store = open("Alice")) {
+            store.appendAll(messages);
+        }
+        try (TranscriptStore store = open("alice")) {
+            assertEquals(messages.size(), store.size());
+        }
+    }
+
+    private TranscriptStore open(String username) throws IOException {
+        return TranscriptStore.open(directory, HOST, PORT, username);
+    }
+
+    private Path dataFile(String username) {
+        return serverDirectory().resolve(TranscriptStore.toFileName(username) + ".dat");
+    }
+
+    private Path indexFile(String username) {
+        return serverDirectory().resolve(TranscriptStore.toFileName(username) + ".idx");
+    }
+
+    private Path serverDirectory() {
+        return directory.resolve(TranscriptStore.toFileName(HOST + "_" + PORT));
+    }
+
+    private static ByteBuffer readFile(Path file, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            channel.read(buffer, 0);
+            return buffer.flip();
+        }
+    }
+
+    private static void writeFile(Path file, long position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package ch.zhaw.pm2.multichat.client.transfer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link FileTransfer#download} against a loopback server, in particular that a failed
+ * download only deletes the target file it has created itself.
+ */
+class FileTransferTest {
+
+    private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+    private static final String TRANSFER_ID = "transfer-1";
+    private static final byte[] FILE = "The quick brown fox jumps over the lazy dog".getBytes();
+    private static final byte[] EXISTING = "existing download".getBytes();
+
+    @TempDir
+    Path directory;
+
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    void storesReceivedFile() throws Exception {
+        CompletableFuture<Void> server = serve(FILE);
+        Path target = directory.resolve("file.txt");
+
+        download(target, FILE.length);
+
+        server.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(FILE, Files.readAllBytes(target));
+    }
+
+    @Test
+    void deletesIncompleteFileItHasCreated() throws Exception {
+        CompletableFuture<Void> server = serve(Arrays.copyOf(FILE, FILE.length / 2));
+        Path target = directory.resolve("file.txt");
+
+        assertThrows(EOFException.class, () -> download(target, FILE.length));
+
+        server.get(10, TimeUnit.SECONDS);
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void deletesFileItHasCreatedIfConnectionFails() throws Exception {
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        Path target = directory.resolve("file.txt");
+
+        assertThrows(IOException.class, () -> FileTransfer.download(HOST, port, "bob",
+            TRANSFER_ID, target, FILE.length));
+
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void keepsExistingFile() throws Exception {
+        Path target = Files.write(directory.resolve("file.txt"), EXISTING);
+
+        assertThrows(FileAlreadyExistsException.class, () -> download(target, FILE.length));
+
+        assertArrayEquals(EXISTING, Files.readAllBytes(target));
+    }
+
+    @Test
+    void keepsExistingFileIfConnectionFails() throws Exception {
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        Path target = Files.write(directory.resolve("file.txt"), EXISTING);
+
+        assertThrows(FileAlreadyExistsException.class, () -> FileTransfer.download(HOST, port,
+            "bob", TRANSFER_ID, target, FILE.length));
+
+        assertArrayEquals(EXISTING, Files.readAllBytes(target));
+    }
+
+    private void download(Path target, long size) throws IOException {
+        FileTransfer.download(HOST, serverSocket.getLocalPort(), "bob", TRANSFER_ID, target,
+            size);
+    }
+
+    /**
+     * Accepts a single data connection, skips its transfer payload and sends the given data.
+     */
+    private CompletableFuture<Void> serve(byte[] data) {
+        return CompletableFuture.runAsync(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                input.readFully(new byte[input.readInt()]);
+                socket.getOutputStream().write(data);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+}
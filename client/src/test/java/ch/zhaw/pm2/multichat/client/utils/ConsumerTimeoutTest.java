@@ -0,0 +1,50 @@
+package ch.zhaw.pm2.multichat.client.utils;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the debouncing of {@link ConsumerTimeout}.
+ */
+class ConsumerTimeoutTest {
+
+    private static final long TIMEOUT = 100;
+
+    private final BlockingQueue<Integer> accepted = new LinkedBlockingQueue<>();
+    private final ConsumerTimeout<Integer> consumerTimeout = new ConsumerTimeout<>(accepted::add,
+        TIMEOUT);
+
+    @Test
+    void callsConsumerOnceWithLatestInput() throws InterruptedException {
+        for (int i = 1; i <= 5; i++) {
+            consumerTimeout.accept(i);
+        }
+
+        assertEquals(5, accepted.poll(1, SECONDS));
+        assertNull(accepted.poll(3 * TIMEOUT, MILLISECONDS));
+    }
+
+    @Test
+    void callsConsumerAgainAfterTimeout() throws InterruptedException {
+        consumerTimeout.accept(1);
+        assertEquals(1, accepted.poll(1, SECONDS));
+
+        consumerTimeout.accept(2);
+        assertEquals(2, accepted.poll(1, SECONDS));
+    }
+
+    @Test
+    void doesNotCallConsumerBeforeTimeout() throws InterruptedException {
+        consumerTimeout.accept(1);
+
+        assertNull(accepted.poll(TIMEOUT / 2, MILLISECONDS));
+        assertEquals(1, accepted.poll(1, SECONDS));
+    }
+
+}
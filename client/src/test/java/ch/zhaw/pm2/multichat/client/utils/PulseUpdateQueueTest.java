@@ -0,0 +1,148 @@
+package ch.zhaw.pm2.multichat.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link PulseUpdateQueue} executes the updates submitted until a drain in order and
+ * together, and only schedules drains while updates arrive.
+ */
+class PulseUpdateQueueTest {
+
+    private static final int UPDATES = 1000;
+    private static final int PRODUCERS = 4;
+
+    private final List<Runnable> drains = new ArrayList<>();
+    private final List<Integer> executed = new ArrayList<>();
+    private final List<List<Integer>> pulses = new ArrayList<>();
+    private final PulseUpdateQueue queue = new PulseUpdateQueue(this::pulse, drains::add);
+
+    @Test
+    void schedulesNothingWithoutUpdates() {
+        assertTrue(drains.isEmpty());
+    }
+
+    @Test
+    void executesUpdatesSubmittedUntilDrainTogetherInOrder() {
+        for (int i = 0; i < UPDATES; i++) {
+            submit(i);
+        }
+
+        assertEquals(1, drains.size());
+        runDrains();
+        assertEquals(List.of(range(0, UPDATES)), pulses);
+    }
+
+    @Test
+    void schedulesNextDrainOnlyForUpdatesAfterDrain() {
+        submit(0);
+        submit(1);
+        runDrains();
+        runDrains();
+        submit(2);
+
+        assertEquals(1, drains.size());
+        runDrains();
+        assertEquals(List.of(List.of(0, 1), List.of(2)), pulses);
+    }
+
+    @Test
+    void executesUpdatesSubmittedDuringDrainInSameDrain() {
+        queue.execute(() -> {
+            executed.add(0);
+            submit(1);
+        });
+
+        runDrains();
+        assertEquals(List.of(List.of(0, 1)), pulses);
+        assertTrue(drains.isEmpty());
+    }
+
+    @Test
+    void requestedPulseWithoutUpdatesInvokesCallbackOnce() {
+        queue.requestPulse();
+        queue.requestPulse();
+
+        assertEquals(1, drains.size());
+        runDrains();
+        assertEquals(List.of(List.of()), pulses);
+    }
+
+    @Test
+    void keepsOrderOfEveryProducer() throws Exception {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<int[]> received = new ArrayList<>();
+        Executor applicationThread = drain -> {
+            synchronized (scheduled) {
+                scheduled.add(drain);
+            }
+        };
+        PulseUpdateQueue concurrentQueue = new PulseUpdateQueue(() -> {
+        }, applicationThread);
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            producers.execute(() -> {
+                for (int i = 0; i < UPDATES; i++) {
+                    int update = i;
+                    concurrentQueue.execute(() -> received.add(new int[] {producer, update}));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        producers.shutdown();
+
+        while (true) {
+            Runnable drain;
+            synchronized (scheduled) {
+                if (scheduled.isEmpty()) {
+                    break;
+                }
+                drain = scheduled.remove(0);
+            }
+            drain.run();
+        }
+
+        assertEquals(PRODUCERS * UPDATES, received.size());
+        int[] next = new int[PRODUCERS];
+        for (int[] update : received) {
+            assertEquals(next[update[0]]++, update[1]);
+        }
+    }
+
+    private void submit(int update) {
+        queue.execute(() -> executed.add(update));
+    }
+
+    private void pulse() {
+        pulses.add(new ArrayList<>(executed));
+        executed.clear();
+    }
+
+    private void runDrains() {
+        List<Runnable> scheduled = new ArrayList<>(drains);
+        drains.clear();
+        scheduled.forEach(Runnable::run);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+
+        return range;
+    }
+
+}
@@ -1,6 +1,15 @@
 package ch.zhaw.pm2.multichat.protocol;
 
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -9,7 +18,10 @@ import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Objects;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 
 /**
  * Helper class to support simple network communication. It provides access to the two subclasses:
@@ -63,6 +75,12 @@ import java.util.Objects;
  * marker interface specifying that an object can be serialized/deserialized. As long all properties within a
  * class are also Serializable, your class simply can be marked using it. All standard Java data-types are by default
  * Serializable.</p>
+ * <p>On the wire, every object is sent as a frame consisting of its length as four byte integer
+ * followed by its serialized form. The frames allow non-blocking implementations of
+ * {@link NetworkEndpoint} to detect complete objects without blocking on a partial one, so they can
+ * share a connection with a {@link NetworkConnection} on the other side. The serialized form is
+ * produced by a {@link FrameCodec}, which uses Java serialization unless a codec tailored to the
+ * transmitted type is given.</p>
  */
 public class NetworkHandler {
 
@@ -75,6 +93,13 @@ public class NetworkHandler {
      * Default port on the server side to listen for requests
      */
     public static final int DEFAULT_PORT = 22243;
+    /**
+     * Maximum size of a serialized object in bytes. Larger frames are rejected before their data
+     * is read.
+     */
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    private static final FrameCodec<Serializable> SERIALIZATION_CODEC = new SerializationCodec();
 
     /**
      * private Constructor to avoid initialization. Use the static factory methods to create
@@ -150,6 +175,57 @@ public class NetworkHandler {
         return openConnection(InetAddress.getByName(hostname), port);
     }
 
+    /**
+     * Creates an instance of a {@link NetworkConnection} connecting to the specified host/port to
+     * send and receive objects of type T, which are encoded by the given codec.
+     *
+     * @param hostname server host name or address in String representation
+     * @param port     port number the server is waiting for connection requests
+     * @param codec    the codec of the frames of the connection
+     * @param <T>      type of Objects to be transmitted trough this connection
+     * @return {@link NetworkConnection} object representing the bidirectional channel between
+     * client and server.
+     * @throws IOException if an error occurred opening the connection, e.g. server is not
+     *                     responding.
+     */
+    public static <T extends Serializable> NetworkConnection<T> openConnection(String hostname,
+        int port, FrameCodec<T> codec) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName(hostname), port);
+        socket.setKeepAlive(true);
+        return new NetworkConnection<>(socket, codec);
+    }
+
+    /**
+     * Creates an instance of a {@link NetworkConnection} connecting to the specified host/port
+     * over TLS to send and receive objects of type T, which are encoded by the given codec. The
+     * handshake is completed before this method returns. Connections opened with the same context
+     * to the same host/port resume the TLS session of a previous connection. Nagle's algorithm is
+     * disabled, since the first frame would otherwise wait for the acknowledgement of the last
+     * handshake message.
+     *
+     * @param hostname server host name or address in String representation
+     * @param port     port number the server is waiting for connection requests
+     * @param context  the TLS context of the client
+     * @param codec    the codec of the frames of the connection
+     * @param <T>      type of Objects to be transmitted trough this connection
+     * @return {@link NetworkConnection} object representing the bidirectional channel between
+     * client and server.
+     * @throws IOException if an error occurred opening the connection or the handshake failed
+     */
+    public static <T extends Serializable> NetworkConnection<T> openConnection(String hostname,
+        int port, SSLContext context, FrameCodec<T> codec) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(hostname, port);
+        try {
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new NetworkConnection<>(socket, codec);
+    }
+
     /**
      * Creates an instance of a {@link NetworkConnection} connecting to the default host
      * ("localhost",127.0.0.1,::1) and port (22243) to send and receive objects of type T.
@@ -165,6 +241,163 @@ public class NetworkHandler {
         return openConnection(DEFAULT_ADDRESS, DEFAULT_PORT);
     }
 
+    /**
+     * Returns the codec which encodes objects with Java serialization. This codec is used by
+     * connections opened without a codec of their own.
+     *
+     * @param <T> type of Objects to be encoded
+     * @return the codec using Java serialization
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> FrameCodec<T> serializationCodec() {
+        return (FrameCodec<T>) SERIALIZATION_CODEC;
+    }
+
+    /**
+     * Serializes the given object into the data of a frame.
+     *
+     * @param data data object to serialize
+     * @return the serialized form of the object
+     * @throws IOException if the object can not be serialized or exceeds
+     *                     {@link #MAX_FRAME_SIZE}
+     */
+    public static byte[] serialize(Serializable data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+            outputStream.writeObject(data);
+        }
+
+        checkFrameSize(bytes.size());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an object from the data of a frame.
+     *
+     * @param data   array containing the serialized form of the object
+     * @param offset index of the first byte of the serialized form
+     * @param length number of bytes of the serialized form
+     * @param <T>    type of the deserialized object
+     * @return the deserialized object
+     * @throws IOException            if the data is not a serialized object
+     * @throws ClassNotFoundException if the data object does not match any class in the local
+     *                                classpath
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T deserialize(byte[] data, int offset, int length)
+        throws IOException, ClassNotFoundException {
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+            new ByteArrayInputStream(data, offset, length))) {
+            return (T) inputStream.readObject();
+        }
+    }
+
+    /**
+     * Encodes the given object into a complete frame, consisting of the length of the serialized
+     * object followed by the serialized object.
+     *
+     * @param data data object to encode
+     * @return a buffer containing the frame, ready to be written
+     * @throws IOException if the object can not be serialized or exceeds
+     *                     {@link #MAX_FRAME_SIZE}
+     */
+    public static ByteBuffer encodeFrame(Serializable data) throws IOException {
+        byte[] frame = serialize(data);
+        return ByteBuffer.allocate(Integer.BYTES + frame.length)
+            .putInt(frame.length)
+            .put(frame)
+            .flip();
+    }
+
+    /**
+     * Checks the length of a frame before its data is sent or read.
+     *
+     * @param length the length of the frame
+     * @throws IOException if the length is negative or exceeds {@link #MAX_FRAME_SIZE}
+     */
+    public static void checkFrameSize(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException(format("Illegal frame size: %d", length));
+        }
+    }
+
+    /**
+     * Codec translating between objects of type T and the data of the frames they are sent in.
+     * Decoding reads the data right where it has been received, e.g. from the read buffer of a
+     * non-blocking endpoint, so the data does not have to be copied first.
+     *
+     * @param <T> type of Objects to be encoded and decoded
+     */
+    public interface FrameCodec<T extends Serializable> {
+
+        /**
+         * Encodes the given object into a complete frame, consisting of the length of its data
+         * followed by the data.
+         *
+         * @param data data object to encode
+         * @return a heap buffer containing the frame, ready to be written
+         * @throws IOException if the object can not be encoded or exceeds {@link #MAX_FRAME_SIZE}
+         */
+        ByteBuffer encodeFrame(T data) throws IOException;
+
+        /**
+         * Decodes an object from the data of a frame. The position and limit of the buffer are
+         * not changed.
+         *
+         * @param buffer buffer containing the data of the frame
+         * @param offset index of the first byte of the data
+         * @param length number of bytes of the data
+         * @return the decoded object
+         * @throws IOException            if the data is not a valid encoded object
+         * @throws ClassNotFoundException if the data object does not match any class in the local
+         *                                classpath
+         */
+        T decode(ByteBuffer buffer, int offset, int length)
+            throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * End of a bidirectional connection between two peers, to send and receive Objects of type T.
+     * {@link NetworkConnection} is the blocking implementation used by the client, but a peer may
+     * also be served by a non-blocking implementation, which receives objects without a dedicated
+     * thread.
+     *
+     * @param <T> type of Objects to be transmitted trough this connection
+     */
+    public interface NetworkEndpoint<T extends Serializable> extends Closeable {
+
+        /**
+         * Sends the given data object to the opposite side.
+         *
+         * @param data data object of type T to be submitted through the connection.
+         * @throws IOException if an error occurs (e.g. connection interrupted while sending, ...)
+         */
+        void send(T data) throws IOException;
+
+        /**
+         * Receives the next data object from the opposite side, blocking until it comes in.
+         *
+         * @return data object of type T received through the connection.
+         * @throws IOException            if an error occurs (e.g. terminated locally/remotely)
+         * @throws ClassNotFoundException if the data object received does not match any class in
+         *                                the local classpath
+         */
+        T receive() throws IOException, ClassNotFoundException;
+
+        /**
+         * Indicates if the connection is open and connected to the peer.
+         *
+         * @return true if the connection is open and connected, false otherwise
+         */
+        boolean isAvailable();
+
+        /**
+         * Indicate if the connection has been closed.
+         *
+         * @return true if the connection is closed, false otherwise.
+         */
+        boolean isClosed();
+    }
 
     /**
      * Network communication class used on the server side to handle connection request from
@@ -323,9 +556,15 @@ public class NetworkHandler {
      *
      * @param <T> type of Objects to be transmitted trough this connection
      */
-    public static class NetworkConnection<T extends Serializable> implements Closeable {
+    public static class NetworkConnection<T extends Serializable> implements NetworkEndpoint<T> {
+
+        private static final int INITIAL_BUFFER_SIZE = 8192;
 
         private final Socket socket;
+        private final DataInputStream inputStream;
+        private final DataOutputStream outputStream;
+        private final FrameCodec<T> codec;
+        private ByteBuffer receiveBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
 
         /**
          * <b>Privat constructor: Use
@@ -333,9 +572,28 @@ public class NetworkHandler {
          * methods to create instances of {@link NetworkConnection}</b>
          *
          * @param socket operating system socket to use for the communication.
+         * @throws IOException if the streams of the socket can not be opened
+         */
+        private NetworkConnection(Socket socket) throws IOException {
+            this(socket, serializationCodec());
+        }
+
+        /**
+         * <b>Privat constructor: Use
+         * {@link NetworkHandler#openConnection(String hostname, int port, FrameCodec codec)} and
+         * similar factory methods to create instances of {@link NetworkConnection}</b>
+         *
+         * @param socket operating system socket to use for the communication.
+         * @param codec  the codec of the frames of the connection
+         * @throws IOException if the streams of the socket can not be opened
          */
-        private NetworkConnection(Socket socket) {
+        private NetworkConnection(Socket socket, FrameCodec<T> codec) throws IOException {
             this.socket = socket;
+            this.codec = requireNonNull(codec);
+            this.inputStream = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            this.outputStream = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
         }
 
         /**
@@ -348,17 +606,21 @@ public class NetworkHandler {
          * @param data data object of type T to be submitted through the connection.
          * @throws IOException if an error occurs (e.g. connection interrupted while sending, ...)
          */
+        @Override
         public void send(T data) throws IOException {
-            ObjectOutputStream outputStream = new ObjectOutputStream(socket.getOutputStream());
-            outputStream.writeObject(data);
+            ByteBuffer frame = codec.encodeFrame(data);
+            outputStream.write(frame.array(), frame.arrayOffset() + frame.position(),
+                frame.remaining());
+            outputStream.flush();
         }
 
         /**
          * Method to receive data from the opposite side. The call is blocking until a requests
-         * comes in, and the transferred object is returned. If the connection is closed during
-         * waiting, a {@link java.net.SocketException} is thrown, if the close was initiated locally
-         * or {@link EOFException} is thrown if the connection is closed from the remote side. Other
-         * {@link IOException} may be thrown on any another communication error.
+         * comes in, and the transferred object is returned. The data of every frame is read into
+         * the same buffer, which only grows if a frame does not fit. If the connection is closed
+         * during waiting, a {@link java.net.SocketException} is thrown, if the close was initiated
+         * locally or {@link EOFException} is thrown if the connection is closed from the remote
+         * side. Other {@link IOException} may be thrown on any another communication error.
          *
          * @return data object of type T received through the connection.
          * @throws IOException            if an error occours. (e.g. terminated locally/remotely)
@@ -366,9 +628,15 @@ public class NetworkHandler {
          * @throws ClassNotFoundException if the data object received does not match any class in
          *                                the local classpath
          */
+        @Override
         public T receive() throws IOException, ClassNotFoundException {
-            ObjectInputStream inputStream = new ObjectInputStream(this.socket.getInputStream());
-            return (T) inputStream.readObject();
+            int length = inputStream.readInt();
+            checkFrameSize(length);
+            if (length > receiveBuffer.capacity()) {
+                receiveBuffer = ByteBuffer.allocate(length);
+            }
+            inputStream.readFully(receiveBuffer.array(), 0, length);
+            return codec.decode(receiveBuffer, 0, length);
         }
 
         /**
@@ -376,6 +644,7 @@ public class NetworkHandler {
          *
          * @return true if the connection is open and connected, false otherwise
          */
+        @Override
         public boolean isAvailable() {
             return !isClosed() && socket.isConnected();
         }
@@ -386,6 +655,7 @@ public class NetworkHandler {
          *
          * @return true if the connection is closed, false otherwise.
          */
+        @Override
         public boolean isClosed() {
             return socket == null || socket.isClosed();
         }
@@ -444,4 +714,27 @@ public class NetworkHandler {
             return Objects.hash(socket);
         }
     }
+
+    /**
+     * Codec encoding objects with Java serialization.
+     */
+    private static class SerializationCodec implements FrameCodec<Serializable> {
+
+        @Override
+        public ByteBuffer encodeFrame(Serializable data) throws IOException {
+            return NetworkHandler.encodeFrame(data);
+        }
+
+        @Override
+        public Serializable decode(ByteBuffer buffer, int offset, int length)
+            throws IOException, ClassNotFoundException {
+            if (buffer.hasArray()) {
+                return deserialize(buffer.array(), buffer.arrayOffset() + offset, length);
+            }
+
+            byte[] data = new byte[length];
+            buffer.get(offset, data);
+            return deserialize(data, 0, length);
+        }
+    }
 }
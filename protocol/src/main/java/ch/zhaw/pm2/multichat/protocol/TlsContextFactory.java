@@ -0,0 +1,153 @@
+package ch.zhaw.pm2.multichat.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Optional;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * A factory class for creating the TLS contexts of servers and clients. TLS is enabled by
+ * configuring a key store with the system property {@value #KEY_STORE_PROPERTY} on the server, or a
+ * trust store with the system property {@value #TRUST_STORE_PROPERTY} on the client. The passwords
+ * of the stores are set with the system properties {@value #KEY_STORE_PASSWORD_PROPERTY} and
+ * {@value #TRUST_STORE_PASSWORD_PROPERTY}.
+ * <p>
+ * A context keeps the sessions it has negotiated, so it has to be reused for all connections: a
+ * client reconnecting to the same server resumes its session with an abbreviated handshake. The
+ * server hands out session tickets, which carry the state of a session, so resuming a session does
+ * not depend on the server still having it in its cache.
+ */
+public class TlsContextFactory {
+
+    /**
+     * The system property with the path of the key store holding the key of a server.
+     */
+    public static final String KEY_STORE_PROPERTY = "multichat.tls.keyStore";
+
+    /**
+     * The system property with the password of the key store.
+     */
+    public static final String KEY_STORE_PASSWORD_PROPERTY = "multichat.tls.keyStorePassword";
+
+    /**
+     * The system property with the path of the trust store holding the certificates to trust.
+     */
+    public static final String TRUST_STORE_PROPERTY = "multichat.tls.trustStore";
+
+    /**
+     * The system property with the password of the trust store.
+     */
+    public static final String TRUST_STORE_PASSWORD_PROPERTY = "multichat.tls.trustStorePassword";
+
+    private static final String PROTOCOL = "TLSv1.3";
+    private static final int SESSION_CACHE_SIZE = 10_000;
+    private static final int SESSION_TIMEOUT_SECONDS = 8 * 60 * 60;
+
+    private TlsContextFactory() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Creates a TLS context from the stores configured with the system properties, if TLS is
+     * enabled.
+     *
+     * @return the TLS context, or an empty Optional if neither a key store nor a trust store is
+     * configured
+     * @throws IOException              if a store can not be read
+     * @throws GeneralSecurityException if a store is invalid or the context can not be created
+     */
+    public static Optional<SSLContext> createFromSystemProperties()
+        throws IOException, GeneralSecurityException {
+        Path keyStore = getPath(KEY_STORE_PROPERTY);
+        Path trustStore = getPath(TRUST_STORE_PROPERTY);
+        if (keyStore == null && trustStore == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(createContext(keyStore, getPassword(KEY_STORE_PASSWORD_PROPERTY),
+            trustStore, getPassword(TRUST_STORE_PASSWORD_PROPERTY)));
+    }
+
+    /**
+     * Creates a TLS context with the given key store and trust store. Without a key store, the
+     * context can only be used by clients. Without a trust store, the default certificates of the
+     * platform are trusted.
+     *
+     * @param keyStore           the path of the key store, or null
+     * @param keyStorePassword   the password of the key store
+     * @param trustStore         the path of the trust store, or null
+     * @param trustStorePassword the password of the trust store
+     * @return the TLS context
+     * @throws IOException              if a store can not be read
+     * @throws GeneralSecurityException if a store is invalid or the context can not be created
+     */
+    public static SSLContext createContext(Path keyStore, char[] keyStorePassword, Path trustStore,
+        char[] trustStorePassword) throws IOException, GeneralSecurityException {
+        enableSessionTickets();
+
+        KeyManager[] keyManagers = null;
+        if (keyStore != null) {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(loadStore(keyStore, keyStorePassword), keyStorePassword);
+            keyManagers = keyManagerFactory.getKeyManagers();
+        }
+
+        TrustManager[] trustManagers = null;
+        if (trustStore != null) {
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(loadStore(trustStore, trustStorePassword));
+            trustManagers = trustManagerFactory.getTrustManagers();
+        }
+
+        SSLContext context = SSLContext.getInstance(PROTOCOL);
+        context.init(keyManagers, trustManagers, null);
+        context.getServerSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+        context.getServerSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        return context;
+    }
+
+    /**
+     * Enables session tickets on both sides, unless they have been configured explicitly. The
+     * settings are read when the first context is created.
+     */
+    private static void enableSessionTickets() {
+        for (String property : new String[]{"jdk.tls.server.enableSessionTicketExtension",
+            "jdk.tls.client.enableSessionTicketExtension"}) {
+            if (System.getProperty(property) == null) {
+                System.setProperty(property, "true");
+            }
+        }
+    }
+
+    private static KeyStore loadStore(Path path, char[] password)
+        throws IOException, GeneralSecurityException {
+        KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            store.load(inputStream, password);
+        }
+
+        return store;
+    }
+
+    private static Path getPath(String property) {
+        String value = System.getProperty(property);
+        return value == null || value.isBlank() ? null : Path.of(value);
+    }
+
+    private static char[] getPassword(String property) {
+        String value = System.getProperty(property);
+        return value == null ? null : value.toCharArray();
+    }
+
+}
@@ -5,7 +5,7 @@ import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
-import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkConnection;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serializable;
@@ -20,18 +20,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Connection<T extends Serializable> {
 
-    private final NetworkConnection<T> networkConnection;
+    private final NetworkEndpoint<T> networkConnection;
 
     private ConnectionStateType state = NEW;
     private String username;
+    private String sessionToken;
 
     /**
-     * Creates a new Connection object with the specified NetworkConnection object. The
+     * Creates a new Connection object with the specified NetworkEndpoint object. The
      * ConnectionStateType is initialized to NEW by default.
      *
-     * @param networkConnection the NetworkConnection object to use for this connection
+     * @param networkConnection the NetworkEndpoint object to use for this connection
      */
-    public Connection(NetworkConnection<T> networkConnection) {
+    public Connection(NetworkEndpoint<T> networkConnection) {
         this.networkConnection = requireNonNull(networkConnection);
     }
 
@@ -40,7 +41,7 @@ public class Connection<T extends Serializable> {
      *
      * @return the network connection
      */
-    public NetworkConnection<T> getNetworkConnection() {
+    public NetworkEndpoint<T> getNetworkConnection() {
         return networkConnection;
     }
 
@@ -80,6 +81,25 @@ public class Connection<T extends Serializable> {
         this.username = requireNonNull(username);
     }
 
+    /**
+     * Gets the token of the session of the connection, which allows resuming the session on a new
+     * connection.
+     *
+     * @return the session token, or null if no session has been issued
+     */
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * Sets the token of the session of the connection.
+     *
+     * @param sessionToken the new session token to set
+     */
+    public void setSessionToken(String sessionToken) {
+        this.sessionToken = requireNonNull(sessionToken);
+    }
+
     /**
      * Checks whether the current state of the connection matches the specified
      * ConnectionStateType.
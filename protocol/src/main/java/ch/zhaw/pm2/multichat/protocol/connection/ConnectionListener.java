@@ -1,5 +1,8 @@
 package ch.zhaw.pm2.multichat.protocol.connection;
 
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ACK;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.BATCH;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CHUNK;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
@@ -11,12 +14,14 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.SocketException;
+import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * An abstract class representing a listener for a connection, which handles incoming payloads and
- * delegates them to the appropriate payload handlers.
+ * delegates them to the appropriate payload handlers. Batches are unpacked and payloads received in
+ * chunks are reassembled before they are delegated.
  *
  * @param <T> the type of payload that this connection listener can handle
  */
@@ -59,12 +64,11 @@ public abstract class ConnectionListener<T extends Serializable> implements Runn
                 .isAvailable()) {
                 T payload = connection.getNetworkConnection().receive();
                 PayloadType payloadType = getPayloadType(payload);
+                performDeliveryTracking(payload);
                 handlePayload(payload, payloadType);
             }
         } catch (ConnectionException e) {
-            connection.sendPayload(
-                performErrorPayloadCreation(e.getMessage()));
-            performDisconnection();
+            rejectConnection(e);
         } catch (SocketException | EOFException e) {
             performDisconnection();
         } catch (IOException e) {
@@ -75,8 +79,60 @@ public abstract class ConnectionListener<T extends Serializable> implements Runn
         log.info("Ended Connection Listener");
     }
 
+    /**
+     * Delegates a single payload to the appropriate payload handler. This is used by non-blocking
+     * network endpoints, which receive payloads without running this listener on a thread of its
+     * own. If the payload is not acceptable on this connection, the connection is closed.
+     *
+     * @param payload the received payload
+     */
+    public void dispatch(T payload) {
+        try {
+            performDeliveryTracking(payload);
+            handlePayload(payload, getPayloadType(payload));
+        } catch (ConnectionException e) {
+            rejectConnection(e);
+        }
+    }
+
+    /**
+     * Handles the closing of the connection by the remote or the local side. This is used by
+     * non-blocking network endpoints, which notice the closing without a waiting listener thread.
+     */
+    public void handleClose() {
+        performDisconnection();
+    }
+
+    private void rejectConnection(ConnectionException e) {
+        connection.sendPayload(
+            performErrorPayloadCreation(e.getMessage()));
+        performDisconnection();
+    }
+
     private void handlePayload(T payload, PayloadType payloadType) throws ConnectionException {
+        if (payloadType == ACK) {
+            return;
+        }
+
+        if (payloadType == BATCH) {
+            for (T part : getBatchParts(payload)) {
+                if (!connection.getNetworkConnection().isAvailable()) {
+                    return;
+                }
+                handlePayload(part, getPayloadType(part));
+            }
+            return;
+        }
+
         try {
+            if (payloadType == CHUNK) {
+                T assembled = assembleChunk(payload);
+                if (assembled != null) {
+                    handlePayload(assembled, getPayloadType(assembled));
+                }
+                return;
+            }
+
             payloadHandlers.get(payloadType).handle(payload, connection);
         } catch (ChatProtocolException e) {
             connection.sendPayload(
@@ -92,6 +148,32 @@ public abstract class ConnectionListener<T extends Serializable> implements Runn
      */
     protected abstract PayloadType getPayloadType(T payload);
 
+    /**
+     * Gets the parts of the given batch payload, in the order they have to be handled.
+     *
+     * @param payload the batch payload to get the parts for
+     * @return the parts of the batch payload
+     */
+    protected abstract List<T> getBatchParts(T payload);
+
+    /**
+     * Adds the given chunk to the payload being reassembled on the connection.
+     *
+     * @param chunk the received chunk
+     * @return the complete payload if the chunk is the last one, null otherwise
+     * @throws ChatProtocolException if the payload exceeds the maximum size
+     */
+    protected abstract T assembleChunk(T chunk) throws ChatProtocolException;
+
+    /**
+     * Performs the sequencing, acknowledgement and flow control for a payload received on the
+     * connection, before it is handled. Acknowledgements carry no content and are not handled any
+     * further.
+     *
+     * @param payload the received payload
+     */
+    protected abstract void performDeliveryTracking(T payload);
+
     /**
      * Performs the creation of an error payload for the given error message.
      *
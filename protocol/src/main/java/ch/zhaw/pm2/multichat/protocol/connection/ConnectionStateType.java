@@ -19,6 +19,12 @@ public enum ConnectionStateType {
      */
     CONNECTED,
 
+    /**
+     * A connection state indicating that a lost connection is waiting for its session to be
+     * resumed.
+     */
+    CONFIRM_RESUME,
+
     /**
      * A connection state indicating that the disconnect has been confirmed.
      */
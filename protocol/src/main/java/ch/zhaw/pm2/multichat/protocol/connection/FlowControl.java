@@ -0,0 +1,183 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.Delivery.NONE;
+import static java.lang.String.format;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * A class representing the sequencing, acknowledgement and flow control of one connection. Every
+ * payload sent on its own gets the next sequence number and carries the cumulative acknowledgement
+ * of the payloads received so far as well as the receive window of this side. A payload may only
+ * be sent while the number of unacknowledged payloads is below the window advertised by the other
+ * side. If nothing is sent, an acknowledgement is due once half of the receive window has been
+ * received, so the other side never runs out of credit.
+ * <p>
+ * The payloads sent are retained until they are acknowledged, so they can be sent again if the
+ * connection is lost and its session is resumed on a new connection, which continues with the same
+ * flow control. The time between sending a payload and receiving its acknowledgement is measured as
+ * delivery latency. This class is not thread-safe.
+ */
+public class FlowControl {
+
+    /**
+     * The window assumed for the other side until it has advertised its own.
+     */
+    public static final int DEFAULT_WINDOW = 256;
+
+    private final int receiveWindow;
+    private final Queue<SentPayload> unacknowledgedPayloads = new ArrayDeque<>();
+    private long sentSequence;
+    private long acknowledgedSequence;
+    private int sendWindow = DEFAULT_WINDOW;
+    private long receivedSequence;
+    private long announcedSequence;
+    private Duration lastDeliveryLatency = Duration.ZERO;
+
+    /**
+     * Constructs a new FlowControl object with the given receive window.
+     *
+     * @param receiveWindow the number of unacknowledged payloads this side is willing to receive
+     */
+    public FlowControl(int receiveWindow) {
+        if (receiveWindow < 1) {
+            throw new IllegalArgumentException(format("Illegal receive window: %d", receiveWindow));
+        }
+
+        this.receiveWindow = receiveWindow;
+    }
+
+    /**
+     * Determines whether the window of the other side allows sending another payload.
+     *
+     * @return true if a payload may be sent, false otherwise
+     */
+    public boolean hasCredit() {
+        return sentSequence - acknowledgedSequence < sendWindow;
+    }
+
+    /**
+     * Assigns the next sequence number to a payload which is about to be sent. The payload is
+     * retained until it is acknowledged.
+     *
+     * @param payload the payload to send
+     * @return the payload with its delivery information
+     */
+    public Payload send(Payload payload) {
+        sentSequence++;
+        announcedSequence = receivedSequence;
+        Payload sequenced = payload.withDelivery(
+            new Delivery(sentSequence, receivedSequence, receiveWindow));
+        unacknowledgedPayloads.add(new SentPayload(sequenced, System.nanoTime()));
+        return sequenced;
+    }
+
+    /**
+     * Returns the payloads which have been sent but not yet acknowledged, in the order they have
+     * been sent. They keep their sequence numbers but carry the current acknowledgement, so they
+     * can be sent again on a new connection.
+     *
+     * @return the unacknowledged payloads
+     */
+    public List<Payload> getUnacknowledgedPayloads() {
+        announcedSequence = receivedSequence;
+        List<Payload> payloads = new ArrayList<>(unacknowledgedPayloads.size());
+        for (SentPayload sent : unacknowledgedPayloads) {
+            payloads.add(sent.payload().withDelivery(new Delivery(
+                sent.payload().delivery().sequence(), receivedSequence, receiveWindow)));
+        }
+        return payloads;
+    }
+
+    /**
+     * Creates the delivery information of a pure acknowledgement, which has no sequence number of
+     * its own and therefore needs no credit.
+     *
+     * @return the delivery information of the acknowledgement
+     */
+    public Delivery acknowledge() {
+        announcedSequence = receivedSequence;
+        return new Delivery(0, receivedSequence, receiveWindow);
+    }
+
+    /**
+     * Determines whether an acknowledgement has to be sent, because half of the receive window has
+     * been received since the last one.
+     *
+     * @return true if an acknowledgement is due, false otherwise
+     */
+    public boolean isAcknowledgementDue() {
+        return receivedSequence - announcedSequence >= Math.max(1, receiveWindow / 2);
+    }
+
+    /**
+     * Processes the delivery information of a received payload.
+     *
+     * @param delivery the delivery information of the received payload
+     */
+    public void receive(Delivery delivery) {
+        if (NONE.equals(delivery)) {
+            return;
+        }
+
+        receivedSequence = Math.max(receivedSequence, delivery.sequence());
+        long acknowledgement = Math.min(delivery.acknowledgement(), sentSequence);
+        long now = System.nanoTime();
+        while (acknowledgedSequence < acknowledgement) {
+            acknowledgedSequence++;
+            SentPayload sent = unacknowledgedPayloads.poll();
+            if (sent != null) {
+                lastDeliveryLatency = Duration.ofNanos(now - sent.sendTime());
+            }
+        }
+        sendWindow = delivery.window();
+    }
+
+    /**
+     * Returns the sequence number of the last payload sent.
+     *
+     * @return the sequence number of the last payload sent
+     */
+    public long getSentSequence() {
+        return sentSequence;
+    }
+
+    /**
+     * Returns the sequence number of the last payload acknowledged by the other side.
+     *
+     * @return the sequence number of the last acknowledged payload
+     */
+    public long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    /**
+     * Returns the sequence number of the last payload received from the other side.
+     *
+     * @return the sequence number of the last received payload
+     */
+    public long getReceivedSequence() {
+        return receivedSequence;
+    }
+
+    /**
+     * Returns the time between sending the most recently acknowledged payload and receiving its
+     * acknowledgement.
+     *
+     * @return the latency of the last acknowledged payload
+     */
+    public Duration getLastDeliveryLatency() {
+        return lastDeliveryLatency;
+    }
+
+    private record SentPayload(Payload payload, long sendTime) {
+
+    }
+
+}
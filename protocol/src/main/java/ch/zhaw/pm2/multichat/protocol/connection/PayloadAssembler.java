@@ -0,0 +1,74 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static java.lang.String.format;
+
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+
+/**
+ * A class representing the reassembly of payloads received in chunks on one connection. The
+ * chunks of a payload are received in order and one payload after another, but other payloads may
+ * be received between them. The content is collected while the chunks arrive, and the maximum
+ * size is enforced for every chunk, so an oversized payload is rejected before its content is held
+ * in memory. This class is not thread-safe.
+ */
+public class PayloadAssembler {
+
+    /**
+     * The maximum number of characters of content a payload may have by default.
+     */
+    public static final int DEFAULT_MAX_SIZE = 4 << 20;
+
+    private final int maxSize;
+    private final StringBuilder content = new StringBuilder();
+    private boolean discarding;
+
+    /**
+     * Constructs a new PayloadAssembler object accepting payloads up to the given size.
+     *
+     * @param maxSize the maximum number of characters of content of a payload
+     */
+    public PayloadAssembler(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(format("Illegal maximum size: %d", maxSize));
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds the given chunk to the payload being reassembled. Once the last chunk has been added,
+     * the complete payload is returned. If the payload exceeds the maximum size, its content is
+     * discarded and its remaining chunks are ignored.
+     *
+     * @param chunk the received chunk
+     * @return the complete payload if the chunk is the last one, null otherwise
+     * @throws ChatProtocolException if the payload exceeds the maximum size
+     */
+    public Payload append(Payload chunk) throws ChatProtocolException {
+        boolean last = !chunk.parts().isEmpty();
+        if (discarding) {
+            discarding = !last;
+            return null;
+        }
+
+        if (content.length() + chunk.content().length() > maxSize) {
+            content.setLength(0);
+            content.trimToSize();
+            discarding = !last;
+            throw new ChatProtocolException(
+                format("Message exceeds the maximum size of %d characters", maxSize));
+        }
+
+        content.append(chunk.content());
+        if (!last) {
+            return null;
+        }
+
+        Payload payload = chunk.parts().get(0).withContent(content.toString());
+        content.setLength(0);
+        content.trimToSize();
+        return payload;
+    }
+
+}
@@ -0,0 +1,93 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createChunkPayload;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class representing the chunks of a payload whose content is too large to be sent as a single
+ * frame without delaying all other payloads of the connection. The chunks are created one at a
+ * time while they are sent, so the writer of the connection can send other payloads in between and
+ * a payload sent to many connections is not copied for each of them in advance. This class is not
+ * thread-safe.
+ */
+public class PayloadChunker implements Iterator<Payload> {
+
+    /**
+     * The maximum number of characters of content carried by one chunk.
+     */
+    public static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Payload payload;
+    private int offset;
+
+    /**
+     * Constructs a new PayloadChunker object for the given payload.
+     *
+     * @param payload the payload to send in chunks
+     */
+    public PayloadChunker(Payload payload) {
+        if (!requiresChunking(payload)) {
+            throw new IllegalArgumentException("Payload does not require chunking");
+        }
+
+        this.payload = payload;
+    }
+
+    /**
+     * Determines whether the given payload has to be sent in chunks, because its content is larger
+     * than a single chunk. Payloads with parts are never sent in chunks.
+     *
+     * @param payload the payload to send
+     * @return true if the payload has to be sent in chunks, false otherwise
+     */
+    public static boolean requiresChunking(Payload payload) {
+        return payload.parts().isEmpty() && payload.body().isLongerThan(CHUNK_SIZE);
+    }
+
+    /**
+     * Determines whether there are chunks left to send.
+     *
+     * @return true if there are chunks left, false otherwise
+     */
+    @Override
+    public boolean hasNext() {
+        return offset < payload.content().length();
+    }
+
+    /**
+     * Determines whether chunks have been sent already, so the receiver is reassembling the
+     * payload and expects the remaining chunks.
+     *
+     * @return true if at least one chunk has been created, false otherwise
+     */
+    public boolean isStarted() {
+        return offset > 0;
+    }
+
+    /**
+     * Creates the next chunk of the payload. A surrogate pair is never split between two chunks.
+     *
+     * @return the next chunk
+     * @throws NoSuchElementException if all chunks have been created
+     */
+    @Override
+    public Payload next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        String content = payload.content();
+        int end = Math.min(offset + CHUNK_SIZE, content.length());
+        if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+
+        String data = content.substring(offset, end);
+        offset = end;
+        return createChunkPayload(payload, data, !hasNext());
+    }
+
+}
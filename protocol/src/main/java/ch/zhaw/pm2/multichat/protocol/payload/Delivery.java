@@ -0,0 +1,27 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * A record representing the delivery information every payload carries on a connection. The
+ * sequence number identifies the payload on its connection, the acknowledgement confirms all
+ * payloads received from the other side up to this sequence number, and the window tells the
+ * other side how many payloads it may send beyond the acknowledged ones.
+ *
+ * @param sequence        the sequence number of the payload, 0 if the payload is not sequenced
+ * @param acknowledgement the sequence number of the last payload received from the other side
+ * @param window          the number of unacknowledged payloads the sender is willing to receive
+ */
+public record Delivery(long sequence, long acknowledgement, int window) implements Serializable {
+
+    /**
+     * The delivery information of payloads which are not sent on their own, like the parts of a
+     * batch.
+     */
+    public static final Delivery NONE = new Delivery(0, 0, 0);
+
+    @Serial
+    private static final long serialVersionUID = -2480573264517342519L;
+
+}
@@ -0,0 +1,65 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+
+/**
+ * A record representing the offer of a file by one user to another, which is carried as content of
+ * an offer payload. The transfer id is chosen by the offering client and identifies the transfer
+ * when it is accepted and when the data connections of both users are attached to it.
+ *
+ * @param transferId the id of the transfer
+ * @param name       the name of the file, without any directories
+ * @param size       the size of the file in bytes
+ */
+public record FileOffer(String transferId, String name, long size) {
+
+    private static final String SEPARATOR = "/";
+
+    /**
+     * Constructs a new FileOffer object with the specified transfer id, file name and size.
+     *
+     * @param transferId the id of the transfer
+     * @param name       the name of the file, without any directories
+     * @param size       the size of the file in bytes
+     */
+    public FileOffer {
+        requireNonNull(transferId);
+        requireNonNull(name);
+        if (size < 0) {
+            throw new IllegalArgumentException(format("Illegal file size: %d", size));
+        }
+    }
+
+    /**
+     * Parses the content of an offer payload.
+     *
+     * @param content the content of the offer payload
+     * @return the offer contained in the payload
+     * @throws ChatProtocolException if the content is not a valid offer
+     */
+    public static FileOffer fromContent(String content) throws ChatProtocolException {
+        String[] fields = content.split(SEPARATOR, 3);
+        try {
+            if (fields.length == 3 && !fields[0].isBlank() && !fields[2].isBlank()) {
+                return new FileOffer(fields[0], fields[2], Long.parseLong(fields[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through to the error below
+        }
+
+        throw new ChatProtocolException(format("Illegal file offer: %s", content));
+    }
+
+    /**
+     * Returns the content of an offer payload carrying this offer.
+     *
+     * @return the content of the offer payload
+     */
+    public String toContent() {
+        return String.join(SEPARATOR, transferId, Long.toString(size), name);
+    }
+
+}
@@ -0,0 +1,174 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A class representing a bounded table of canonical name instances, which the decoder of a
+ * {@link PayloadCodec} returns instead of decoding a name again. Names are looked up by their UTF-8
+ * bytes right in the received frame, so a name found in the table neither creates a string nor a
+ * byte array. Since every decoded name is then the same instance, names can be compared by
+ * identity in most cases.
+ * <p>
+ * The table holds at most a maximum number of names, names added beyond that are not interned.
+ * It is thread-safe and lock-free: the names are kept in a fixed number of buckets, each of which
+ * is an immutable array replaced as a whole when a name is added or removed.
+ */
+public class InternTable {
+
+    private static final Entry[] EMPTY_BUCKET = new Entry[0];
+
+    private final int maxSize;
+    private final AtomicReferenceArray<Entry[]> buckets;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructs a new InternTable object holding at most the given number of names.
+     *
+     * @param maxSize the maximum number of names
+     */
+    public InternTable(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Size of the table must be positive");
+        }
+
+        this.maxSize = maxSize;
+        this.buckets = new AtomicReferenceArray<>(
+            Integer.highestOneBit(Math.max(1, maxSize - 1)) << 1);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, EMPTY_BUCKET);
+        }
+    }
+
+    /**
+     * Adds the given name to the table, unless the table is full.
+     *
+     * @param name the name to intern
+     * @return the canonical instance of the name, the given name unless it was already interned
+     */
+    public String add(String name) {
+        byte[] utf8 = name.getBytes(UTF_8);
+        int hash = hash(utf8, 0, utf8.length);
+        int index = hash & (buckets.length() - 1);
+        while (true) {
+            Entry[] bucket = buckets.get(index);
+            for (Entry entry : bucket) {
+                if (entry.name().equals(name)) {
+                    return entry.name();
+                }
+            }
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                return name;
+            }
+
+            Entry[] added = Arrays.copyOf(bucket, bucket.length + 1);
+            added[bucket.length] = new Entry(utf8, hash, name);
+            if (buckets.compareAndSet(index, bucket, added)) {
+                return name;
+            }
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the given name from the table.
+     *
+     * @param name the name to evict
+     */
+    public void remove(String name) {
+        requireNonNull(name);
+        byte[] utf8 = name.getBytes(UTF_8);
+        int index = hash(utf8, 0, utf8.length) & (buckets.length() - 1);
+        while (true) {
+            Entry[] bucket = buckets.get(index);
+            int position = 0;
+            while (position < bucket.length && !bucket[position].name().equals(name)) {
+                position++;
+            }
+            if (position == bucket.length) {
+                return;
+            }
+
+            Entry[] removed = EMPTY_BUCKET;
+            if (bucket.length > 1) {
+                removed = new Entry[bucket.length - 1];
+                System.arraycopy(bucket, 0, removed, 0, position);
+                System.arraycopy(bucket, position + 1, removed, position,
+                    bucket.length - position - 1);
+            }
+            if (buckets.compareAndSet(index, bucket, removed)) {
+                size.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Looks up the name encoded in the given range of the given buffer. The position and limit of
+     * the buffer are not changed.
+     *
+     * @param buffer the buffer containing the UTF-8 bytes of the name
+     * @param offset the index of the first byte of the name
+     * @param length the number of bytes of the name
+     * @return the canonical instance of the name, or null if the name is not in the table
+     */
+    public String get(ByteBuffer buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        for (Entry entry : buckets.get(hash & (buckets.length() - 1))) {
+            if (entry.hash() == hash && entry.matches(buffer, offset, length)) {
+                return entry.name();
+            }
+        }
+
+        return null;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return hash ^ hash >>> 16;
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return hash(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    private record Entry(byte[] utf8, int hash, String name) {
+
+        boolean matches(ByteBuffer buffer, int offset, int length) {
+            if (utf8.length != length) {
+                return false;
+            }
+            if (buffer.hasArray()) {
+                int start = buffer.arrayOffset() + offset;
+                return Arrays.equals(utf8, 0, length, buffer.array(), start, start + length);
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (utf8[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
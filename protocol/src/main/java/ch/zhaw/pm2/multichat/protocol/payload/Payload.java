@@ -1,32 +1,146 @@
 package ch.zhaw.pm2.multichat.protocol.payload;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.List;
 
 /**
- * A record representing a payload, consisting of a type, sender, receiver, and content.
+ * A record representing a payload, consisting of a type, sender, receiver, and content. A payload
+ * of type {@link PayloadType#BATCH} additionally carries an ordered list of parts, which are
+ * handled like payloads received one after another. The last chunk of a payload sent in chunks
+ * carries the payload without its content as its only part. All other payloads have no parts. The
+ * {@link Delivery} information is set by the connection right before the payload is sent.
+ * <p>
+ * The content is held as {@link PayloadContent}, so the content of a received payload can be passed
+ * on without decoding it. Its text is returned by {@link #content()}.
  */
-public record Payload(PayloadType type, String sender, String receiver, String content) implements
-    Serializable {
+public record Payload(PayloadType type, String sender, String receiver, PayloadContent body,
+                      List<Payload> parts, Delivery delivery) implements Serializable {
 
     @Serial
-    private static final long serialVersionUID = 4417145662818974403L;
+    private static final long serialVersionUID = -3048553785470402514L;
 
     /**
-     * Constructs a new Payload object with the specified type, sender, receiver, and content.
+     * Constructs a new Payload object with the specified type, sender, receiver, content, parts
+     * and delivery information.
      *
      * @param type     the type of the payload
      * @param sender   the sender of the payload
      * @param receiver the receiver of the payload
-     * @param content  the content of the payload
+     * @param body     the content of the payload
+     * @param parts    the parts of a batch, in the order they are handled
+     * @param delivery the delivery information of the payload on its connection
      */
-    public Payload(PayloadType type, String sender, String receiver, String content) {
+    public Payload(PayloadType type, String sender, String receiver, PayloadContent body,
+        List<Payload> parts, Delivery delivery) {
         this.type = requireNonNull(type);
         this.sender = requireNonNull(sender);
         this.receiver = requireNonNull(receiver);
-        this.content = requireNonNull(content);
+        this.body = requireNonNull(body);
+        this.parts = List.copyOf(parts);
+        this.delivery = requireNonNull(delivery);
+    }
+
+    /**
+     * Constructs a new Payload object with the specified type, sender, receiver, content, parts
+     * and delivery information.
+     *
+     * @param type     the type of the payload
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param content  the content of the payload
+     * @param parts    the parts of a batch, in the order they are handled
+     * @param delivery the delivery information of the payload on its connection
+     */
+    public Payload(PayloadType type, String sender, String receiver, String content,
+        List<Payload> parts, Delivery delivery) {
+        this(type, sender, receiver, PayloadContent.of(content), parts, delivery);
+    }
+
+    /**
+     * Constructs a new Payload object without delivery information with the specified type,
+     * sender, receiver, content and parts.
+     *
+     * @param type     the type of the payload
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param content  the content of the payload
+     * @param parts    the parts of a batch, in the order they are handled
+     */
+    public Payload(PayloadType type, String sender, String receiver, String content,
+        List<Payload> parts) {
+        this(type, sender, receiver, content, parts, Delivery.NONE);
+    }
+
+    /**
+     * Constructs a new Payload object without parts with the specified type, sender, receiver, and
+     * content.
+     *
+     * @param type     the type of the payload
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param content  the content of the payload
+     */
+    public Payload(PayloadType type, String sender, String receiver, String content) {
+        this(type, sender, receiver, content, List.of());
+    }
+
+    /**
+     * Constructs a new Payload object without parts with the specified type, sender, receiver, and
+     * content, e.g. the content of a received payload which is passed on.
+     *
+     * @param type     the type of the payload
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param body     the content of the payload
+     */
+    public Payload(PayloadType type, String sender, String receiver, PayloadContent body) {
+        this(type, sender, receiver, body, List.of(), Delivery.NONE);
+    }
+
+    /**
+     * Returns the text of the content of the payload. Content received in a frame is decoded on
+     * the first call.
+     *
+     * @return the content of the payload
+     */
+    public String content() {
+        return body.toString();
+    }
+
+    /**
+     * Returns a copy of this payload with the given delivery information.
+     *
+     * @param delivery the delivery information of the payload on its connection
+     * @return the payload with the given delivery information
+     */
+    public Payload withDelivery(Delivery delivery) {
+        return new Payload(type, sender, receiver, body, parts, delivery);
+    }
+
+    /**
+     * Returns a copy of this payload with the given content.
+     *
+     * @param content the content of the payload
+     * @return the payload with the given content
+     */
+    public Payload withContent(String content) {
+        return new Payload(type, sender, receiver, PayloadContent.of(content), parts, delivery);
+    }
+
+    /**
+     * Returns a description of this payload, e.g. for logging. The content is only described by
+     * its size, so describing a received payload does not decode its content.
+     *
+     * @return the description of the payload
+     */
+    @Override
+    public String toString() {
+        return format("Payload[type=%s, sender=%s, receiver=%s, content=%d, parts=%s, delivery=%s]",
+            type, sender, receiver, body.size(), parts, delivery);
     }
 
 }
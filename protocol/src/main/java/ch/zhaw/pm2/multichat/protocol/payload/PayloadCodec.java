@@ -0,0 +1,353 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.FrameCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class representing the codec of the frames payloads are sent in. Instead of Java serialization,
+ * which creates a stream and resolves the class descriptors for every frame, payloads are encoded
+ * in a compact binary format with a fixed-size header:
+ * <ul>
+ *     <li>the version of the format (1 byte), only at the start of the frame</li>
+ *     <li>the ordinal of the type (1 byte)</li>
+ *     <li>the sequence number and the acknowledgement (8 bytes each) and the window (4 bytes)</li>
+ *     <li>the sender and the receiver, each as a name (see below)</li>
+ *     <li>the content as length (4 bytes) followed by its UTF-8 bytes</li>
+ *     <li>the number of parts (2 bytes) followed by the parts, encoded the same way</li>
+ * </ul>
+ * A name starts with a tag (1 byte). A literal name is followed by its length (2 bytes) and its
+ * UTF-8 bytes. If the codec uses a {@link SymbolTable}, a name with an id is sent as definition
+ * the first time, i.e. its id (a variable-length integer of 7 bits per byte) followed by the name
+ * like a literal, and afterwards as reference, i.e. only its id. The codec of the other side
+ * remembers the definitions it receives to resolve the references, so a name is decoded only once
+ * per connection. Names received as they are, including definitions, are looked up in an
+ * {@link InternTable} first, so known names are never decoded and always the same instance.
+ * <p>
+ * Received frames are decoded through a {@link PayloadView}, which the codec reuses for every
+ * frame. The content of a decoded payload keeps the bytes it has been received in, which are
+ * written as they are when the payload is encoded again. Since the definitions sent and received
+ * are remembered, frames must be encoded in the order they are sent and decoded in the order they
+ * are received, each by only one thread at a time.
+ */
+public class PayloadCodec implements FrameCodec<Payload> {
+
+    /**
+     * The version of the format, which is checked before a frame is decoded.
+     */
+    public static final byte FORMAT_VERSION = 2;
+
+    private static final int MAX_SHORT_STRING_LENGTH = 0xFFFF;
+    private static final int MAX_PARTS = 0xFFFF;
+    private static final int MAX_NAME_OVERHEAD = Byte.BYTES + 5 + Short.BYTES;
+    private static final int INITIAL_SYMBOLS = 64;
+    private static final int MAX_LEARNED_NAMES = 256;
+
+    private final PayloadView view = new PayloadView(this);
+    private final SymbolTable symbolTable;
+    private final InternTable internedNames;
+    private String[] sentSymbols = initialSymbols();
+    private int[] sentSymbolFrames = new int[INITIAL_SYMBOLS];
+    private int frames;
+    private String[] receivedSymbols = initialSymbols();
+
+    /**
+     * Constructs a new PayloadCodec object, which sends all names as they are. Names sent as ids
+     * by the other side are resolved nevertheless. The names received are interned in a table of
+     * the codec, as long as there is room.
+     */
+    public PayloadCodec() {
+        this.symbolTable = null;
+        this.internedNames = new InternTable(MAX_LEARNED_NAMES);
+        SymbolTable.WELL_KNOWN_NAMES.forEach(internedNames::add);
+    }
+
+    /**
+     * Constructs a new PayloadCodec object, which sends the names with an id in the given table
+     * as ids.
+     *
+     * @param symbolTable the table of the ids of the names
+     */
+    public PayloadCodec(SymbolTable symbolTable) {
+        this.symbolTable = requireNonNull(symbolTable);
+        this.internedNames = symbolTable.getInternedNames();
+    }
+
+    /**
+     * Encodes the given payload into a complete frame.
+     *
+     * @param payload the payload to encode
+     * @return a heap buffer containing the frame, ready to be written
+     * @throws IOException if a field of the payload is too long or the frame exceeds the maximum
+     *                     frame size
+     */
+    @Override
+    public ByteBuffer encodeFrame(Payload payload) throws IOException {
+        int maxLength = Byte.BYTES + getMaxEncodedLength(payload);
+        checkFrameSize(maxLength);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + maxLength)
+            .putInt(0)
+            .put(FORMAT_VERSION);
+        frames++;
+        encode(payload, frame);
+        return frame.putInt(0, frame.position() - Integer.BYTES).flip();
+    }
+
+    /**
+     * Decodes a payload from the data of a frame.
+     *
+     * @param buffer buffer containing the data of the frame
+     * @param offset index of the first byte of the data
+     * @param length number of bytes of the data
+     * @return the decoded payload
+     * @throws IOException if the data is not a valid encoded payload
+     */
+    @Override
+    public Payload decode(ByteBuffer buffer, int offset, int length) throws IOException {
+        return wrap(buffer, offset, length).toPayload();
+    }
+
+    /**
+     * Wraps the view of this codec around the data of a frame, without decoding the payload. The
+     * view is valid until the next frame is wrapped or decoded by this codec.
+     *
+     * @param buffer buffer containing the data of the frame
+     * @param offset index of the first byte of the data
+     * @param length number of bytes of the data
+     * @return the view of the encoded payload
+     * @throws IOException if the data is not a valid encoded payload
+     */
+    public PayloadView wrap(ByteBuffer buffer, int offset, int length) throws IOException {
+        if (length < Byte.BYTES || buffer.get(offset) != FORMAT_VERSION) {
+            throw new IOException("Unsupported frame format");
+        }
+        if (view.wrap(buffer, offset + Byte.BYTES, length - Byte.BYTES).getLength()
+            != length - Byte.BYTES) {
+            throw new IOException("Malformed payload frame");
+        }
+
+        return view;
+    }
+
+    /**
+     * Looks up the canonical instance of the name encoded in the given range of the given buffer.
+     *
+     * @param buffer the buffer containing the UTF-8 bytes of the name
+     * @param offset the index of the first byte of the name
+     * @param length the number of bytes of the name
+     * @return the canonical instance, or null if the name is not interned
+     */
+    String getInternedName(ByteBuffer buffer, int offset, int length) {
+        return internedNames.get(buffer, offset, length);
+    }
+
+    /**
+     * Interns the given decoded name, unless the names are interned by the symbol table of the
+     * codec, which only contains the names with an id.
+     *
+     * @param name the decoded name
+     * @return the canonical instance of the name
+     */
+    String internName(String name) {
+        return symbolTable == null ? internedNames.add(name) : name;
+    }
+
+    /**
+     * Resolves an id defined by the other side.
+     *
+     * @param id the id to resolve
+     * @return the name defined for the id, or null if the id has not been defined
+     */
+    String getReceivedSymbol(int id) {
+        return id >= 0 && id < receivedSymbols.length ? receivedSymbols[id] : null;
+    }
+
+    /**
+     * Remembers an id defined by the other side, replacing a previous definition of the id.
+     *
+     * @param id   the defined id
+     * @param name the name of the id
+     */
+    void defineReceivedSymbol(int id, String name) {
+        if (id >= receivedSymbols.length) {
+            receivedSymbols = Arrays.copyOf(receivedSymbols,
+                Math.max(id + 1, 2 * receivedSymbols.length));
+        }
+        receivedSymbols[id] = name;
+    }
+
+    /**
+     * Determines the maximum number of bytes of the given payload, assuming every name is sent as
+     * definition. Which names are actually defined is only decided while encoding.
+     */
+    private static int getMaxEncodedLength(Payload payload) throws IOException {
+        List<Payload> parts = payload.parts();
+        if (parts.size() > MAX_PARTS) {
+            throw new IOException(format("Too many parts: %d", parts.size()));
+        }
+
+        long length = PayloadView.HEADER_SIZE
+            + MAX_NAME_OVERHEAD + getShortStringLength(payload.sender())
+            + MAX_NAME_OVERHEAD + getShortStringLength(payload.receiver())
+            + Integer.BYTES + getContentLength(payload.body())
+            + Short.BYTES;
+        for (Payload part : parts) {
+            length += getMaxEncodedLength(part);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Payload is too large");
+        }
+
+        return (int) length;
+    }
+
+    private void encode(Payload payload, ByteBuffer buffer) {
+        Delivery delivery = payload.delivery();
+        buffer.put((byte) payload.type().ordinal())
+            .putLong(delivery.sequence())
+            .putLong(delivery.acknowledgement())
+            .putInt(delivery.window());
+        putName(payload.sender(), buffer);
+        putName(payload.receiver(), buffer);
+        PayloadContent body = payload.body();
+        buffer.putInt(getContentLength(body));
+        if (body.getUtf8() != null) {
+            buffer.put(body.getUtf8());
+        } else {
+            putUtf8(body.toString(), buffer);
+        }
+        buffer.putShort((short) payload.parts().size());
+        for (Payload part : payload.parts()) {
+            encode(part, buffer);
+        }
+    }
+
+    /**
+     * Encodes the given name as reference if it has been defined on this connection, as
+     * definition if it has an id, and as literal otherwise. Within a frame, an id always stands for
+     * the same name, so the other side can resolve all references of a frame once it has been
+     * received. If an id has been assigned to another name while the frame is encoded, the name is
+     * sent as literal.
+     */
+    private void putName(String name, ByteBuffer buffer) {
+        int id = symbolTable == null ? SymbolTable.NO_ID : symbolTable.getId(name);
+        if (id != SymbolTable.NO_ID && id >= sentSymbols.length) {
+            sentSymbols = Arrays.copyOf(sentSymbols, Math.max(id + 1, 2 * sentSymbols.length));
+            sentSymbolFrames = Arrays.copyOf(sentSymbolFrames, sentSymbols.length);
+        }
+
+        if (id == SymbolTable.NO_ID
+            || sentSymbolFrames[id] == frames && !name.equals(sentSymbols[id])) {
+            buffer.put(PayloadView.LITERAL_NAME);
+        } else if (name.equals(sentSymbols[id])) {
+            sentSymbolFrames[id] = frames;
+            buffer.put(PayloadView.NAME_REFERENCE);
+            putVarInt(id, buffer);
+            return;
+        } else {
+            sentSymbols[id] = name;
+            sentSymbolFrames[id] = frames;
+            buffer.put(PayloadView.NAME_DEFINITION);
+            putVarInt(id, buffer);
+        }
+
+        buffer.putShort((short) getUtf8Length(name));
+        putUtf8(name, buffer);
+    }
+
+    private static void putVarInt(int value, ByteBuffer buffer) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static String[] initialSymbols() {
+        String[] symbols = new String[INITIAL_SYMBOLS];
+        for (int id = 0; id < SymbolTable.WELL_KNOWN_NAMES.size(); id++) {
+            symbols[id] = SymbolTable.WELL_KNOWN_NAMES.get(id);
+        }
+
+        return symbols;
+    }
+
+    private static int getContentLength(PayloadContent body) {
+        byte[] utf8 = body.getUtf8();
+        return utf8 != null ? utf8.length : getUtf8Length(body.toString());
+    }
+
+    private static int getShortStringLength(String string) throws IOException {
+        int length = getUtf8Length(string);
+        if (length > MAX_SHORT_STRING_LENGTH) {
+            throw new IOException(format("Name of %d bytes is too long", length));
+        }
+
+        return length;
+    }
+
+    /**
+     * Determines the number of bytes of the given string in UTF-8, without encoding it. Unpaired
+     * surrogates are encoded as '?', like {@link String#getBytes} does.
+     */
+    private static int getUtf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(string, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Encodes the given string in UTF-8 right into the given buffer, so no byte array has to be
+     * created for it.
+     */
+    private static void putUtf8(String string, ByteBuffer buffer) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6))
+                    .put((byte) (0x80 | c & 0x3F));
+            } else if (isSurrogatePair(string, i)) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18))
+                    .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                    .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                    .put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12))
+                    .put((byte) (0x80 | c >> 6 & 0x3F))
+                    .put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static boolean isSurrogatePair(String string, int index) {
+        return Character.isHighSurrogate(string.charAt(index)) && index + 1 < string.length()
+            && Character.isLowSurrogate(string.charAt(index + 1));
+    }
+
+}
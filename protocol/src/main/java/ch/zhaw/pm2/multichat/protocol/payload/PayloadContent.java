@@ -0,0 +1,129 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A class representing the content of a payload, which is either text or the UTF-8 bytes of the
+ * text as they have been received in a frame. Received content stays an opaque byte range: it is
+ * only decoded when its text is requested, and it is written to other frames as it is. A server
+ * routing a message therefore neither decodes nor re-encodes its content, so the cost of routing
+ * does not depend on the text.
+ */
+public final class PayloadContent implements Serializable {
+
+    /**
+     * The empty content.
+     */
+    public static final PayloadContent EMPTY = new PayloadContent("", new byte[0]);
+
+    @Serial
+    private static final long serialVersionUID = -6310474417926012563L;
+
+    private final byte[] utf8;
+    private String text;
+
+    private PayloadContent(String text, byte[] utf8) {
+        this.text = text;
+        this.utf8 = utf8;
+    }
+
+    /**
+     * Returns the content consisting of the given text.
+     *
+     * @param text the text of the content
+     * @return the content
+     */
+    public static PayloadContent of(String text) {
+        return text.isEmpty() ? EMPTY : new PayloadContent(text, null);
+    }
+
+    /**
+     * Returns the content consisting of the text encoded in the given UTF-8 bytes. The array is
+     * not copied and must not be changed afterwards.
+     *
+     * @param utf8 the UTF-8 bytes of the text
+     * @return the content
+     */
+    public static PayloadContent ofUtf8(byte[] utf8) {
+        return utf8.length == 0 ? EMPTY : new PayloadContent(null, requireNonNull(utf8));
+    }
+
+    /**
+     * Determines whether the text of this content is longer than the given number of characters.
+     * Encoded content is only decoded if it has more bytes than that, since a character takes at
+     * least one byte.
+     *
+     * @param characters the number of characters
+     * @return true if the text is longer, false otherwise
+     */
+    public boolean isLongerThan(int characters) {
+        if (utf8 != null && utf8.length <= characters) {
+            return false;
+        }
+
+        return toString().length() > characters;
+    }
+
+    /**
+     * Returns the size of this content, which is the number of bytes of encoded content and the
+     * number of characters otherwise. The size is cheap to determine, so it is suited to bound the
+     * amount of content sent at once.
+     *
+     * @return the size of the content
+     */
+    public int size() {
+        return utf8 != null ? utf8.length : text.length();
+    }
+
+    /**
+     * Returns the UTF-8 bytes of this content as they have been received, so they can be written
+     * without encoding the text again. The array must not be changed.
+     *
+     * @return the UTF-8 bytes, or null if the content has not been received encoded
+     */
+    byte[] getUtf8() {
+        return utf8;
+    }
+
+    /**
+     * Returns the text of this content, decoding it on the first call if the content has been
+     * received encoded.
+     *
+     * @return the text of the content
+     */
+    @Override
+    public String toString() {
+        String decoded = text;
+        if (decoded == null) {
+            decoded = new String(utf8, UTF_8);
+            text = decoded;
+        }
+
+        return decoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PayloadContent that)) {
+            return false;
+        }
+        if (utf8 != null && that.utf8 != null) {
+            return Arrays.equals(utf8, that.utf8);
+        }
+        return toString().equals(that.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+}
@@ -1,17 +1,34 @@
 package ch.zhaw.pm2.multichat.protocol.payload;
 
 import static ch.zhaw.pm2.multichat.protocol.Identifiers.SYSTEM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ACCEPT;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ACK;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.BATCH;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CHUNK;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONFIRM;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.DISCONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.NODE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.OFFER;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.RELAY;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.RESUME;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.SESSION;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.TRANSFER;
+
+import java.util.List;
 
 /**
  * A factory class for creating different types of Payload objects.
  */
 public class PayloadFactory {
 
+    /**
+     * The prefix of the content of an error payload redirecting a client to another server node.
+     */
+    public static final String REDIRECT_PREFIX = "Redirect to ";
+
     private PayloadFactory() {
         // private constructor to prevent instantiation
     }
@@ -60,6 +77,20 @@ public class PayloadFactory {
         return new Payload(MESSAGE, sender, receiver, content);
     }
 
+    /**
+     * Creates a new Payload object of type MESSAGE with the specified sender, receiver, and
+     * content, which is passed on without being decoded.
+     *
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param body     the content of the payload
+     * @return the new Payload object
+     */
+    public static Payload createMessagePayload(String sender, String receiver,
+        PayloadContent body) {
+        return new Payload(MESSAGE, sender, receiver, body);
+    }
+
     /**
      * Creates a new Payload object of type ERROR with the specified receiver and content.
      *
@@ -71,4 +102,166 @@ public class PayloadFactory {
         return new Payload(ERROR, SYSTEM, receiver, content);
     }
 
+    /**
+     * Creates a new Payload object of type NODE with the specified node id as sender and the proof
+     * that the sending node is a member of the cluster as content.
+     *
+     * @param nodeId the id of the sending server node
+     * @param proof  the proof that the sending node knows the secret of the cluster
+     * @return the new Payload object
+     */
+    public static Payload createNodePayload(String nodeId, String proof) {
+        return new Payload(NODE, nodeId, SYSTEM, proof);
+    }
+
+    /**
+     * Creates a new Payload object of type ERROR redirecting the specified receiver to another
+     * server node. The content starts with {@link #REDIRECT_PREFIX}, followed by the address of
+     * the node in the form {@code host:port}.
+     *
+     * @param receiver the receiver of the payload
+     * @param address  the address of the server node to connect to
+     * @return the new Payload object
+     */
+    public static Payload createRedirectPayload(String receiver, String address) {
+        return createErrorPayload(receiver, REDIRECT_PREFIX + address);
+    }
+
+    /**
+     * Creates a new Payload object of type RELAY with the specified sender, receiver, and content.
+     *
+     * @param sender   the sender of the relayed message
+     * @param receiver the receiver of the relayed message
+     * @param content  the content of the relayed message
+     * @return the new Payload object
+     */
+    public static Payload createRelayPayload(String sender, String receiver, String content) {
+        return new Payload(RELAY, sender, receiver, content);
+    }
+
+    /**
+     * Creates a new Payload object of type RELAY with the specified sender, receiver, and content,
+     * which is passed on without being decoded.
+     *
+     * @param sender   the sender of the relayed message
+     * @param receiver the receiver of the relayed message
+     * @param body     the content of the relayed message
+     * @return the new Payload object
+     */
+    public static Payload createRelayPayload(String sender, String receiver,
+        PayloadContent body) {
+        return new Payload(RELAY, sender, receiver, body);
+    }
+
+    /**
+     * Creates a new Payload object of type RELAY carrying an error for the specified receiver,
+     * which is registered at the node the payload is relayed to. Relayed errors are told apart
+     * from relayed messages by the system identifier as sender.
+     *
+     * @param receiver the receiver of the error
+     * @param content  the content of the error
+     * @return the new Payload object
+     */
+    public static Payload createRelayedErrorPayload(String receiver, String content) {
+        return new Payload(RELAY, SYSTEM, receiver, content);
+    }
+
+    /**
+     * Creates a new Payload object of type BATCH with the specified parts. The parts are handled
+     * by the receiver in the given order.
+     *
+     * @param parts the payloads to send in one frame
+     * @return the new Payload object
+     */
+    public static Payload createBatchPayload(List<Payload> parts) {
+        return new Payload(BATCH, SYSTEM, SYSTEM, "", parts);
+    }
+
+    /**
+     * Creates a new Payload object of type CHUNK carrying the given part of the content of the
+     * specified payload. The last chunk carries the payload without its content as its only part,
+     * so the receiver can restore the payload once all chunks have arrived.
+     *
+     * @param payload the payload whose content is sent in chunks
+     * @param data    the part of the content carried by the chunk
+     * @param last    whether the chunk is the last one of the payload
+     * @return the new Payload object
+     */
+    public static Payload createChunkPayload(Payload payload, String data, boolean last) {
+        return new Payload(CHUNK, payload.sender(), payload.receiver(), data,
+            last ? List.of(payload.withContent("")) : List.of());
+    }
+
+    /**
+     * Creates a new Payload object of type ACK with the specified delivery information. An
+     * acknowledgement is only sent if there is no other payload to carry the delivery information.
+     *
+     * @param delivery the delivery information containing the acknowledgement
+     * @return the new Payload object
+     */
+    public static Payload createAcknowledgementPayload(Delivery delivery) {
+        return new Payload(ACK, SYSTEM, SYSTEM, "", List.of(), delivery);
+    }
+
+    /**
+     * Creates a new Payload object of type SESSION with the specified receiver and session token.
+     *
+     * @param receiver the receiver of the payload
+     * @param token    the token of the session of the receiver
+     * @return the new Payload object
+     */
+    public static Payload createSessionPayload(String receiver, String token) {
+        return new Payload(SESSION, SYSTEM, receiver, token);
+    }
+
+    /**
+     * Creates a new Payload object of type RESUME with the specified sender and session token and
+     * the delivery information acknowledging the payloads received before the session was lost.
+     *
+     * @param sender   the sender of the payload
+     * @param token    the token of the session to resume
+     * @param delivery the delivery information containing the acknowledgement
+     * @return the new Payload object
+     */
+    public static Payload createResumePayload(String sender, String token, Delivery delivery) {
+        return new Payload(RESUME, sender, SYSTEM, token, List.of(), delivery);
+    }
+
+    /**
+     * Creates a new Payload object of type OFFER with the specified sender, receiver and offer.
+     *
+     * @param sender   the sender of the payload
+     * @param receiver the receiver of the payload
+     * @param offer    the file offered to the receiver
+     * @return the new Payload object
+     */
+    public static Payload createOfferPayload(String sender, String receiver, FileOffer offer) {
+        return new Payload(OFFER, sender, receiver, offer.toContent());
+    }
+
+    /**
+     * Creates a new Payload object of type ACCEPT with the specified sender, receiver and transfer
+     * id.
+     *
+     * @param sender     the sender of the payload, who accepts the offer
+     * @param receiver   the receiver of the payload, who has offered the file
+     * @param transferId the id of the accepted transfer
+     * @return the new Payload object
+     */
+    public static Payload createAcceptPayload(String sender, String receiver, String transferId) {
+        return new Payload(ACCEPT, sender, receiver, transferId);
+    }
+
+    /**
+     * Creates a new Payload object of type TRANSFER with the specified sender and transfer id. It
+     * is the only payload sent on a data connection, the data of the file follows it.
+     *
+     * @param sender     the sender of the payload
+     * @param transferId the id of the transfer the data connection is attached to
+     * @return the new Payload object
+     */
+    public static Payload createTransferPayload(String sender, String transferId) {
+        return new Payload(TRANSFER, sender, SYSTEM, transferId);
+    }
+
 }
@@ -27,6 +27,57 @@ public enum PayloadType {
     /**
      * A payload type for indicating an error.
      */
-    ERROR
+    ERROR,
+
+    /**
+     * A payload type for establishing a link between two server nodes of a cluster.
+     */
+    NODE,
+
+    /**
+     * A payload type for relaying a message from one server node of a cluster to another.
+     */
+    RELAY,
+
+    /**
+     * A payload type for sending several payloads in one frame.
+     */
+    BATCH,
+
+    /**
+     * A payload type for acknowledging received payloads when there is nothing else to send.
+     */
+    ACK,
+
+    /**
+     * A payload type for issuing a session token to a registered client.
+     */
+    SESSION,
+
+    /**
+     * A payload type for resuming a lost session on a new connection.
+     */
+    RESUME,
+
+    /**
+     * A payload type for offering a file to another user.
+     */
+    OFFER,
+
+    /**
+     * A payload type for accepting a file offered by another user.
+     */
+    ACCEPT,
+
+    /**
+     * A payload type for attaching a data connection to a file transfer.
+     */
+    TRANSFER,
+
+    /**
+     * A payload type for a chunk of the content of a payload too large to be sent at once. The
+     * last chunk carries the payload without its content as its only part.
+     */
+    CHUNK
 }
 
@@ -0,0 +1,352 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class representing a read-only view of a payload encoded by the {@link PayloadCodec}, right
+ * over the bytes of its frame. The view is a flyweight, which is reused for every received frame:
+ * wrapping it around a frame only checks the structure of the encoded payload, and the type and
+ * the delivery information are read straight from the frame without creating any objects. Strings
+ * and parts are only decoded on request, e.g. when the payload is materialized by
+ * {@link #toPayload()}. The content of a materialized payload is copied as opaque bytes, it is
+ * only decoded once its text is requested.
+ * <p>
+ * Names sent as ids are resolved by the codec of the view. The definitions of ids contained in a
+ * frame are passed to the codec as soon as the view is wrapped around the frame.
+ * <p>
+ * A view is only valid until the bytes of its frame are overwritten, and it must not be shared
+ * between threads.
+ */
+public class PayloadView {
+
+    /**
+     * The number of bytes of the fixed-size header of an encoded payload, consisting of its type
+     * and its delivery information.
+     */
+    static final int HEADER_SIZE = Byte.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * The tag of a name sent as it is.
+     */
+    static final byte LITERAL_NAME = 0;
+
+    /**
+     * The tag of a name sent with the id it is referenced by from now on.
+     */
+    static final byte NAME_DEFINITION = 1;
+
+    /**
+     * The tag of a name sent as id only.
+     */
+    static final byte NAME_REFERENCE = 2;
+
+    private static final int MAX_DEPTH = 4;
+    private static final int MAX_VAR_INT_SIZE = 5;
+    private static final PayloadType[] TYPES = PayloadType.values();
+
+    private final PayloadCodec codec;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int senderOffset;
+    private int receiverOffset;
+    private int contentOffset;
+    private int partsOffset;
+    private int end;
+    private PayloadView partView;
+
+    /**
+     * Constructs a new PayloadView object resolving the ids of names by the given codec.
+     *
+     * @param codec the codec the view belongs to
+     */
+    PayloadView(PayloadCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Wraps this view around the payload encoded at the given offset of the given buffer. The
+     * position and limit of the buffer are not changed.
+     *
+     * @param buffer the buffer containing the encoded payload
+     * @param offset the index of the first byte of the encoded payload
+     * @param length the maximum number of bytes of the encoded payload
+     * @return this view
+     * @throws IOException if the bytes are not a valid encoded payload
+     */
+    public PayloadView wrap(ByteBuffer buffer, int offset, int length) throws IOException {
+        return wrap(buffer, offset, offset + length, 0);
+    }
+
+    /**
+     * Returns the number of bytes of the wrapped payload, including its parts.
+     *
+     * @return the length of the encoded payload
+     */
+    public int getLength() {
+        return end - offset;
+    }
+
+    /**
+     * Returns the type of the wrapped payload.
+     *
+     * @return the type of the payload
+     */
+    public PayloadType type() {
+        return TYPES[buffer.get(offset)];
+    }
+
+    /**
+     * Returns the sequence number of the wrapped payload.
+     *
+     * @return the sequence number of the payload, 0 if the payload is not sequenced
+     */
+    public long sequence() {
+        return buffer.getLong(offset + Byte.BYTES);
+    }
+
+    /**
+     * Returns the acknowledgement carried by the wrapped payload.
+     *
+     * @return the sequence number of the last payload received from the other side
+     */
+    public long acknowledgement() {
+        return buffer.getLong(offset + Byte.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Returns the window advertised by the wrapped payload.
+     *
+     * @return the number of unacknowledged payloads the sender is willing to receive
+     */
+    public int window() {
+        return buffer.getInt(offset + Byte.BYTES + 2 * Long.BYTES);
+    }
+
+    /**
+     * Decodes the sender of the wrapped payload. A sender sent as id is resolved without decoding.
+     *
+     * @return the sender of the payload
+     */
+    public String sender() {
+        return readName(senderOffset);
+    }
+
+    /**
+     * Decodes the receiver of the wrapped payload. A receiver sent as id is resolved without
+     * decoding.
+     *
+     * @return the receiver of the payload
+     */
+    public String receiver() {
+        return readName(receiverOffset);
+    }
+
+    /**
+     * Decodes the content of the wrapped payload.
+     *
+     * @return the content of the payload
+     */
+    public String content() {
+        return readString(contentOffset, Integer.BYTES);
+    }
+
+    /**
+     * Copies the content of the wrapped payload without decoding it.
+     *
+     * @return the content of the payload as opaque UTF-8 bytes
+     */
+    public PayloadContent body() {
+        int length = getStringLength(contentOffset, Integer.BYTES);
+        byte[] utf8 = new byte[length];
+        buffer.get(contentOffset + Integer.BYTES, utf8);
+        return PayloadContent.ofUtf8(utf8);
+    }
+
+    /**
+     * Returns the number of parts of the wrapped payload.
+     *
+     * @return the number of parts, 0 if the payload is neither a batch nor the last chunk
+     */
+    public int partCount() {
+        return Short.toUnsignedInt(buffer.getShort(partsOffset));
+    }
+
+    /**
+     * Materializes the wrapped payload, including its parts.
+     *
+     * @return the decoded payload
+     * @throws IOException if the bytes of the frame have been overwritten since wrapping
+     */
+    public Payload toPayload() throws IOException {
+        int partCount = partCount();
+        List<Payload> parts = List.of();
+        if (partCount > 0) {
+            parts = new ArrayList<>(partCount);
+            int position = partsOffset + Short.BYTES;
+            for (int i = 0; i < partCount; i++) {
+                PayloadView part = getPartView().wrap(buffer, position, end, 0);
+                parts.add(part.toPayload());
+                position = part.end;
+            }
+        }
+
+        long sequence = sequence();
+        long acknowledgement = acknowledgement();
+        int window = window();
+        Delivery delivery = sequence == 0 && acknowledgement == 0 && window == 0 ? Delivery.NONE
+            : new Delivery(sequence, acknowledgement, window);
+        return new Payload(type(), sender(), receiver(), body(), parts, delivery);
+    }
+
+    private PayloadView wrap(ByteBuffer buffer, int offset, int limit, int depth)
+        throws IOException {
+        if (depth > MAX_DEPTH || limit - offset < HEADER_SIZE) {
+            throw malformed();
+        }
+        int type = buffer.get(offset);
+        if (type < 0 || type >= TYPES.length) {
+            throw malformed();
+        }
+
+        this.buffer = buffer;
+        this.offset = offset;
+        senderOffset = offset + HEADER_SIZE;
+        receiverOffset = skipName(senderOffset, limit);
+        contentOffset = skipName(receiverOffset, limit);
+        partsOffset = skipString(contentOffset, Integer.BYTES, limit);
+        if (limit - partsOffset < Short.BYTES) {
+            throw malformed();
+        }
+
+        int position = partsOffset + Short.BYTES;
+        for (int i = partCount(); i > 0; i--) {
+            position = getPartView().wrap(buffer, position, limit, depth + 1).end;
+        }
+        end = position;
+        return this;
+    }
+
+    private PayloadView getPartView() {
+        if (partView == null) {
+            partView = new PayloadView(codec);
+        }
+
+        return partView;
+    }
+
+    private int skipString(int position, int lengthSize, int limit) throws IOException {
+        if (limit - position < lengthSize) {
+            throw malformed();
+        }
+        int length = getStringLength(position, lengthSize);
+        if (length < 0 || length > limit - position - lengthSize) {
+            throw malformed();
+        }
+
+        return position + lengthSize + length;
+    }
+
+    /**
+     * Skips the name at the given position, passing a definition to the codec. A reference must
+     * resolve to an id defined before.
+     */
+    private int skipName(int position, int limit) throws IOException {
+        if (position >= limit) {
+            throw malformed();
+        }
+        byte tag = buffer.get(position);
+        if (tag == LITERAL_NAME) {
+            return skipString(position + Byte.BYTES, Short.BYTES, limit);
+        }
+        if (tag != NAME_DEFINITION && tag != NAME_REFERENCE) {
+            throw malformed();
+        }
+
+        int id = 0;
+        int idPosition = position + Byte.BYTES;
+        byte b;
+        do {
+            if (idPosition >= limit || idPosition - position > MAX_VAR_INT_SIZE) {
+                throw malformed();
+            }
+            b = buffer.get(idPosition);
+            id |= (b & 0x7F) << 7 * (idPosition - position - Byte.BYTES);
+            idPosition++;
+        } while (b < 0);
+        if (id < 0) {
+            throw malformed();
+        }
+
+        if (tag == NAME_REFERENCE) {
+            if (codec.getReceivedSymbol(id) == null) {
+                throw malformed();
+            }
+            return idPosition;
+        }
+
+        int end = skipString(idPosition, Short.BYTES, limit);
+        codec.defineReceivedSymbol(id, readInternedName(idPosition));
+        return end;
+    }
+
+    /**
+     * Reads the name sent as it is at the given position, returning its canonical instance if it
+     * is interned by the codec.
+     */
+    private String readInternedName(int position) {
+        int length = getStringLength(position, Short.BYTES);
+        String name = codec.getInternedName(buffer, position + Short.BYTES, length);
+        return name != null ? name : codec.internName(readString(position, Short.BYTES));
+    }
+
+    /**
+     * Reads the name at the given position, resolving its id if it has been sent as id.
+     */
+    private String readName(int position) {
+        byte tag = buffer.get(position);
+        if (tag == LITERAL_NAME) {
+            return readInternedName(position + Byte.BYTES);
+        }
+
+        int id = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(++position);
+            id |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return codec.getReceivedSymbol(id);
+    }
+
+    private String readString(int position, int lengthSize) {
+        int length = getStringLength(position, lengthSize);
+        if (length == 0) {
+            return "";
+        }
+
+        int start = position + lengthSize;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private int getStringLength(int position, int lengthSize) {
+        return lengthSize == Short.BYTES ? Short.toUnsignedInt(buffer.getShort(position))
+            : buffer.getInt(position);
+    }
+
+    private static IOException malformed() {
+        return new IOException("Malformed payload frame");
+    }
+
+}
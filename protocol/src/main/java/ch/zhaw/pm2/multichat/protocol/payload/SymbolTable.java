@@ -0,0 +1,130 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.EVERYONE;
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.SYSTEM;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class representing a table of compact numeric ids for names, e.g. the usernames registered at
+ * a server. A {@link PayloadCodec} using the table sends the id of a name instead of the name
+ * itself: the first time a name is sent on a connection, the id is defined along with the name,
+ * and afterwards only the id is sent. The well-known identifiers {@link #WELL_KNOWN_NAMES} have
+ * fixed ids, which are never sent with their name.
+ * <p>
+ * Ids are assigned in ascending order, reusing the lowest id released before, so they stay small
+ * and can be used as array indexes. The ids of a table are only valid on the connections of the
+ * codecs using the table. Names are matched exactly, other spellings of a name are sent as they
+ * are. The table is thread-safe, and looking up the id of a name does not block.
+ * <p>
+ * The names with an id are also interned in an {@link InternTable}, so the codecs using the table
+ * decode them to the same instances even if they are received as they are.
+ */
+public class SymbolTable {
+
+    /**
+     * The id returned for a name without id.
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * The names which have the same fixed id, their index in this list, in every table.
+     */
+    public static final List<String> WELL_KNOWN_NAMES = List.of(SYSTEM, EVERYONE);
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final InternTable internedNames;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final BitSet assignedIds = new BitSet();
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * Constructs a new SymbolTable object containing the well-known names, which interns up to the
+     * given number of names.
+     *
+     * @param maxInternedNames the maximum number of interned names
+     */
+    public SymbolTable(int maxInternedNames) {
+        internedNames = new InternTable(maxInternedNames);
+        WELL_KNOWN_NAMES.forEach(this::register);
+    }
+
+    /**
+     * Returns the table the names with an id are interned in.
+     *
+     * @return the table of interned names
+     */
+    public InternTable getInternedNames() {
+        return internedNames;
+    }
+
+    /**
+     * Assigns the lowest free id to the given name.
+     *
+     * @param name the name to assign an id to
+     * @return the id of the name
+     * @throws IllegalArgumentException if the name already has an id
+     */
+    public synchronized int register(String name) {
+        requireNonNull(name);
+        if (ids.containsKey(name)) {
+            throw new IllegalArgumentException(format("Name %s already has an id", name));
+        }
+
+        int id = assignedIds.nextClearBit(0);
+        assignedIds.set(id);
+        if (id == names.length) {
+            names = Arrays.copyOf(names, 2 * names.length);
+        }
+        names[id] = name;
+        ids.put(name, id);
+        internedNames.add(name);
+        return id;
+    }
+
+    /**
+     * Releases the given id, which may then be assigned to another name. The ids of the
+     * well-known names are never released.
+     *
+     * @param id the id to release
+     */
+    public synchronized void unregister(int id) {
+        if (id < WELL_KNOWN_NAMES.size() || !assignedIds.get(id)) {
+            return;
+        }
+
+        ids.remove(names[id], id);
+        internedNames.remove(names[id]);
+        names[id] = null;
+        assignedIds.clear(id);
+    }
+
+    /**
+     * Returns the id of the given name.
+     *
+     * @param name the name to look up
+     * @return the id of the name, or {@link #NO_ID} if the name has no id
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * Returns the name the given id is assigned to.
+     *
+     * @param id the id to look up
+     * @return the name, or null if the id is not assigned
+     */
+    public synchronized String getName(int id) {
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+}
@@ -0,0 +1,177 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker.CHUNK_SIZE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createBatchPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
+import java.io.EOFException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests how a {@link ConnectionListener} unpacks the batches received on a connection the way the
+ * client does, and dispatches their parts in order.
+ */
+class ConnectionListenerTest {
+
+    private final TestEndpoint endpoint = new TestEndpoint();
+    private final Connection<Payload> connection = new Connection<>(endpoint);
+    private final List<Payload> handled = new ArrayList<>();
+    private final TestListener listener = new TestListener(connection,
+        Map.of(MESSAGE, this::handle, ERROR, this::handle));
+
+    @Test
+    void dispatchesPartsOfBatchInOrder() {
+        List<Payload> parts = List.of(message("first"),
+            createErrorPayload("bob", "second"), message("third"));
+
+        listener.dispatch(createBatchPayload(parts));
+
+        assertEquals(parts, handled);
+        assertEquals(1, listener.trackedFrames);
+    }
+
+    @Test
+    void dispatchesBatchesInOrderOfArrival() {
+        endpoint.frames.add(createBatchPayload(List.of(message("first"), message("second"))));
+        endpoint.frames.add(message("third"));
+        endpoint.frames.add(createBatchPayload(List.of(message("fourth"))));
+
+        listener.run();
+
+        assertEquals(List.of("first", "second", "third", "fourth"),
+            handled.stream().map(Payload::content).toList());
+        assertEquals(3, listener.trackedFrames);
+        assertTrue(listener.disconnected);
+    }
+
+    @Test
+    void reassemblesChunksBatchedWithOtherParts() {
+        Payload large = message("a".repeat(2 * CHUNK_SIZE + 1));
+        List<Payload> parts = new ArrayList<>();
+        parts.add(message("before"));
+        new PayloadChunker(large).forEachRemaining(parts::add);
+        parts.add(message("after"));
+
+        listener.dispatch(createBatchPayload(parts));
+
+        assertEquals(List.of(message("before"), large, message("after")), handled);
+    }
+
+    @Test
+    void stopsDispatchingPartsOnceConnectionIsClosed() {
+        listener.dispatch(createBatchPayload(List.of(message("first"),
+            createErrorPayload("bob", "close"), message("third"))));
+
+        assertEquals(List.of("first", "close"), handled.stream().map(Payload::content).toList());
+    }
+
+    private void handle(Payload payload, Connection<Payload> connection) {
+        handled.add(payload);
+        if (payload.content().equals("close")) {
+            endpoint.available = false;
+        }
+    }
+
+    private static Payload message(String content) {
+        return createMessagePayload("alice", "bob", content);
+    }
+
+    /**
+     * A listener treating the payloads like the listener of the client.
+     */
+    private static class TestListener extends ConnectionListener<Payload> {
+
+        private final PayloadAssembler assembler = new PayloadAssembler(1 << 20);
+        private int trackedFrames;
+        private boolean disconnected;
+
+        private TestListener(Connection<Payload> connection,
+            Map<PayloadType, PayloadHandler<Payload>> payloadHandlers) {
+            super(connection, payloadHandlers);
+        }
+
+        @Override
+        protected PayloadType getPayloadType(Payload payload) {
+            return payload.type();
+        }
+
+        @Override
+        protected List<Payload> getBatchParts(Payload payload) {
+            return payload.parts();
+        }
+
+        @Override
+        protected Payload assembleChunk(Payload chunk) throws ChatProtocolException {
+            return assembler.append(chunk);
+        }
+
+        @Override
+        protected void performDeliveryTracking(Payload payload) {
+            trackedFrames++;
+        }
+
+        @Override
+        protected Payload performErrorPayloadCreation(String message) {
+            return createErrorPayload("bob", message);
+        }
+
+        @Override
+        protected void performDisconnection() {
+            disconnected = true;
+        }
+
+    }
+
+    /**
+     * An endpoint receiving the queued frames, which is closed by the other side afterwards.
+     */
+    private static class TestEndpoint implements NetworkEndpoint<Payload> {
+
+        private final Queue<Payload> frames = new ArrayDeque<>();
+        private boolean available = true;
+
+        @Override
+        public void send(Payload data) {
+        }
+
+        @Override
+        public Payload receive() throws EOFException {
+            if (frames.isEmpty()) {
+                throw new EOFException("Closed by the other side");
+            }
+            return frames.poll();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !available;
+        }
+
+        @Override
+        public void close() {
+            available = false;
+        }
+
+    }
+
+}
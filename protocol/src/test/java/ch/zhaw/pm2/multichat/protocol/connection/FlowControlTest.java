@@ -0,0 +1,135 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the sequencing, acknowledgement and window handling of {@link FlowControl}.
+ */
+class FlowControlTest {
+
+    private final FlowControl flowControl = new FlowControl(8);
+
+    @Test
+    void rejectsEmptyReceiveWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new FlowControl(0));
+    }
+
+    @Test
+    void sequencesSentPayloadsWithReceiveWindow() {
+        Payload first = flowControl.send(message("first"));
+        Payload second = flowControl.send(message("second"));
+
+        assertEquals(new Delivery(1, 0, 8), first.delivery());
+        assertEquals(new Delivery(2, 0, 8), second.delivery());
+        assertEquals(2, flowControl.getSentSequence());
+    }
+
+    @Test
+    void hasCreditOnlyWithinWindowOfOtherSide() {
+        flowControl.receive(new Delivery(1, 0, 2));
+        assertTrue(flowControl.hasCredit());
+        flowControl.send(message("first"));
+        assertTrue(flowControl.hasCredit());
+        flowControl.send(message("second"));
+        assertFalse(flowControl.hasCredit());
+
+        flowControl.receive(new Delivery(2, 1, 2));
+
+        assertTrue(flowControl.hasCredit());
+    }
+
+    @Test
+    void acknowledgementsAreCumulative() {
+        for (int i = 0; i < 5; i++) {
+            flowControl.send(message("payload " + i));
+        }
+
+        flowControl.receive(new Delivery(1, 3, 8));
+        flowControl.receive(new Delivery(2, 2, 8));
+
+        assertEquals(3, flowControl.getAcknowledgedSequence());
+        assertEquals(2, flowControl.getUnacknowledgedPayloads().size());
+    }
+
+    @Test
+    void ignoresAcknowledgementOfPayloadsNotSent() {
+        flowControl.send(message("only"));
+
+        flowControl.receive(new Delivery(1, 5, 8));
+
+        assertEquals(1, flowControl.getAcknowledgedSequence());
+        assertTrue(flowControl.getUnacknowledgedPayloads().isEmpty());
+    }
+
+    @Test
+    void acknowledgesReceivedPayloadsCumulatively() {
+        flowControl.receive(new Delivery(3, 0, 8));
+        flowControl.receive(new Delivery(2, 0, 8));
+
+        assertEquals(3, flowControl.getReceivedSequence());
+        assertEquals(new Delivery(0, 3, 8), flowControl.acknowledge());
+        assertEquals(3, flowControl.send(message("reply")).delivery().acknowledgement());
+    }
+
+    @Test
+    void acknowledgementIsDueAfterHalfTheReceiveWindow() {
+        flowControl.receive(new Delivery(3, 0, 8));
+        assertFalse(flowControl.isAcknowledgementDue());
+
+        flowControl.receive(new Delivery(4, 0, 8));
+        assertTrue(flowControl.isAcknowledgementDue());
+
+        flowControl.acknowledge();
+        assertFalse(flowControl.isAcknowledgementDue());
+    }
+
+    @Test
+    void sendingCarriesAcknowledgement() {
+        flowControl.receive(new Delivery(4, 0, 8));
+
+        flowControl.send(message("reply"));
+
+        assertFalse(flowControl.isAcknowledgementDue());
+    }
+
+    @Test
+    void ignoresPayloadsWithoutDelivery() {
+        flowControl.send(message("first"));
+
+        flowControl.receive(Delivery.NONE);
+
+        assertEquals(0, flowControl.getAcknowledgedSequence());
+        assertEquals(0, flowControl.getReceivedSequence());
+        assertTrue(flowControl.hasCredit());
+    }
+
+    @Test
+    void retainsPayloadsAfterPartialAcknowledgement() {
+        for (int i = 1; i <= 4; i++) {
+            flowControl.send(message("payload " + i));
+        }
+        flowControl.receive(new Delivery(5, 2, 8));
+
+        List<Payload> unacknowledged = flowControl.getUnacknowledgedPayloads();
+
+        assertEquals(2, unacknowledged.size());
+        assertEquals("payload 3", unacknowledged.get(0).content());
+        assertEquals(new Delivery(3, 5, 8), unacknowledged.get(0).delivery());
+        assertEquals("payload 4", unacknowledged.get(1).content());
+        assertEquals(new Delivery(4, 5, 8), unacknowledged.get(1).delivery());
+    }
+
+    private static Payload message(String content) {
+        return createMessagePayload("alice", "bob", content);
+    }
+
+}
@@ -0,0 +1,118 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker.CHUNK_SIZE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CHUNK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the reassembly of payloads received in chunks by {@link PayloadAssembler}, and the
+ * enforcement of the maximum size while the chunks arrive.
+ */
+class PayloadAssemblerTest {
+
+    private static final int MAX_SIZE = 3 * CHUNK_SIZE;
+
+    private final PayloadAssembler assembler = new PayloadAssembler(MAX_SIZE);
+
+    @Test
+    void rejectsEmptyMaximumSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PayloadAssembler(0));
+    }
+
+    @Test
+    void reassemblesPayloadOfMaximumSize() throws ChatProtocolException {
+        Payload payload = createMessagePayload("alice", "bob", content('a', MAX_SIZE));
+        List<Payload> chunks = chunk(payload);
+
+        for (Payload chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertNull(assembler.append(chunk));
+        }
+
+        assertEquals(payload, assembler.append(chunks.get(chunks.size() - 1)));
+    }
+
+    @Test
+    void rejectsOversizedPayloadAtChunkExceedingLimit() throws ChatProtocolException {
+        List<Payload> chunks = chunk(createMessagePayload("alice", "bob",
+            content('a', MAX_SIZE + 2 * CHUNK_SIZE)));
+        assertEquals(5, chunks.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(assembler.append(chunks.get(i)));
+        }
+        assertThrows(ChatProtocolException.class, () -> assembler.append(chunks.get(3)));
+        assertNull(assembler.append(chunks.get(4)));
+
+        Payload next = createMessagePayload("bob", "alice", content('b', 2 * CHUNK_SIZE));
+        assertEquals(next, reassemble(chunk(next)));
+    }
+
+    @Test
+    void rejectsOversizedPayloadAtItsLastChunk() throws ChatProtocolException {
+        List<Payload> chunks = chunk(createMessagePayload("alice", "bob",
+            content('a', MAX_SIZE + 1)));
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(assembler.append(chunks.get(i)));
+        }
+        assertThrows(ChatProtocolException.class, () -> assembler.append(chunks.get(3)));
+
+        Payload next = createMessagePayload("bob", "alice", content('b', CHUNK_SIZE + 1));
+        assertEquals(next, reassemble(chunk(next)));
+    }
+
+    @Test
+    void reassemblesChunksInterleavedWithOtherPayloads() throws ChatProtocolException {
+        Payload first = createMessagePayload("alice", "bob", content('a', 2 * CHUNK_SIZE + 7));
+        Payload second = createMessagePayload("bob", "alice", content('b', CHUNK_SIZE + 1));
+        List<Payload> firstChunks = chunk(first);
+        List<Payload> secondChunks = chunk(second);
+        List<Payload> received = List.of(message("1"), firstChunks.get(0), message("2"),
+            firstChunks.get(1), message("3"), message("4"), firstChunks.get(2),
+            secondChunks.get(0), message("5"), secondChunks.get(1));
+
+        List<Payload> handled = new ArrayList<>();
+        for (Payload payload : received) {
+            Payload complete = payload.type() == CHUNK ? assembler.append(payload) : payload;
+            if (complete != null) {
+                handled.add(complete);
+            }
+        }
+
+        assertEquals(List.of(message("1"), message("2"), message("3"), message("4"), first,
+            message("5"), second), handled);
+    }
+
+    private Payload reassemble(List<Payload> chunks) throws ChatProtocolException {
+        Payload payload = null;
+        for (Payload chunk : chunks) {
+            payload = assembler.append(chunk);
+        }
+
+        return payload;
+    }
+
+    private static List<Payload> chunk(Payload payload) {
+        List<Payload> chunks = new ArrayList<>();
+        new PayloadChunker(payload).forEachRemaining(chunks::add);
+        return chunks;
+    }
+
+    private static Payload message(String content) {
+        return createMessagePayload("carol", "dave", content);
+    }
+
+    private static String content(char c, int length) {
+        return String.valueOf(c).repeat(length);
+    }
+
+}
@@ -0,0 +1,90 @@
+package ch.zhaw.pm2.multichat.protocol.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker.CHUNK_SIZE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CHUNK;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the splitting of large payloads into chunks by {@link PayloadChunker}.
+ */
+class PayloadChunkerTest {
+
+    private static final String SMILEY = "\uD83D\uDE00";
+
+    @Test
+    void rejectsPayloadNotRequiringChunking() {
+        Payload payload = createMessagePayload("alice", "bob", "x".repeat(CHUNK_SIZE));
+
+        assertFalse(PayloadChunker.requiresChunking(payload));
+        assertThrows(IllegalArgumentException.class, () -> new PayloadChunker(payload));
+    }
+
+    @Test
+    void splitsContentIntoChunksWithPayloadInLastChunk() {
+        String content = "x".repeat(2 * CHUNK_SIZE + 1);
+        Payload payload = createMessagePayload("alice", "bob", content);
+        PayloadChunker chunker = new PayloadChunker(payload);
+        assertFalse(chunker.isStarted());
+
+        List<Payload> chunks = chunkAll(chunker);
+
+        assertTrue(chunker.isStarted());
+        assertEquals(3, chunks.size());
+        assertEquals(List.of(CHUNK_SIZE, CHUNK_SIZE, 1),
+            chunks.stream().map(chunk -> chunk.content().length()).toList());
+        assertTrue(chunks.stream().allMatch(chunk -> chunk.type() == CHUNK));
+        assertTrue(chunks.get(0).parts().isEmpty());
+        assertTrue(chunks.get(1).parts().isEmpty());
+        Payload restored = chunks.get(2).parts().get(0);
+        assertEquals(MESSAGE, restored.type());
+        assertEquals("alice", restored.sender());
+        assertEquals("bob", restored.receiver());
+        assertEquals(content, join(chunks));
+        assertThrows(NoSuchElementException.class, chunker::next);
+    }
+
+    @Test
+    void neverSplitsSurrogatePair() {
+        for (int shift = 0; shift < 3; shift++) {
+            String content = "x".repeat(CHUNK_SIZE - 1 - shift) + SMILEY.repeat(CHUNK_SIZE);
+
+            List<Payload> chunks = chunkAll(
+                new PayloadChunker(createMessagePayload("alice", "bob", content)));
+
+            for (Payload chunk : chunks) {
+                String data = chunk.content();
+                assertFalse(Character.isLowSurrogate(data.charAt(0)));
+                assertFalse(Character.isHighSurrogate(data.charAt(data.length() - 1)));
+                assertTrue(data.length() <= CHUNK_SIZE);
+            }
+            assertEquals(content, join(chunks));
+        }
+    }
+
+    private static List<Payload> chunkAll(PayloadChunker chunker) {
+        List<Payload> chunks = new ArrayList<>();
+        while (chunker.hasNext()) {
+            chunks.add(chunker.next());
+        }
+
+        return chunks;
+    }
+
+    private static String join(List<Payload> chunks) {
+        StringBuilder content = new StringBuilder();
+        chunks.forEach(chunk -> content.append(chunk.content()));
+        return content.toString();
+    }
+
+}
@@ -0,0 +1,158 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the interning of names by {@link InternTable}, including concurrent updates.
+ */
+class InternTableTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void rejectsEmptyTable() {
+        assertThrows(IllegalArgumentException.class, () -> new InternTable(0));
+    }
+
+    @Test
+    void returnsCanonicalInstance() {
+        InternTable table = new InternTable(4);
+        String name = new String("alice");
+
+        assertSame(name, table.add(name));
+        assertSame(name, table.add(new String("alice")));
+    }
+
+    @Test
+    void findsNameByItsBytes() {
+        InternTable table = new InternTable(4);
+        String name = table.add("gr\u00fcezi");
+        byte[] utf8 = name.getBytes(UTF_8);
+        ByteBuffer heap = ByteBuffer.allocate(utf8.length + 3).put(3, utf8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length).put(0, utf8);
+
+        assertSame(name, table.get(heap, 3, utf8.length));
+        assertSame(name, table.get(direct, 0, utf8.length));
+        assertNull(table.get(heap, 3, utf8.length - 1));
+        assertEquals(0, heap.position());
+    }
+
+    @Test
+    void doesNotInternBeyondMaximumSize() {
+        InternTable table = new InternTable(2);
+        table.add("alice");
+        table.add("bob");
+        String carol = new String("carol");
+
+        assertSame(carol, table.add(carol));
+        assertNotSame(carol, table.add(new String("carol")));
+        assertNull(get(table, "carol"));
+    }
+
+    @Test
+    void makesRoomByRemovingName() {
+        InternTable table = new InternTable(2);
+        table.add("alice");
+        table.add("bob");
+
+        table.remove("alice");
+        table.remove("alice");
+        String carol = table.add("carol");
+
+        assertNull(get(table, "alice"));
+        assertSame(carol, get(table, "carol"));
+        assertSame(carol, table.add(new String("carol")));
+    }
+
+    @Test
+    void concurrentAddsAgreeOnOneInstance() throws Exception {
+        InternTable table = new InternTable(64);
+        List<List<String>> added = runConcurrently(thread -> {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                names.add(table.add(new String("user" + i)));
+            }
+            return names;
+        });
+
+        for (int i = 0; i < 32; i++) {
+            String canonical = get(table, "user" + i);
+            for (List<String> names : added) {
+                assertSame(canonical, names.get(i));
+            }
+        }
+    }
+
+    @Test
+    void concurrentAddsAndRemovesKeepTableConsistent() throws Exception {
+        InternTable table = new InternTable(THREADS);
+        runConcurrently(thread -> {
+            for (int i = 0; i < 10_000; i++) {
+                String name = "user" + thread + "-" + i % 4;
+                table.add(name);
+                table.remove(name);
+            }
+            return null;
+        });
+
+        for (int i = 0; i < THREADS; i++) {
+            String name = table.add(new String("user" + i));
+            assertSame(name, get(table, "user" + i));
+        }
+        String beyond = new String("beyond");
+        table.add(beyond);
+        assertNull(get(table, "beyond"));
+    }
+
+    private static String get(InternTable table, String name) {
+        byte[] utf8 = name.getBytes(UTF_8);
+        return table.get(ByteBuffer.wrap(utf8), 0, utf8.length);
+    }
+
+    /**
+     * Runs the given task on several threads at once and returns their results.
+     */
+    private static <T> List<T> runConcurrently(Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int index = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.run(index);
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Task<T> {
+
+        T run(int thread);
+
+    }
+
+}
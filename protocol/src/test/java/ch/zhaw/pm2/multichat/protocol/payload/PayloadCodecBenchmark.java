@@ -0,0 +1,85 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.FrameCodec;
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the bytes allocated and the time taken per decoded frame by Java serialization, by
+ * {@link PayloadCodec} and by reading the header through a {@link PayloadView}. Only runs with
+ * {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class PayloadCodecBenchmark {
+
+    private static final int FRAMES = 200_000;
+    private static final int ROUNDS = 5;
+
+    private final ThreadMXBean threadBean =
+        (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void decodeAllocatesLessThanSerialization() throws Exception {
+        Payload payload = createMessagePayload("alice", "bob", "Hello there, how are you?")
+            .withDelivery(new Delivery(42, 17, 256));
+        FrameCodec<Payload> serialization = NetworkHandler.serializationCodec();
+        PayloadCodec codec = new PayloadCodec();
+        ByteBuffer serializedFrame = serialization.encodeFrame(payload);
+        ByteBuffer codecFrame = codec.encodeFrame(payload);
+
+        Result serialized = null;
+        Result decoded = null;
+        Result viewed = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            serialized = measure(() -> decode(serialization, serializedFrame));
+            decoded = measure(() -> decode(codec, codecFrame));
+            viewed = measure(() -> codec.wrap(codecFrame, Integer.BYTES,
+                codecFrame.remaining() - Integer.BYTES).sequence());
+        }
+
+        System.out.printf("serialization: %s%ncodec: %s%nview: %s%n", serialized, decoded,
+            viewed);
+        assertTrue(decoded.bytesPerFrame() < serialized.bytesPerFrame());
+        assertTrue(viewed.bytesPerFrame() < decoded.bytesPerFrame());
+    }
+
+    private Result measure(Decoder decoder) throws Exception {
+        long allocated = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            decoder.decode();
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result((threadBean.getCurrentThreadAllocatedBytes() - allocated) / FRAMES,
+            (double) nanos / FRAMES);
+    }
+
+    private static Object decode(FrameCodec<Payload> codec, ByteBuffer frame)
+        throws IOException, ClassNotFoundException {
+        return codec.decode(frame, Integer.BYTES, frame.remaining() - Integer.BYTES);
+    }
+
+    private interface Decoder {
+
+        Object decode() throws Exception;
+
+    }
+
+    private record Result(long bytesPerFrame, double nanosPerFrame) {
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes, %.0f ns per frame", bytesPerFrame, nanosPerFrame);
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createBatchPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the encoding of payloads by {@link PayloadCodec}, including the names sent as ids and the
+ * rejection of malformed frames.
+ */
+class PayloadCodecTest {
+
+    private static final int SENDER_POSITION = Integer.BYTES + Byte.BYTES + PayloadView.HEADER_SIZE;
+
+    private SymbolTable symbolTable;
+    private PayloadCodec sender;
+    private PayloadCodec receiver;
+
+    @BeforeEach
+    void setUp() {
+        symbolTable = new SymbolTable(64);
+        sender = new PayloadCodec(symbolTable);
+        receiver = new PayloadCodec();
+    }
+
+    @Test
+    void decodesEncodedPayload() throws IOException {
+        Payload payload = createMessagePayload("alice", "bob", "Gr\u00fcezi \ud83d\ude00")
+            .withDelivery(new Delivery(42, 17, 256));
+
+        assertEquals(payload, decode(receiver, sender.encodeFrame(payload)));
+    }
+
+    @Test
+    void decodesPartsInOrder() throws IOException {
+        Payload batch = createBatchPayload(List.of(createMessagePayload("alice", "bob", "first"),
+            createMessagePayload("carol", "bob", "second")));
+
+        Payload decoded = decode(receiver, sender.encodeFrame(batch));
+
+        assertEquals(batch, decoded);
+        assertEquals("second", decoded.parts().get(1).content());
+    }
+
+    @Test
+    void sendsNameWithoutIdAsLiteral() throws IOException {
+        ByteBuffer frame = sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+
+        assertEquals(PayloadView.LITERAL_NAME, frame.get(SENDER_POSITION));
+        assertEquals("alice", decode(receiver, frame).sender());
+    }
+
+    @Test
+    void definesNameWithIdOnceAndReferencesItAfterwards() throws IOException {
+        symbolTable.register("alice");
+        Payload payload = createMessagePayload("alice", "bob", "hi");
+
+        ByteBuffer first = sender.encodeFrame(payload);
+        ByteBuffer second = sender.encodeFrame(payload);
+
+        assertEquals(PayloadView.NAME_DEFINITION, first.get(SENDER_POSITION));
+        assertEquals(PayloadView.NAME_REFERENCE, second.get(SENDER_POSITION));
+        assertTrue(second.remaining() < first.remaining());
+        String defined = decode(receiver, first).sender();
+        assertEquals("alice", defined);
+        assertSame(defined, decode(receiver, second).sender());
+    }
+
+    @Test
+    void redefinesReleasedIdInNewFrame() throws IOException {
+        int id = symbolTable.register("alice");
+        decode(receiver, sender.encodeFrame(createMessagePayload("alice", "bob", "hi")));
+        symbolTable.unregister(id);
+        assertEquals(id, symbolTable.register("carol"));
+
+        ByteBuffer redefinition = sender.encodeFrame(createMessagePayload("carol", "bob", "hi"));
+        ByteBuffer reference = sender.encodeFrame(createMessagePayload("carol", "bob", "hi"));
+
+        assertEquals(PayloadView.NAME_DEFINITION, redefinition.get(SENDER_POSITION));
+        assertEquals("carol", decode(receiver, redefinition).sender());
+        assertEquals(PayloadView.NAME_REFERENCE, reference.get(SENDER_POSITION));
+        assertEquals("carol", decode(receiver, reference).sender());
+    }
+
+    @Test
+    void rejectsReferenceToUndefinedId() throws IOException {
+        symbolTable.register("alice");
+        sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+        ByteBuffer reference = sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+
+        assertThrows(IOException.class, () -> decode(receiver, reference));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() throws IOException {
+        symbolTable.register("alice");
+        Payload batch = createBatchPayload(List.of(createMessagePayload("alice", "bob", "hi"),
+            createMessagePayload("carol", "bob", "there")));
+        ByteBuffer frame = sender.encodeFrame(batch);
+        int length = frame.remaining() - Integer.BYTES;
+
+        for (int truncated = 0; truncated < length; truncated++) {
+            int truncatedLength = truncated;
+            assertThrows(IOException.class,
+                () -> new PayloadCodec().decode(frame, Integer.BYTES, truncatedLength),
+                "Frame truncated to " + truncated + " bytes");
+        }
+    }
+
+    @Test
+    void rejectsUnsupportedFormatVersion() throws IOException {
+        ByteBuffer frame = sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+        frame.put(Integer.BYTES, (byte) (PayloadCodec.FORMAT_VERSION + 1));
+
+        assertThrows(IOException.class, () -> decode(receiver, frame));
+    }
+
+    @Test
+    void rejectsUnknownType() throws IOException {
+        ByteBuffer frame = sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+        frame.put(Integer.BYTES + Byte.BYTES, (byte) PayloadType.values().length);
+
+        assertThrows(IOException.class, () -> decode(receiver, frame));
+    }
+
+    @Test
+    void rejectsUnknownNameTag() throws IOException {
+        ByteBuffer frame = sender.encodeFrame(createMessagePayload("alice", "bob", "hi"));
+        frame.put(SENDER_POSITION, (byte) 7);
+
+        assertThrows(IOException.class, () -> decode(receiver, frame));
+    }
+
+    @Test
+    void rejectsOverlongId() {
+        ByteBuffer frame = ByteBuffer.allocate(64)
+            .putInt(0)
+            .put(PayloadCodec.FORMAT_VERSION)
+            .put((byte) PayloadType.MESSAGE.ordinal())
+            .putLong(0)
+            .putLong(0)
+            .putInt(0)
+            .put(PayloadView.NAME_REFERENCE);
+        for (int i = 0; i < 6; i++) {
+            frame.put((byte) 0x80);
+        }
+        frame.put((byte) 0);
+        frame.putInt(0, frame.position() - Integer.BYTES).flip();
+
+        assertThrows(IOException.class, () -> decode(receiver, frame));
+    }
+
+    @Test
+    void decodesNestedPartsUpToMaximumDepth() throws IOException {
+        Payload nested = nest(4);
+
+        assertEquals(nested, decode(receiver, sender.encodeFrame(nested)));
+        assertThrows(IOException.class, () -> decode(receiver, sender.encodeFrame(nest(5))));
+    }
+
+    private static Payload nest(int depth) {
+        Payload payload = createMessagePayload("alice", "bob", "innermost");
+        for (int i = 0; i < depth; i++) {
+            payload = createBatchPayload(List.of(payload));
+        }
+
+        return payload;
+    }
+
+    private static Payload decode(PayloadCodec codec, ByteBuffer frame) throws IOException {
+        return codec.decode(frame, Integer.BYTES, frame.remaining() - Integer.BYTES);
+    }
+
+}
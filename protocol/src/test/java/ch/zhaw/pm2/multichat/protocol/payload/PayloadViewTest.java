@@ -0,0 +1,75 @@
+package ch.zhaw.pm2.multichat.protocol.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createBatchPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the access to encoded payloads through the {@link PayloadView} of a {@link PayloadCodec}.
+ */
+class PayloadViewTest {
+
+    private final PayloadCodec sender = new PayloadCodec();
+    private final PayloadCodec receiver = new PayloadCodec();
+
+    @Test
+    void readsFieldsOfWrappedPayload() throws IOException {
+        Payload payload = createMessagePayload("alice", "bob", "hello")
+            .withDelivery(new Delivery(7, 5, 128));
+
+        PayloadView view = wrap(sender.encodeFrame(payload));
+
+        assertEquals(PayloadType.MESSAGE, view.type());
+        assertEquals(7, view.sequence());
+        assertEquals(5, view.acknowledgement());
+        assertEquals(128, view.window());
+        assertEquals("alice", view.sender());
+        assertEquals("bob", view.receiver());
+        assertEquals("hello", view.content());
+        assertEquals(0, view.partCount());
+        assertEquals(payload, view.toPayload());
+    }
+
+    @Test
+    void isReusedForEveryFrame() throws IOException {
+        PayloadView first = wrap(sender.encodeFrame(createMessagePayload("alice", "bob", "a")));
+        PayloadView second = wrap(sender.encodeFrame(createMessagePayload("carol", "bob", "b")));
+
+        assertSame(first, second);
+        assertEquals("carol", second.sender());
+    }
+
+    @Test
+    void coversPartsInItsLength() throws IOException {
+        Payload batch = createBatchPayload(List.of(createMessagePayload("alice", "bob", "a"),
+            createMessagePayload("alice", "bob", "b")));
+        ByteBuffer frame = sender.encodeFrame(batch);
+
+        PayloadView view = wrap(frame);
+
+        assertEquals(2, view.partCount());
+        assertEquals(frame.remaining() - Integer.BYTES - Byte.BYTES, view.getLength());
+        assertEquals(batch, view.toPayload());
+    }
+
+    @Test
+    void internsReceivedNames() throws IOException {
+        String first = wrap(sender.encodeFrame(createMessagePayload("alice", "bob", "a")))
+            .sender();
+        String second = wrap(sender.encodeFrame(createMessagePayload("alice", "bob", "b")))
+            .sender();
+
+        assertSame(first, second);
+    }
+
+    private PayloadView wrap(ByteBuffer frame) throws IOException {
+        return receiver.wrap(frame, Integer.BYTES, frame.remaining() - Integer.BYTES);
+    }
+
+}
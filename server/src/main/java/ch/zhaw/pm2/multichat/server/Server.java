@@ -1,107 +1,275 @@
 package ch.zhaw.pm2.multichat.server;
 
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.DEFAULT_ADDRESS;
 import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.DEFAULT_PORT;
+import static ch.zhaw.pm2.multichat.protocol.connection.PayloadAssembler.DEFAULT_MAX_SIZE;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ACCEPT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONFIRM;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.DISCONNECT;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.NODE;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.OFFER;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.RELAY;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.RESUME;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.TRANSFER;
 import static java.lang.String.format;
+import static java.net.StandardSocketOptions.SO_KEEPALIVE;
+import static java.net.StandardSocketOptions.TCP_NODELAY;
 
-import ch.zhaw.pm2.multichat.protocol.NetworkHandler;
-import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkServer;
+import ch.zhaw.pm2.multichat.protocol.TlsContextFactory;
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
-import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.connection.BroadcastRing;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
 import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.connection.OutboundBudget;
+import ch.zhaw.pm2.multichat.server.connection.OutboundBudget.Offender;
+import ch.zhaw.pm2.multichat.server.connection.QueueDelayMetrics;
+import ch.zhaw.pm2.multichat.server.connection.QueueDelayMetrics.Summary;
 import ch.zhaw.pm2.multichat.server.connection.ServerConnectionListener;
+import ch.zhaw.pm2.multichat.server.connection.SlowConsumerPolicy;
+import ch.zhaw.pm2.multichat.server.loop.BufferPool;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import ch.zhaw.pm2.multichat.server.payload.AcceptPayloadHandler;
 import ch.zhaw.pm2.multichat.server.payload.ConfirmPayloadHandler;
 import ch.zhaw.pm2.multichat.server.payload.ConnectPayloadHandler;
 import ch.zhaw.pm2.multichat.server.payload.DisconnectPayloadHandler;
 import ch.zhaw.pm2.multichat.server.payload.ErrorPayloadHandler;
 import ch.zhaw.pm2.multichat.server.payload.MessagePayloadHandler;
+import ch.zhaw.pm2.multichat.server.payload.NodePayloadHandler;
+import ch.zhaw.pm2.multichat.server.payload.OfferPayloadHandler;
+import ch.zhaw.pm2.multichat.server.payload.RelayPayloadHandler;
+import ch.zhaw.pm2.multichat.server.payload.ResumePayloadHandler;
+import ch.zhaw.pm2.multichat.server.payload.TransferPayloadHandler;
+import ch.zhaw.pm2.multichat.server.transfer.TransferRegistry;
 import java.io.IOException;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * A class representing a server that listens for incoming network connections and handles client
- * requests.
+ * requests. Several servers can form a cluster, in which case each server is a node linked to all
+ * other nodes of the cluster.
+ * <p>
+ * The nodes of a cluster accept links on a separate port, which is the port of the node plus the
+ * offset set with the system property {@code multichat.linkPortOffset}. All nodes authenticate
+ * each other with the secret set with the system property {@code multichat.clusterSecret}, see
+ * {@link ClusterNode}.
+ * <p>
+ * The connections are served by a fixed number of {@link EventLoop}s, by default one per core. The
+ * accepted and dialed connections are assigned to the loops in turn and stay pinned to their loop.
+ * The number of loops can be set with the system property {@code multichat.eventLoops}.
+ * <p>
+ * Every payload passes the {@link ch.zhaw.pm2.multichat.server.loop.Stage stages} decoding,
+ * handling, delivery to the loop of the receiver, or fan-out to the recipients of a broadcast, and
+ * writing, whose latencies and queue depths are logged periodically. The number of loops is the
+ * concurrency of every stage. A loop which delivers more payloads to another loop than the other
+ * loop can handle stops reading until the other loop has caught up. The number of tasks the inbox
+ * of a loop holds before its senders stop reading can be set with the system property
+ * {@code multichat.maxInboxTasks}.
+ * <p>
+ * Broadcasts are published to a ring read by every connection. The number of broadcasts held by
+ * the ring can be set with the system property {@code multichat.broadcastRingSize}, and the
+ * treatment of connections falling further behind with {@code multichat.slowConsumerPolicy}, see
+ * {@link SlowConsumerPolicy}. A loop serving at least {@code multichat.fanOutThreshold} recipients
+ * splits them into ranges, which are fanned out in parallel on a work-stealing pool with one
+ * thread per core.
+ * <p>
+ * The bytes queued for a connection are limited by an {@link OutboundBudget}. A connection
+ * exceeding it has broadcasts held back, then drops large payloads and broadcasts, and is finally
+ * disconnected. The connections exceeding the budget are logged with the other metrics. The budget
+ * in bytes can be set with the system property {@code multichat.outboundBudget}, and the maximum
+ * time in seconds a payload may wait for a connection with {@code multichat.maxBacklogAge}.
+ * <p>
+ * Files offered between users are relayed by splicing the data connections of both users. The
+ * throughput of each transfer in bytes per second can be set with the system property
+ * {@code multichat.transferRate}.
+ * <p>
+ * Large messages are streamed in chunks. The maximum number of characters of a message received in
+ * chunks can be set with the system property {@code multichat.maxMessageSize}.
+ * <p>
+ * The outbound path of every connection has separate lanes for control payloads, chat payloads and
+ * chunks of large payloads. The queueing delay of each lane is logged periodically.
+ * <p>
+ * If a key store is configured as described in {@link TlsContextFactory}, all connections,
+ * including the links to other nodes, are encrypted with TLS. The trust store then has to contain
+ * the certificates of the other nodes, since nodes connecting to the link port have to
+ * authenticate with their certificate. Files can not be transferred over TLS.
  */
 @Slf4j
 public class Server {
 
-    private final ConnectionRegistry connectionRegistry = new ConnectionRegistry();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private static final int EVENT_LOOPS = Integer.getInteger("multichat.eventLoops",
+        Runtime.getRuntime().availableProcessors());
+    private static final int MAX_INBOX_TASKS = Integer.getInteger("multichat.maxInboxTasks",
+        1 << 16);
+    private static final int BROADCAST_RING_SIZE = Integer.getInteger(
+        "multichat.broadcastRingSize", 4096);
+    private static final SlowConsumerPolicy SLOW_CONSUMER_POLICY = SlowConsumerPolicy.valueOf(
+        System.getProperty("multichat.slowConsumerPolicy", "DISCONNECT").toUpperCase());
+    private static final int FAN_OUT_THRESHOLD = Integer.getInteger("multichat.fanOutThreshold",
+        2048);
+    private static final long OUTBOUND_BUDGET = Long.getLong("multichat.outboundBudget", 8L << 20);
+    private static final Duration MAX_BACKLOG_AGE = Duration.ofSeconds(
+        Long.getLong("multichat.maxBacklogAge", 60));
+    private static final long TRANSFER_RATE = Long.getLong("multichat.transferRate", 8L << 20);
+    private static final int MAX_MESSAGE_SIZE = Integer.getInteger("multichat.maxMessageSize",
+        DEFAULT_MAX_SIZE);
+    private static final int LINK_PORT_OFFSET = Integer.getInteger("multichat.linkPortOffset",
+        1000);
+    private static final String CLUSTER_SECRET = System.getProperty("multichat.clusterSecret",
+        "");
+    private static final Duration METRICS_PERIOD = Duration.ofMinutes(1);
+    private static final int MAX_POOLED_TLS_BUFFERS = 1024;
+    private static final int TLS_RECORDS_PER_BUFFER = 4;
+
+    private final ClusterNode clusterNode;
+    private final ConnectionRegistry connectionRegistry;
+    private final TransferRegistry transferRegistry = new TransferRegistry(TRANSFER_RATE);
+    private final QueueDelayMetrics queueDelayMetrics = new QueueDelayMetrics();
+    private final StageMetrics stageMetrics = new StageMetrics();
+    private final OutboundBudget outboundBudget = new OutboundBudget(OUTBOUND_BUDGET,
+        MAX_BACKLOG_AGE);
+    private final List<EventLoop> eventLoops = new ArrayList<>();
+    private final ForkJoinPool fanOutPool = new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors());
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
     private final Map<PayloadType, PayloadHandler<Payload>> payloadHandlers = new EnumMap<>(
         PayloadType.class);
-    private NetworkServer<Payload> networkServer;
+    private final ServerSocketChannel serverChannel;
+    private final ServerSocketChannel linkChannel;
+    private final SSLContext tlsContext;
+    private final BufferPool tlsBufferPool;
 
     /**
-     * Constructor that creates a new Server instance with the given port number.
+     * Constructor that creates a new Server instance with the given node address and peers. The
+     * server listens on the port of the node address and, if there are peers, on the link port.
      *
-     * @param port The port number the server should listen on.
+     * @param address The address of this server node.
+     * @param peers   The addresses of the other nodes of the cluster.
+     * @throws IOException              if the port can not be opened or a TLS store can not be
+     *                                  read.
+     * @throws GeneralSecurityException if the TLS context can not be created.
      */
-    private Server(int port) {
-        try {
-            log.info("Create server connection...");
-            networkServer = NetworkHandler.createServer(port);
-            initializePayloadHandlers();
-            log.info(format("Listening on <%s:%s>", networkServer.getHostAddress(),
-                networkServer.getHostPort()));
-        } catch (IOException e) {
-            log.error(format("Could not create server on port %s", port));
+    private Server(NodeAddress address, List<NodeAddress> peers)
+        throws IOException, GeneralSecurityException {
+        tlsContext = TlsContextFactory.createFromSystemProperties().orElse(null);
+        tlsBufferPool = tlsContext == null ? null : new BufferPool(
+            TLS_RECORDS_PER_BUFFER * tlsContext.createSSLEngine().getSession()
+                .getPacketBufferSize(), MAX_POOLED_TLS_BUFFERS);
+        clusterNode = new ClusterNode(address, peers, CLUSTER_SECRET);
+        for (int i = 0; i < Math.max(1, EVENT_LOOPS); i++) {
+            eventLoops.add(new EventLoop(format("event-loop-%d", i), MAX_INBOX_TASKS,
+                stageMetrics));
+        }
+        connectionRegistry = new ConnectionRegistry(clusterNode, eventLoops,
+            new BroadcastRing(BROADCAST_RING_SIZE, SLOW_CONSUMER_POLICY), fanOutPool,
+            FAN_OUT_THRESHOLD);
+        initializePayloadHandlers();
+
+        log.info("Create server connection...");
+        serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress(address.port()));
+        InetSocketAddress localAddress = (InetSocketAddress) serverChannel.getLocalAddress();
+        log.info(format("Listening on <%s:%s> with %d event loops%s",
+            localAddress.getAddress().getHostAddress(), localAddress.getPort(),
+            eventLoops.size(), tlsContext == null ? "" : " over TLS"));
+        if (clusterNode.hasPeers()) {
+            linkChannel = ServerSocketChannel.open().bind(
+                new InetSocketAddress(address.port() + LINK_PORT_OFFSET));
+            log.info(format("Accepting links on port %d",
+                ((InetSocketAddress) linkChannel.getLocalAddress()).getPort()));
+        } else {
+            linkChannel = null;
         }
     }
 
     /**
-     * Main method that creates a new Server instance and starts it with the given port number.
+     * Main method that creates a new Server instance and starts it. The arguments have the form
+     * {@code [[host:]port [peer-host:peer-port ...]]}, where the first argument is the address of
+     * this server node and the remaining arguments are the addresses of the other cluster nodes.
      *
      * @param args The command line arguments.
      */
     public static void main(String[] args) {
         try {
-            final Server server = new Server(getPort(args));
+            final Server server = new Server(getAddress(args), getPeers(args));
             server.start();
         } catch (IllegalArgumentException e) {
             log.error(e.getMessage());
+        } catch (IOException | GeneralSecurityException e) {
+            log.error(format("Could not create server: %s", e.getMessage()));
         }
     }
 
     /**
-     * Parses the port number from the command line arguments or returns the default value if no
-     * argument is given.
+     * Parses the address of this server node from the command line arguments or returns the
+     * default address if no argument is given.
      *
      * @param args The command line arguments.
-     * @return The port number to listen on.
-     * @throws IllegalArgumentException if the number of arguments is illegal or the argument is not
-     *                                  a valid integer.
+     * @return The address of this server node.
+     * @throws IllegalArgumentException if the argument is not a valid address.
      */
-    private static int getPort(String[] args) throws IllegalArgumentException {
-        return switch (args.length) {
-            case 0 -> DEFAULT_PORT;
-            case 1 -> Integer.parseInt(args[0].trim());
-            default -> throw new IllegalArgumentException(
-                format("Illegal number of arguments: %s", args.length));
-        };
+    private static NodeAddress getAddress(String[] args) throws IllegalArgumentException {
+        String defaultHost = DEFAULT_ADDRESS.getHostAddress();
+        return args.length == 0 ? new NodeAddress(defaultHost, DEFAULT_PORT)
+            : NodeAddress.parse(args[0], defaultHost);
+    }
+
+    /**
+     * Parses the addresses of the other cluster nodes from the command line arguments.
+     *
+     * @param args The command line arguments.
+     * @return The addresses of the other cluster nodes.
+     * @throws IllegalArgumentException if an argument is not a valid address.
+     */
+    private static List<NodeAddress> getPeers(String[] args) throws IllegalArgumentException {
+        List<NodeAddress> peers = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            peers.add(NodeAddress.parse(args[i], null));
+        }
+
+        return peers;
     }
 
     /**
      * Initializes the payload handlers for the server.
      */
     private void initializePayloadHandlers() {
-        payloadHandlers.put(CONNECT, new ConnectPayloadHandler(connectionRegistry));
+        payloadHandlers.put(CONNECT, new ConnectPayloadHandler(connectionRegistry, clusterNode));
         payloadHandlers.put(CONFIRM, new ConfirmPayloadHandler());
         payloadHandlers.put(DISCONNECT, new DisconnectPayloadHandler(connectionRegistry));
-        payloadHandlers.put(MESSAGE, new MessagePayloadHandler(connectionRegistry));
+        payloadHandlers.put(MESSAGE, new MessagePayloadHandler(connectionRegistry, clusterNode));
         payloadHandlers.put(ERROR, new ErrorPayloadHandler());
+        payloadHandlers.put(NODE, new NodePayloadHandler(clusterNode));
+        payloadHandlers.put(RELAY, new RelayPayloadHandler(clusterNode, connectionRegistry));
+        payloadHandlers.put(RESUME, new ResumePayloadHandler(connectionRegistry));
+        payloadHandlers.put(OFFER, new OfferPayloadHandler(connectionRegistry, transferRegistry));
+        payloadHandlers.put(ACCEPT,
+            new AcceptPayloadHandler(connectionRegistry, transferRegistry));
+        payloadHandlers.put(TRANSFER, new TransferPayloadHandler(transferRegistry));
     }
 
     /**
@@ -109,18 +277,20 @@ public class Server {
      */
     private void start() {
         log.info("Server started");
+        eventLoops.forEach(EventLoop::start);
+        eventLoops.get(0).schedule(this::reportQueueDelays, METRICS_PERIOD);
+        clusterNode.start(this::dial, connectionRegistry::redirectForeignUsers);
+        if (linkChannel != null) {
+            Thread linkAcceptor = new Thread(this::acceptLinks, "link-acceptor");
+            linkAcceptor.setDaemon(true);
+            linkAcceptor.start();
+        }
         try {
-            while (!networkServer.isClosed()) {
-                NetworkHandler.NetworkConnection<Payload> networkConnection = networkServer.waitForConnection();
-                Connection<Payload> connection = new Connection<>(networkConnection);
-
-                executorService.execute(
-                    new ServerConnectionListener(connection, payloadHandlers, connectionRegistry));
+            while (serverChannel.isOpen()) {
+                acceptConnection(serverChannel, false);
             }
-        } catch (SocketException e) {
+        } catch (ClosedChannelException e) {
             log.error(format("Server connection terminated: %s", e.getMessage()));
-        } catch (IOException e) {
-            log.error(format("Communication error: %s", e.getMessage()));
         } finally {
             terminate();
             log.info("Server terminated");
@@ -128,18 +298,169 @@ public class Server {
     }
 
     /**
-     * Terminates the server and closes all connections.
+     * Accepts the connections of other nodes on the link port until the port is closed. A link
+     * which fails while it is set up is closed without affecting the links accepted after it.
      */
-    private void terminate() {
+    private void acceptLinks() {
+        try {
+            while (linkChannel.isOpen()) {
+                acceptConnection(linkChannel, true);
+            }
+        } catch (ClosedChannelException e) {
+            log.info("Closed link connection");
+        }
+    }
+
+    /**
+     * Accepts the next connection on the given port and serves it. A connection which fails while
+     * it is accepted or set up is logged and closed, so the port keeps accepting connections.
+     *
+     * @param port The port to accept the connection on.
+     * @param link Whether the port is the link port.
+     * @throws ClosedChannelException if the port has been closed.
+     */
+    private void acceptConnection(ServerSocketChannel port, boolean link)
+        throws ClosedChannelException {
+        SocketChannel channel;
+        try {
+            channel = port.accept();
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            log.error(format("Failed to accept connection: %s", e.getMessage()));
+            return;
+        }
+
+        try {
+            channel.setOption(SO_KEEPALIVE, true);
+            serve(channel, createEngine(null, link), link);
+        } catch (IOException | RuntimeException e) {
+            log.error(format("Failed to serve accepted connection: %s", e.getMessage()));
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                log.error(format("Failed to close channel: %s", closeException.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Logs the queueing delay of every lane, the latency of every stage and the connections which
+     * have exceeded the outbound budget since the previous report and schedules the next report.
+     */
+    private void reportQueueDelays() {
+        for (Summary summary : queueDelayMetrics.drain()) {
+            log.info(format("Queueing delay on %s lane: %d payloads, average %d us, max %d us",
+                summary.lane(), summary.count(), summary.average().toNanos() / 1000,
+                summary.max().toNanos() / 1000));
+        }
+        for (StageMetrics.Summary summary : stageMetrics.drain()) {
+            log.info(format("Latency of %s stage: %d passes, average %d us, max %d us, "
+                    + "max depth %d", summary.stage(), summary.count(),
+                summary.average().toNanos() / 1000, summary.max().toNanos() / 1000,
+                summary.maxDepth()));
+        }
+        for (Offender offender : outboundBudget.drain()) {
+            log.info(format("Outbound budget exceeded by %s: %s, max backlog %d bytes",
+                offender.username(), offender.escalation(), offender.backlogBytes()));
+        }
+        eventLoops.get(0).schedule(this::reportQueueDelays, METRICS_PERIOD);
+    }
+
+    /**
+     * Pins the given connection to a client or another server node to the next event loop, which
+     * then serves it.
+     *
+     * @param channel The connected channel.
+     * @param engine  The TLS engine of the connection, or null if TLS is not enabled.
+     * @param link    Whether the channel has been accepted on the link port.
+     * @return The connection served by the event loop.
+     * @throws IOException if the channel can not be served.
+     */
+    private Connection<Payload> serve(SocketChannel channel, SSLEngine engine, boolean link)
+        throws IOException {
+        EventLoop eventLoop = eventLoops.get(
+            Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.size()));
+        PayloadCodec codec = new PayloadCodec(connectionRegistry.getUserIds());
+        ChannelEndpoint<Payload> endpoint;
         try {
-            connectionRegistry.getAllConnections().forEach(connection -> connection.sendPayload(
-                createErrorPayload(connection.getUsername(),
-                    "Disconnected due to communication error")));
+            if (engine != null) {
+                // the first frame follows the session ticket, it would wait for its ACK otherwise
+                channel.setOption(TCP_NODELAY, true);
+            }
+            endpoint = engine == null ? new ChannelEndpoint<>(channel, eventLoop, codec)
+                : new ChannelEndpoint<>(channel, eventLoop, codec, engine, tlsBufferPool);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        ChannelConnection connection = new ChannelConnection(endpoint, MAX_MESSAGE_SIZE,
+            queueDelayMetrics, outboundBudget);
+        ServerConnectionListener listener = new ServerConnectionListener(connection,
+            payloadHandlers, connectionRegistry, clusterNode);
+        if (link) {
+            clusterNode.acceptLink(connection);
+        }
+        endpoint.open(listener::dispatch, listener::handleClose);
+        return connection;
+    }
+
+    /**
+     * Opens a connection to the link port of another server node and serves it like an accepted
+     * connection.
+     *
+     * @param address The address of the other node.
+     * @return The connection to the other node.
+     * @throws IOException if the node is not reachable.
+     */
+    private Connection<Payload> dial(NodeAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(
+            new InetSocketAddress(address.host(), address.port() + LINK_PORT_OFFSET));
+        channel.setOption(SO_KEEPALIVE, true);
+        return serve(channel, createEngine(address, false), false);
+    }
+
+    /**
+     * Creates the TLS engine of a new connection, which acts as client on the links dialed to
+     * other nodes and as server otherwise. The engine of a link is bound to the address of the
+     * other node, so reconnecting to it resumes the previous session. On the link port, the other
+     * node has to authenticate with its certificate.
+     *
+     * @param peer The address of the dialed node, or null for an accepted connection.
+     * @param link Whether the connection has been accepted on the link port.
+     * @return The TLS engine, or null if TLS is not enabled.
+     */
+    private SSLEngine createEngine(NodeAddress peer, boolean link) {
+        if (tlsContext == null) {
+            return null;
+        }
 
-            connectionRegistry.unregisterAllConnections();
-            networkServer.close();
+        SSLEngine engine = peer == null ? tlsContext.createSSLEngine()
+            : tlsContext.createSSLEngine(peer.host(), peer.port());
+        engine.setUseClientMode(peer != null);
+        engine.setNeedClientAuth(link);
+        return engine;
+    }
+
+    /**
+     * Terminates the server and closes all connections, including the links to other nodes.
+     */
+    private void terminate() {
+        clusterNode.close();
+        connectionRegistry.forEachConnection(connection -> connection.sendPayload(
+            createErrorPayload(connection.getUsername(),
+                "Disconnected due to communication error")));
+        connectionRegistry.unregisterAllConnections();
+        eventLoops.forEach(EventLoop::close);
+        fanOutPool.shutdown();
+        try {
+            serverChannel.close();
+            if (linkChannel != null) {
+                linkChannel.close();
+            }
             log.info("Closed server connection");
-        } catch (IOException | ChatProtocolException e) {
+        } catch (IOException e) {
             log.error(format("Failed to close server connection: %s", e.getMessage()));
         }
     }
@@ -0,0 +1,441 @@
+package ch.zhaw.pm2.multichat.server.cluster;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createNodePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRelayPayload;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a server node in a cluster of chat servers. Every node keeps its own
+ * {@link ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry} and is linked to every other
+ * node of the cluster by a regular {@link Connection}, which carries {@code NODE} and
+ * {@code RELAY} payloads.
+ * <p>
+ * Every node periodically dials all configured peers it is not linked to. A link is established
+ * once both nodes have exchanged a {@code NODE} payload containing their id. If two nodes dial each
+ * other at the same time, both keep the link dialed by the node with the smaller id.
+ * <p>
+ * Links are only accepted on the separate link port of a node, {@code NODE} payloads received on
+ * the port of the clients are rejected. All nodes of a cluster share a secret. The {@code NODE}
+ * payload carries an HMAC of the ids of both nodes keyed with the secret, which proves that the
+ * sender knows the secret without revealing it. Since the proof of a node does not change, it can
+ * be replayed by anyone who can read the traffic of a link. Clusters spanning untrusted networks
+ * therefore have to enable TLS, which additionally requires the nodes to authenticate each other
+ * with their certificates.
+ * <p>
+ * Every username has a home node, which is determined by a {@link HashRing} containing this node
+ * and all linked nodes. Users can only register at their home node, so the home node alone decides
+ * whether a username is available and private messages are relayed directly to the home node of
+ * the receiver. Messages to everyone are relayed once over every link. Whenever a node joins or
+ * leaves the ring, the membership listener is notified, so that users whose home node changed can
+ * be moved.
+ */
+@Slf4j
+public class ClusterNode implements Closeable {
+
+    private static final long DIAL_INTERVAL_SECONDS = 2;
+    private static final int VIRTUAL_NODES = 128;
+    private static final String PROOF_ALGORITHM = "HmacSHA256";
+
+    private final String nodeId;
+    private final SecretKeySpec secret;
+    private final Map<String, NodeAddress> peers = new LinkedHashMap<>();
+    private final Map<String, Connection<Payload>> links = new HashMap<>();
+    private final Map<Connection<Payload>, String> linkNodes = new HashMap<>();
+    private final Set<Connection<Payload>> dialedLinks = new HashSet<>();
+    private final Map<Connection<Payload>, String> pendingDials = new HashMap<>();
+    private final Set<Connection<Payload>> pendingAccepts = new HashSet<>();
+    private final Set<Connection<Payload>> retiredLinks = new HashSet<>();
+    private final HashRing ring = new HashRing(VIRTUAL_NODES);
+    private final ScheduledExecutorService dialer = newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-dialer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Runnable membershipListener = () -> {
+    };
+
+    /**
+     * Constructs a new ClusterNode object with the specified address, peers and shared secret. The
+     * node does not dial its peers until {@link #start(Connector, Runnable)} is called.
+     *
+     * @param address the address of this node, used as its id
+     * @param peers   the addresses of the other nodes of the cluster
+     * @param secret  the secret shared by all nodes of the cluster
+     * @throws IllegalArgumentException if there are peers, but the secret is empty
+     */
+    public ClusterNode(NodeAddress address, Collection<NodeAddress> peers, String secret) {
+        this.nodeId = address.toString();
+        ring.addNode(nodeId);
+        for (NodeAddress peer : peers) {
+            if (!peer.toString().equals(nodeId)) {
+                this.peers.put(peer.toString(), peer);
+            }
+        }
+
+        if (secret.isEmpty() && !this.peers.isEmpty()) {
+            throw new IllegalArgumentException("A cluster requires a shared secret");
+        }
+        this.secret = secret.isEmpty() ? null
+            : new SecretKeySpec(secret.getBytes(UTF_8), PROOF_ALGORITHM);
+    }
+
+    /**
+     * Returns the id of this node.
+     *
+     * @return the id of this node
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Determines whether this node has peers, i.e. whether it has to accept links.
+     *
+     * @return true if other nodes have been configured, false otherwise
+     */
+    public boolean hasPeers() {
+        return !peers.isEmpty();
+    }
+
+    /**
+     * Starts dialing the peers of this node. For every dialed connection, a {@code NODE} payload
+     * is sent.
+     *
+     * @param connector          opens and serves the connections to the peers
+     * @param membershipListener called whenever a node joins or leaves the ring
+     */
+    public void start(Connector connector, Runnable membershipListener) {
+        requireNonNull(connector);
+        this.membershipListener = requireNonNull(membershipListener);
+        if (peers.isEmpty()) {
+            return;
+        }
+
+        log.info(format("Node %s joins cluster with peers %s", nodeId, peers.keySet()));
+        dialer.scheduleWithFixedDelay(() -> dialPeers(connector), 0,
+            DIAL_INTERVAL_SECONDS, SECONDS);
+    }
+
+    /**
+     * Registers the given connection, which has been accepted on the link port, as candidate for
+     * a link. Only candidates and dialed connections may send a {@code NODE} payload. Must be
+     * called before the connection starts receiving payloads.
+     *
+     * @param connection the connection accepted on the link port
+     */
+    public synchronized void acceptLink(Connection<Payload> connection) {
+        pendingAccepts.add(connection);
+    }
+
+    /**
+     * Creates the {@code NODE} payload sent to the node with the given id, carrying the proof that
+     * this node knows the secret of the cluster.
+     *
+     * @param peerId the id of the node the payload is sent to
+     * @return the {@code NODE} payload
+     */
+    public Payload createIntroduction(String peerId) {
+        return createNodePayload(nodeId, createProof(nodeId, peerId));
+    }
+
+    /**
+     * Registers the given connection as link to the node which sent the given {@code NODE}
+     * payload. If there already is a link to the node, only the link dialed by the node with the
+     * smaller id is kept. If the node has not been linked before, it is added to the ring and the
+     * membership listener is notified.
+     *
+     * @param introduction the {@code NODE} payload sent by the remote node
+     * @param connection   the connection to the remote node
+     * @return true if the connection has been registered as link, false if it is a duplicate and
+     * has to be closed
+     * @throws ConnectionException if the connection has neither been dialed nor accepted on the
+     *                             link port, or if the remote node is not a configured peer, not
+     *                             the dialed node or does not know the secret of the cluster
+     */
+    public boolean registerLink(Payload introduction, Connection<Payload> connection)
+        throws ConnectionException {
+        boolean joined;
+        synchronized (this) {
+            joined = addLink(introduction, connection);
+        }
+
+        if (joined) {
+            membershipListener.run();
+        }
+
+        return isLink(connection);
+    }
+
+    private boolean addLink(Payload introduction, Connection<Payload> connection)
+        throws ConnectionException {
+        String peerId = introduction.sender();
+        boolean dialed = pendingDials.containsKey(connection);
+        String expectedPeerId = pendingDials.remove(connection);
+        if (!dialed && !pendingAccepts.remove(connection)) {
+            throw new ConnectionException("Cluster nodes have to connect to the link port");
+        }
+        if (!peers.containsKey(peerId) || (dialed && !expectedPeerId.equals(peerId))) {
+            throw new ConnectionException(format("Unknown cluster node %s", peerId));
+        }
+        if (!MessageDigest.isEqual(createProof(peerId, nodeId).getBytes(UTF_8),
+            introduction.content().getBytes(UTF_8))) {
+            throw new ConnectionException(format("Cluster node %s failed to authenticate",
+                peerId));
+        }
+
+        boolean preferred = dialed == (nodeId.compareTo(peerId) < 0);
+        Connection<Payload> existing = links.get(peerId);
+        if (existing != null) {
+            boolean existingPreferred =
+                dialedLinks.contains(existing) == (nodeId.compareTo(peerId) < 0);
+            if (existingPreferred && !preferred) {
+                log.info(format("Dropping duplicate link to node %s", peerId));
+                retiredLinks.add(connection);
+                return false;
+            }
+            removeLink(existing);
+            retiredLinks.add(existing);
+            existing.closeConnection();
+        }
+
+        links.put(peerId, connection);
+        linkNodes.put(connection, peerId);
+        if (dialed) {
+            dialedLinks.add(connection);
+        }
+        connection.setUsername(peerId);
+        connection.setState(CONNECTED);
+        log.info(format("Linked to node %s", peerId));
+
+        if (existing == null) {
+            ring.addNode(peerId);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Unregisters the given connection if it is a link, a replaced duplicate link or a dialed or
+     * accepted connection which has not been established yet. If it is the current link to a node,
+     * the node is removed from the ring and the membership listener is notified.
+     *
+     * @param connection the closed connection
+     * @return true if the connection belongs to the cluster, false if it is a client connection
+     */
+    public boolean unregisterLink(Connection<Payload> connection) {
+        synchronized (this) {
+            if (pendingDials.remove(connection) != null || pendingAccepts.remove(connection)
+                || retiredLinks.remove(connection)) {
+                return true;
+            }
+
+            String peerId = linkNodes.get(connection);
+            if (peerId == null) {
+                return false;
+            }
+
+            removeLink(connection);
+            ring.removeNode(peerId);
+            log.info(format("Lost link to node %s", peerId));
+        }
+
+        membershipListener.run();
+        return true;
+    }
+
+    /**
+     * Determines whether the given connection is a link to another node.
+     *
+     * @param connection the connection to check
+     * @return true if the connection is a link, false otherwise
+     */
+    public synchronized boolean isLink(Connection<Payload> connection) {
+        return linkNodes.containsKey(connection);
+    }
+
+    /**
+     * Determines whether the given connection has been dialed by this node to establish a link.
+     *
+     * @param connection the connection to check
+     * @return true if the connection has been dialed by this node, false otherwise
+     */
+    public synchronized boolean isDialed(Connection<Payload> connection) {
+        return pendingDials.containsKey(connection) || dialedLinks.contains(connection);
+    }
+
+    /**
+     * Returns the id of the home node of the given user, i.e. the only node at which the user can
+     * be registered.
+     *
+     * @param username the name of the user
+     * @return the id of the home node of the user
+     */
+    public synchronized String getHomeNode(String username) {
+        return ring.getNode(username.toLowerCase());
+    }
+
+    /**
+     * Determines whether this node is the home node of the given user.
+     *
+     * @param username the name of the user
+     * @return true if the user has to register at this node, false otherwise
+     */
+    public boolean isHomeNode(String username) {
+        return nodeId.equals(getHomeNode(username));
+    }
+
+    /**
+     * Relays the given message to all linked nodes. Every message crosses every link once.
+     *
+     * @param message the message to relay
+     */
+    public void relayToAll(Payload message) {
+        Payload relay = createRelayPayload(message.sender(), message.receiver(), message.body());
+        getLinks().forEach(link -> link.sendPayload(relay));
+    }
+
+    /**
+     * Relays the given message to the home node of its receiver.
+     *
+     * @param message the message to relay
+     * @throws ChatProtocolException if the home node of the receiver is not linked
+     */
+    public void relayToReceiver(Payload message) throws ChatProtocolException {
+        Connection<Payload> link;
+        synchronized (this) {
+            link = links.get(ring.getNode(message.receiver().toLowerCase()));
+        }
+
+        if (link == null) {
+            throw new ChatProtocolException(
+                format("Username %s is not registered", message.receiver()));
+        }
+
+        link.sendPayload(
+            createRelayPayload(message.sender(), message.receiver(), message.body()));
+    }
+
+    /**
+     * Stops dialing the peers and closes all links.
+     */
+    @Override
+    public void close() {
+        dialer.shutdownNow();
+
+        List<Connection<Payload>> connections;
+        synchronized (this) {
+            connections = new ArrayList<>(linkNodes.keySet());
+            connections.addAll(pendingDials.keySet());
+            connections.addAll(pendingAccepts);
+        }
+        connections.forEach(Connection::closeConnection);
+    }
+
+    private void dialPeers(Connector connector) {
+        for (NodeAddress peer : peers.values()) {
+            String peerId = peer.toString();
+            synchronized (this) {
+                if (links.containsKey(peerId) || isDialing(peerId)) {
+                    continue;
+                }
+            }
+
+            try {
+                Connection<Payload> connection = connector.connect(peer);
+                synchronized (this) {
+                    pendingDials.put(connection, peerId);
+                }
+                connection.sendPayload(createIntroduction(peerId));
+            } catch (IOException e) {
+                log.debug(format("Node %s is not reachable: %s", peerId, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Determines whether a dialed connection to the given node is waiting for its {@code NODE}
+     * payload. Dialed connections which have been closed before they were added to the pending
+     * dials are dropped, so the node is dialed again.
+     *
+     * @param peerId the id of the node
+     * @return true if the node is being dialed, false otherwise
+     */
+    private boolean isDialing(String peerId) {
+        pendingDials.keySet().removeIf(connection -> connection.getNetworkConnection().isClosed());
+        return pendingDials.containsValue(peerId);
+    }
+
+    /**
+     * Creates the proof that the sending node knows the secret of the cluster, an HMAC of the ids
+     * of the sending and the receiving node. Including the receiving node prevents a node from
+     * passing on the proof it has received.
+     *
+     * @param senderId   the id of the node sending the proof
+     * @param receiverId the id of the node receiving the proof
+     * @return the Base64 encoded proof
+     */
+    private String createProof(String senderId, String receiverId) {
+        try {
+            Mac mac = Mac.getInstance(PROOF_ALGORITHM);
+            mac.init(secret);
+            byte[] proof = mac.doFinal(format("%s>%s", senderId, receiverId).getBytes(UTF_8));
+            return Base64.getEncoder().encodeToString(proof);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(format("%s is not available", PROOF_ALGORITHM), e);
+        }
+    }
+
+    private synchronized List<Connection<Payload>> getLinks() {
+        return new ArrayList<>(links.values());
+    }
+
+    private void removeLink(Connection<Payload> connection) {
+        String peerId = linkNodes.remove(connection);
+        dialedLinks.remove(connection);
+        links.remove(peerId, connection);
+    }
+
+    /**
+     * Opens connections to other nodes of the cluster.
+     */
+    public interface Connector {
+
+        /**
+         * Opens a connection to the given node and starts receiving payloads from it.
+         *
+         * @param address the address of the node
+         * @return the opened connection
+         * @throws IOException if the node is not reachable
+         */
+        Connection<Payload> connect(NodeAddress address) throws IOException;
+    }
+
+}
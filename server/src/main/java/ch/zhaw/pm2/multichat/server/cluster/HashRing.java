@@ -0,0 +1,91 @@
+package ch.zhaw.pm2.multichat.server.cluster;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A class representing a consistent-hash ring which assigns keys to nodes. Every node is placed on
+ * the ring at several positions, its virtual nodes, and a key belongs to the node of the first
+ * virtual node at or after the position of the key. Adding or removing a node therefore only moves
+ * the keys between the virtual nodes of this node and their predecessors, all other keys keep
+ * their node. This class is not thread-safe.
+ */
+public class HashRing {
+
+    private final int virtualNodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final MessageDigest digest;
+
+    /**
+     * Constructs a new empty HashRing object.
+     *
+     * @param virtualNodes the number of positions of every node on the ring
+     */
+    public HashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException(
+                format("Illegal number of virtual nodes: %s", virtualNodes));
+        }
+
+        this.virtualNodes = virtualNodes;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+
+    /**
+     * Places the given node on the ring.
+     *
+     * @param nodeId the id of the node
+     */
+    public void addNode(String nodeId) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(format("%s#%d", nodeId, i)), nodeId);
+        }
+    }
+
+    /**
+     * Removes the given node from the ring.
+     *
+     * @param nodeId the id of the node
+     */
+    public void removeNode(String nodeId) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(format("%s#%d", nodeId, i)), nodeId);
+        }
+    }
+
+    /**
+     * Returns the node the given key belongs to.
+     *
+     * @param key the key to look up
+     * @return the id of the node the key belongs to, or {@code null} if the ring is empty
+     */
+    public String getNode(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+
+        Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private long hash(String value) {
+        byte[] bytes = digest.digest(value.getBytes(UTF_8));
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (bytes[i] & 0xff);
+        }
+
+        return hash;
+    }
+
+}
@@ -0,0 +1,63 @@
+package ch.zhaw.pm2.multichat.server.cluster;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A record representing the address of a server node in a cluster. The string representation
+ * {@code host:port} is used as the id of the node, so all nodes of a cluster must refer to a node
+ * by the same host name or address.
+ *
+ * @param host the host name or address of the node
+ * @param port the port the node is listening on
+ */
+public record NodeAddress(String host, int port) {
+
+    /**
+     * Constructs a new NodeAddress object with the specified host and port.
+     *
+     * @param host the host name or address of the node
+     * @param port the port the node is listening on
+     * @throws IllegalArgumentException if the port is out of range
+     */
+    public NodeAddress {
+        requireNonNull(host);
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException(format("Illegal port number: %s", port));
+        }
+    }
+
+    /**
+     * Parses a node address of the form {@code [host:]port}.
+     *
+     * @param value       the address to parse
+     * @param defaultHost the host to use if the address does not contain a host
+     * @return the parsed node address
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    public static NodeAddress parse(String value, String defaultHost) {
+        String address = value.trim();
+        int separator = address.lastIndexOf(':');
+        if (separator < 0 && defaultHost == null) {
+            throw new IllegalArgumentException(format("Missing host in node address: %s", value));
+        }
+
+        try {
+            String host = separator < 0 ? defaultHost : address.substring(0, separator);
+            return new NodeAddress(host, Integer.parseInt(address.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format("Illegal node address: %s", value));
+        }
+    }
+
+    /**
+     * Returns the id of the node in the form {@code host:port}.
+     *
+     * @return the id of the node
+     */
+    @Override
+    public String toString() {
+        return format("%s:%d", host, port);
+    }
+
+}
@@ -0,0 +1,32 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+/**
+ * An enum representing the levels a {@link ChannelConnection} escalates through while its outbound
+ * backlog exceeds its {@link OutboundBudget}. Every level includes the measures of the levels
+ * before.
+ */
+public enum BacklogEscalation {
+
+    /**
+     * The backlog has exceeded half the budget. Broadcasts are no longer copied to the outbox of
+     * the connection, but stay in the broadcast ring and are coalesced: once the outbox and the
+     * write queue of the connection are empty, the broadcasts held back are read straight from the
+     * ring into a single batch, one batch at a time, until the connection has caught up. A
+     * broadcast overwritten in the ring before it has been sent is missed.
+     */
+    DEFER,
+
+    /**
+     * The backlog has exceeded the budget. Traffic the user can do without is dropped: broadcasts
+     * are skipped, and large payloads whose chunks have not been sent yet are discarded.
+     */
+    DROP,
+
+    /**
+     * The backlog still exceeds the budget without the dropped traffic, or its oldest payload has
+     * waited too long. The connection is sent an error and disconnected, or its session expires if
+     * it is suspended.
+     */
+    DISCONNECT
+
+}
@@ -0,0 +1,140 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A class representing a ring of the most recent broadcasts of the server, which every connection
+ * reads at its own pace. Publishing a broadcast writes a single slot, no matter how many
+ * connections receive it. Every connection tracks the sequence of the next broadcast it reads, so
+ * all connections receive the broadcasts in the same order.
+ * <p>
+ * Broadcasts can be published by any thread without waiting: a publisher claims the next sequence
+ * and fills its slot, and readers stop at the first slot which has not been filled yet. A slot is
+ * only filled if it holds an older broadcast, so a publisher which stalls between claiming its
+ * sequence and filling the slot never overwrites a newer broadcast. The ring holds a fixed number
+ * of broadcasts. A connection which falls further behind than that misses the
+ * overwritten broadcasts and is treated according to the {@link SlowConsumerPolicy} of the ring.
+ */
+public class BroadcastRing {
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    /**
+     * Constructs a new BroadcastRing object holding at least the given number of broadcasts. The
+     * capacity is rounded up to a power of two.
+     *
+     * @param capacity           the minimum number of broadcasts held by the ring
+     * @param slowConsumerPolicy the treatment of the connections falling too far behind
+     */
+    public BroadcastRing(int capacity, SlowConsumerPolicy slowConsumerPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(format("Illegal capacity: %d", capacity));
+        }
+
+        this.slots = new AtomicReferenceArray<>(
+            capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+        this.slowConsumerPolicy = requireNonNull(slowConsumerPolicy);
+    }
+
+    /**
+     * Returns the number of broadcasts held by the ring, which is how far a connection may fall
+     * behind without missing broadcasts.
+     *
+     * @return the capacity of the ring
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Returns the treatment of the connections which have missed broadcasts.
+     *
+     * @return the slow consumer policy
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Returns the sequence the next published broadcast is assigned, which is where a connection
+     * starts reading to receive the broadcasts published from now on.
+     *
+     * @return the sequence of the next broadcast
+     */
+    public long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Publishes the given broadcast, overwriting the oldest broadcast if the ring is full. If a
+     * newer broadcast has filled the slot in the meantime, the broadcast counts as overwritten.
+     *
+     * @param payload the payload to broadcast
+     * @return the sequence of the broadcast
+     */
+    public long publish(Payload payload) {
+        long sequence = claimSequence();
+        fill(sequence, requireNonNull(payload));
+        return sequence;
+    }
+
+    /**
+     * Claims the sequence of the next broadcast, whose slot is filled by {@link #fill}.
+     */
+    long claimSequence() {
+        return nextSequence.getAndIncrement();
+    }
+
+    /**
+     * Fills the slot of the given claimed sequence with the given broadcast, unless the slot
+     * already holds a newer broadcast.
+     */
+    void fill(long sequence, Payload payload) {
+        Slot slot = new Slot(sequence, payload, System.nanoTime());
+        int index = getIndex(sequence);
+        Slot previous;
+        do {
+            previous = slots.get(index);
+        } while ((previous == null || previous.sequence() < sequence)
+            && !slots.compareAndSet(index, previous, slot));
+    }
+
+    /**
+     * Returns the broadcast with the given sequence.
+     *
+     * @param sequence the sequence of the broadcast
+     * @return the broadcast, or null if it has not been published yet or already been overwritten
+     */
+    public Payload get(long sequence) {
+        Slot slot = slots.get(getIndex(sequence));
+        return slot != null && slot.sequence() == sequence ? slot.payload() : null;
+    }
+
+    /**
+     * Returns the time the broadcast with the given sequence has been published, which is unknown
+     * if it has not been published yet or already been overwritten.
+     *
+     * @param sequence the sequence of the broadcast
+     * @return the {@link System#nanoTime()} of the publication, or {@link Long#MIN_VALUE}
+     */
+    public long getPublishTime(long sequence) {
+        Slot slot = slots.get(getIndex(sequence));
+        return slot != null && slot.sequence() == sequence ? slot.publishTime() : Long.MIN_VALUE;
+    }
+
+    private int getIndex(long sequence) {
+        return (int) sequence & (slots.length() - 1);
+    }
+
+    private record Slot(long sequence, Payload payload, long publishTime) {
+
+    }
+
+}
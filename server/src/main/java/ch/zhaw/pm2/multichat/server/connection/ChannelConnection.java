@@ -0,0 +1,740 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.ANONYMOUS;
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.MAX_FRAME_SIZE;
+import static ch.zhaw.pm2.multichat.protocol.connection.FlowControl.DEFAULT_WINDOW;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createAcknowledgementPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createBatchPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.server.connection.BacklogEscalation.DEFER;
+import static ch.zhaw.pm2.multichat.server.connection.BacklogEscalation.DROP;
+import static ch.zhaw.pm2.multichat.server.connection.Lane.BULK;
+import static ch.zhaw.pm2.multichat.server.connection.Lane.CHAT;
+import static ch.zhaw.pm2.multichat.server.connection.Lane.CONTROL;
+import static ch.zhaw.pm2.multichat.server.connection.SlowConsumerPolicy.DISCONNECT;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.Objects.requireNonNullElse;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.connection.FlowControl;
+import ch.zhaw.pm2.multichat.protocol.connection.PayloadAssembler;
+import ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.SymbolTable;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a connection of the server, which is served by the {@link EventLoop} its
+ * endpoint is pinned to. Payloads are only ever sent by this loop: a payload sent by another
+ * thread, e.g. a message from a user served by another loop, is handed to the inbox of the loop.
+ * The only exception is a range of the loop which has claimed the connection to fan out the
+ * broadcasts on a pool, see {@link #serveInRange(Runnable)}.
+ * <p>
+ * Payloads are not written at once but collected in an outbox, which the loop flushes after the
+ * payloads and tasks at hand have been handled. The outbox consists of one queue per {@link Lane}.
+ * Control payloads, like confirmations and errors, are always sent first, so a handshake never
+ * waits behind queued chat traffic. If several payloads are waiting, they are sent as one batch, so
+ * a burst of messages costs a single frame and write.
+ * <p>
+ * Payloads with a large content, e.g. a pasted log file, are streamed in chunks on the bulk lane.
+ * The loop sends the chunks of one payload after another, alternating with the batches of the chat
+ * lane, so a large payload never holds back the small payloads sent after it. Payloads received in
+ * chunks are reassembled by the connection, which rejects them as soon as they exceed the maximum
+ * size. The time every payload spends in the outbox is recorded per lane.
+ * <p>
+ * Every frame is sequenced by the {@link FlowControl} of the connection and only sent while the
+ * window of the other side allows it. Only control payloads are sent beyond the window. Payloads
+ * beyond the window wait in the outbox until they are acknowledged. If the other side falls too far
+ * behind, it is sent an error and disconnected.
+ * <p>
+ * If the connection of a user is lost, it can be suspended: its payloads are then kept in the
+ * outbox until the session is resumed on a new connection, which takes over the flow control
+ * including the unacknowledged payloads and the outbox. If the outbox of a suspended connection
+ * overflows, the session has expired and can no longer be resumed.
+ * <p>
+ * Broadcasts are not sent to the connection one by one, but read from the {@link BroadcastRing}
+ * of the server by the loop, starting at the sequence the connection has subscribed at. The read
+ * sequence is handed over with the session, so a resumed session misses no broadcasts.
+ * <p>
+ * The outbound backlog of the connection, i.e. the bytes in the outbox and in the write queue of
+ * the endpoint, is limited by the {@link OutboundBudget} of the server. While the backlog exceeds
+ * the budget, the connection escalates through the {@link BacklogEscalation} levels, so a client
+ * which reads slowly or not at all can not make the server hold an unbounded amount of data for
+ * it. The connection returns to normal once the backlog has drained to half the budget. The
+ * broadcasts it has held back are then not copied to the outbox, but coalesced into batches read
+ * straight from the ring whenever the outbox and the write queue of the endpoint are empty, until
+ * the connection has caught up with the ring. The backlog is checked whenever the outbox has been
+ * flushed, the write queue of the endpoint has drained or a broadcast has been published.
+ */
+@Slf4j
+public class ChannelConnection extends Connection<Payload> {
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final int MAX_BATCH_CONTENT = MAX_FRAME_SIZE / 4;
+    private static final int MAX_PENDING_PAYLOADS = 16 * DEFAULT_WINDOW;
+    private static final long NOT_SUBSCRIBED = -1;
+    private static final int PAYLOAD_OVERHEAD = 64;
+
+    private final ChannelEndpoint<Payload> endpoint;
+    private final EventLoop eventLoop;
+    private final QueueDelayMetrics queueDelayMetrics;
+    private final OutboundBudget outboundBudget;
+    private final Queue<Queued<Payload>> controlLane = new ArrayDeque<>();
+    private final Queue<Queued<Payload>> chatLane = new ArrayDeque<>();
+    private final Deque<Queued<PayloadChunker>> bulkLane = new ArrayDeque<>();
+    private final AtomicReference<Thread> rangeThread = new AtomicReference<>();
+    private FlowControl flowControl = new FlowControl(DEFAULT_WINDOW);
+    private PayloadAssembler assembler;
+    private int userId = SymbolTable.NO_ID;
+    private BroadcastRing broadcastRing;
+    private long broadcastSequence = NOT_SUBSCRIBED;
+    private long outboxBytes;
+    private BacklogEscalation escalation;
+    private boolean flushScheduled;
+    private boolean chunkTurn;
+    private boolean suspended;
+    private boolean handedOver;
+    private boolean catchingUp;
+    private volatile boolean expired;
+
+    /**
+     * Creates a new ChannelConnection object with the specified endpoint, accepting payloads
+     * received in chunks up to the given size.
+     *
+     * @param endpoint          the endpoint of the connection
+     * @param maxPayloadSize    the maximum number of characters of content of a received payload
+     * @param queueDelayMetrics the metrics to record the queueing delay of the sent payloads in
+     * @param outboundBudget    the limits of the outbound backlog of the connection
+     */
+    public ChannelConnection(ChannelEndpoint<Payload> endpoint, int maxPayloadSize,
+        QueueDelayMetrics queueDelayMetrics, OutboundBudget outboundBudget) {
+        super(endpoint);
+        this.endpoint = endpoint;
+        this.eventLoop = endpoint.getEventLoop();
+        this.assembler = new PayloadAssembler(maxPayloadSize);
+        this.queueDelayMetrics = requireNonNull(queueDelayMetrics);
+        this.outboundBudget = requireNonNull(outboundBudget);
+        endpoint.setDrainHandler(this::handleDrain);
+    }
+
+    /**
+     * Returns the loop serving this connection.
+     *
+     * @return the loop serving this connection
+     */
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Returns the id assigned to the user of this connection when it has been registered.
+     *
+     * @return the id of the user, or {@link SymbolTable#NO_ID} if the user is not registered
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Sets the id assigned to the user of this connection.
+     *
+     * @param userId the id of the user
+     */
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Returns the time the other side took to acknowledge the most recently acknowledged frame.
+     * Must be called by the loop of the connection.
+     *
+     * @return the latency of the last acknowledged frame
+     */
+    public Duration getDeliveryLatency() {
+        return flowControl.getLastDeliveryLatency();
+    }
+
+    /**
+     * Adds the provided payload to the lane of the outbox of this connection it belongs to. The
+     * outbox is flushed by the loop of the connection. If the outbox is full, the receiver is
+     * considered too slow and disconnected. While the outbound backlog exceeds the budget, large
+     * payloads are dropped.
+     *
+     * @param payload The payload to send.
+     */
+    @Override
+    public void sendPayload(Payload payload) {
+        if (!isServedByCurrentThread()) {
+            eventLoop.execute(() -> sendPayload(payload));
+            return;
+        }
+
+        if (handedOver || !suspended && !getNetworkConnection().isAvailable()) {
+            return;
+        }
+
+        int pending = controlLane.size() + chatLane.size() + bulkLane.size();
+        if (suspended && pending >= MAX_PENDING_PAYLOADS) {
+            log.warn(format("Session of %s expired, %d payloads pending", getUsername(), pending));
+            clearOutbox();
+            expired = true;
+            return;
+        }
+
+        if (pending >= MAX_PENDING_PAYLOADS) {
+            log.warn(format("Receiver %s too slow, %d payloads pending", getUsername(), pending));
+            disconnectTooSlow();
+            return;
+        }
+
+        Lane lane = Lane.of(payload);
+        if (lane == BULK && escalation != null && escalation.compareTo(DROP) >= 0) {
+            log.debug(format("Dropped large payload to %s", getUsername()));
+            return;
+        }
+
+        long now = System.nanoTime();
+        int size = PAYLOAD_OVERHEAD + payload.body().size();
+        switch (lane) {
+            case CONTROL -> controlLane.add(new Queued<>(payload, now, size));
+            case CHAT -> chatLane.add(new Queued<>(payload, now, size));
+            case BULK -> bulkLane.add(new Queued<>(new PayloadChunker(payload), now, size));
+        }
+        outboxBytes += size;
+        if (checkBudget(now)) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Subscribes this connection to the broadcasts published to the given ring from now on. Must
+     * be called by the loop of the connection.
+     *
+     * @param broadcastRing the ring of the broadcasts of the server
+     */
+    public void subscribe(BroadcastRing broadcastRing) {
+        this.broadcastRing = requireNonNull(broadcastRing);
+        broadcastSequence = broadcastRing.getNextSequence();
+    }
+
+    /**
+     * Adds the broadcasts published since the previous call to the outbox of this connection. If
+     * broadcasts have been overwritten before they have been read, the connection is treated
+     * according to the slow consumer policy of the ring. While the outbound backlog exceeds the
+     * budget, the broadcasts are held back in the ring or skipped, unless the backlog has drained
+     * to half the budget by now. Broadcasts held back are sent in coalesced batches, see
+     * {@link #catchUpBroadcasts()}. Must be called by the loop of the connection or the range
+     * which has claimed it.
+     */
+    public void receiveBroadcasts() {
+        if (broadcastSequence == NOT_SUBSCRIBED || handedOver) {
+            return;
+        }
+
+        if (isBacklogRelieved()) {
+            escalation = null;
+        }
+
+        if (!skipMissedBroadcasts()) {
+            return;
+        }
+
+        if (escalation == DROP) {
+            broadcastSequence = broadcastRing.getNextSequence();
+            return;
+        }
+
+        if (catchingUp) {
+            catchUpBroadcasts();
+            return;
+        }
+
+        Payload broadcast;
+        while (escalation == null && (broadcast = broadcastRing.get(broadcastSequence)) != null) {
+            broadcastSequence++;
+            sendPayload(broadcast);
+        }
+    }
+
+    /**
+     * Flushes the outbox right away, if a flush has been scheduled, instead of after the current
+     * task of the loop. The fan-out of broadcasts uses this to encode and write the broadcasts on
+     * the thread which has the connection read them. Must be called by the loop of the connection
+     * or the range which has claimed it.
+     */
+    public void flushNow() {
+        flushOutbox();
+    }
+
+    /**
+     * Claims this connection for the range of its loop calling this method, runs the given work
+     * and releases the connection again. While the range has claimed the connection, payloads
+     * sent to it by the range are handled right away instead of being handed to the loop. The
+     * range must not touch the state of the loop, so the endpoint is still closed by the loop.
+     *
+     * @param work the work to run on the connection
+     * @throws IllegalStateException if not called by a range of the loop of the connection, or if
+     *                               another range has claimed the connection
+     */
+    public void serveInRange(Runnable work) {
+        if (!eventLoop.inRange()) {
+            throw new IllegalStateException("Only a range of the loop can claim a connection");
+        }
+        if (!rangeThread.compareAndSet(null, Thread.currentThread())) {
+            throw new IllegalStateException(
+                format("Connection of %s is claimed by another range", getUsername()));
+        }
+
+        try {
+            work.run();
+        } finally {
+            rangeThread.set(null);
+        }
+    }
+
+    /**
+     * Processes the delivery information of a payload received on this connection. Acknowledged
+     * frames free the window for the payloads waiting in the outbox, and received frames are
+     * acknowledged with the next flush. Must be called by the loop of the connection.
+     *
+     * @param delivery the delivery information of the received payload
+     */
+    public void receiveDelivery(Delivery delivery) {
+        flowControl.receive(delivery);
+        if (!controlLane.isEmpty() || !chatLane.isEmpty() || !bulkLane.isEmpty()
+            || flowControl.isAcknowledgementDue() || catchingUp) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Adds the given chunk to the payload being reassembled on this connection. Must be called by
+     * the loop of the connection.
+     *
+     * @param chunk the received chunk
+     * @return the complete payload if the chunk is the last one, null otherwise
+     * @throws ChatProtocolException if the payload exceeds the maximum size
+     */
+    public Payload assembleChunk(Payload chunk) throws ChatProtocolException {
+        return assembler.append(chunk);
+    }
+
+    /**
+     * Suspends the sending of payloads, which are kept in the outbox instead. Must be called by the
+     * loop of the connection.
+     */
+    public void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * Determines whether the session of this suspended connection has expired, because more
+     * payloads have been sent to it than can be kept.
+     *
+     * @return true if the session can no longer be resumed, false otherwise
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Hands the flow control, the outbox and the partially reassembled payload of this connection
+     * over to the given connection, which resumes the session of this connection. No payloads are
+     * sent by this connection anymore. Must be called by the loop of this connection.
+     *
+     * @param successor the connection resuming the session
+     * @param delivery  the delivery information of the resume request, acknowledging the payloads
+     *                  received by the other side before the session was lost
+     */
+    public void handOver(ChannelConnection successor, Delivery delivery) {
+        receiveBroadcasts();
+        SessionState state = new SessionState(flowControl, assembler,
+            new ArrayDeque<>(controlLane), new ArrayDeque<>(chatLane), new ArrayDeque<>(bulkLane),
+            broadcastRing, broadcastSequence);
+        clearOutbox();
+        handedOver = true;
+        successor.eventLoop.execute(() -> successor.adopt(state, delivery));
+    }
+
+    /**
+     * Flushes the outbox and closes the connection on the loop of the connection, so payloads sent
+     * before are not lost. The payloads are flushed regardless of the window of the other side.
+     */
+    @Override
+    public void closeConnection() {
+        if (!isServedByCurrentThread()) {
+            eventLoop.execute(this::closeConnection);
+            return;
+        }
+
+        flush(true);
+        super.closeConnection();
+    }
+
+    /**
+     * Takes over the state of a connection whose session is resumed by this connection. The
+     * payloads not acknowledged by the resume request are sent again first, followed by the outbox
+     * of the previous connection. The payloads sent to this connection in the meantime, like the
+     * confirmation of the resumed session, are queued behind the chat payloads of the previous
+     * connection, so the client receives everything it has missed before the confirmation. Only
+     * large payloads on the bulk lane may still follow. Broadcasts are read on from where the
+     * previous connection has stopped.
+     */
+    private void adopt(SessionState state, Delivery delivery) {
+        flowControl = state.flowControl();
+        assembler = state.assembler();
+        flowControl.receive(delivery);
+        for (Payload payload : flowControl.getUnacknowledgedPayloads()) {
+            super.sendPayload(payload);
+        }
+
+        Queue<Queued<Payload>> meantime = new ArrayDeque<>(controlLane);
+        meantime.addAll(chatLane);
+        controlLane.clear();
+        controlLane.addAll(state.controlLane());
+        chatLane.clear();
+        chatLane.addAll(state.chatLane());
+        chatLane.addAll(meantime);
+        prepend(bulkLane, state.bulkLane());
+        outboxBytes += getBytes(state.controlLane()) + getBytes(state.chatLane())
+            + getBytes(state.bulkLane());
+        broadcastRing = state.broadcastRing();
+        broadcastSequence = state.broadcastSequence();
+        suspended = false;
+        receiveBroadcasts();
+        scheduleFlush();
+    }
+
+    private static <E> void prepend(Queue<E> lane, Queue<E> previous) {
+        previous.addAll(lane);
+        lane.clear();
+        lane.addAll(previous);
+    }
+
+    private static long getBytes(Queue<? extends Queued<?>> lane) {
+        long bytes = 0;
+        for (Queued<?> queued : lane) {
+            bytes += queued.size();
+        }
+        return bytes;
+    }
+
+    /**
+     * Escalates the treatment of this connection if its outbound backlog exceeds the budget or its
+     * oldest payload has waited too long. Returns false if the connection has been disconnected.
+     */
+    private boolean checkBudget(long now) {
+        long backlog = getBacklog();
+        long maxBytes = outboundBudget.getMaxBytes();
+        BacklogEscalation level = escalation;
+        if (backlog > maxBytes) {
+            dropNonEssentialTraffic();
+            backlog = getBacklog();
+            level = backlog > maxBytes ? BacklogEscalation.DISCONNECT : DROP;
+        } else if (backlog > maxBytes / 2 && level == null) {
+            level = DEFER;
+        }
+        if (now - getOldestEnqueueTime(now) > outboundBudget.getMaxAge().toNanos()) {
+            level = BacklogEscalation.DISCONNECT;
+        }
+
+        if (level == escalation) {
+            return true;
+        }
+        log.warn(format("Receiver %s too slow, %s at %d bytes pending", getUsername(), level,
+            backlog));
+        outboundBudget.reportOffender(requireNonNullElse(getUsername(), ANONYMOUS), level,
+            backlog);
+        if (level == BacklogEscalation.DISCONNECT) {
+            escalation = null;
+            disconnectTooSlow();
+            return false;
+        }
+        escalation = level;
+        if (level == DEFER && broadcastSequence != NOT_SUBSCRIBED) {
+            catchingUp = true;
+        }
+        return true;
+    }
+
+    /**
+     * Handles the draining of the write queue of the endpoint, which may relieve the backlog and
+     * makes room for the next batch of broadcasts held back.
+     */
+    private void handleDrain() {
+        relaxBudget();
+        catchUpBroadcasts();
+    }
+
+    /**
+     * Returns this connection to normal once its outbound backlog has drained to half the
+     * budget, reading the broadcasts held back in the meantime.
+     */
+    private void relaxBudget() {
+        if (isBacklogRelieved()) {
+            escalation = null;
+            receiveBroadcasts();
+        }
+    }
+
+    private boolean isBacklogRelieved() {
+        return escalation != null && getBacklog() <= outboundBudget.getMaxBytes() / 2;
+    }
+
+    private long getBacklog() {
+        return outboxBytes + endpoint.getQueuedBytes();
+    }
+
+    /**
+     * Drops the broadcasts held back in the ring and the large payloads whose chunks have not been
+     * sent yet. A large payload being sent is completed, since the other side is reassembling it.
+     */
+    private void dropNonEssentialTraffic() {
+        if (broadcastSequence != NOT_SUBSCRIBED) {
+            broadcastSequence = broadcastRing.getNextSequence();
+        }
+        catchingUp = false;
+        bulkLane.removeIf(stream -> {
+            if (stream.element().isStarted()) {
+                return false;
+            }
+            outboxBytes -= stream.size();
+            return true;
+        });
+    }
+
+    /**
+     * Sends the broadcasts held back while the backlog exceeded half the budget. They are not
+     * copied to the outbox, but read straight from the ring and coalesced into one batch whenever
+     * the outbox and the write queue of the endpoint are empty and the window allows it, so
+     * catching up never adds more than one batch to the backlog. Large broadcasts are streamed on
+     * the bulk lane as usual. Ends catching up once the ring has been read up to its end and the
+     * backlog has been relieved.
+     */
+    private void catchUpBroadcasts() {
+        while (catchingUp && !suspended && !handedOver && escalation != DROP
+            && controlLane.isEmpty() && chatLane.isEmpty() && bulkLane.isEmpty()
+            && endpoint.getQueuedBytes() == 0 && flowControl.hasCredit()
+            && getNetworkConnection().isAvailable() && skipMissedBroadcasts()) {
+            List<Payload> batch = new ArrayList<>();
+            int batchContent = 0;
+            Payload broadcast;
+            while (batch.size() < MAX_BATCH_SIZE
+                && (broadcast = broadcastRing.get(broadcastSequence)) != null) {
+                int content = broadcast.body().size();
+                if (!batch.isEmpty() && (batchContent + content > MAX_BATCH_CONTENT
+                    || PayloadChunker.requiresChunking(broadcast))) {
+                    break;
+                }
+                broadcastSequence++;
+                if (PayloadChunker.requiresChunking(broadcast)) {
+                    sendPayload(broadcast);
+                    break;
+                }
+                batch.add(broadcast);
+                batchContent += content;
+            }
+
+            if (!batch.isEmpty()) {
+                super.sendPayload(flowControl.send(
+                    batch.size() == 1 ? batch.get(0) : createBatchPayload(batch)));
+            }
+            if (broadcastRing.get(broadcastSequence) == null) {
+                catchingUp = escalation != null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips the broadcasts which have been overwritten in the ring before they have been read and
+     * treats the connection according to the slow consumer policy of the ring. Returns false if
+     * the connection has been disconnected.
+     */
+    private boolean skipMissedBroadcasts() {
+        long missed = broadcastRing.getNextSequence() - broadcastSequence
+            - broadcastRing.getCapacity();
+        if (missed > 0) {
+            log.warn(format("Receiver %s too slow, %d broadcasts missed", getUsername(), missed));
+            broadcastSequence += missed;
+            if (broadcastRing.getSlowConsumerPolicy() == DISCONNECT) {
+                broadcastSequence = NOT_SUBSCRIBED;
+                catchingUp = false;
+                disconnectTooSlow();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private long getOldestEnqueueTime(long now) {
+        long oldest = now;
+        for (Queue<? extends Queued<?>> lane : List.of(controlLane, chatLane, bulkLane)) {
+            Queued<?> head = lane.peek();
+            if (head != null && head.enqueueTime() < oldest) {
+                oldest = head.enqueueTime();
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Drops the payloads of this connection, which can not keep up with them. A suspended
+     * connection expires, any other connection is sent an error and disconnected.
+     */
+    private void disconnectTooSlow() {
+        clearOutbox();
+        if (suspended) {
+            expired = true;
+            return;
+        }
+
+        controlLane.add(new Queued<>(createErrorPayload(
+            requireNonNullElse(getUsername(), ANONYMOUS), "Receiver too slow"), System.nanoTime(),
+            PAYLOAD_OVERHEAD));
+        closeConnection();
+    }
+
+    private void clearOutbox() {
+        controlLane.clear();
+        chatLane.clear();
+        bulkLane.clear();
+        outboxBytes = 0;
+    }
+
+    private boolean isServedByCurrentThread() {
+        return eventLoop.inEventLoop() || rangeThread.get() == Thread.currentThread();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            eventLoop.execute(this::flushOutbox);
+        }
+    }
+
+    private void flushOutbox() {
+        if (flushScheduled) {
+            flushScheduled = false;
+            flush(false);
+            catchUpBroadcasts();
+        }
+    }
+
+    /**
+     * Sends the payloads in the outbox while the window allows it, control payloads regardless of
+     * the window. If no frame is sent although the other side awaits an acknowledgement, a pure
+     * acknowledgement is sent instead.
+     */
+    private void flush(boolean ignoreWindow) {
+        if (suspended || handedOver) {
+            return;
+        }
+
+        boolean sent = false;
+        Payload frame;
+        while ((frame = pollFrame(ignoreWindow || flowControl.hasCredit())) != null) {
+            super.sendPayload(flowControl.send(frame));
+            sent = true;
+        }
+
+        if (!sent && flowControl.isAcknowledgementDue()) {
+            super.sendPayload(createAcknowledgementPayload(flowControl.acknowledge()));
+        }
+        relaxBudget();
+    }
+
+    /**
+     * Takes the next frame from the outbox. Waiting control payloads are always taken first, with
+     * chat payloads filling up their batch if the window allows it. Otherwise, batches of chat
+     * payloads alternate with single chunks of the bulk lane.
+     */
+    private Payload pollFrame(boolean hasCredit) {
+        long now = System.nanoTime();
+        if (!controlLane.isEmpty()) {
+            return pollBatch(hasCredit, now);
+        }
+
+        if (!hasCredit) {
+            return null;
+        }
+
+        if (!bulkLane.isEmpty() && (chunkTurn || chatLane.isEmpty())) {
+            chunkTurn = false;
+            Queued<PayloadChunker> stream = bulkLane.poll();
+            queueDelayMetrics.record(BULK, now - stream.enqueueTime());
+            Payload chunk = stream.element().next();
+            if (stream.element().hasNext()) {
+                bulkLane.addFirst(new Queued<>(stream.element(), now, stream.size()));
+            } else {
+                outboxBytes -= stream.size();
+            }
+            return chunk;
+        }
+
+        if (chatLane.isEmpty()) {
+            return null;
+        }
+
+        chunkTurn = true;
+        return pollBatch(true, now);
+    }
+
+    /**
+     * Combines the waiting payloads into a batch whose content stays well below the maximum frame
+     * size, control payloads first.
+     */
+    private Payload pollBatch(boolean includeChat, long now) {
+        List<Payload> batch = new ArrayList<>();
+        int batchContent = fillBatch(batch, 0, controlLane, CONTROL, now);
+        if (includeChat) {
+            fillBatch(batch, batchContent, chatLane, CHAT, now);
+        }
+
+        return batch.size() == 1 ? batch.get(0) : createBatchPayload(batch);
+    }
+
+    private int fillBatch(List<Payload> batch, int batchContent, Queue<Queued<Payload>> queue,
+        Lane lane, long now) {
+        while (!queue.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+            Queued<Payload> queued = queue.peek();
+            int content = queued.element().body().size();
+            if (!batch.isEmpty() && batchContent + content > MAX_BATCH_CONTENT) {
+                break;
+            }
+            queue.poll();
+            outboxBytes -= queued.size();
+            queueDelayMetrics.record(lane, now - queued.enqueueTime());
+            batch.add(queued.element());
+            batchContent += content;
+        }
+
+        return batchContent;
+    }
+
+    private record Queued<E>(E element, long enqueueTime, int size) {
+
+    }
+
+    private record SessionState(FlowControl flowControl, PayloadAssembler assembler,
+                                Queue<Queued<Payload>> controlLane,
+                                Queue<Queued<Payload>> chatLane,
+                                Queue<Queued<PayloadChunker>> bulkLane,
+                                BroadcastRing broadcastRing, long broadcastSequence) {
+
+    }
+
+}
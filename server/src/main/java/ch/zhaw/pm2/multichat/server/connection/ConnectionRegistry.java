@@ -3,69 +3,250 @@ package ch.zhaw.pm2.multichat.server.connection;
 import static ch.zhaw.pm2.multichat.protocol.Identifiers.ANONYMOUS;
 import static ch.zhaw.pm2.multichat.protocol.Identifiers.EVERYONE;
 import static ch.zhaw.pm2.multichat.protocol.Identifiers.SYSTEM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRedirectPayload;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.FAN_OUT;
 import static java.lang.String.format;
-import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
 
 import ch.zhaw.pm2.multichat.protocol.connection.Connection;
 import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.SymbolTable;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
- * A class representing a registry for managing connections to the chat server.
+ * A class representing a registry for managing connections to the chat server. If the server is
+ * part of a cluster, only users whose home node is this server can be registered. Since a username
+ * can only be registered at its home node, the registry alone decides whether it is available.
+ * <p>
+ * All connections of the server are {@link ChannelConnection}s pinned to an {@link EventLoop}.
+ * Besides a concurrent directory for looking up users by name, the registry keeps one shard of
+ * connections per loop, which is only accessed by this loop or the threads acting for it.
+ * Operations on many connections hand a single task to the inbox of each loop, which then serves
+ * its own shard.
+ * <p>
+ * Broadcasts are published to a {@link BroadcastRing}, from which every registered connection
+ * reads them. Publishing only wakes the loops which have not been woken yet, so a burst of
+ * broadcasts costs a single task per loop, which has every connection of its shard read all
+ * broadcasts published so far. The loops fan a broadcast out to their shards in parallel, each to
+ * its own connections. A shard of at least the fan-out threshold of recipients is split into
+ * ranges, which are fanned out on a work-stealing pool while the loop waits. Every recipient is
+ * served by a single range, so the payloads to every recipient stay in order. Each recipient
+ * writes the broadcasts right away, and the time until the last recipient of each shard has
+ * written a broadcast is recorded as the {@link ch.zhaw.pm2.multichat.server.loop.Stage#FAN_OUT}
+ * stage.
+ * <p>
+ * Every registered user is assigned a compact id in the {@link SymbolTable} of the registry, which
+ * is released when the user is unregistered. The codecs of the connections send the usernames as
+ * these ids, and users are looked up by their id in an array instead of by their name, as long as
+ * the name is spelled as it has been registered. The usernames are interned while they are
+ * registered, so every decoded username of a registered user is the instance the user has been
+ * registered with.
+ * <p>
+ * Every registered user is issued a session. If the connection of a user is lost, it is suspended
+ * and stays registered for a grace period, so the user can resume the session on a new connection
+ * without registering again and without missing the payloads sent in the meantime.
  */
 public class ConnectionRegistry {
 
-    private final List<Connection<Payload>> connections = new ArrayList<>();
+    private static final Duration SESSION_GRACE_PERIOD = Duration.ofSeconds(30);
+    private static final int INITIAL_USER_CAPACITY = 256;
+    private static final int MAX_INTERNED_USERNAMES = 1 << 16;
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final Map<String, Connection<Payload>> connections = new ConcurrentHashMap<>();
+    private final Map<String, ChannelConnection> sessions = new ConcurrentHashMap<>();
+    private final Map<EventLoop, Set<Connection<Payload>>> shards = new HashMap<>();
+    private final Map<EventLoop, ShardCursor> shardCursors = new HashMap<>();
+    private final SymbolTable userIds = new SymbolTable(MAX_INTERNED_USERNAMES);
+    private final ClusterNode clusterNode;
+    private final BroadcastRing broadcastRing;
+    private final ForkJoinPool fanOutPool;
+    private final int fanOutThreshold;
+    private volatile AtomicReferenceArray<ChannelConnection> connectionsById =
+        new AtomicReferenceArray<>(INITIAL_USER_CAPACITY);
+
+    /**
+     * Creates a new ConnectionRegistry instance for the specified cluster node and event loops.
+     *
+     * @param clusterNode     the cluster node this server belongs to
+     * @param eventLoops      the loops serving the connections of the server
+     * @param broadcastRing   the ring the broadcasts to the connections are published to
+     * @param fanOutPool      the pool fanning out broadcasts to large shards
+     * @param fanOutThreshold the number of recipients in a shard from which on broadcasts are
+     *                        fanned out on the pool
+     * @throws IllegalArgumentException if the fan-out threshold is less than one
+     */
+    public ConnectionRegistry(ClusterNode clusterNode, List<EventLoop> eventLoops,
+        BroadcastRing broadcastRing, ForkJoinPool fanOutPool, int fanOutThreshold) {
+        if (fanOutThreshold < 1) {
+            throw new IllegalArgumentException(
+                format("Illegal fan-out threshold: %d", fanOutThreshold));
+        }
+
+        this.clusterNode = requireNonNull(clusterNode);
+        this.broadcastRing = requireNonNull(broadcastRing);
+        this.fanOutPool = requireNonNull(fanOutPool);
+        this.fanOutThreshold = fanOutThreshold;
+        eventLoops.forEach(eventLoop -> {
+            shards.put(eventLoop, ConcurrentHashMap.newKeySet());
+            shardCursors.put(eventLoop, new ShardCursor());
+        });
+    }
+
+    /**
+     * Returns the table of the ids assigned to the registered users, which the codecs of the
+     * connections send the usernames as.
+     *
+     * @return the table of the ids of the users
+     */
+    public SymbolTable getUserIds() {
+        return userIds;
+    }
 
     /**
-     * Registers a new connection with the given username to the registry.
+     * Registers a new connection with the given username to the registry and assigns an id to the
+     * user, which is announced to the client with the confirmation. Must be called by the loop of
+     * the connection.
      *
      * @param connection The connection to be registered.
      * @throws ChatProtocolException If the username is already registered.
      * @throws ConnectionException   If the username is not compliant with the expected format.
      */
-    public synchronized void registerConnection(Connection<Payload> connection)
+    public void registerConnection(Connection<Payload> connection)
         throws ChatProtocolException, ConnectionException {
         String username = connection.getUsername();
 
-        if (isUsernameRegistered(username)) {
+        if (!isUsernameRegistered(username) && !isUsernameFormatCompliant(username)) {
+            throw new ConnectionException(format("Username %s is not compliant", username));
+        }
+
+        if (connections.putIfAbsent(toKey(username), connection) != null) {
             throw new ChatProtocolException(format("Username %s is already registered", username));
         }
 
-        if (!isUsernameFormatCompliant(username)) {
-            throw new ConnectionException(format("Username %s is not compliant", username));
+        ChannelConnection channelConnection = (ChannelConnection) connection;
+        channelConnection.setUserId(userIds.register(username));
+        putConnectionById(channelConnection);
+        channelConnection.subscribe(broadcastRing);
+        getShard(connection).add(connection);
+    }
+
+    /**
+     * Unregisters the given connection from the registry and closes it. If called by another
+     * thread than the loop of the connection, the connection is unregistered by its loop.
+     *
+     * @param connection The connection to be unregistered.
+     */
+    public void unregisterConnection(Connection<Payload> connection) {
+        EventLoop eventLoop = getEventLoop(connection);
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> unregisterConnection(connection));
+            return;
+        }
+
+        removeConnectionById((ChannelConnection) connection);
+        String username = connection.getUsername();
+        if (username != null) {
+            connections.remove(toKey(username), connection);
         }
+        String sessionToken = connection.getSessionToken();
+        if (sessionToken != null) {
+            sessions.remove(sessionToken, connection);
+        }
+        shards.get(eventLoop).remove(connection);
+        connection.closeConnection();
+    }
 
-        connections.add(connection);
+    /**
+     * Opens a session for the given registered connection, which allows resuming it on a new
+     * connection.
+     *
+     * @param connection The registered connection.
+     * @return The token of the session.
+     */
+    public String openSession(Connection<Payload> connection) {
+        String sessionToken = UUID.randomUUID().toString();
+        connection.setSessionToken(sessionToken);
+        sessions.put(sessionToken, (ChannelConnection) connection);
+        return sessionToken;
     }
 
     /**
-     * Unregisters the connection with the given username from the registry and closes it.
+     * Suspends the given connection, whose network connection has been lost. The connection stays
+     * registered and keeps the payloads sent to it until its session is resumed. If the session is
+     * not resumed within the grace period, the connection is unregistered. Must be called by the
+     * loop of the connection.
      *
-     * @param username The username of the connection to be unregistered.
+     * @param connection The lost connection.
      */
-    public synchronized void unregisterConnection(String username) {
-        connections.stream()
-            .filter(connection -> connection.getUsername().equalsIgnoreCase(username))
-            .findFirst()
-            .ifPresent(connection -> {
-                connection.closeConnection();
-                connections.remove(connection);
-            });
+    public void suspendConnection(Connection<Payload> connection) {
+        ChannelConnection channelConnection = (ChannelConnection) connection;
+        channelConnection.suspend();
+        channelConnection.getEventLoop().schedule(() -> {
+            if (connections.get(toKey(connection.getUsername())) == connection) {
+                unregisterConnection(connection);
+            }
+        }, SESSION_GRACE_PERIOD);
     }
 
     /**
-     * Unregisters all connections from the registry and closes them.
+     * Resumes the session with the given token on the given new connection, which replaces the
+     * previous connection of the session. The previous connection is closed, if it has not been
+     * lost yet, and hands its unacknowledged payloads and its outbox over to the new connection.
+     * Must be called by the loop of the new connection.
+     *
+     * @param connection   The new connection.
+     * @param username     The username of the session.
+     * @param sessionToken The token of the session.
+     * @param delivery     The delivery information of the resume request.
+     * @throws ChatProtocolException If there is no such session or it has expired.
      */
-    public synchronized void unregisterAllConnections() {
-        for (Connection<Payload> connection : connections) {
-            connection.closeConnection();
+    public void resumeConnection(Connection<Payload> connection, String username,
+        String sessionToken, Delivery delivery) throws ChatProtocolException {
+        ChannelConnection previous = sessions.get(sessionToken);
+        if (previous == null || previous.isExpired() || !username.equals(previous.getUsername())
+            || !connections.replace(toKey(username), previous, connection)) {
+            throw new ChatProtocolException(format("Session of %s has expired", username));
         }
 
-        connections.clear();
+        ChannelConnection channelConnection = (ChannelConnection) connection;
+        sessions.replace(sessionToken, previous, channelConnection);
+        channelConnection.setUsername(username);
+        channelConnection.setSessionToken(sessionToken);
+        channelConnection.setUserId(previous.getUserId());
+        putConnectionById(channelConnection);
+        channelConnection.suspend();
+        getShard(connection).add(connection);
+
+        EventLoop previousEventLoop = previous.getEventLoop();
+        previousEventLoop.execute(() -> {
+            shards.get(previousEventLoop).remove(previous);
+            previous.handOver(channelConnection, delivery);
+            previous.closeConnection();
+        });
+    }
+
+    /**
+     * Unregisters all connections from the registry and closes them.
+     */
+    public void unregisterAllConnections() {
+        forEachConnection(this::unregisterConnection);
     }
 
     /**
@@ -75,48 +256,192 @@ public class ConnectionRegistry {
      * @return The connection with the given username.
      * @throws ChatProtocolException If the username is not registered.
      */
-    public synchronized Connection<Payload> getConnection(String username)
-        throws ChatProtocolException {
-        return connections.stream()
-            .filter(connection -> connection.getUsername().equalsIgnoreCase(username))
-            .findFirst()
-            .orElseThrow(
-                () -> new ChatProtocolException(format("Username %s is not registered", username)));
+    public Connection<Payload> getConnection(String username) throws ChatProtocolException {
+        Connection<Payload> connection = getConnectionById(userIds.getId(username), username);
+        if (connection == null) {
+            connection = connections.get(toKey(username));
+        }
+        if (connection == null) {
+            throw new ChatProtocolException(format("Username %s is not registered", username));
+        }
+
+        return connection;
     }
 
     /**
-     * Retrieves a list of all connections registered in the registry.
+     * Performs the given action for every connection registered in the registry. The action is
+     * performed by the loop of each connection, so it may already have been performed for some
+     * connections when this method returns.
      *
-     * @return A list of all connections registered in the registry.
-     * @throws ChatProtocolException If there are no connections registered in the registry.
+     * @param action The action to be performed.
      */
-    public synchronized List<Connection<Payload>> getAllConnections()
-        throws ChatProtocolException {
-        if (connections.isEmpty()) {
-            throw new ChatProtocolException("No connections registered");
-        }
+    public void forEachConnection(Consumer<Connection<Payload>> action) {
+        shards.forEach((eventLoop, shard) -> {
+            Runnable task = () -> new ArrayList<>(shard).forEach(action);
+            if (eventLoop.inEventLoop()) {
+                task.run();
+            } else {
+                eventLoop.execute(task);
+            }
+        });
+    }
+
+    /**
+     * Sends the given payload to all connections registered in the registry by publishing it to
+     * the broadcast ring. Every loop has the connections of its own shard read the payload, the
+     * loop of the caller before this method returns.
+     *
+     * @param payload The payload to be sent.
+     */
+    public void broadcast(Payload payload) {
+        broadcastRing.publish(payload);
+        shardCursors.forEach((eventLoop, cursor) -> {
+            if (eventLoop.inEventLoop()) {
+                receiveBroadcasts(eventLoop, cursor);
+            } else if (cursor.woken.compareAndSet(false, true)) {
+                eventLoop.execute(() -> receiveBroadcasts(eventLoop, cursor));
+            }
+        });
+    }
 
-        return unmodifiableList(connections);
+    /**
+     * Unregisters and closes all connections of users whose home node is no longer this server,
+     * e.g. because another node has joined the cluster. Each of these users is redirected to its
+     * new home node. Only the users in the key ranges taken over by the other node are affected.
+     */
+    public void redirectForeignUsers() {
+        for (Connection<Payload> connection : connections.values()) {
+            String username = connection.getUsername();
+            if (!clusterNode.isHomeNode(username)
+                && connections.remove(toKey(username), connection)) {
+                connection.sendPayload(
+                    createRedirectPayload(username, clusterNode.getHomeNode(username)));
+                unregisterConnection(connection);
+            }
+        }
     }
 
     /**
-     * Generates and retrieves a new anonymous username that is not yet registered in the registry.
+     * Generates and retrieves a new anonymous username that is not yet registered in the registry
+     * and whose home node is this server.
      *
      * @return A new anonymous username.
      */
-    public synchronized String getAnonymousUsername() {
+    public String getAnonymousUsername() {
         int i = 0;
         String username;
         do {
             username = format("%s%s", ANONYMOUS, i++);
-        } while (isUsernameRegistered(username));
+        } while (isUsernameRegistered(username) || !clusterNode.isHomeNode(username));
 
         return username;
     }
 
+    /**
+     * Looks up the connection of the user with the given id, which must still be registered with
+     * the given name, since the id may have been assigned to another user in the meantime.
+     */
+    private Connection<Payload> getConnectionById(int userId, String username) {
+        AtomicReferenceArray<ChannelConnection> snapshot = connectionsById;
+        if (userId < 0 || userId >= snapshot.length()) {
+            return null;
+        }
+
+        ChannelConnection connection = snapshot.get(userId);
+        return connection != null && username.equals(connection.getUsername()) ? connection : null;
+    }
+
+    private synchronized void putConnectionById(ChannelConnection connection) {
+        int userId = connection.getUserId();
+        if (userId >= connectionsById.length()) {
+            AtomicReferenceArray<ChannelConnection> grown = new AtomicReferenceArray<>(
+                Math.max(userId + 1, 2 * connectionsById.length()));
+            for (int i = 0; i < connectionsById.length(); i++) {
+                grown.set(i, connectionsById.get(i));
+            }
+            connectionsById = grown;
+        }
+        connectionsById.set(userId, connection);
+    }
+
+    /**
+     * Releases the id of the user of the given connection, unless the session of the user has
+     * been resumed by another connection in the meantime.
+     */
+    private synchronized void removeConnectionById(ChannelConnection connection) {
+        int userId = connection.getUserId();
+        if (userId != SymbolTable.NO_ID
+            && connectionsById.compareAndSet(userId, connection, null)) {
+            userIds.unregister(userId);
+        }
+    }
+
+    /**
+     * Has every connection of the shard of the given loop read and write the broadcasts published
+     * so far, split into ranges on the fan-out pool if the shard is large enough. The loop is no
+     * longer marked as woken beforehand, so broadcasts published in the meantime wake it again.
+     * The latency of the oldest broadcast read is recorded. Since connections closed by a range
+     * unregister themselves, the shards are concurrent sets.
+     */
+    private void receiveBroadcasts(EventLoop eventLoop, ShardCursor cursor) {
+        cursor.woken.set(false);
+        long oldest = cursor.sequence;
+        cursor.sequence = broadcastRing.getNextSequence();
+        List<Connection<Payload>> recipients = new ArrayList<>(shards.get(eventLoop));
+        if (recipients.size() >= fanOutThreshold) {
+            eventLoop.invokeAll(fanOutPool, splitIntoRanges(recipients));
+        } else {
+            fanOut(recipients);
+        }
+
+        long publishTime = broadcastRing.getPublishTime(oldest);
+        if (!recipients.isEmpty() && publishTime != Long.MIN_VALUE) {
+            eventLoop.getStageMetrics().record(FAN_OUT, System.nanoTime() - publishTime);
+            eventLoop.getStageMetrics().recordDepth(FAN_OUT, recipients.size());
+        }
+    }
+
+    /**
+     * Splits the given recipients into a few ranges per thread of the fan-out pool, so threads
+     * done with their ranges can steal the ranges of others.
+     */
+    private List<Runnable> splitIntoRanges(List<Connection<Payload>> recipients) {
+        int rangeCount = Math.min(recipients.size(),
+            fanOutPool.getParallelism() * RANGES_PER_THREAD);
+        List<Runnable> ranges = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            List<Connection<Payload>> range = recipients.subList(
+                i * recipients.size() / rangeCount, (i + 1) * recipients.size() / rangeCount);
+            ranges.add(() -> fanOutInRange(range));
+        }
+
+        return ranges;
+    }
+
+    private static void fanOut(List<Connection<Payload>> recipients) {
+        for (Connection<Payload> connection : recipients) {
+            fanOut((ChannelConnection) connection);
+        }
+    }
+
+    /**
+     * Fans out the broadcasts to the given recipients on a range, which claims every recipient
+     * while it reads and writes the broadcasts.
+     */
+    private static void fanOutInRange(List<Connection<Payload>> recipients) {
+        for (Connection<Payload> connection : recipients) {
+            ChannelConnection recipient = (ChannelConnection) connection;
+            recipient.serveInRange(() -> fanOut(recipient));
+        }
+    }
+
+    private static void fanOut(ChannelConnection recipient) {
+        recipient.receiveBroadcasts();
+        recipient.flushNow();
+    }
+
     private boolean isUsernameRegistered(String username) {
-        return connections.stream()
-            .anyMatch(connection -> connection.getUsername().equalsIgnoreCase(username));
+        return connections.containsKey(toKey(username));
     }
 
     private boolean isUsernameFormatCompliant(String username) {
@@ -125,4 +450,28 @@ public class ConnectionRegistry {
             SYSTEM.toLowerCase()) && !lowerCaseUsername.equals(EVERYONE.toLowerCase());
     }
 
+    private Set<Connection<Payload>> getShard(Connection<Payload> connection) {
+        return shards.get(getEventLoop(connection));
+    }
+
+    private static EventLoop getEventLoop(Connection<Payload> connection) {
+        return ((ChannelConnection) connection).getEventLoop();
+    }
+
+    private static String toKey(String username) {
+        return username.toLowerCase();
+    }
+
+    /**
+     * The state of the broadcasts of the shard of a loop: whether the loop has been woken to read
+     * them, and the sequence of the oldest broadcast its shard has not read yet, which is only
+     * accessed by the loop.
+     */
+    private static class ShardCursor {
+
+        private final AtomicBoolean woken = new AtomicBoolean();
+        private long sequence;
+
+    }
+
 }
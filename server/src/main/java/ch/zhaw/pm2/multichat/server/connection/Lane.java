@@ -0,0 +1,47 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import ch.zhaw.pm2.multichat.protocol.connection.PayloadChunker;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+
+/**
+ * An enum representing the priority lanes of the outbound path of a {@link ChannelConnection}.
+ * Control payloads are always sent first. Chat payloads and the chunks of bulk payloads share the
+ * remaining capacity of the connection, so neither can starve the other.
+ */
+public enum Lane {
+
+    /**
+     * The lane of the payloads controlling the connection and the session, like confirmations and
+     * errors.
+     */
+    CONTROL,
+
+    /**
+     * The lane of the chat traffic, like messages and file offers.
+     */
+    CHAT,
+
+    /**
+     * The lane of the payloads whose content is too large to be sent at once, which are streamed
+     * in chunks.
+     */
+    BULK;
+
+    /**
+     * Determines the lane the given payload is sent on.
+     *
+     * @param payload the payload to send
+     * @return the lane of the payload
+     */
+    public static Lane of(Payload payload) {
+        if (PayloadChunker.requiresChunking(payload)) {
+            return BULK;
+        }
+
+        return switch (payload.type()) {
+            case CONNECT, CONFIRM, DISCONNECT, ERROR, NODE, ACK, SESSION, RESUME -> CONTROL;
+            default -> CHAT;
+        };
+    }
+
+}
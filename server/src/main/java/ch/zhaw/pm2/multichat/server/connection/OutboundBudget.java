@@ -0,0 +1,106 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class representing the limits of the outbound backlog of every connection of the server, i.e.
+ * the bytes queued for a connection but not written yet and the time its oldest queued payload has
+ * been waiting. A connection exceeding the budget escalates through the {@link BacklogEscalation}
+ * levels, which keeps the memory held for a client bounded however slowly it reads.
+ * <p>
+ * The connections exceeding the budget are reported as offenders, which are collected until they
+ * are drained for the metrics. All connections report concurrently, so the offenders are kept in
+ * a concurrent map.
+ */
+public class OutboundBudget {
+
+    private final long maxBytes;
+    private final Duration maxAge;
+    private final Map<String, Offender> offenders = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new OutboundBudget object with the given limits.
+     *
+     * @param maxBytes the maximum number of bytes queued for a connection
+     * @param maxAge   the maximum time a payload may wait in the outbox of a connection
+     */
+    public OutboundBudget(long maxBytes, Duration maxAge) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+
+        this.maxBytes = maxBytes;
+        this.maxAge = requireNonNull(maxAge);
+    }
+
+    /**
+     * Returns the maximum number of bytes queued for a connection.
+     *
+     * @return the maximum backlog in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the maximum time a payload may wait in the outbox of a connection.
+     *
+     * @return the maximum age of the backlog
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Reports that the connection of the given user has exceeded the budget. Only the highest
+     * escalation and the largest backlog of a user are kept until the offenders are drained.
+     *
+     * @param username     the name of the user of the connection
+     * @param escalation   the level the connection has escalated to
+     * @param backlogBytes the number of bytes queued for the connection
+     */
+    public void reportOffender(String username, BacklogEscalation escalation, long backlogBytes) {
+        offenders.merge(username, new Offender(username, escalation, backlogBytes),
+            Offender::max);
+    }
+
+    /**
+     * Returns the offenders reported since the previous call and starts collecting anew.
+     *
+     * @return the connections which have exceeded the budget
+     */
+    public List<Offender> drain() {
+        List<Offender> drained = new ArrayList<>();
+        for (String username : offenders.keySet()) {
+            Offender offender = offenders.remove(username);
+            if (offender != null) {
+                drained.add(offender);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * A record describing a connection which has exceeded the budget.
+     *
+     * @param username     the name of the user of the connection
+     * @param escalation   the highest level the connection has escalated to
+     * @param backlogBytes the largest number of bytes queued for the connection
+     */
+    public record Offender(String username, BacklogEscalation escalation, long backlogBytes) {
+
+        private Offender max(Offender other) {
+            return new Offender(username,
+                escalation.compareTo(other.escalation) >= 0 ? escalation : other.escalation,
+                Math.max(backlogBytes, other.backlogBytes));
+        }
+
+    }
+
+}
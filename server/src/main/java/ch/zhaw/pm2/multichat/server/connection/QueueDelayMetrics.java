@@ -0,0 +1,83 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class representing the queueing delay of the payloads sent by the connections of the server,
+ * i.e. the time between adding a payload to an outbox and writing it, separately for every
+ * {@link Lane}. All connections record into the same metrics concurrently, so the counters are
+ * striped instead of synchronized.
+ */
+public class QueueDelayMetrics {
+
+    private final Map<Lane, LaneDelay> delays = new EnumMap<>(Lane.class);
+
+    /**
+     * Constructs a new QueueDelayMetrics object without any recorded delays.
+     */
+    public QueueDelayMetrics() {
+        for (Lane lane : Lane.values()) {
+            delays.put(lane, new LaneDelay());
+        }
+    }
+
+    /**
+     * Records the queueing delay of a payload sent on the given lane.
+     *
+     * @param lane       the lane the payload has been sent on
+     * @param delayNanos the time the payload has been queued in nanoseconds
+     */
+    public void record(Lane lane, long delayNanos) {
+        LaneDelay delay = delays.get(lane);
+        delay.count.increment();
+        delay.total.add(delayNanos);
+        delay.max.accumulate(delayNanos);
+    }
+
+    /**
+     * Returns the delays recorded since the previous call and starts recording anew. Lanes without
+     * any payloads sent in the meantime are omitted.
+     *
+     * @return the recorded delays per lane
+     */
+    public List<Summary> drain() {
+        List<Summary> summaries = new ArrayList<>();
+        delays.forEach((lane, delay) -> {
+            long count = delay.count.sumThenReset();
+            long total = delay.total.sumThenReset();
+            long max = delay.max.getThenReset();
+            if (count > 0) {
+                summaries.add(new Summary(lane, count, Duration.ofNanos(total / count),
+                    Duration.ofNanos(max)));
+            }
+        });
+        return summaries;
+    }
+
+    /**
+     * A record summarizing the queueing delay of one lane.
+     *
+     * @param lane    the lane
+     * @param count   the number of payloads sent on the lane
+     * @param average the average queueing delay
+     * @param max     the maximum queueing delay
+     */
+    public record Summary(Lane lane, long count, Duration average, Duration max) {
+
+    }
+
+    private static class LaneDelay {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    }
+
+}
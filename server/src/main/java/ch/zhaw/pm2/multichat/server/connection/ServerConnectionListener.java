@@ -1,39 +1,52 @@
 package ch.zhaw.pm2.multichat.server.connection;
 
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.ANONYMOUS;
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createDisconnectPayload;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
 import static java.util.Objects.requireNonNull;
+import static java.util.Objects.requireNonNullElse;
 
-import ch.zhaw.pm2.multichat.protocol.connection.Connection;
 import ch.zhaw.pm2.multichat.protocol.connection.ConnectionListener;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A class representing a listener for the server connection. It extends the ConnectionListener
  * class and adds functionality to perform error payload creation and disconnection. It also holds a
- * reference to the ConnectionRegistry for registering and unregistering connections.
+ * reference to the ConnectionRegistry for registering and unregistering connections and to the
+ * ClusterNode, since links to other server nodes are served by the same listener. The listener does
+ * not run on a thread of its own, the event loop of the connection passes every received payload
+ * to {@link #dispatch}.
  */
 public class ServerConnectionListener extends ConnectionListener<Payload> {
 
+    private final ChannelConnection channelConnection;
     private final ConnectionRegistry connectionRegistry;
+    private final ClusterNode clusterNode;
 
     /**
-     * Constructs a new ServerConnectionListener with the given Connection, payloadHandlers and
-     * ConnectionRegistry.
+     * Constructs a new ServerConnectionListener with the given Connection, payloadHandlers,
+     * ConnectionRegistry and ClusterNode.
      *
      * @param connection         the Connection to listen to
      * @param payloadHandlers    the payloadHandlers to use for processing payloads
      * @param connectionRegistry the ConnectionRegistry for registering and unregistering
      *                           connections
+     * @param clusterNode        the ClusterNode for unregistering links to other nodes
      */
-    public ServerConnectionListener(Connection<Payload> connection,
+    public ServerConnectionListener(ChannelConnection connection,
         Map<PayloadType, PayloadHandler<Payload>> payloadHandlers,
-        ConnectionRegistry connectionRegistry) {
+        ConnectionRegistry connectionRegistry, ClusterNode clusterNode) {
         super(connection, payloadHandlers);
+        this.channelConnection = connection;
         this.connectionRegistry = requireNonNull(connectionRegistry);
+        this.clusterNode = requireNonNull(clusterNode);
     }
 
     /**
@@ -47,6 +60,39 @@ public class ServerConnectionListener extends ConnectionListener<Payload> {
         return payload.type();
     }
 
+    /**
+     * Returns the parts of the given batch payload.
+     *
+     * @param payload the batch payload to get the parts from
+     * @return the parts of the given batch payload, in the order they have to be handled
+     */
+    @Override
+    protected List<Payload> getBatchParts(Payload payload) {
+        return payload.parts();
+    }
+
+    /**
+     * Passes the given chunk to the connection, which reassembles the payload it belongs to.
+     *
+     * @param chunk the received chunk
+     * @return the complete payload if the chunk is the last one, null otherwise
+     * @throws ChatProtocolException if the payload exceeds the maximum size
+     */
+    @Override
+    protected Payload assembleChunk(Payload chunk) throws ChatProtocolException {
+        return channelConnection.assembleChunk(chunk);
+    }
+
+    /**
+     * Passes the delivery information of the given payload to the flow control of the connection.
+     *
+     * @param payload the received payload
+     */
+    @Override
+    protected void performDeliveryTracking(Payload payload) {
+        channelConnection.receiveDelivery(payload.delivery());
+    }
+
     /**
      * Performs the creation of an error payload with the given message.
      *
@@ -55,19 +101,33 @@ public class ServerConnectionListener extends ConnectionListener<Payload> {
      */
     @Override
     protected Payload performErrorPayloadCreation(String message) {
-        return createErrorPayload(getConnection().getUsername(), message);
+        return createErrorPayload(requireNonNullElse(getConnection().getUsername(), ANONYMOUS),
+            message);
     }
 
     /**
-     * Performs the disconnection of the current connection. Sends a disconnect payload to the
-     * client and unregisters the connection from the ConnectionRegistry.
+     * Performs the disconnection of the current connection. If the connection is a link to another
+     * server node, it is unregistered from the ClusterNode. If the network connection of a
+     * registered user has been lost, the connection is suspended, so its session can be resumed.
+     * Otherwise, a disconnect payload is sent to the client and the connection is unregistered
+     * from the ConnectionRegistry.
      */
     @Override
     protected void performDisconnection() {
-        String username = getConnection().getUsername();
+        if (clusterNode.unregisterLink(getConnection())) {
+            return;
+        }
+
+        if (channelConnection.isState(CONNECTED) && channelConnection.getSessionToken() != null
+            && channelConnection.getNetworkConnection().isClosed()) {
+            connectionRegistry.suspendConnection(channelConnection);
+            return;
+        }
+
+        String username = requireNonNullElse(getConnection().getUsername(), ANONYMOUS);
 
         getConnection().sendPayload(createDisconnectPayload(username));
-        connectionRegistry.unregisterConnection(username);
+        connectionRegistry.unregisterConnection(getConnection());
     }
 
 }
@@ -0,0 +1,20 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+/**
+ * An enum representing the ways a connection is treated which has fallen so far behind the
+ * {@link BroadcastRing} that broadcasts have been overwritten before it has read them.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * The connection is sent an error and disconnected, or its session expires if it is suspended.
+     */
+    DISCONNECT,
+
+    /**
+     * The overwritten broadcasts are skipped, and the connection goes on with the oldest broadcast
+     * still in the ring.
+     */
+    SKIP
+
+}
@@ -0,0 +1,79 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class representing a pool of direct buffers of the same size, which can be shared by all
+ * loops. Direct buffers are expensive to allocate, but are written to and read from a channel
+ * without copying, so they are only borrowed from the pool while they hold data.
+ * <p>
+ * The pool allocates a new buffer if none is available and retains at most a maximum number of
+ * returned buffers, the others are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    /**
+     * Constructs a new BufferPool object for buffers of the given size.
+     *
+     * @param bufferSize       the capacity of the buffers in bytes
+     * @param maxPooledBuffers the maximum number of buffers retained by the pool
+     */
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize <= 0 || maxPooledBuffers < 0) {
+            throw new IllegalArgumentException("Buffer size and pool size must be positive");
+        }
+
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Returns the capacity of the buffers of the pool.
+     *
+     * @return the capacity of the buffers in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Borrows a cleared buffer from the pool, or allocates a new one if the pool is empty.
+     *
+     * @return a cleared direct buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        pooledBuffers.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Returns the given buffer to the pool. The buffer must not be used anymore by the caller.
+     *
+     * @param buffer the buffer borrowed from the pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+
+        if (pooledBuffers.incrementAndGet() <= maxPooledBuffers) {
+            buffers.add(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,567 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.DECODE;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.HANDLE;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.WRITE;
+import static java.lang.String.format;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.FrameCodec;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import javax.net.ssl.SSLEngine;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing the non-blocking end of a connection, which is served by the
+ * {@link EventLoop} it is pinned to. Received frames are decoded and passed to the receiver on the
+ * thread of the loop, so there is no thread per connection. Frames are decoded by the codec of the
+ * endpoint right from the read buffer, which is reused for all frames.
+ * <p>
+ * Except for {@link #isAvailable()}, {@link #isClosed()} and {@link #close()}, the methods of
+ * this class must only be called by the loop. Frames which can not be written at once are queued
+ * and written as soon as the channel is writable again. Closing the endpoint waits until all
+ * queued frames have been written.
+ * <p>
+ * The channel can be detached from the endpoint after a received frame, e.g. to forward the raw
+ * bytes following the frame to another channel. A detached endpoint neither sends nor receives
+ * anything anymore.
+ * <p>
+ * The connection can be encrypted with TLS, in which case the frames are passed through a
+ * {@link TlsTransport}. Frames sent before the handshake has finished are queued until then. Since
+ * the bytes of an encrypted channel can not be forwarded as they are, an encrypted endpoint can not
+ * be detached.
+ * <p>
+ * Decoding, handling and writing frames are recorded as the {@link Stage stages} of the loop.
+ * While the loop has congested the inbox of another loop, the endpoint stops reading, so the
+ * received frames stay in the socket until the other loop has caught up.
+ *
+ * @param <T> type of Objects to be transmitted trough this connection
+ */
+@Slf4j
+public class ChannelEndpoint<T extends Serializable> extends ChannelHandler implements
+    NetworkEndpoint<T> {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final Duration CONGESTION_PERIOD = Duration.ofMillis(10);
+
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final StageMetrics stageMetrics;
+    private final FrameCodec<T> codec;
+    private final WriteQueue writeQueue = new WriteQueue();
+    private final TlsTransport tls;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private SelectionKey key;
+    private Consumer<T> receiver = payload -> {
+    };
+    private Runnable closeHandler = () -> {
+    };
+    private Runnable drainHandler = () -> {
+    };
+    private Consumer<DetachedChannel> detachHandler;
+    private volatile boolean closing;
+    private boolean closed;
+    private boolean readPaused;
+
+    /**
+     * Constructs a new ChannelEndpoint object for the given channel, pinned to the given loop. The
+     * channel is not served until {@link #open(Consumer, Runnable)} is called.
+     *
+     * @param channel   the connected channel
+     * @param eventLoop the loop serving the channel
+     * @param codec     the codec of the frames, which is only used by the loop
+     * @throws IOException if the channel can not be switched to non-blocking mode
+     */
+    public ChannelEndpoint(SocketChannel channel, EventLoop eventLoop, FrameCodec<T> codec)
+        throws IOException {
+        this.channel = requireNonNull(channel);
+        this.eventLoop = requireNonNull(eventLoop);
+        this.stageMetrics = eventLoop.getStageMetrics();
+        this.codec = requireNonNull(codec);
+        this.tls = null;
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Constructs a new ChannelEndpoint object for the given channel, pinned to the given loop,
+     * which encrypts the connection with the given engine. The handshake starts once the channel
+     * is served.
+     *
+     * @param channel    the connected channel
+     * @param eventLoop  the loop serving the channel
+     * @param codec      the codec of the frames, which is only used by the loop
+     * @param engine     the engine of the connection, in client or server mode
+     * @param bufferPool the pool of the buffers holding the encrypted bytes
+     * @throws IOException if the channel can not be switched to non-blocking mode or the
+     *                     handshake can not be started
+     */
+    public ChannelEndpoint(SocketChannel channel, EventLoop eventLoop, FrameCodec<T> codec,
+        SSLEngine engine, BufferPool bufferPool) throws IOException {
+        this.channel = requireNonNull(channel);
+        this.eventLoop = requireNonNull(eventLoop);
+        this.stageMetrics = eventLoop.getStageMetrics();
+        this.codec = requireNonNull(codec);
+        this.tls = new TlsTransport(engine, channel, writeQueue, bufferPool);
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Returns the loop this endpoint is pinned to.
+     *
+     * @return the loop serving this endpoint
+     */
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Indicates if the connection is encrypted with TLS.
+     *
+     * @return true if the connection is encrypted, false otherwise
+     */
+    public boolean isEncrypted() {
+        return tls != null;
+    }
+
+    /**
+     * Registers the channel at its loop, which then passes every received object to the given
+     * receiver and calls the given close handler once the channel has been closed.
+     *
+     * @param receiver     the consumer of the received objects
+     * @param closeHandler called after the channel has been closed by either side
+     */
+    public void open(Consumer<T> receiver, Runnable closeHandler) {
+        this.receiver = requireNonNull(receiver);
+        this.closeHandler = requireNonNull(closeHandler);
+        eventLoop.execute(this::register);
+    }
+
+    /**
+     * Sets the handler called by the loop once the frames which the channel has not accepted at
+     * once have all been written, e.g. to resume sending to a connection which has fallen behind.
+     *
+     * @param drainHandler called after the write queue has drained
+     */
+    public void setDrainHandler(Runnable drainHandler) {
+        this.drainHandler = requireNonNull(drainHandler);
+    }
+
+    /**
+     * Queues the given data object and writes as much of the queue as the channel accepts.
+     *
+     * @param data data object of type T to be submitted through the connection.
+     * @throws IOException if the object can not be serialized or the channel fails
+     */
+    @Override
+    public void send(T data) throws IOException {
+        long start = System.nanoTime();
+        writeQueue.add(codec.encodeFrame(data));
+        stageMetrics.recordDepth(WRITE, writeQueue.size());
+        if (writeQueue.size() == 1) {
+            flush();
+        }
+        stageMetrics.record(WRITE, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the number of bytes of the frames queued because the channel has not accepted them
+     * yet. Must be called by the loop.
+     *
+     * @return the number of queued bytes
+     */
+    public long getQueuedBytes() {
+        return writeQueue.getBytes();
+    }
+
+    /**
+     * Not supported, since received objects are passed to the receiver by the loop.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public T receive() {
+        throw new UnsupportedOperationException("Objects are received by the event loop");
+    }
+
+    /**
+     * Indicates if the channel is open and not being closed.
+     *
+     * @return true if objects can be sent, false otherwise
+     */
+    @Override
+    public boolean isAvailable() {
+        return !closing && detachHandler == null && channel.isOpen();
+    }
+
+    /**
+     * Indicate if the channel has been closed.
+     *
+     * @return true if the channel is closed, false otherwise.
+     */
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    /**
+     * Closes the channel as soon as all queued frames have been written. May be called by any
+     * thread. A detached channel is closed by the handler that has taken it over.
+     */
+    @Override
+    public void close() {
+        if (detachHandler != null) {
+            return;
+        }
+
+        closing = true;
+        if (eventLoop.inEventLoop()) {
+            closeWhenFlushed();
+        } else {
+            eventLoop.execute(this::closeWhenFlushed);
+        }
+    }
+
+    /**
+     * Detaches the channel from this endpoint once the frame at hand has been passed to the
+     * receiver. The channel, together with the bytes received beyond this frame, is then passed to
+     * the given handler, which takes over the channel. Must be called by the loop while the
+     * endpoint passes a received object to its receiver. The close handler of a detached endpoint
+     * is not called.
+     *
+     * @param detachHandler the handler taking over the channel
+     * @throws IllegalStateException if the endpoint is encrypted
+     */
+    public void detach(Consumer<DetachedChannel> detachHandler) {
+        if (isEncrypted()) {
+            throw new IllegalStateException("An encrypted channel can not be detached");
+        }
+        this.detachHandler = requireNonNull(detachHandler);
+    }
+
+    /**
+     * Handles the readiness of the channel selected by the loop.
+     *
+     * @param selectionKey the selected key of the channel
+     */
+    @Override
+    void handleSelection(SelectionKey selectionKey) {
+        try {
+            if (selectionKey.isWritable()) {
+                flush();
+                if (!closing && !isWritePending()) {
+                    drainHandler.run();
+                }
+            }
+            if (selectionKey.isValid() && !readPaused && (selectionKey.isReadable()
+                || tls != null && tls.hasReceivedBytes() && !tls.isOutboundPending())) {
+                read();
+            }
+        } catch (IOException e) {
+            log.debug(format("Channel failed: %s", e.getMessage()));
+            closeNow();
+        }
+    }
+
+    /**
+     * Writes as many queued frames as possible without blocking and closes the channel, even if
+     * frames remain queued. Used by the loop when it shuts down.
+     */
+    @Override
+    void shutdown() {
+        closing = true;
+        try {
+            flush();
+        } catch (IOException e) {
+            log.debug(format("Channel failed: %s", e.getMessage()));
+        }
+        closeNow();
+    }
+
+    /**
+     * Closes the channel immediately, discards all queued frames and calls the close handler.
+     */
+    @Override
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        closing = true;
+        if (key != null) {
+            key.cancel();
+        }
+        if (tls != null) {
+            tls.close();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error(format("Failed to close channel: %s", e.getMessage()));
+        }
+        writeQueue.clear();
+        if (detachHandler == null) {
+            closeHandler.run();
+        }
+    }
+
+    private void register() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            key = channel.register(eventLoop.getSelector(), OP_READ, this);
+            if (tls != null) {
+                flush();
+            } else {
+                updateInterest();
+            }
+        } catch (IOException e) {
+            log.error(format("Failed to register channel: %s", e.getMessage()));
+            closeNow();
+        }
+    }
+
+    private void read() throws IOException {
+        if (tls != null) {
+            readEncrypted();
+            return;
+        }
+
+        if (channel.read(readBuffer) < 0) {
+            closeNow();
+            return;
+        }
+        receiveFrames();
+    }
+
+    /**
+     * Reads the received records and decrypts them into the read buffer, as often as needed to
+     * make room for all of them. Frames which have been held back by the handshake are written
+     * afterwards.
+     */
+    private void readEncrypted() throws IOException {
+        boolean endOfStream = tls.read() < 0;
+        do {
+            ensureUnwrapCapacity();
+            tls.unwrap(readBuffer);
+            receiveFrames();
+        } while (!closing && !readPaused && tls.isUnwrapPending());
+
+        if (endOfStream || tls.isInboundDone()) {
+            closeNow();
+        } else if (!closed) {
+            flush();
+        }
+    }
+
+    private void receiveFrames() throws IOException {
+        readBuffer.flip();
+        while (!closing && detachHandler == null && readBuffer.remaining() >= Integer.BYTES) {
+            if (eventLoop.isCongested()) {
+                pauseReading();
+                break;
+            }
+            int length = readBuffer.getInt(readBuffer.position());
+            checkFrameSize(length);
+            if (readBuffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+
+            int offset = readBuffer.position() + Integer.BYTES;
+            readBuffer.position(offset + length);
+            long start = System.nanoTime();
+            T data = decode(offset, length);
+            long decoded = System.nanoTime();
+            receiver.accept(data);
+            stageMetrics.record(DECODE, decoded - start);
+            stageMetrics.record(HANDLE, System.nanoTime() - decoded);
+        }
+
+        if (detachHandler != null) {
+            key.interestOps(0);
+            detachHandler.accept(new DetachedChannel(channel, key, readBuffer.slice()));
+            return;
+        }
+        readBuffer.compact();
+        ensureReadCapacity();
+    }
+
+    /**
+     * Stops reading until the loop is no longer congested. Frames already received stay in the
+     * read buffer and are passed to the receiver once reading resumes.
+     */
+    private void pauseReading() {
+        readPaused = true;
+        updateInterest();
+        eventLoop.schedule(this::resumeReading, CONGESTION_PERIOD);
+    }
+
+    private void resumeReading() {
+        if (closed || detachHandler != null) {
+            return;
+        }
+        if (eventLoop.isCongested()) {
+            eventLoop.schedule(this::resumeReading, CONGESTION_PERIOD);
+            return;
+        }
+
+        readPaused = false;
+        updateInterest();
+        try {
+            read();
+        } catch (IOException e) {
+            log.debug(format("Channel failed: %s", e.getMessage()));
+            closeNow();
+        }
+    }
+
+    private T decode(int offset, int length) throws IOException {
+        try {
+            return codec.decode(readBuffer, offset, length);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(format("Received object of unknown type: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Replaces the read buffer by a larger one if the frame at its start does not fit into it.
+     */
+    private void ensureReadCapacity() {
+        if (readBuffer.position() < Integer.BYTES) {
+            return;
+        }
+
+        int frameSize = Integer.BYTES + readBuffer.getInt(0);
+        if (frameSize > readBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(frameSize);
+            readBuffer.flip();
+            readBuffer = larger.put(readBuffer);
+        }
+    }
+
+    /**
+     * Replaces the read buffer by a larger one if it has no room for a decrypted record.
+     */
+    private void ensureUnwrapCapacity() {
+        int required = tls.getApplicationBufferSize();
+        if (readBuffer.remaining() < required) {
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.position() + required);
+            readBuffer.flip();
+            readBuffer = larger.put(readBuffer);
+        }
+    }
+
+    private void flush() throws IOException {
+        try {
+            if (tls != null) {
+                tls.write();
+            } else {
+                writeFrames();
+            }
+        } catch (IOException e) {
+            closeNow();
+            throw e;
+        }
+
+        updateInterest();
+        if (closing) {
+            closeWhenFlushed();
+        }
+    }
+
+    private void writeFrames() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer frame = writeQueue.peek();
+            channel.write(frame);
+            if (frame.hasRemaining()) {
+                break;
+            }
+            writeQueue.poll();
+        }
+    }
+
+    private void updateInterest() {
+        if (key != null && key.isValid() && detachHandler == null) {
+            int readInterest = readPaused ? 0 : OP_READ;
+            key.interestOps(isWritePending() ? readInterest | OP_WRITE : readInterest);
+        }
+    }
+
+    /**
+     * Determines whether bytes are waiting for the channel to become writable. Frames held back by
+     * the handshake of an encrypted channel are written once a handshake message has been
+     * received.
+     */
+    private boolean isWritePending() {
+        return tls == null ? !writeQueue.isEmpty() : tls.isOutboundPending();
+    }
+
+    private void closeWhenFlushed() {
+        if (writeQueue.isEmpty() && !isWritePending()) {
+            closeNow();
+        }
+    }
+
+    /**
+     * The queue of the frames waiting to be written, which keeps track of their bytes. Frames are
+     * only removed by {@link #poll()} once they have been written completely, or all at once.
+     */
+    private static class WriteQueue implements FrameQueue {
+
+        private final ArrayDeque<ByteBuffer> frames = new ArrayDeque<>();
+        private long bytes;
+
+        void add(ByteBuffer frame) {
+            frames.add(frame);
+            bytes += frame.limit();
+        }
+
+        int size() {
+            return frames.size();
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return frames.isEmpty();
+        }
+
+        @Override
+        public ByteBuffer peek() {
+            return frames.peek();
+        }
+
+        @Override
+        public ByteBuffer poll() {
+            ByteBuffer frame = frames.poll();
+            if (frame != null) {
+                bytes -= frame.limit();
+            }
+            return frame;
+        }
+
+        @Override
+        public void clear() {
+            frames.clear();
+            bytes = 0;
+        }
+
+    }
+
+}
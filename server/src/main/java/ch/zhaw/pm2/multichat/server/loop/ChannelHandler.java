@@ -0,0 +1,28 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * A class representing the handler of the channels registered at an {@link EventLoop}. The handler
+ * is attached to the selection keys of its channels and only called by the loop.
+ */
+abstract class ChannelHandler {
+
+    /**
+     * Handles the readiness of a channel selected by the loop.
+     *
+     * @param selectionKey the selected key of the channel
+     */
+    abstract void handleSelection(SelectionKey selectionKey);
+
+    /**
+     * Closes the channels of the handler immediately.
+     */
+    abstract void closeNow();
+
+    /**
+     * Closes the channels of the handler when the loop shuts down.
+     */
+    abstract void shutdown();
+
+}
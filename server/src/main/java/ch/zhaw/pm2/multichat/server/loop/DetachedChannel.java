@@ -0,0 +1,19 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A record representing a channel detached from its {@link ChannelEndpoint}, so its raw bytes can
+ * be handled otherwise. The channel is still registered at the loop of the endpoint, but without
+ * interest in any operation.
+ *
+ * @param channel      the detached channel
+ * @param selectionKey the key of the channel at the loop of the endpoint
+ * @param received     the bytes already received beyond the last frame decoded by the endpoint
+ */
+public record DetachedChannel(SocketChannel channel, SelectionKey selectionKey,
+                              ByteBuffer received) {
+
+}
@@ -0,0 +1,362 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.server.loop.Stage.DELIVER;
+import static java.lang.String.format;
+import static java.util.Comparator.comparingLong;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing an event loop which serves a shard of the server's connections on a single
+ * thread. Every connection is pinned to one loop for its whole life, so reading, handling and
+ * writing its payloads never needs a lock.
+ * <p>
+ * Other threads hand work to the loop through its inbox, a lock-free queue with many producers and
+ * the loop as only consumer. After every selection, the loop runs all tasks in its inbox, e.g. the
+ * deliveries of a broadcast which has been received by a connection of another loop. Tasks can also
+ * be scheduled to run after a delay, the loop then limits the selection to the earliest deadline.
+ * <p>
+ * The inbox is bounded by backpressure: if another loop, or a range running for it, adds a task
+ * while the inbox holds more than the maximum number of pending tasks, the other loop is
+ * congested. Its endpoints stop reading until the inbox has drained to half the maximum, so a
+ * flood of payloads is held back in the sockets of its senders instead of the memory of the
+ * server. No loop ever waits for another loop, so loops congesting each other can not deadlock.
+ * The bound is therefore soft: a task is never rejected, and the inbox may exceed the maximum by
+ * the tasks the congested loops add while handling the frames they have already read. Threads
+ * which do not run for a loop, like the acceptors adding one task per accepted connection, are not
+ * held back at all. The time tasks wait in the inbox and its depth are recorded as the
+ * {@link Stage#DELIVER} stage.
+ * <p>
+ * A loop can split work on many of its connections into ranges which run on a work-stealing pool,
+ * see {@link #invokeAll(ForkJoinPool, List)}. The loop waits until the pool has completed them.
+ * A range is no part of the loop: {@link #inEventLoop()} is false on the threads of the pool, and
+ * a range must neither touch the timers nor the congestion of the loop. Instead, a connection is
+ * served by the range which has claimed it, see {@link #inRange()}.
+ */
+@Slf4j
+public class EventLoop implements Executor, Closeable, Runnable {
+
+    private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Range> RANGE = new ThreadLocal<>();
+
+    private final Selector selector;
+    private final Queue<Task> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final Queue<Timer> timers = new PriorityQueue<>(comparingLong(Timer::deadline));
+    private final Thread thread;
+    private final int maxPendingTasks;
+    private final StageMetrics stageMetrics;
+    private EventLoop congestedLoop;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a new EventLoop object with a thread of the given name. The loop does not run
+     * until {@link #start()} is called.
+     *
+     * @param name            the name of the thread of the loop
+     * @param maxPendingTasks the number of pending tasks beyond which the inbox is congested
+     * @param stageMetrics    the metrics to record the latencies of the stages in
+     * @throws IOException if the selector can not be opened
+     */
+    public EventLoop(String name, int maxPendingTasks, StageMetrics stageMetrics)
+        throws IOException {
+        if (maxPendingTasks < 1) {
+            throw new IllegalArgumentException(
+                format("Illegal number of pending tasks: %d", maxPendingTasks));
+        }
+
+        this.maxPendingTasks = maxPendingTasks;
+        this.stageMetrics = requireNonNull(stageMetrics);
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    /**
+     * Starts the thread of the loop.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Determines whether the current thread is the thread of this loop.
+     *
+     * @return true if called by this loop, false otherwise
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Determines whether the current thread runs a range of this loop on a pool, see
+     * {@link #invokeAll(ForkJoinPool, List)}. A range may only serve the connections it has
+     * claimed, never the loop itself.
+     *
+     * @return true if called by a range of this loop, false otherwise
+     */
+    public boolean inRange() {
+        Range range = RANGE.get();
+        return range != null && range.eventLoop == this;
+    }
+
+    /**
+     * Runs the given ranges on the given work-stealing pool and waits until all of them have
+     * completed. The ranges may serve connections pinned to the loop, as long as every connection
+     * is claimed by a single range. The fork and the join of the ranges order their effects before
+     * and after the rest of the work of the loop, and the congestion caused by the ranges is
+     * applied to the loop after the join. Must be called by the thread of the loop.
+     *
+     * @param pool   the pool to run the ranges on
+     * @param ranges the ranges to run
+     * @throws IllegalStateException if not called by the thread of the loop
+     */
+    public void invokeAll(ForkJoinPool pool, List<Runnable> ranges) {
+        checkInEventLoop();
+        List<Range> runningRanges = new ArrayList<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Runnable task : ranges) {
+            Range range = new Range(this);
+            runningRanges.add(range);
+            tasks.add(ForkJoinTask.adapt(() -> range.run(task)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        for (Range range : runningRanges) {
+            if (range.congestedLoop != null) {
+                congestedLoop = range.congestedLoop;
+            }
+        }
+    }
+
+    /**
+     * Adds the given task to the inbox of the loop. The task runs on the thread of the loop after
+     * the current selection, so tasks added by the loop itself run after the current payload has
+     * been handled. If the task is added by another loop, or by a range running for another loop,
+     * while the inbox is congested, the other loop holds back reading. The task is added in any
+     * case. Tasks added by a range of this loop run once the loop has joined its ranges.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        int depth = pendingTasks.incrementAndGet();
+        inbox.add(new Task(task, System.nanoTime()));
+        stageMetrics.recordDepth(DELIVER, depth);
+        if (inEventLoop() || inRange()) {
+            return;
+        }
+
+        if (depth > maxPendingTasks) {
+            if (CURRENT.get() != null) {
+                CURRENT.get().congestedLoop = this;
+            } else if (RANGE.get() != null) {
+                RANGE.get().congestedLoop = this;
+            }
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Determines whether the endpoints of this loop have to hold back reading, because this loop
+     * has congested the inbox of another loop, which has not drained to half its maximum yet. Must
+     * be called by this loop.
+     *
+     * @return true if reading has to be held back, false otherwise
+     * @throws IllegalStateException if not called by the thread of the loop
+     */
+    boolean isCongested() {
+        checkInEventLoop();
+        if (congestedLoop != null
+            && congestedLoop.pendingTasks.get() <= congestedLoop.maxPendingTasks / 2) {
+            congestedLoop = null;
+        }
+
+        return congestedLoop != null;
+    }
+
+    /**
+     * Returns the metrics the stages served by this loop record their latencies in.
+     *
+     * @return the metrics of the stages
+     */
+    public StageMetrics getStageMetrics() {
+        return stageMetrics;
+    }
+
+    /**
+     * Schedules the given task to run on the thread of the loop once the given delay has elapsed.
+     * Other threads, including the ranges of the loop, hand the timer to the loop through its
+     * inbox.
+     *
+     * @param task  the task to run
+     * @param delay the delay after which the task runs
+     */
+    public void schedule(Runnable task, Duration delay) {
+        if (!inEventLoop()) {
+            execute(() -> schedule(task, delay));
+            return;
+        }
+
+        timers.add(new Timer(System.nanoTime() + delay.toNanos(), task));
+    }
+
+    /**
+     * Returns the selector of the loop. Channels must only be registered by the loop itself.
+     *
+     * @return the selector of the loop
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Selects the ready channels and runs the tasks in the inbox until the loop is closed. When the
+     * loop ends, all channels registered at it are closed.
+     */
+    @Override
+    public void run() {
+        CURRENT.set(this);
+        while (running) {
+            try {
+                select();
+                processSelectedKeys();
+            } catch (IOException e) {
+                log.error(format("Selection failed: %s", e.getMessage()));
+            }
+            runTasks();
+            runTimers();
+        }
+
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            ((ChannelHandler) key.attachment()).shutdown();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error(format("Failed to close selector: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Stops the loop after its current selection. All channels registered at the loop are closed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void checkInEventLoop() {
+        if (!inEventLoop()) {
+            throw new IllegalStateException(
+                format("Only %s can access its loop", thread.getName()));
+        }
+    }
+
+    private void select() throws IOException {
+        Timer timer = timers.peek();
+        if (timer == null) {
+            selector.select();
+            return;
+        }
+
+        long remaining = timer.deadline() - System.nanoTime();
+        if (remaining > 0) {
+            selector.select(Math.max(1, NANOSECONDS.toMillis(remaining)));
+        } else {
+            selector.selectNow();
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            ChannelHandler handler = (ChannelHandler) key.attachment();
+            try {
+                handler.handleSelection(key);
+            } catch (CancelledKeyException e) {
+                handler.closeNow();
+            } catch (RuntimeException e) {
+                log.error(format("Failed to handle channel on %s", thread.getName()), e);
+                handler.closeNow();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Task task;
+        while ((task = inbox.poll()) != null) {
+            pendingTasks.decrementAndGet();
+            stageMetrics.record(DELIVER, System.nanoTime() - task.enqueueTime());
+            try {
+                task.runnable().run();
+            } catch (RuntimeException e) {
+                log.error(format("Task failed on %s", thread.getName()), e);
+            }
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        while (!timers.isEmpty() && timers.peek().deadline() - now <= 0) {
+            try {
+                timers.poll().task().run();
+            } catch (RuntimeException e) {
+                log.error(format("Scheduled task failed on %s", thread.getName()), e);
+            }
+        }
+    }
+
+    private record Timer(long deadline, Runnable task) {
+
+    }
+
+    private record Task(Runnable runnable, long enqueueTime) {
+
+    }
+
+    /**
+     * A range of work which a loop runs on a pool. The congestion the range causes is recorded
+     * here, instead of in the loop, until the loop has joined the range.
+     */
+    private static class Range {
+
+        private final EventLoop eventLoop;
+        private EventLoop congestedLoop;
+
+        private Range(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        private void run(Runnable task) {
+            RANGE.set(this);
+            try {
+                task.run();
+            } finally {
+                RANGE.remove();
+            }
+        }
+
+    }
+
+}
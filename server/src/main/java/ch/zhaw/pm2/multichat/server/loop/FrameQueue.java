@@ -0,0 +1,38 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An interface representing the frames queued by a {@link ChannelEndpoint}, as seen by the layer
+ * writing them to the channel. A frame stays at the head of the queue until it has been written
+ * completely.
+ */
+interface FrameQueue {
+
+    /**
+     * Determines whether no frame is queued.
+     *
+     * @return true if the queue is empty, false otherwise
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the frame at the head of the queue without removing it.
+     *
+     * @return the next frame to be written, or null if the queue is empty
+     */
+    ByteBuffer peek();
+
+    /**
+     * Removes the frame at the head of the queue once it has been written completely.
+     *
+     * @return the removed frame, or null if the queue is empty
+     */
+    ByteBuffer poll();
+
+    /**
+     * Discards all queued frames.
+     */
+    void clear();
+
+}
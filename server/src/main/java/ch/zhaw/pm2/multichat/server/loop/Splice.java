@@ -0,0 +1,186 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static java.lang.String.format;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a splice, which forwards the raw bytes received on a source channel to a
+ * sink channel on the thread of an {@link EventLoop}. The bytes pass through a direct buffer, so
+ * they are never copied to the heap. The source is only read while the buffer has room, so a slow
+ * sink slows down the source instead of filling the memory of the server.
+ * <p>
+ * The throughput of a splice is limited, so bulk transfers leave enough of the loop to the chat
+ * traffic of its connections. Once the limit of the current period has been reached, the source is
+ * not read until the next period starts. When the source has been read to its end and everything
+ * has been written to the sink, both channels are closed.
+ */
+@Slf4j
+public class Splice extends ChannelHandler {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Duration THROTTLE_PERIOD = Duration.ofMillis(100);
+
+    private final EventLoop eventLoop;
+    private final DetachedChannel source;
+    private final DetachedChannel sink;
+    private final long bytesPerPeriod;
+    private ByteBuffer buffer;
+    private SelectionKey sourceKey;
+    private SelectionKey sinkKey;
+    private long periodBytes;
+    private boolean throttled;
+    private boolean endOfStream;
+    private boolean closed;
+
+    /**
+     * Constructs a new Splice object forwarding the bytes of the given source to the given sink.
+     * The splice does not forward anything until {@link #start()} is called.
+     *
+     * @param eventLoop      the loop serving both channels
+     * @param source         the channel to read from
+     * @param sink           the channel to write to
+     * @param bytesPerSecond the maximum throughput of the splice
+     */
+    public Splice(EventLoop eventLoop, DetachedChannel source, DetachedChannel sink,
+        long bytesPerSecond) {
+        if (bytesPerSecond < 1) {
+            throw new IllegalArgumentException(format("Illegal throughput: %d", bytesPerSecond));
+        }
+
+        this.eventLoop = requireNonNull(eventLoop);
+        this.source = requireNonNull(source);
+        this.sink = requireNonNull(sink);
+        this.bytesPerPeriod = Math.max(1,
+            bytesPerSecond * THROTTLE_PERIOD.toMillis() / Duration.ofSeconds(1).toMillis());
+    }
+
+    /**
+     * Moves both channels to the loop of the splice and starts forwarding. The bytes the source
+     * endpoint has received beyond its last frame are forwarded first. May be called by any thread.
+     */
+    public void start() {
+        eventLoop.execute(() -> {
+            ByteBuffer received = source.received();
+            buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, received.remaining()))
+                .put(received);
+            try {
+                sourceKey = register(source);
+                sinkKey = register(sink);
+            } catch (IOException e) {
+                log.debug(format("Failed to start splice: %s", e.getMessage()));
+                closeNow();
+                return;
+            }
+            transfer();
+        });
+    }
+
+    /**
+     * Forwards the bytes of the source as far as the readiness of the channels allows.
+     *
+     * @param selectionKey the selected key of one of the channels
+     */
+    @Override
+    void handleSelection(SelectionKey selectionKey) {
+        transfer();
+    }
+
+    /**
+     * Closes both channels immediately.
+     */
+    @Override
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        close(source, sourceKey);
+        close(sink, sinkKey);
+    }
+
+    /**
+     * Closes both channels immediately, even if not everything has been forwarded.
+     */
+    @Override
+    void shutdown() {
+        closeNow();
+    }
+
+    private SelectionKey register(DetachedChannel detached) throws IOException {
+        SelectionKey selectionKey = detached.selectionKey();
+        if (selectionKey.selector() == eventLoop.getSelector() && selectionKey.isValid()) {
+            selectionKey.attach(this);
+            return selectionKey;
+        }
+
+        selectionKey.cancel();
+        return detached.channel().register(eventLoop.getSelector(), 0, this);
+    }
+
+    private void transfer() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (!endOfStream && !throttled && buffer.hasRemaining()) {
+                int read = source.channel().read(buffer);
+                if (read < 0) {
+                    endOfStream = true;
+                } else {
+                    throttle(read);
+                }
+            }
+
+            buffer.flip();
+            sink.channel().write(buffer);
+            buffer.compact();
+        } catch (IOException e) {
+            log.debug(format("Splice failed: %s", e.getMessage()));
+            closeNow();
+            return;
+        }
+
+        if (endOfStream && buffer.position() == 0) {
+            closeNow();
+            return;
+        }
+
+        sourceKey.interestOps(!endOfStream && !throttled && buffer.hasRemaining() ? OP_READ : 0);
+        sinkKey.interestOps(buffer.position() > 0 ? OP_WRITE : 0);
+    }
+
+    private void throttle(int read) {
+        periodBytes += read;
+        if (periodBytes >= bytesPerPeriod) {
+            throttled = true;
+            eventLoop.schedule(() -> {
+                throttled = false;
+                periodBytes = 0;
+                transfer();
+            }, THROTTLE_PERIOD);
+        }
+    }
+
+    private static void close(DetachedChannel detached, SelectionKey selectionKey) {
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            detached.channel().close();
+        } catch (IOException e) {
+            log.error(format("Failed to close channel: %s", e.getMessage()));
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+/**
+ * An enum representing the stages a payload passes on its way through the server. Every stage of
+ * a connection runs on the {@link EventLoop} the connection is pinned to, so the stages of the
+ * same connection never need a lock. Payloads pass from one connection to another through the
+ * inbox of the loop of the receiving connection, whose depth is limited by backpressure.
+ */
+public enum Stage {
+
+    /**
+     * The stage decoding the received frames into payloads.
+     */
+    DECODE,
+
+    /**
+     * The stage validating, authorizing and routing the received payloads, i.e. running their
+     * handlers.
+     */
+    HANDLE,
+
+    /**
+     * The stage passing payloads and other tasks to a loop, i.e. the time they wait in its inbox.
+     */
+    DELIVER,
+
+    /**
+     * The stage passing a broadcast to its recipients, i.e. the time from its publication until
+     * the last recipient served by a loop has written it to its channel, unless the window of the
+     * recipient or the channel is full. Its depth is the number of these recipients.
+     */
+    FAN_OUT,
+
+    /**
+     * The stage encoding the sent payloads into frames and writing them to the channel.
+     */
+    WRITE
+
+}
@@ -0,0 +1,97 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class representing the latency and queue depth of every {@link Stage} of the server. The
+ * latency of a stage is the time a payload spends in it, the depth is the number of payloads or
+ * tasks waiting for it. All loops record into the same metrics concurrently, so the counters are
+ * striped instead of synchronized.
+ */
+public class StageMetrics {
+
+    private final Map<Stage, StageLatency> latencies = new EnumMap<>(Stage.class);
+
+    /**
+     * Constructs a new StageMetrics object without any recorded latencies.
+     */
+    public StageMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new StageLatency());
+        }
+    }
+
+    /**
+     * Records the time a payload or task has spent in the given stage.
+     *
+     * @param stage        the stage
+     * @param latencyNanos the time spent in the stage in nanoseconds
+     */
+    public void record(Stage stage, long latencyNanos) {
+        StageLatency latency = latencies.get(stage);
+        latency.count.increment();
+        latency.total.add(latencyNanos);
+        latency.max.accumulate(latencyNanos);
+    }
+
+    /**
+     * Records the number of payloads or tasks waiting for the given stage.
+     *
+     * @param stage the stage
+     * @param depth the number of waiting payloads or tasks
+     */
+    public void recordDepth(Stage stage, int depth) {
+        latencies.get(stage).maxDepth.accumulate(depth);
+    }
+
+    /**
+     * Returns the latencies recorded since the previous call and starts recording anew. Stages
+     * without any payloads or tasks in the meantime are omitted.
+     *
+     * @return the recorded latencies per stage
+     */
+    public List<Summary> drain() {
+        List<Summary> summaries = new ArrayList<>();
+        latencies.forEach((stage, latency) -> {
+            long count = latency.count.sumThenReset();
+            long total = latency.total.sumThenReset();
+            long max = latency.max.getThenReset();
+            long maxDepth = latency.maxDepth.getThenReset();
+            if (count > 0) {
+                summaries.add(new Summary(stage, count, Duration.ofNanos(total / count),
+                    Duration.ofNanos(max), maxDepth));
+            }
+        });
+        return summaries;
+    }
+
+    /**
+     * A record summarizing the latency and queue depth of one stage.
+     *
+     * @param stage    the stage
+     * @param count    the number of payloads or tasks that have passed the stage
+     * @param average  the average latency
+     * @param max      the maximum latency
+     * @param maxDepth the maximum number of payloads or tasks waiting for the stage
+     */
+    public record Summary(Stage stage, long count, Duration average, Duration max,
+                          long maxDepth) {
+
+    }
+
+    private static class StageLatency {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    }
+
+}
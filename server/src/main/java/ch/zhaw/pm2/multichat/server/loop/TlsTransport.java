@@ -0,0 +1,257 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static java.util.Objects.requireNonNull;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+import static javax.net.ssl.SSLEngineResult.Status.BUFFER_OVERFLOW;
+import static javax.net.ssl.SSLEngineResult.Status.OK;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A class representing the TLS layer between a {@link ChannelEndpoint} and its non-blocking
+ * channel. Received records are decrypted into the read buffer of the endpoint, and the frames
+ * queued by the endpoint are encrypted into records before they are written. The handshake is
+ * driven by reading and writing, so frames queued before it has finished are held back until then.
+ * <p>
+ * The encrypted bytes are kept in direct buffers borrowed from a {@link BufferPool}, which are only
+ * held while they contain data. Idle connections therefore do not hold any direct buffer. The
+ * engine only encrypts a record into a buffer with room for a whole record, so buffers holding
+ * several records let a handshake flight or several frames go out in a single write instead of a
+ * write per record, which Nagle's algorithm would hold back. The delegated tasks of the engine,
+ * e.g. verifying a certificate, are run on the thread of the loop.
+ */
+class TlsTransport {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    private final SocketChannel channel;
+    private final FrameQueue frames;
+    private final BufferPool bufferPool;
+    private ByteBuffer inbound;
+    private ByteBuffer outbound;
+    private boolean unwrapPending;
+
+    /**
+     * Constructs a new TlsTransport object and begins the handshake.
+     *
+     * @param engine     the engine of the connection, in client or server mode
+     * @param channel    the channel of the connection
+     * @param frames     the queue of frames to be encrypted and written
+     * @param bufferPool the pool of buffers of at least the packet size of the engine
+     * @throws SSLException if the handshake can not be started
+     */
+    TlsTransport(SSLEngine engine, SocketChannel channel, FrameQueue frames,
+        BufferPool bufferPool) throws SSLException {
+        this.engine = requireNonNull(engine);
+        this.channel = requireNonNull(channel);
+        this.frames = requireNonNull(frames);
+        this.bufferPool = requireNonNull(bufferPool);
+        if (bufferPool.getBufferSize() < engine.getSession().getPacketBufferSize()) {
+            throw new IllegalArgumentException("Buffers are smaller than a TLS record");
+        }
+        engine.beginHandshake();
+    }
+
+    /**
+     * Returns the minimum free space the application buffer needs for decrypting a record.
+     *
+     * @return the size of the largest decrypted record
+     */
+    int getApplicationBufferSize() {
+        return engine.getSession().getApplicationBufferSize();
+    }
+
+    /**
+     * Reads the available encrypted bytes from the channel.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream
+     * @throws IOException if the channel fails
+     */
+    int read() throws IOException {
+        if (inbound == null) {
+            inbound = bufferPool.acquire();
+        }
+
+        return channel.read(inbound);
+    }
+
+    /**
+     * Decrypts the received records into the given buffer, which must have room for at least
+     * {@link #getApplicationBufferSize()} bytes. If the buffer fills up before all received
+     * records have been decrypted, {@link #isUnwrapPending()} returns true and this method has to
+     * be called again once there is room. Handshake messages are answered right away. If an
+     * answer can not be written at once, decrypting stops until it has been written.
+     *
+     * @param application the buffer receiving the decrypted bytes
+     * @throws IOException if a record is invalid or the channel fails
+     */
+    void unwrap(ByteBuffer application) throws IOException {
+        unwrapPending = false;
+        if (inbound == null) {
+            return;
+        }
+
+        inbound.flip();
+        try {
+            while (inbound.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(inbound, application);
+                runDelegatedTasks(result);
+                if (engine.getHandshakeStatus() == NEED_WRAP) {
+                    write();
+                    if (outbound != null) {
+                        break;
+                    }
+                }
+                if (result.getStatus() == BUFFER_OVERFLOW) {
+                    unwrapPending = true;
+                    break;
+                }
+                if (result.getStatus() != OK
+                    || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    break;
+                }
+            }
+        } finally {
+            releaseInboundIfEmpty();
+        }
+    }
+
+    /**
+     * Indicates if received records are left to decrypt, because the application buffer was full.
+     *
+     * @return true if {@link #unwrap(ByteBuffer)} has to be called again once there is room
+     */
+    boolean isUnwrapPending() {
+        return unwrapPending;
+    }
+
+    /**
+     * Indicates if received bytes have not been decrypted yet, e.g. because the answer to a
+     * handshake message could not be written before, or because a record is incomplete.
+     *
+     * @return true if received bytes are buffered
+     */
+    boolean hasReceivedBytes() {
+        return inbound != null;
+    }
+
+    /**
+     * Indicates if the peer has closed its side of the TLS session.
+     *
+     * @return true if no more records will be received
+     */
+    boolean isInboundDone() {
+        return engine.isInboundDone();
+    }
+
+    /**
+     * Encrypts the queued frames and pending handshake messages and writes them to the channel,
+     * until the queue is empty, the channel does not accept any more bytes or the handshake has to
+     * receive a message first. Frames are removed from the queue once they are encrypted.
+     *
+     * @throws IOException if the channel fails
+     */
+    void write() throws IOException {
+        while (true) {
+            if (outbound != null) {
+                channel.write(outbound);
+                if (outbound.hasRemaining()) {
+                    return;
+                }
+                bufferPool.release(outbound);
+                outbound = null;
+            }
+            if (!wrap()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Indicates if encrypted bytes are waiting for the channel to become writable.
+     *
+     * @return true if encrypted bytes could not be written yet
+     */
+    boolean isOutboundPending() {
+        return outbound != null;
+    }
+
+    /**
+     * Sends a close notification to the peer, as far as the channel accepts it without blocking,
+     * and returns the borrowed buffers to the pool. Queued frames are discarded.
+     */
+    void close() {
+        engine.closeOutbound();
+        frames.clear();
+        try {
+            write();
+        } catch (IOException e) {
+            // the channel is closed anyway
+        }
+        if (outbound != null) {
+            bufferPool.release(outbound);
+            outbound = null;
+        }
+        if (inbound != null) {
+            bufferPool.release(inbound);
+            inbound = null;
+        }
+    }
+
+    /**
+     * Encrypts as many queued frames and handshake messages as fit into a new outbound buffer.
+     *
+     * @return true if the outbound buffer contains any bytes
+     * @throws SSLException if the engine fails
+     */
+    private boolean wrap() throws SSLException {
+        outbound = bufferPool.acquire();
+        while (!frames.isEmpty() || engine.getHandshakeStatus() == NEED_WRAP) {
+            ByteBuffer frame = frames.isEmpty() ? EMPTY : frames.peek();
+            SSLEngineResult result = engine.wrap(frame, outbound);
+            runDelegatedTasks(result);
+            if (frame != EMPTY && !frame.hasRemaining()) {
+                frames.poll();
+            }
+            if (result.getStatus() != OK
+                || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                break;
+            }
+        }
+
+        outbound.flip();
+        if (outbound.hasRemaining()) {
+            return true;
+        }
+        bufferPool.release(outbound);
+        outbound = null;
+        return false;
+    }
+
+    private void runDelegatedTasks(SSLEngineResult result) {
+        if (result.getHandshakeStatus() != NEED_TASK) {
+            return;
+        }
+
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private void releaseInboundIfEmpty() {
+        inbound.compact();
+        if (inbound.position() == 0) {
+            bufferPool.release(inbound);
+            inbound = null;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createAcceptPayload;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.transfer.TransferRegistry;
+
+/**
+ * A class representing an AcceptPayloadHandler that handles the acceptance of a file offer. The
+ * user who has offered the file is notified, so it starts sending the file on its data connection.
+ */
+public class AcceptPayloadHandler implements PayloadHandler<Payload> {
+
+    private final ConnectionRegistry connectionRegistry;
+    private final TransferRegistry transferRegistry;
+
+    /**
+     * Creates a new AcceptPayloadHandler instance with the specified connection and transfer
+     * registry.
+     *
+     * @param connectionRegistry the connection registry to look up the sender of the file
+     * @param transferRegistry   the transfer registry holding the offered transfers
+     */
+    public AcceptPayloadHandler(ConnectionRegistry connectionRegistry,
+        TransferRegistry transferRegistry) {
+        this.connectionRegistry = requireNonNull(connectionRegistry);
+        this.transferRegistry = requireNonNull(transferRegistry);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not in the CONNECTED
+     * state, a {@link ConnectionException} is thrown. Otherwise, the acceptance is sent to the user
+     * who has offered the file.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ChatProtocolException if there is no such transfer or its sender is gone
+     * @throws ConnectionException   if there is an issue with the connection
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ChatProtocolException, ConnectionException {
+        if (!connection.isState(CONNECTED)) {
+            throw new ConnectionException(
+                format("Illegal state for accept request: %s", connection.getState()));
+        }
+
+        String sender = transferRegistry.accept(payload.content(), connection.getUsername());
+        connectionRegistry.getConnection(sender).sendPayload(
+            createAcceptPayload(connection.getUsername(), sender, payload.content()));
+    }
+
+}
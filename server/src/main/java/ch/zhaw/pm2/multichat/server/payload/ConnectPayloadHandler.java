@@ -4,6 +4,9 @@ import static ch.zhaw.pm2.multichat.protocol.Identifiers.ANONYMOUS;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
 import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
 import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createConfirmPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRedirectPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createSessionPayload;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
@@ -12,6 +15,7 @@ import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
 import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,37 +25,51 @@ import lombok.extern.slf4j.Slf4j;
  * {@link ConnectionException} is thrown. The sender's username is set to the connection's username,
  * or an anonymous username is generated. if the sender is anonymous. The connection is then
  * registered with the ConnectionRegistry. Finally, a confirm-payload is created and sent to the
- * connection.
+ * connection, followed by the token of the session opened for the user. If the server is part of a
+ * cluster and another node is the home node of the user, the user is redirected to this node
+ * instead.
+ * <p>
+ * Clients may pipeline message payloads behind the connect payload without waiting for the
+ * confirmation. Since the payloads of a connection are handled in order, these messages are
+ * handled as soon as the registration has succeeded. If the registration fails, the client
+ * receives a single error or redirect and the connection is closed, so that all pipelined
+ * payloads are rejected together.
  */
 @Slf4j
 public class ConnectPayloadHandler implements PayloadHandler<Payload> {
 
     private final ConnectionRegistry connectionRegistry;
+    private final ClusterNode clusterNode;
 
     /**
-     * Creates a new ConnectPayloadHandler instance with the specified connection registry.
+     * Creates a new ConnectPayloadHandler instance with the specified connection registry and
+     * cluster node.
      *
      * @param connectionRegistry the connection registry to be used for registering new connections
+     * @param clusterNode        the cluster node determining the home node of a user
      */
-    public ConnectPayloadHandler(ConnectionRegistry connectionRegistry) {
+    public ConnectPayloadHandler(ConnectionRegistry connectionRegistry,
+        ClusterNode clusterNode) {
         this.connectionRegistry = requireNonNull(connectionRegistry);
+        this.clusterNode = requireNonNull(clusterNode);
     }
 
     /**
      * Handles the specified payload and connection. If the connection is not in the NEW state, a
      * {@link ConnectionException} is thrown. The sender's username is set to the connection's
      * username, or an anonymous username is generated if the sender is anonymous. The connection is
-     * then registered with the ConnectionRegistry. Finally, a confirm-payload is created and sent
-     * to the connection.
+     * then registered with the ConnectionRegistry. Finally, a confirm-payload and the token of the
+     * session opened for the user are sent to the connection. If another node is the home node of
+     * the user, a redirect to this node is sent instead and the connection is not registered. If
+     * the registration fails, the connection is closed after the error has been sent.
      *
      * @param payload    the payload to be handled
      * @param connection the connection that the payload was received from
-     * @throws ChatProtocolException if there is an issue with the chat protocol
-     * @throws ConnectionException   if there is an issue with the connection
+     * @throws ConnectionException if there is an issue with the connection
      */
     @Override
     public void handle(Payload payload, Connection<Payload> connection)
-        throws ChatProtocolException, ConnectionException {
+        throws ConnectionException {
         if (!connection.isState(NEW)) {
             throw new ConnectionException(
                 format("Illegal state for connect request: %s", connection.getState()));
@@ -63,11 +81,36 @@ public class ConnectPayloadHandler implements PayloadHandler<Payload> {
             connection.setUsername(connectionRegistry.getAnonymousUsername());
         }
 
-        connectionRegistry.registerConnection(connection);
+        String username = connection.getUsername();
+        if (!clusterNode.isHomeNode(username)) {
+            reject(connection, createRedirectPayload(username, clusterNode.getHomeNode(username)));
+            return;
+        }
+
+        try {
+            connectionRegistry.registerConnection(connection);
+        } catch (ChatProtocolException e) {
+            reject(connection, createErrorPayload(username, e.getMessage()));
+            return;
+        }
 
         connection.sendPayload(createConfirmPayload(connection.getUsername(),
             format("Registration successful for %s", connection.getUsername())));
+        connection.sendPayload(
+            createSessionPayload(username, connectionRegistry.openSession(connection)));
         connection.setState(CONNECTED);
     }
 
+    /**
+     * Rejects the connect request and all payloads pipelined behind it by sending the given error
+     * and closing the connection. No further payloads of the connection are handled.
+     *
+     * @param connection the connection to reject
+     * @param error      the error to send
+     */
+    private static void reject(Connection<Payload> connection, Payload error) {
+        connection.sendPayload(error);
+        connection.closeConnection();
+    }
+
 }
@@ -56,7 +56,7 @@ public class DisconnectPayloadHandler implements PayloadHandler<Payload> {
             createConfirmPayload(username, format("Confirm disconnect of %s", username)));
 
         if (connection.isState(CONNECTED)) {
-            connectionRegistry.unregisterConnection(username);
+            connectionRegistry.unregisterConnection(connection);
         }
     }
 
@@ -11,31 +11,39 @@ import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
 import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
 import ch.zhaw.pm2.multichat.protocol.payload.Payload;
 import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
 import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
 
 /**
  * A class representing MessagePayloadHandler that handles a message payload by sending it to the
  * appropriate recipient(s) or broadcasting it to all connections, depending on the contents of the
- * payload.
+ * payload. Messages to users whose home is another node of the cluster are relayed to this node.
  */
 public class MessagePayloadHandler implements PayloadHandler<Payload> {
 
     private final ConnectionRegistry connectionRegistry;
+    private final ClusterNode clusterNode;
 
     /**
-     * Creates a new MessagePayloadHandler instance with the specified connection registry.
+     * Creates a new MessagePayloadHandler instance with the specified connection registry and
+     * cluster node.
      *
      * @param connectionRegistry the connection registry to be used for handling message payloads
+     * @param clusterNode        the cluster node to relay messages to other nodes
      */
-    public MessagePayloadHandler(ConnectionRegistry connectionRegistry) {
+    public MessagePayloadHandler(ConnectionRegistry connectionRegistry,
+        ClusterNode clusterNode) {
         this.connectionRegistry = requireNonNull(connectionRegistry);
+        this.clusterNode = requireNonNull(clusterNode);
     }
 
     /**
      * Handles the specified payload and connection. If the connection is not in the CONNECTED
      * state, a {@link ConnectionException} is thrown. If the payload is addressed to "everyone", it
-     * is broadcast to all connections. If the payload is addressed to a specific recipient, it is
-     * sent to that recipient and a copy is sent back to the sender.
+     * is broadcast to all connections and relayed to all other nodes. If the payload is addressed
+     * to a specific recipient, it is sent or relayed to the home node of that recipient and a copy
+     * is sent back to the sender. The sender is always the user registered on the connection, since
+     * messages pipelined behind the connect payload may carry the name the client asked for.
      *
      * @param payload    the payload to be handled
      * @param connection the connection that the payload was received from
@@ -50,18 +58,19 @@ public class MessagePayloadHandler implements PayloadHandler<Payload> {
                 format("Illegal state for message request: %s", connection.getState()));
         }
 
+        Payload message = createMessagePayload(connection.getUsername(), payload.receiver(),
+            payload.body());
         if (EVERYONE.equalsIgnoreCase(payload.receiver())) {
-            connectionRegistry.getAllConnections().forEach(c -> c.sendPayload(payload));
+            connectionRegistry.broadcast(message);
+            clusterNode.relayToAll(message);
         } else {
-            connectionRegistry.getConnection(
-                payload.receiver()).sendPayload(
-                createMessagePayload(connection.getUsername(), payload.receiver(),
-                    payload.content()));
+            if (clusterNode.isHomeNode(payload.receiver())) {
+                connectionRegistry.getConnection(payload.receiver()).sendPayload(message);
+            } else {
+                clusterNode.relayToReceiver(message);
+            }
 
-            connectionRegistry.getConnection(
-                payload.sender()).sendPayload(
-                createMessagePayload(connection.getUsername(), payload.receiver(),
-                    payload.content()));
+            connection.sendPayload(message);
         }
     }
 
@@ -0,0 +1,60 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+
+/**
+ * A class representing a NodePayloadHandler that handles the node payload another server node
+ * sends to establish a link. The connection is registered as link at the {@link ClusterNode}, which
+ * authenticates the other node. If the link has been dialed by the other node, the node payload is
+ * answered.
+ */
+public class NodePayloadHandler implements PayloadHandler<Payload> {
+
+    private final ClusterNode clusterNode;
+
+    /**
+     * Creates a new NodePayloadHandler instance with the specified cluster node.
+     *
+     * @param clusterNode the cluster node to register links at
+     */
+    public NodePayloadHandler(ClusterNode clusterNode) {
+        this.clusterNode = requireNonNull(clusterNode);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not in the NEW state, a
+     * {@link ConnectionException} is thrown. Duplicate links are closed.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ConnectionException if the connection is not new or the node is unknown or fails to
+     *                             authenticate
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ConnectionException {
+        if (!connection.isState(NEW)) {
+            throw new ConnectionException(
+                format("Illegal state for node request: %s", connection.getState()));
+        }
+
+        boolean dialed = clusterNode.isDialed(connection);
+        if (!clusterNode.registerLink(payload, connection)) {
+            connection.closeConnection();
+            return;
+        }
+
+        if (!dialed) {
+            connection.sendPayload(clusterNode.createIntroduction(payload.sender()));
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createOfferPayload;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.FileOffer;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.transfer.TransferRegistry;
+
+/**
+ * A class representing an OfferPayloadHandler that handles the offer of a file by one user to
+ * another. The transfer is registered in the {@link TransferRegistry} and the offer is passed on
+ * to the receiver. Since the file is relayed by splicing the data connections of both users, files
+ * can only be offered to users connected to the same server.
+ */
+public class OfferPayloadHandler implements PayloadHandler<Payload> {
+
+    private final ConnectionRegistry connectionRegistry;
+    private final TransferRegistry transferRegistry;
+
+    /**
+     * Creates a new OfferPayloadHandler instance with the specified connection and transfer
+     * registry.
+     *
+     * @param connectionRegistry the connection registry to look up the receiver
+     * @param transferRegistry   the transfer registry to register the transfer
+     */
+    public OfferPayloadHandler(ConnectionRegistry connectionRegistry,
+        TransferRegistry transferRegistry) {
+        this.connectionRegistry = requireNonNull(connectionRegistry);
+        this.transferRegistry = requireNonNull(transferRegistry);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not in the CONNECTED
+     * state, a {@link ConnectionException} is thrown. Otherwise, the transfer is registered and
+     * the offer is sent to the receiver.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ChatProtocolException if the offer is invalid or the receiver is not registered
+     * @throws ConnectionException   if there is an issue with the connection
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ChatProtocolException, ConnectionException {
+        if (!connection.isState(CONNECTED)) {
+            throw new ConnectionException(
+                format("Illegal state for offer request: %s", connection.getState()));
+        }
+
+        FileOffer offer = FileOffer.fromContent(payload.content());
+        Connection<Payload> receiver = connectionRegistry.getConnection(payload.receiver());
+        transferRegistry.offer(offer.transferId(), connection.getUsername(),
+            receiver.getUsername(), ((ChannelConnection) connection).getEventLoop());
+        receiver.sendPayload(
+            createOfferPayload(connection.getUsername(), receiver.getUsername(), offer));
+    }
+
+}
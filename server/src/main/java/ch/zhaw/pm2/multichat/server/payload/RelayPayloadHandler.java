@@ -0,0 +1,88 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.EVERYONE;
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.SYSTEM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRelayedErrorPayload;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a RelayPayloadHandler that delivers a message relayed by another server
+ * node to the users registered at this node. Relayed messages are never relayed again, so every
+ * message crosses every link at most once. If the receiver of a private message is not registered
+ * at this node, an error is relayed back to the sender, which is registered at the node the
+ * message came from.
+ */
+@Slf4j
+public class RelayPayloadHandler implements PayloadHandler<Payload> {
+
+    private final ClusterNode clusterNode;
+    private final ConnectionRegistry connectionRegistry;
+
+    /**
+     * Creates a new RelayPayloadHandler instance with the specified cluster node and connection
+     * registry.
+     *
+     * @param clusterNode        the cluster node the links are registered at
+     * @param connectionRegistry the connection registry containing the local receivers
+     */
+    public RelayPayloadHandler(ClusterNode clusterNode, ConnectionRegistry connectionRegistry) {
+        this.clusterNode = requireNonNull(clusterNode);
+        this.connectionRegistry = requireNonNull(connectionRegistry);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not a link to another
+     * server node, a {@link ConnectionException} is thrown. If the message is addressed to
+     * "everyone", it is broadcast to all local connections. Otherwise, it is sent to the local
+     * receiver. If the receiver is not registered, an error is relayed back to the sender. Relayed
+     * errors are passed to their local receiver and never answered.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ConnectionException if the connection is not a link
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ConnectionException {
+        if (!clusterNode.isLink(connection)) {
+            throw new ConnectionException(
+                format("Illegal state for relay request: %s", connection.getState()));
+        }
+
+        if (SYSTEM.equalsIgnoreCase(payload.sender())) {
+            try {
+                connectionRegistry.getConnection(payload.receiver())
+                    .sendPayload(createErrorPayload(payload.receiver(), payload.content()));
+            } catch (ChatProtocolException e) {
+                log.warn(format("Dropping relayed error: %s", e.getMessage()));
+            }
+            return;
+        }
+
+        Payload message = createMessagePayload(payload.sender(), payload.receiver(),
+            payload.body());
+        if (EVERYONE.equalsIgnoreCase(payload.receiver())) {
+            connectionRegistry.broadcast(message);
+            return;
+        }
+
+        try {
+            connectionRegistry.getConnection(payload.receiver()).sendPayload(message);
+        } catch (ChatProtocolException e) {
+            connection.sendPayload(createRelayedErrorPayload(payload.sender(), e.getMessage()));
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.CONNECTED;
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createConfirmPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+
+/**
+ * A class representing a ResumePayloadHandler that handles a resume payload sent by a client whose
+ * connection has been lost. The session identified by the token of the payload is resumed on the
+ * new connection, which takes the place of the lost connection in the {@link ConnectionRegistry}
+ * without registering the user again. The payloads the client has missed are sent again, followed
+ * by a confirm-payload. If the session has expired, the client receives an error and the connection
+ * is closed.
+ */
+public class ResumePayloadHandler implements PayloadHandler<Payload> {
+
+    private final ConnectionRegistry connectionRegistry;
+
+    /**
+     * Creates a new ResumePayloadHandler instance with the specified connection registry.
+     *
+     * @param connectionRegistry the connection registry holding the sessions
+     */
+    public ResumePayloadHandler(ConnectionRegistry connectionRegistry) {
+        this.connectionRegistry = requireNonNull(connectionRegistry);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not in the NEW state, a
+     * {@link ConnectionException} is thrown. Otherwise, the session of the sender is resumed on the
+     * connection and a confirm-payload is sent. If the session can not be resumed, an error is sent
+     * and the connection is closed.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ConnectionException if there is an issue with the connection
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ConnectionException {
+        if (!connection.isState(NEW)) {
+            throw new ConnectionException(
+                format("Illegal state for resume request: %s", connection.getState()));
+        }
+
+        String username = payload.sender();
+        try {
+            connectionRegistry.resumeConnection(connection, username, payload.content(),
+                payload.delivery());
+        } catch (ChatProtocolException e) {
+            connection.sendPayload(createErrorPayload(username, e.getMessage()));
+            connection.closeConnection();
+            return;
+        }
+
+        connection.sendPayload(
+            createConfirmPayload(username, format("Session resumed for %s", username)));
+        connection.setState(CONNECTED);
+    }
+
+}
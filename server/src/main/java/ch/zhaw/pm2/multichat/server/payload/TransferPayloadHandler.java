@@ -0,0 +1,62 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.connection.ConnectionStateType.NEW;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
+import ch.zhaw.pm2.multichat.server.transfer.TransferRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a TransferPayloadHandler that attaches a new data connection to a file
+ * transfer. Since everything following the transfer payload on a data connection is raw file data,
+ * no error payload is sent if the data connection can not be attached. The connection is closed
+ * instead, which the client notices as an incomplete transfer.
+ */
+@Slf4j
+public class TransferPayloadHandler implements PayloadHandler<Payload> {
+
+    private final TransferRegistry transferRegistry;
+
+    /**
+     * Creates a new TransferPayloadHandler instance with the specified transfer registry.
+     *
+     * @param transferRegistry the transfer registry holding the offered transfers
+     */
+    public TransferPayloadHandler(TransferRegistry transferRegistry) {
+        this.transferRegistry = requireNonNull(transferRegistry);
+    }
+
+    /**
+     * Handles the specified payload and connection. If the connection is not in the NEW state, a
+     * {@link ConnectionException} is thrown. Otherwise, the connection is attached to the transfer
+     * or closed if this is not possible.
+     *
+     * @param payload    the payload to be handled
+     * @param connection the connection that the payload was received from
+     * @throws ConnectionException if there is an issue with the connection
+     */
+    @Override
+    public void handle(Payload payload, Connection<Payload> connection)
+        throws ConnectionException {
+        if (!connection.isState(NEW)) {
+            throw new ConnectionException(
+                format("Illegal state for transfer request: %s", connection.getState()));
+        }
+
+        try {
+            transferRegistry.attach(payload.content(), payload.sender(),
+                (ChannelConnection) connection);
+        } catch (ChatProtocolException e) {
+            log.error(format("Failed to attach data connection: %s", e.getMessage()));
+            connection.closeConnection();
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package ch.zhaw.pm2.multichat.server.transfer;
+
+import static java.lang.String.format;
+
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.DetachedChannel;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.Splice;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A class representing a registry for the file transfers between the users of the server. A
+ * transfer is registered when a file is offered. Both users then open a data connection to the
+ * server and attach it to the transfer. Once both data connections are attached, their channels
+ * are detached from their endpoints and spliced, so the server relays the file without ever
+ * holding it in memory. Transfers which are not started within a timeout are discarded.
+ */
+@Slf4j
+public class TransferRegistry {
+
+    private static final Duration TRANSFER_TIMEOUT = Duration.ofSeconds(60);
+
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private final long bytesPerSecond;
+    private final Duration timeout;
+
+    /**
+     * Creates a new TransferRegistry instance relaying every transfer with the given throughput.
+     *
+     * @param bytesPerSecond the maximum throughput of each transfer
+     */
+    public TransferRegistry(long bytesPerSecond) {
+        this(bytesPerSecond, TRANSFER_TIMEOUT);
+    }
+
+    /**
+     * Creates a new TransferRegistry instance relaying every transfer with the given throughput
+     * and discarding transfers which are not started within the given timeout.
+     *
+     * @param bytesPerSecond the maximum throughput of each transfer
+     * @param timeout        the time within which a transfer has to be started
+     */
+    TransferRegistry(long bytesPerSecond, Duration timeout) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Registers the transfer of a file offered by the given sender to the given receiver. If the
+     * transfer is not started within the timeout, it is discarded by the given loop.
+     *
+     * @param transferId the id of the transfer
+     * @param sender     the username of the user offering the file
+     * @param receiver   the username of the user the file is offered to
+     * @param eventLoop  the loop discarding the transfer after the timeout
+     * @throws ChatProtocolException if a transfer with the same id is already registered
+     */
+    public void offer(String transferId, String sender, String receiver, EventLoop eventLoop)
+        throws ChatProtocolException {
+        Transfer transfer = new Transfer(sender, receiver);
+        if (transfers.putIfAbsent(transferId, transfer) != null) {
+            throw new ChatProtocolException(format("Transfer %s already exists", transferId));
+        }
+
+        eventLoop.schedule(() -> {
+            if (transfers.remove(transferId, transfer)) {
+                log.info(format("Transfer %s timed out", transferId));
+                transfer.discard();
+            }
+        }, timeout);
+    }
+
+    /**
+     * Accepts the transfer with the given id on behalf of the given receiver.
+     *
+     * @param transferId the id of the transfer
+     * @param receiver   the username of the user accepting the file
+     * @return the username of the user who has offered the file
+     * @throws ChatProtocolException if there is no such transfer for the receiver
+     */
+    public String accept(String transferId, String receiver) throws ChatProtocolException {
+        Transfer transfer = transfers.get(transferId);
+        if (transfer == null || !transfer.receiver.equalsIgnoreCase(receiver)) {
+            throw new ChatProtocolException(format("Transfer %s does not exist", transferId));
+        }
+
+        return transfer.sender;
+    }
+
+    /**
+     * Attaches the given data connection of the given user to the transfer with the given id. The
+     * data connection of the sender becomes the source of the transfer, the one of the receiver
+     * its sink. Once both are attached, the transfer starts. Must be called by the loop of the
+     * data connection while it handles the transfer payload.
+     *
+     * @param transferId the id of the transfer
+     * @param username   the username of the user the data connection belongs to
+     * @param connection the data connection
+     * @throws ChatProtocolException if there is no such transfer for the user, the user has
+     *                               already attached a data connection or the data connection is
+     *                               encrypted
+     */
+    public void attach(String transferId, String username, ChannelConnection connection)
+        throws ChatProtocolException {
+        Transfer transfer = transfers.get(transferId);
+        boolean isSource = transfer != null && transfer.sender.equalsIgnoreCase(username);
+        if (transfer == null || !isSource && !transfer.receiver.equalsIgnoreCase(username)) {
+            throw new ChatProtocolException(format("Transfer %s does not exist", transferId));
+        }
+        if (transfer.isAttached(isSource)) {
+            throw new ChatProtocolException(
+                format("Data connection of %s is already attached", username));
+        }
+
+        ChannelEndpoint<Payload> endpoint = (ChannelEndpoint<Payload>)
+            connection.getNetworkConnection();
+        if (endpoint.isEncrypted()) {
+            throw new ChatProtocolException("Files can not be transferred over TLS");
+        }
+        endpoint.detach(channel -> {
+            Splice splice = transfer.attach(isSource, channel, endpoint.getEventLoop(),
+                bytesPerSecond);
+            if (splice != null && transfers.remove(transferId, transfer)) {
+                splice.start();
+            }
+        });
+    }
+
+    private static class Transfer {
+
+        private final String sender;
+        private final String receiver;
+        private DetachedChannel source;
+        private DetachedChannel sink;
+
+        private Transfer(String sender, String receiver) {
+            this.sender = sender;
+            this.receiver = receiver;
+        }
+
+        private synchronized boolean isAttached(boolean isSource) {
+            return (isSource ? source : sink) != null;
+        }
+
+        private synchronized Splice attach(boolean isSource, DetachedChannel channel,
+            EventLoop eventLoop, long bytesPerSecond) {
+            if (isSource) {
+                source = channel;
+            } else {
+                sink = channel;
+            }
+
+            return source != null && sink != null
+                ? new Splice(eventLoop, source, sink, bytesPerSecond) : null;
+        }
+
+        private synchronized void discard() {
+            for (DetachedChannel channel : new DetachedChannel[]{source, sink}) {
+                if (channel != null) {
+                    try {
+                        channel.channel().close();
+                    } catch (IOException e) {
+                        log.error(format("Failed to close channel: %s", e.getMessage()));
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package ch.zhaw.pm2.multichat.server.cluster;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createNodePayload;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the authentication of links by {@link ClusterNode}.
+ */
+class ClusterNodeTest {
+
+    private static final NodeAddress FIRST = new NodeAddress("127.0.0.1", 1001);
+    private static final NodeAddress SECOND = new NodeAddress("127.0.0.1", 1002);
+    private static final NodeAddress THIRD = new NodeAddress("127.0.0.1", 1003);
+    private static final String SECRET = "s3cret";
+
+    private final ClusterNode first = new ClusterNode(FIRST, List.of(SECOND, THIRD), SECRET);
+    private final ClusterNode second = new ClusterNode(SECOND, List.of(FIRST, THIRD), SECRET);
+
+    @Test
+    void requiresSecretForCluster() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ClusterNode(FIRST, List.of(SECOND), ""));
+        assertFalse(new ClusterNode(FIRST, List.of(), "").hasPeers());
+    }
+
+    @Test
+    void acceptsPeerKnowingSecretOnLinkPort() throws ConnectionException {
+        Connection<Payload> connection = connection();
+        first.acceptLink(connection);
+
+        assertTrue(first.registerLink(second.createIntroduction(FIRST.toString()), connection));
+        assertTrue(first.isLink(connection));
+    }
+
+    @Test
+    void rejectsNodePayloadOutsideLinkPort() {
+        Connection<Payload> connection = connection();
+
+        assertThrows(ConnectionException.class,
+            () -> first.registerLink(second.createIntroduction(FIRST.toString()), connection));
+        assertFalse(first.isLink(connection));
+    }
+
+    @Test
+    void rejectsPeerWithOtherSecret() {
+        ClusterNode impostor = new ClusterNode(SECOND, List.of(FIRST), "guessed");
+        Connection<Payload> connection = connection();
+        first.acceptLink(connection);
+
+        assertThrows(ConnectionException.class,
+            () -> first.registerLink(impostor.createIntroduction(FIRST.toString()), connection));
+        assertFalse(first.isLink(connection));
+    }
+
+    @Test
+    void rejectsMissingProof() {
+        Connection<Payload> connection = connection();
+        first.acceptLink(connection);
+
+        assertThrows(ConnectionException.class,
+            () -> first.registerLink(createNodePayload(SECOND.toString(), ""), connection));
+    }
+
+    @Test
+    void rejectsProofPassedOnFromOtherNode() {
+        Payload introduction = second.createIntroduction(THIRD.toString());
+        Connection<Payload> connection = connection();
+        first.acceptLink(connection);
+
+        assertNotEquals(introduction.content(),
+            second.createIntroduction(FIRST.toString()).content());
+        assertThrows(ConnectionException.class,
+            () -> first.registerLink(introduction, connection));
+    }
+
+    @Test
+    void rejectsUnknownNode() {
+        ClusterNode stranger = new ClusterNode(new NodeAddress("127.0.0.1", 1004), List.of(FIRST),
+            SECRET);
+        Connection<Payload> connection = connection();
+        first.acceptLink(connection);
+
+        assertThrows(ConnectionException.class,
+            () -> first.registerLink(stranger.createIntroduction(FIRST.toString()), connection));
+    }
+
+    private static Connection<Payload> connection() {
+        return new Connection<>(new NetworkEndpoint<>() {
+            @Override
+            public void send(Payload data) {
+            }
+
+            @Override
+            public Payload receive() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+}
@@ -0,0 +1,117 @@
+package ch.zhaw.pm2.multichat.server.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link HashRing} assigns keys deterministically and evenly, and that adding or
+ * removing a node only moves the keys of this node.
+ */
+class HashRingTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int KEYS = 20_000;
+    private static final List<String> NODES = List.of("127.0.0.1:1001", "127.0.0.1:1002",
+        "127.0.0.1:1003", "127.0.0.1:1004");
+    private static final String ADDED_NODE = "127.0.0.1:1005";
+
+    @Test
+    void rejectsEmptyNumberOfVirtualNodes() {
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(0));
+    }
+
+    @Test
+    void emptyRingHasNoNode() {
+        assertNull(new HashRing(VIRTUAL_NODES).getNode("alice"));
+    }
+
+    @Test
+    void assignsKeysDeterministicallyAcrossInstances() {
+        HashRing ring = createRing(NODES);
+        List<String> reversedNodes = new ArrayList<>(NODES);
+        Collections.reverse(reversedNodes);
+        HashRing reversed = createRing(reversedNodes);
+
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(ring.getNode(key(i)), reversed.getNode(key(i)));
+        }
+    }
+
+    @Test
+    void addingNodeOnlyMovesKeysToThisNode() {
+        HashRing ring = createRing(NODES);
+        Map<String, String> before = assign(ring);
+
+        ring.addNode(ADDED_NODE);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : assign(ring).entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                assertEquals(ADDED_NODE, entry.getValue());
+                moved++;
+            }
+        }
+        assertTrue(moved > 0);
+    }
+
+    @Test
+    void removingNodeOnlyMovesKeysOfThisNode() {
+        HashRing ring = createRing(NODES);
+        ring.addNode(ADDED_NODE);
+        Map<String, String> before = assign(ring);
+
+        ring.removeNode(ADDED_NODE);
+
+        for (Map.Entry<String, String> entry : assign(ring).entrySet()) {
+            String previousNode = before.get(entry.getKey());
+            if (!entry.getValue().equals(previousNode)) {
+                assertEquals(ADDED_NODE, previousNode);
+            }
+        }
+        assertEquals(assign(createRing(NODES)), assign(ring));
+    }
+
+    @Test
+    void distributesKeysRoughlyEvenly() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String node : assign(createRing(NODES)).values()) {
+            counts.merge(node, 1, Integer::sum);
+        }
+
+        int expected = KEYS / NODES.size();
+        assertEquals(NODES.size(), counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > expected * 0.7 && count < expected * 1.3,
+                () -> "Uneven distribution: " + counts);
+        }
+    }
+
+    private static HashRing createRing(List<String> nodes) {
+        HashRing ring = new HashRing(VIRTUAL_NODES);
+        nodes.forEach(ring::addNode);
+        return ring;
+    }
+
+    private static Map<String, String> assign(HashRing ring) {
+        Map<String, String> nodes = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            nodes.put(key(i), ring.getNode(key(i)));
+        }
+
+        return nodes;
+    }
+
+    private static String key(int i) {
+        return "user" + i;
+    }
+
+}
@@ -0,0 +1,119 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Tests the publication and retention of broadcasts by {@link BroadcastRing}.
+ */
+class BroadcastRingTest {
+
+    private final BroadcastRing broadcastRing = new BroadcastRing(4, SlowConsumerPolicy.SKIP);
+
+    @ParameterizedTest
+    @CsvSource({"1, 1", "2, 2", "3, 4", "4, 4", "5, 8", "1000, 1024"})
+    void roundsCapacityUpToPowerOfTwo(int capacity, int expected) {
+        assertEquals(expected,
+            new BroadcastRing(capacity, SlowConsumerPolicy.SKIP).getCapacity());
+    }
+
+    @Test
+    void rejectsEmptyCapacity() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new BroadcastRing(0, SlowConsumerPolicy.SKIP));
+    }
+
+    @Test
+    void assignsConsecutiveSequences() {
+        assertEquals(0, broadcastRing.getNextSequence());
+        assertEquals(0, broadcastRing.publish(broadcast("first")));
+        assertEquals(1, broadcastRing.publish(broadcast("second")));
+        assertEquals(2, broadcastRing.getNextSequence());
+    }
+
+    @Test
+    void returnsPublishedBroadcast() {
+        Payload payload = broadcast("hello");
+        long sequence = broadcastRing.publish(payload);
+
+        assertSame(payload, broadcastRing.get(sequence));
+        assertTrue(broadcastRing.getPublishTime(sequence) <= System.nanoTime());
+    }
+
+    @Test
+    void stopsReadersAtSlotNotFilledYet() {
+        broadcastRing.publish(broadcast("first"));
+        long next = broadcastRing.getNextSequence();
+
+        assertNull(broadcastRing.get(next));
+        assertEquals(Long.MIN_VALUE, broadcastRing.getPublishTime(next));
+    }
+
+    @Test
+    void overwritesOldestBroadcastWhenFull() {
+        for (int i = 0; i < 6; i++) {
+            broadcastRing.publish(broadcast("broadcast " + i));
+        }
+
+        assertNull(broadcastRing.get(0));
+        assertNull(broadcastRing.get(1));
+        assertEquals(Long.MIN_VALUE, broadcastRing.getPublishTime(1));
+        assertEquals("broadcast 2", broadcastRing.get(2).content());
+        assertEquals("broadcast 5", broadcastRing.get(5).content());
+    }
+
+    @Test
+    void readerBehindByCapacityHasMissedNothing() {
+        long sequence = broadcastRing.getNextSequence();
+        for (int i = 0; i < broadcastRing.getCapacity(); i++) {
+            broadcastRing.publish(broadcast("broadcast " + i));
+        }
+
+        assertEquals(0, getMissed(sequence));
+        assertEquals("broadcast 0", broadcastRing.get(sequence).content());
+
+        broadcastRing.publish(broadcast("one too many"));
+
+        assertEquals(1, getMissed(sequence));
+        assertNull(broadcastRing.get(sequence));
+        assertEquals("broadcast 1", broadcastRing.get(sequence + getMissed(sequence)).content());
+    }
+
+    @Test
+    void stalledPublisherDoesNotOverwriteNewerBroadcast() {
+        long stalled = broadcastRing.claimSequence();
+        for (int i = 0; i < broadcastRing.getCapacity(); i++) {
+            broadcastRing.publish(broadcast("broadcast " + i));
+        }
+        long newer = stalled + broadcastRing.getCapacity();
+
+        broadcastRing.fill(stalled, broadcast("stalled"));
+
+        assertNull(broadcastRing.get(stalled));
+        assertEquals("broadcast 3", broadcastRing.get(newer).content());
+        assertTrue(broadcastRing.getPublishTime(newer) != Long.MIN_VALUE);
+    }
+
+    /**
+     * Determines the number of broadcasts a reader at the given sequence has missed, the way a
+     * {@link ChannelConnection} does.
+     */
+    private long getMissed(long sequence) {
+        return Math.max(0,
+            broadcastRing.getNextSequence() - sequence - broadcastRing.getCapacity());
+    }
+
+    private static Payload broadcast(String content) {
+        return createMessagePayload("alice", "*", content);
+    }
+
+}
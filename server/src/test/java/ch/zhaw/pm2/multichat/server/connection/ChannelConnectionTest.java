@@ -0,0 +1,310 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static ch.zhaw.pm2.multichat.protocol.connection.FlowControl.DEFAULT_WINDOW;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createConfirmPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.BATCH;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONFIRM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
+import static ch.zhaw.pm2.multichat.server.connection.BacklogEscalation.DEFER;
+import static ch.zhaw.pm2.multichat.server.connection.Lane.CHAT;
+import static ch.zhaw.pm2.multichat.server.connection.Lane.CONTROL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Delivery;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ChannelConnection} against clients which do not read until told to. The socket
+ * buffers are kept small, so the outbound backlog stays with the server.
+ */
+class ChannelConnectionTest {
+
+    private static final int BUDGET = 1 << 20;
+    private static final int MESSAGES = 700;
+    private static final int BROADCASTS = 600;
+    private static final String CONTENT = "x".repeat(1024);
+    private static final int QUEUED_MESSAGES = 50;
+    private static final Duration HOLD_TIME = Duration.ofMillis(50);
+
+    private EventLoop eventLoop;
+    private ServerSocketChannel serverChannel;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        eventLoop = new EventLoop("test-loop", 1 << 10, new StageMetrics());
+        eventLoop.start();
+        serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        serverChannel.close();
+        eventLoop.close();
+    }
+
+    @Test
+    void deferredBroadcastsAreSentOnceTheWriteQueueHasDrained() throws Exception {
+        OutboundBudget budget = new OutboundBudget(BUDGET, Duration.ofMinutes(1));
+        BroadcastRing broadcastRing = new BroadcastRing(16, SlowConsumerPolicy.SKIP);
+        Socket client = connect();
+        ChannelConnection connection = accept(budget);
+        onLoop(() -> {
+            connection.subscribe(broadcastRing);
+            for (int i = 0; i < MESSAGES; i++) {
+                connection.sendPayload(createMessagePayload("alice", "bob", CONTENT));
+            }
+        });
+        onLoop(() -> {
+        });
+
+        List<OutboundBudget.Offender> offenders = budget.drain();
+        assertEquals(1, offenders.size());
+        assertEquals(DEFER, offenders.get(0).escalation());
+        assertTrue(offenders.get(0).backlogBytes() > BUDGET / 2);
+
+        broadcastRing.publish(createMessagePayload("carol", "*", "held back"));
+        onLoop(connection::receiveBroadcasts);
+
+        DataInputStream input = new DataInputStream(client.getInputStream());
+        PayloadCodec codec = new PayloadCodec();
+        int messages = 0;
+        while (true) {
+            List<Payload> payloads = receive(input, codec);
+            for (Payload payload : payloads) {
+                if (payload.content().equals(CONTENT)) {
+                    messages++;
+                } else {
+                    assertEquals("held back", payload.content());
+                    assertEquals(MESSAGES, messages);
+                    assertTrue(budget.drain().isEmpty());
+                    return;
+                }
+            }
+        }
+    }
+
+    @Test
+    void deferredBroadcastsAreCoalescedIntoBatchesReadFromRing() throws Exception {
+        OutboundBudget budget = new OutboundBudget(BUDGET, Duration.ofMinutes(1));
+        BroadcastRing broadcastRing = new BroadcastRing(1024, SlowConsumerPolicy.SKIP);
+        Socket client = connect();
+        ChannelConnection connection = accept(budget);
+        onLoop(() -> {
+            connection.subscribe(broadcastRing);
+            for (int i = 0; i < MESSAGES; i++) {
+                connection.sendPayload(createMessagePayload("alice", "bob", CONTENT));
+            }
+        });
+        assertEquals(List.of(DEFER), budget.drain().stream()
+            .map(OutboundBudget.Offender::escalation).toList());
+
+        // copied to the outbox at once, the broadcasts would exceed half the budget again
+        for (int i = 0; i < BROADCASTS; i++) {
+            broadcastRing.publish(createMessagePayload("carol", "*", i + CONTENT));
+        }
+        onLoop(connection::receiveBroadcasts);
+
+        DataInputStream input = new DataInputStream(client.getInputStream());
+        PayloadCodec codec = new PayloadCodec();
+        int messages = 0;
+        int broadcasts = 0;
+        int broadcastFrames = 0;
+        while (broadcasts < BROADCASTS) {
+            List<Payload> payloads = receive(input, codec);
+            if (!payloads.get(0).content().equals(CONTENT)) {
+                broadcastFrames++;
+            }
+            for (Payload payload : payloads) {
+                if (payload.content().equals(CONTENT)) {
+                    assertEquals(0, broadcasts);
+                    messages++;
+                } else {
+                    assertEquals(broadcasts + CONTENT, payload.content());
+                    broadcasts++;
+                }
+            }
+        }
+
+        assertEquals(MESSAGES, messages);
+        assertTrue(broadcastFrames <= 1 + BROADCASTS / 256,
+            () -> "Broadcasts sent in too many frames");
+        assertTrue(budget.drain().isEmpty());
+    }
+
+    @Test
+    void resumedSessionReceivesWhatItHasMissedBeforeConfirmation() throws Exception {
+        OutboundBudget budget = new OutboundBudget(BUDGET, Duration.ofMinutes(1));
+        BroadcastRing broadcastRing = new BroadcastRing(16, SlowConsumerPolicy.SKIP);
+        connect();
+        ChannelConnection previous = accept(budget);
+        Socket client = connect();
+        ChannelConnection successor = accept(budget);
+        onLoop(() -> previous.subscribe(broadcastRing));
+        for (int i = 1; i <= 3; i++) {
+            Payload message = createMessagePayload("alice", "bob", "sent " + i);
+            onLoop(() -> previous.sendPayload(message));
+        }
+        onLoop(() -> {
+            previous.suspend();
+            previous.sendPayload(createMessagePayload("alice", "bob", "queued"));
+            broadcastRing.publish(createMessagePayload("carol", "*", "broadcast 1"));
+            previous.receiveBroadcasts();
+            successor.suspend();
+            successor.sendPayload(createConfirmPayload("bob", "resumed"));
+            previous.handOver(successor, new Delivery(1, 1, DEFAULT_WINDOW));
+        });
+        onLoop(() -> {
+            broadcastRing.publish(createMessagePayload("carol", "*", "broadcast 2"));
+            successor.receiveBroadcasts();
+        });
+
+        DataInputStream input = new DataInputStream(client.getInputStream());
+        PayloadCodec codec = new PayloadCodec();
+        List<Payload> received = new ArrayList<>();
+        while (received.size() < 6) {
+            received.addAll(receive(input, codec));
+        }
+
+        assertEquals(List.of("sent 2", "sent 3", "queued", "broadcast 1", "resumed",
+            "broadcast 2"), received.stream().map(Payload::content).toList());
+        assertEquals(2, received.get(0).delivery().sequence());
+        assertEquals(3, received.get(1).delivery().sequence());
+        assertEquals(CONFIRM, received.get(4).type());
+    }
+
+    @Test
+    void controlPayloadOvertakesQueuedChatPayloads() throws Exception {
+        Socket client = connect();
+        ChannelConnection connection = accept(new OutboundBudget(BUDGET, Duration.ofMinutes(1)));
+        onLoop(() -> {
+            connection.receiveDelivery(new Delivery(0, 0, 1));
+            for (int i = 0; i < QUEUED_MESSAGES; i++) {
+                connection.sendPayload(createMessagePayload("alice", "bob", "message " + i));
+            }
+            connection.sendPayload(createErrorPayload("bob", "error"));
+        });
+
+        List<Payload> frame = receive(new DataInputStream(client.getInputStream()),
+            new PayloadCodec());
+
+        assertEquals(ERROR, frame.get(0).type());
+        assertEquals(QUEUED_MESSAGES + 1, frame.size());
+        assertEquals("message 0", frame.get(1).content());
+    }
+
+    @Test
+    void controlPayloadBypassesExhaustedWindow() throws Exception {
+        QueueDelayMetrics queueDelayMetrics = new QueueDelayMetrics();
+        Socket client = connect();
+        ChannelConnection connection = accept(new OutboundBudget(BUDGET, Duration.ofMinutes(1)),
+            queueDelayMetrics);
+        onLoop(() -> {
+            connection.receiveDelivery(new Delivery(0, 0, 1));
+            connection.sendPayload(createMessagePayload("alice", "bob", "in window"));
+        });
+        onLoop(() -> {
+            for (int i = 0; i < QUEUED_MESSAGES; i++) {
+                connection.sendPayload(createMessagePayload("alice", "bob", "message " + i));
+            }
+            connection.sendPayload(createErrorPayload("bob", "error"));
+        });
+
+        DataInputStream input = new DataInputStream(client.getInputStream());
+        PayloadCodec codec = new PayloadCodec();
+        assertEquals("in window", receive(input, codec).get(0).content());
+        List<Payload> control = receive(input, codec);
+        assertEquals(List.of(ERROR), control.stream().map(Payload::type).toList());
+
+        Thread.sleep(HOLD_TIME.toMillis());
+        onLoop(() -> connection.receiveDelivery(
+            new Delivery(0, control.get(0).delivery().sequence(), 1)));
+        List<Payload> chat = receive(input, codec);
+        assertEquals(QUEUED_MESSAGES, chat.size());
+        assertEquals("message 0", chat.get(0).content());
+
+        List<QueueDelayMetrics.Summary> summaries = queueDelayMetrics.drain();
+        assertEquals(List.of(CONTROL, CHAT),
+            summaries.stream().map(QueueDelayMetrics.Summary::lane).toList());
+        assertEquals(1, summaries.get(0).count());
+        assertEquals(QUEUED_MESSAGES + 1, summaries.get(1).count());
+        assertTrue(summaries.get(0).max().compareTo(HOLD_TIME) < 0);
+        assertTrue(summaries.get(1).max().compareTo(HOLD_TIME) >= 0);
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket();
+        clients.add(client);
+        client.setReceiveBufferSize(16 * 1024);
+        client.setSoTimeout(10_000);
+        client.connect(serverChannel.getLocalAddress());
+        return client;
+    }
+
+    private ChannelConnection accept(OutboundBudget budget) throws Exception {
+        return accept(budget, new QueueDelayMetrics());
+    }
+
+    private ChannelConnection accept(OutboundBudget budget, QueueDelayMetrics queueDelayMetrics)
+        throws Exception {
+        SocketChannel channel = serverChannel.accept();
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 16 * 1024);
+        ChannelEndpoint<Payload> endpoint = new ChannelEndpoint<>(channel, eventLoop,
+            new PayloadCodec());
+        ChannelConnection connection = new ChannelConnection(endpoint, CONTENT.length(),
+            queueDelayMetrics, budget);
+        endpoint.open(payload -> {
+        }, () -> {
+        });
+        return connection;
+    }
+
+    private void onLoop(Runnable task) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            task.run();
+            done.complete(null);
+        });
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    private static List<Payload> receive(DataInputStream input, PayloadCodec codec)
+        throws IOException {
+        int length = input.readInt();
+        checkFrameSize(length);
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        Payload payload = codec.decode(ByteBuffer.wrap(frame), 0, length);
+        return payload.type() == BATCH ? payload.parts() : List.of(payload);
+    }
+
+}
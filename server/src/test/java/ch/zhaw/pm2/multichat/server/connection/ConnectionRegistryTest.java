@@ -0,0 +1,219 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.BATCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the fan-out of broadcasts by {@link ConnectionRegistry}, serially and in ranges on a
+ * work-stealing pool.
+ */
+class ConnectionRegistryTest {
+
+    private static final int RECIPIENTS = 40;
+    private static final int BROADCASTS = 20;
+
+    private final ForkJoinPool fanOutPool = new ForkJoinPool(4);
+    private final ClusterNode clusterNode = new ClusterNode(
+        new NodeAddress("127.0.0.1", 1001), List.of(), "");
+    private final List<Socket> clients = new ArrayList<>();
+    private EventLoop eventLoop;
+    private ServerSocketChannel serverChannel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        eventLoop = new EventLoop("test-loop", 1 << 10, new StageMetrics());
+        eventLoop.start();
+        serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        serverChannel.close();
+        eventLoop.close();
+        fanOutPool.shutdown();
+    }
+
+    @Test
+    void rejectsEmptyFanOutThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> createRegistry(0));
+    }
+
+    @Test
+    void fansOutSmallShardOnLoop() throws Exception {
+        assertBroadcastsArriveInOrder(createRegistry(RECIPIENTS + 1));
+    }
+
+    @Test
+    void fansOutLargeShardInRangesInOrder() throws Exception {
+        assertBroadcastsArriveInOrder(createRegistry(RECIPIENTS));
+    }
+
+    @Test
+    void poolRunsRangesOnlyWhileLoopWaits() throws Exception {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        AtomicBoolean inRange = new AtomicBoolean(true);
+        onLoop(() -> eventLoop.invokeAll(fanOutPool, List.of(
+            () -> record(threads, inRange), () -> record(threads, inRange))));
+
+        assertTrue(inRange.get());
+        assertTrue(threads.stream().allMatch(thread -> thread.getName().contains("ForkJoin")));
+        fanOutPool.submit(() -> inRange.set(eventLoop.inRange())).get();
+        assertFalse(inRange.get());
+        assertThrows(IllegalStateException.class,
+            () -> eventLoop.invokeAll(fanOutPool, List.of()));
+    }
+
+    @Test
+    void rejectsConnectionClaimedByTwoRanges() throws Exception {
+        connect();
+        ChannelConnection connection = accept();
+        CountDownLatch claimed = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+        Runnable range = () -> {
+            try {
+                connection.serveInRange(() -> await(claimed));
+            } catch (IllegalStateException e) {
+                rejected.incrementAndGet();
+                claimed.countDown();
+            }
+        };
+
+        onLoop(() -> eventLoop.invokeAll(fanOutPool, List.of(range, range)));
+
+        assertEquals(1, rejected.get());
+        assertThrows(IllegalStateException.class, () -> connection.serveInRange(() -> {
+        }));
+    }
+
+    private void assertBroadcastsArriveInOrder(ConnectionRegistry registry) throws Exception {
+        List<DataInputStream> inputs = new ArrayList<>();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            inputs.add(new DataInputStream(connect().getInputStream()));
+            ChannelConnection connection = accept();
+            connection.setUsername("user" + i);
+            onLoop(() -> {
+                try {
+                    registry.registerConnection(connection);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        for (int i = 0; i < BROADCASTS; i++) {
+            registry.broadcast(createMessagePayload("alice", "everyone", "broadcast " + i));
+        }
+
+        for (DataInputStream input : inputs) {
+            PayloadCodec codec = new PayloadCodec();
+            List<String> received = new ArrayList<>();
+            while (received.size() < BROADCASTS) {
+                receive(input, codec).forEach(payload -> received.add(payload.content()));
+            }
+            for (int i = 0; i < BROADCASTS; i++) {
+                assertEquals("broadcast " + i, received.get(i));
+            }
+        }
+    }
+
+    private ConnectionRegistry createRegistry(int fanOutThreshold) {
+        return new ConnectionRegistry(clusterNode, List.of(eventLoop),
+            new BroadcastRing(64, SlowConsumerPolicy.SKIP), fanOutPool, fanOutThreshold);
+    }
+
+    private void record(Set<Thread> threads, AtomicBoolean inRange) {
+        threads.add(Thread.currentThread());
+        if (!eventLoop.inRange() || eventLoop.inEventLoop()) {
+            inRange.set(false);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket();
+        clients.add(client);
+        client.setSoTimeout(10_000);
+        client.connect(serverChannel.getLocalAddress());
+        return client;
+    }
+
+    private ChannelConnection accept() throws Exception {
+        ChannelEndpoint<Payload> endpoint = new ChannelEndpoint<>(serverChannel.accept(),
+            eventLoop, new PayloadCodec());
+        ChannelConnection connection = new ChannelConnection(endpoint, 1024,
+            new QueueDelayMetrics(), new OutboundBudget(1 << 20, Duration.ofMinutes(1)));
+        endpoint.open(payload -> {
+        }, () -> {
+        });
+        return connection;
+    }
+
+    private void onLoop(Runnable task) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    private static List<Payload> receive(DataInputStream input, PayloadCodec codec)
+        throws IOException {
+        int length = input.readInt();
+        checkFrameSize(length);
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        Payload payload = codec.decode(ByteBuffer.wrap(frame), 0, length);
+        return payload.type() == BATCH ? payload.parts() : List.of(payload);
+    }
+
+}
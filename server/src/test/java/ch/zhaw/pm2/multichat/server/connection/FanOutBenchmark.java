@@ -0,0 +1,133 @@
+package ch.zhaw.pm2.multichat.server.connection;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the time from publishing a broadcast until the last recipient has received it, with
+ * the recipients served one after the other by their loop and with the recipients split into
+ * ranges on a work-stealing pool. Only runs with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class FanOutBenchmark {
+
+    private static final int[] RECIPIENT_COUNTS = {500, 2000, 4000};
+    private static final int ROUNDS = 7;
+
+    @Test
+    void lastRecipientLatencyWithAndWithoutParallelFanOut() throws Exception {
+        ForkJoinPool fanOutPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int recipients : RECIPIENT_COUNTS) {
+                double serial = measure(recipients, fanOutPool, Integer.MAX_VALUE);
+                double parallel = measure(recipients, fanOutPool, 1);
+                System.out.printf("%d recipients: serial %.1f ms, parallel %.1f ms (%d threads)%n",
+                    recipients, serial, parallel, fanOutPool.getParallelism());
+            }
+        } finally {
+            fanOutPool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the median time in milliseconds until every recipient has received a broadcast.
+     */
+    private static double measure(int recipientCount, ForkJoinPool fanOutPool,
+        int fanOutThreshold) throws Exception {
+        EventLoop eventLoop = new EventLoop("benchmark-loop", 1 << 16, new StageMetrics());
+        eventLoop.start();
+        List<Socket> clients = new ArrayList<>();
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), recipientCount)) {
+            ConnectionRegistry registry = new ConnectionRegistry(
+                new ClusterNode(new NodeAddress("127.0.0.1", 1001), List.of(), ""),
+                List.of(eventLoop), new BroadcastRing(64, SlowConsumerPolicy.SKIP), fanOutPool,
+                fanOutThreshold);
+            List<DataInputStream> inputs = new ArrayList<>();
+            for (int i = 0; i < recipientCount; i++) {
+                Socket client = new Socket();
+                clients.add(client);
+                client.setSoTimeout(10_000);
+                client.connect(serverChannel.getLocalAddress());
+                inputs.add(new DataInputStream(client.getInputStream()));
+                register(registry, eventLoop, serverChannel, "user" + i);
+            }
+
+            List<PayloadCodec> codecs = new ArrayList<>();
+            inputs.forEach(input -> codecs.add(new PayloadCodec()));
+            double[] millis = new double[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                registry.broadcast(createMessagePayload("alice", "everyone", "round " + round));
+                for (int i = 0; i < recipientCount; i++) {
+                    assertEquals("round " + round, receive(inputs.get(i), codecs.get(i)));
+                }
+                millis[round] = (System.nanoTime() - start) / 1e6;
+            }
+
+            Arrays.sort(millis);
+            return millis[ROUNDS / 2];
+        } finally {
+            for (Socket client : clients) {
+                client.close();
+            }
+            eventLoop.close();
+        }
+    }
+
+    private static void register(ConnectionRegistry registry, EventLoop eventLoop,
+        ServerSocketChannel serverChannel, String username) throws Exception {
+        ChannelEndpoint<Payload> endpoint = new ChannelEndpoint<>(serverChannel.accept(),
+            eventLoop, new PayloadCodec());
+        ChannelConnection connection = new ChannelConnection(endpoint, 1024,
+            new QueueDelayMetrics(), new OutboundBudget(1 << 20, Duration.ofMinutes(1)));
+        connection.setUsername(username);
+        endpoint.open(payload -> {
+        }, () -> {
+        });
+        CompletableFuture<Void> registered = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            try {
+                registry.registerConnection(connection);
+                registered.complete(null);
+            } catch (Exception e) {
+                registered.completeExceptionally(e);
+            }
+        });
+        registered.get(10, TimeUnit.SECONDS);
+    }
+
+    private static String receive(DataInputStream input, PayloadCodec codec) throws IOException {
+        int length = input.readInt();
+        checkFrameSize(length);
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        return codec.decode(ByteBuffer.wrap(frame), 0, length).content();
+    }
+
+}
@@ -0,0 +1,203 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.server.loop.Stage.DELIVER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the backpressure between the inboxes of {@link EventLoop}s: a loop adding tasks to a
+ * congested inbox is held back until the inbox has drained to half its maximum.
+ */
+class EventLoopTest {
+
+    private static final int MAX_PENDING_TASKS = 4;
+
+    private final StageMetrics stageMetrics = new StageMetrics();
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private EventLoop producer;
+    private EventLoop consumer;
+    private boolean consumerStarted;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        producer = new EventLoop("producer-loop", MAX_PENDING_TASKS, new StageMetrics());
+        producer.start();
+        consumer = new EventLoop("consumer-loop", MAX_PENDING_TASKS, stageMetrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (!consumerStarted) {
+            consumer.start();
+        }
+        consumer.close();
+        producer.close();
+        pool.shutdown();
+    }
+
+    @Test
+    void rejectsEmptyNumberOfPendingTasks() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new EventLoop("loop", 0, stageMetrics));
+    }
+
+    @Test
+    void congestsProducerUntilInboxHasDrainedToHalf() throws Exception {
+        Semaphore started = new Semaphore(0);
+        Semaphore permits = new Semaphore(0);
+        int tasks = MAX_PENDING_TASKS + 2;
+        onLoop(producer, () -> {
+            for (int i = 0; i < tasks; i++) {
+                consumer.execute(() -> {
+                    started.release();
+                    permits.acquireUninterruptibly();
+                });
+            }
+            return null;
+        });
+        assertTrue(onLoop(producer, producer::isCongested));
+
+        startConsumer();
+        for (int pending = tasks - 1; pending > MAX_PENDING_TASKS / 2; pending--) {
+            assertTrue(started.tryAcquire(10, TimeUnit.SECONDS));
+            assertTrue(onLoop(producer, producer::isCongested), "Pending tasks: " + pending);
+            permits.release();
+        }
+        assertTrue(started.tryAcquire(10, TimeUnit.SECONDS));
+        assertFalse(onLoop(producer, producer::isCongested));
+
+        permits.release(tasks);
+        onLoop(consumer, () -> null);
+        StageMetrics.Summary deliver = stageMetrics.drain().stream()
+            .filter(summary -> summary.stage() == DELIVER).findFirst().orElseThrow();
+        assertEquals(tasks + 1, deliver.count());
+        assertEquals(tasks, deliver.maxDepth());
+    }
+
+    @Test
+    void doesNotCongestProducerBelowMaximum() throws Exception {
+        onLoop(producer, () -> {
+            for (int i = 0; i < MAX_PENDING_TASKS; i++) {
+                consumer.execute(() -> {
+                });
+            }
+            return null;
+        });
+
+        assertFalse(onLoop(producer, producer::isCongested));
+    }
+
+    @Test
+    void congestsLoopWhosePoolThreadsAddTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        consumer.execute(() -> awaitUninterruptibly(release));
+        startConsumer();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(() -> {
+                for (int j = 0; j < MAX_PENDING_TASKS; j++) {
+                    consumer.execute(() -> {
+                    });
+                }
+            });
+        }
+
+        onLoop(producer, () -> {
+            producer.invokeAll(pool, tasks);
+            return null;
+        });
+
+        assertTrue(onLoop(producer, producer::isCongested));
+        release.countDown();
+        onLoop(consumer, () -> null);
+        assertFalse(onLoop(producer, producer::isCongested));
+    }
+
+    @Test
+    void rangesDoNotTouchLoop() throws Exception {
+        List<Runnable> accesses = List.of(producer::isCongested,
+            () -> producer.invokeAll(pool, List.of()));
+        List<RuntimeException> failures = new ArrayList<>();
+        onLoop(producer, () -> {
+            producer.invokeAll(pool, List.of(() -> {
+                for (Runnable access : accesses) {
+                    try {
+                        access.run();
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                }
+            }));
+            return null;
+        });
+
+        assertEquals(accesses.size(), failures.size());
+        assertTrue(failures.stream().allMatch(e -> e instanceof IllegalStateException));
+    }
+
+    @Test
+    void otherThreadsAreNotHeldBack() throws Exception {
+        for (int i = 0; i < 2 * MAX_PENDING_TASKS; i++) {
+            consumer.execute(() -> {
+            });
+        }
+
+        assertFalse(onLoop(producer, producer::isCongested));
+        startConsumer();
+        onLoop(consumer, () -> null);
+    }
+
+    @Test
+    void runsScheduledTaskAfterDelay() throws Exception {
+        startConsumer();
+        CompletableFuture<Long> ranAfter = new CompletableFuture<>();
+        long start = System.nanoTime();
+
+        consumer.schedule(() -> ranAfter.complete(System.nanoTime() - start),
+            Duration.ofMillis(50));
+
+        assertTrue(ranAfter.get(10, TimeUnit.SECONDS) >= Duration.ofMillis(50).toNanos());
+    }
+
+    private void startConsumer() {
+        consumerStarted = true;
+        consumer.start();
+    }
+
+    private static <T> T onLoop(EventLoop eventLoop, Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
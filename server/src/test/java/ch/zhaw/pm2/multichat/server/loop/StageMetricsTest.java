@@ -0,0 +1,82 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.server.loop.Stage.DECODE;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.DELIVER;
+import static ch.zhaw.pm2.multichat.server.loop.Stage.HANDLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the recording and draining of the latencies and queue depths of {@link StageMetrics}.
+ */
+class StageMetricsTest {
+
+    private static final int THREADS = 4;
+    private static final int RECORDS = 10_000;
+
+    private final StageMetrics stageMetrics = new StageMetrics();
+
+    @Test
+    void summarizesRecordedLatenciesPerStage() {
+        stageMetrics.record(DECODE, 100);
+        stageMetrics.record(DECODE, 300);
+        stageMetrics.record(HANDLE, 50);
+        stageMetrics.recordDepth(HANDLE, 7);
+        stageMetrics.recordDepth(HANDLE, 3);
+
+        assertEquals(List.of(
+            new StageMetrics.Summary(DECODE, 2, Duration.ofNanos(200), Duration.ofNanos(300), 0),
+            new StageMetrics.Summary(HANDLE, 1, Duration.ofNanos(50), Duration.ofNanos(50), 7)),
+            stageMetrics.drain());
+    }
+
+    @Test
+    void startsRecordingAnewAfterDrain() {
+        stageMetrics.record(DELIVER, 1000);
+        stageMetrics.recordDepth(DELIVER, 12);
+        stageMetrics.drain();
+
+        assertTrue(stageMetrics.drain().isEmpty());
+        stageMetrics.record(DELIVER, 10);
+        stageMetrics.recordDepth(DELIVER, 2);
+        assertEquals(List.of(new StageMetrics.Summary(DELIVER, 1, Duration.ofNanos(10),
+            Duration.ofNanos(10), 2)), stageMetrics.drain());
+    }
+
+    @Test
+    void omitsStagesWithDepthButWithoutLatencies() {
+        stageMetrics.recordDepth(DELIVER, 5);
+
+        assertTrue(stageMetrics.drain().isEmpty());
+    }
+
+    @Test
+    void recordsConcurrently() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int depth = i;
+            threads.add(new Thread(() -> {
+                for (int j = 1; j <= RECORDS; j++) {
+                    stageMetrics.record(HANDLE, j);
+                    stageMetrics.recordDepth(HANDLE, depth);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        StageMetrics.Summary summary = stageMetrics.drain().get(0);
+        assertEquals(THREADS * RECORDS, summary.count());
+        assertEquals(Duration.ofNanos((RECORDS + 1) / 2), summary.average());
+        assertEquals(Duration.ofNanos(RECORDS), summary.max());
+        assertEquals(THREADS - 1, summary.maxDepth());
+    }
+
+}
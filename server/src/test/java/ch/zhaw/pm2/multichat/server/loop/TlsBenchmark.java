@@ -0,0 +1,212 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.server.loop.TlsTransportTest.PASSWORD;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkConnection;
+import ch.zhaw.pm2.multichat.protocol.TlsContextFactory;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the time of a full TLS handshake with the time of a resumed one, and the throughput of
+ * an endpoint with and without TLS, against the blocking client of {@link NetworkHandler}. Only
+ * runs with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class TlsBenchmark {
+
+    private static final int HANDSHAKES = 20;
+    private static final int FRAMES = 2_000;
+    private static final int ROUNDS = 5;
+    private static final int RECORDS_PER_BUFFER = 4;
+    private static final String CONTENT = "x".repeat(16 * 1024);
+
+    @TempDir
+    Path storeDirectory;
+
+    @Test
+    void resumedHandshakeIsFasterThanFullHandshake() throws Exception {
+        Path keyStore = TlsTransportTest.createKeyStore(storeDirectory, "-keyalg",
+            "RSA", "-keysize", "2048");
+        SSLContext serverContext = TlsContextFactory.createContext(keyStore, PASSWORD, null,
+            null);
+        List<SSLContext> freshContexts = new ArrayList<>();
+        for (int i = 0; i < HANDSHAKES; i++) {
+            freshContexts.add(TlsContextFactory.createContext(null, null, keyStore, PASSWORD));
+        }
+        SSLContext resumingContext = TlsContextFactory.createContext(null, null, keyStore,
+            PASSWORD);
+
+        try (Server server = new Server(serverContext)) {
+            server.connect(resumingContext).close();
+            double full = 0;
+            double resumed = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                full = measureHandshakes(server, freshContexts);
+                resumed = measureHandshakes(server, List.of(resumingContext));
+            }
+
+            System.out.printf("full handshake: %.2f ms%nresumed handshake: %.2f ms%n", full,
+                resumed);
+            assertTrue(resumed < full);
+        }
+    }
+
+    @Test
+    void throughputWithAndWithoutTls() throws Exception {
+        Path keyStore = TlsTransportTest.createKeyStore(storeDirectory, "-keyalg",
+            "RSA", "-keysize", "2048");
+        SSLContext serverContext = TlsContextFactory.createContext(keyStore, PASSWORD, null,
+            null);
+        SSLContext clientContext = TlsContextFactory.createContext(null, null, keyStore,
+            PASSWORD);
+
+        double plain = 0;
+        double encrypted = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            try (Server server = new Server(null)) {
+                plain = measureThroughput(server, null);
+            }
+            try (Server server = new Server(serverContext)) {
+                encrypted = measureThroughput(server, clientContext);
+            }
+        }
+
+        System.out.printf("plain: %.1f MB/s%nTLS: %.1f MB/s%n", plain, encrypted);
+    }
+
+    /**
+     * Returns the mean time in milliseconds of connecting and exchanging a first payload, cycling
+     * through the given contexts. The exchange lets the client receive the session ticket sent
+     * after the handshake, as the chat client does with the confirmation of its connect request.
+     */
+    private static double measureHandshakes(Server server, List<SSLContext> contexts)
+        throws Exception {
+        Payload payload = createMessagePayload("alice", "bob", "hello");
+        long start = System.nanoTime();
+        for (int i = 0; i < HANDSHAKES; i++) {
+            try (NetworkConnection<Payload> client = server.connect(
+                contexts.get(i % contexts.size()))) {
+                client.send(payload);
+                client.receive();
+            }
+        }
+
+        return (System.nanoTime() - start) / 1e6 / HANDSHAKES;
+    }
+
+    /**
+     * Returns the throughput in megabytes per second of frames sent by the server to the client.
+     */
+    private static double measureThroughput(Server server, SSLContext clientContext)
+        throws Exception {
+        try (NetworkConnection<Payload> client = server.connect(clientContext)) {
+            ChannelEndpoint<Payload> endpoint = server.accepted.take();
+            Payload payload = createMessagePayload("alice", "bob", CONTENT);
+            long start = System.nanoTime();
+            server.eventLoop.execute(() -> {
+                try {
+                    for (int i = 0; i < FRAMES; i++) {
+                        endpoint.send(payload);
+                    }
+                } catch (IOException e) {
+                    endpoint.close();
+                }
+            });
+            for (int i = 0; i < FRAMES; i++) {
+                client.receive();
+            }
+
+            return (double) FRAMES * CONTENT.length() / (System.nanoTime() - start) * 1e3;
+        }
+    }
+
+    /**
+     * A server accepting connections on its own thread and serving them on a loop, with TLS if a
+     * context is given. Every received payload is echoed.
+     */
+    private static class Server implements AutoCloseable {
+
+        private final EventLoop eventLoop;
+        private final ServerSocketChannel serverChannel;
+        private final BlockingQueue<ChannelEndpoint<Payload>> accepted =
+            new LinkedBlockingQueue<>();
+        private final SSLContext context;
+        private final BufferPool bufferPool;
+
+        private Server(SSLContext context) throws IOException {
+            this.context = context;
+            bufferPool = context == null ? null : new BufferPool(RECORDS_PER_BUFFER
+                * context.createSSLEngine().getSession().getPacketBufferSize(), 16);
+            eventLoop = new EventLoop("benchmark-loop", 1 << 16, new StageMetrics());
+            eventLoop.start();
+            serverChannel = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        private NetworkConnection<Payload> connect(SSLContext clientContext) throws Exception {
+            InetSocketAddress address = (InetSocketAddress) serverChannel.getLocalAddress();
+            CompletableFuture<Void> serving = CompletableFuture.runAsync(this::serve);
+            String host = address.getHostString();
+            NetworkConnection<Payload> client = clientContext == null
+                ? NetworkHandler.openConnection(host, address.getPort(), new PayloadCodec())
+                : NetworkHandler.openConnection(host, address.getPort(), clientContext,
+                    new PayloadCodec());
+            serving.get(10, TimeUnit.SECONDS);
+            return client;
+        }
+
+        private void serve() {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                ChannelEndpoint<Payload> endpoint;
+                if (context == null) {
+                    endpoint = new ChannelEndpoint<>(channel, eventLoop, new PayloadCodec());
+                } else {
+                    SSLEngine engine = context.createSSLEngine();
+                    engine.setUseClientMode(false);
+                    endpoint = new ChannelEndpoint<>(channel, eventLoop, new PayloadCodec(),
+                        engine, bufferPool);
+                }
+                endpoint.open(payload -> {
+                    try {
+                        endpoint.send(payload);
+                    } catch (IOException e) {
+                        endpoint.close();
+                    }
+                }, () -> accepted.remove(endpoint));
+                accepted.add(endpoint);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverChannel.close();
+            eventLoop.close();
+        }
+
+    }
+
+}
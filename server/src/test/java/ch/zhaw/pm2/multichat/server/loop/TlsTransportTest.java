@@ -0,0 +1,186 @@
+package ch.zhaw.pm2.multichat.server.loop;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler;
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkConnection;
+import ch.zhaw.pm2.multichat.protocol.TlsContextFactory;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the TLS layer of {@link ChannelEndpoint} with a self-signed certificate generated by
+ * {@code keytool}, against the blocking client of {@link NetworkHandler} and against another
+ * endpoint whose engine is in client mode, as on the links between nodes.
+ */
+class TlsTransportTest {
+
+    static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final String LARGE_CONTENT = "x".repeat(200_000);
+
+    @TempDir
+    static Path storeDirectory;
+
+    private static SSLContext serverContext;
+    private static SSLContext clientContext;
+
+    private EventLoop eventLoop;
+    private BufferPool bufferPool;
+    private ServerSocketChannel serverChannel;
+
+    @BeforeAll
+    static void createContexts() throws Exception {
+        Path keyStore = createKeyStore(storeDirectory, "-keyalg", "EC", "-groupname",
+            "secp256r1");
+        serverContext = TlsContextFactory.createContext(keyStore, PASSWORD, null, null);
+        clientContext = TlsContextFactory.createContext(null, null, keyStore, PASSWORD);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        eventLoop = new EventLoop("test-loop", 1 << 10, new StageMetrics());
+        eventLoop.start();
+        bufferPool = new BufferPool(
+            serverContext.createSSLEngine().getSession().getPacketBufferSize(), 4);
+        serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverChannel.close();
+        eventLoop.close();
+    }
+
+    @Test
+    void exchangesPayloadsWithBlockingClient() throws Exception {
+        InetSocketAddress address = (InetSocketAddress) serverChannel.getLocalAddress();
+        CompletableFuture<NetworkConnection<Payload>> connecting = CompletableFuture.supplyAsync(
+            () -> {
+                try {
+                    return NetworkHandler.openConnection(address.getHostString(),
+                        address.getPort(), clientContext, new PayloadCodec());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        BlockingQueue<Payload> received = new LinkedBlockingQueue<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        ChannelEndpoint<Payload> endpoint = accept(serverEngine());
+        endpoint.open(received::add, closed::countDown);
+
+        try (NetworkConnection<Payload> client = connecting.get(10, TimeUnit.SECONDS)) {
+            assertTrue(endpoint.isEncrypted());
+            client.send(createMessagePayload("alice", "bob", "hello"));
+            assertEquals("hello", received.poll(10, TimeUnit.SECONDS).content());
+
+            onLoop(() -> endpoint.send(createMessagePayload("bob", "alice", LARGE_CONTENT)));
+            assertEquals(LARGE_CONTENT, client.receive().content());
+        }
+
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void exchangesPayloadsBetweenEngines() throws Exception {
+        SocketChannel channel = SocketChannel.open(serverChannel.getLocalAddress());
+        SSLEngine clientEngine = clientContext.createSSLEngine();
+        clientEngine.setUseClientMode(true);
+        ChannelEndpoint<Payload> client = new ChannelEndpoint<>(channel, eventLoop,
+            new PayloadCodec(), clientEngine, bufferPool);
+        ChannelEndpoint<Payload> server = accept(serverEngine());
+        BlockingQueue<Payload> receivedByClient = new LinkedBlockingQueue<>();
+        BlockingQueue<Payload> receivedByServer = new LinkedBlockingQueue<>();
+        CountDownLatch closed = new CountDownLatch(2);
+        client.open(receivedByClient::add, closed::countDown);
+        server.open(receivedByServer::add, closed::countDown);
+
+        onLoop(() -> client.send(createMessagePayload("alice", "bob", LARGE_CONTENT)));
+        onLoop(() -> server.send(createMessagePayload("bob", "alice", "hello")));
+
+        assertEquals(LARGE_CONTENT, receivedByServer.poll(10, TimeUnit.SECONDS).content());
+        assertEquals("hello", receivedByClient.poll(10, TimeUnit.SECONDS).content());
+        client.close();
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Generates a key store holding a key pair of the given algorithm with a self-signed
+     * certificate for localhost.
+     *
+     * @param directory the directory to create the key store in
+     * @param keyOptions the options of keytool selecting the algorithm and size of the key
+     * @return the path of the key store
+     */
+    static Path createKeyStore(Path directory, String... keyOptions)
+        throws IOException, InterruptedException {
+        Path keyStore = directory.resolve("multichat.p12");
+        List<String> command = new ArrayList<>(List.of(
+            Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+            "-genkeypair", "-alias", "multichat", "-dname", "CN=localhost", "-validity", "1",
+            "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+            "-storepass", new String(PASSWORD)));
+        command.addAll(List.of(keyOptions));
+        Process keytool = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(keytool.getInputStream().readAllBytes());
+        if (keytool.waitFor() != 0) {
+            throw new IOException("keytool failed: " + output);
+        }
+
+        return keyStore;
+    }
+
+    private SSLEngine serverEngine() {
+        SSLEngine engine = serverContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    private ChannelEndpoint<Payload> accept(SSLEngine engine) throws IOException {
+        return new ChannelEndpoint<>(serverChannel.accept(), eventLoop, new PayloadCodec(),
+            engine, bufferPool);
+    }
+
+    private void onLoop(Task task) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    private interface Task {
+
+        void run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.NetworkHandler.checkFrameSize;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createBatchPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createConnectPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createMessagePayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.BATCH;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONFIRM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.CONNECT;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.ERROR;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.MESSAGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadHandler;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadType;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.connection.BroadcastRing;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.connection.OutboundBudget;
+import ch.zhaw.pm2.multichat.server.connection.QueueDelayMetrics;
+import ch.zhaw.pm2.multichat.server.connection.ServerConnectionListener;
+import ch.zhaw.pm2.multichat.server.connection.SlowConsumerPolicy;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConnectPayloadHandler} with messages pipelined behind the connect payload in the
+ * same batch, as sent by clients which do not wait for the confirmation.
+ */
+class ConnectPayloadHandlerTest {
+
+    private final ClusterNode clusterNode = new ClusterNode(
+        new NodeAddress("127.0.0.1", 1001), List.of(), "");
+    private final List<Socket> clients = new ArrayList<>();
+    private EventLoop eventLoop;
+    private ServerSocketChannel serverChannel;
+    private ConnectionRegistry registry;
+    private Map<PayloadType, PayloadHandler<Payload>> payloadHandlers;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        eventLoop = new EventLoop("test-loop", 1 << 10, new StageMetrics());
+        eventLoop.start();
+        serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        registry = new ConnectionRegistry(clusterNode, List.of(eventLoop),
+            new BroadcastRing(16, SlowConsumerPolicy.SKIP), ForkJoinPool.commonPool(), 1);
+        payloadHandlers = new EnumMap<>(PayloadType.class);
+        payloadHandlers.put(CONNECT, new ConnectPayloadHandler(registry, clusterNode));
+        payloadHandlers.put(MESSAGE, new MessagePayloadHandler(registry, clusterNode));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        serverChannel.close();
+        eventLoop.close();
+    }
+
+    @Test
+    void handlesMessagesPipelinedBehindSuccessfulConnect() throws Exception {
+        DataInputStream input = new DataInputStream(connect().getInputStream());
+        ServerConnectionListener listener = new ServerConnectionListener(accept(),
+            payloadHandlers, registry, clusterNode);
+
+        onLoop(() -> listener.dispatch(createBatchPayload(List.of(createConnectPayload("bob"),
+            createMessagePayload("bob", "bob", "hello")))));
+
+        PayloadCodec codec = new PayloadCodec();
+        List<Payload> received = new ArrayList<>();
+        while (received.size() < 3) {
+            received.addAll(receive(input, codec));
+        }
+        assertEquals(CONFIRM, received.get(0).type());
+        assertEquals(MESSAGE, received.get(2).type());
+        assertEquals("hello", received.get(2).content());
+    }
+
+    @Test
+    void rejectsMessagesPipelinedBehindConnectForTakenName() throws Exception {
+        connect();
+        ChannelConnection registered = accept();
+        registered.setUsername("alice");
+        onLoop(() -> {
+            try {
+                registry.registerConnection(registered);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        DataInputStream input = new DataInputStream(connect().getInputStream());
+        RecordingConnection rejected = accept(RecordingConnection::new);
+        ServerConnectionListener listener = new ServerConnectionListener(rejected,
+            payloadHandlers, registry, clusterNode);
+
+        onLoop(() -> listener.dispatch(createBatchPayload(List.of(createConnectPayload("alice"),
+            createMessagePayload("alice", "alice", "first"),
+            createMessagePayload("alice", "alice", "second")))));
+
+        List<Payload> received = receiveUntilClosed(input);
+        List<Payload> errors = rejected.sent.stream()
+            .filter(payload -> payload.type() == ERROR).toList();
+        assertEquals(1, errors.size());
+        assertEquals("Username alice is already registered", errors.get(0).content());
+        assertFalse(rejected.sent.stream()
+            .anyMatch(payload -> payload.content().contains("Illegal state")));
+        assertEquals(List.of(errors.get(0).content()), received.stream()
+            .filter(payload -> payload.type() == ERROR).map(Payload::content).toList());
+        assertSame(registered, registry.getConnection("alice"));
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket();
+        clients.add(client);
+        client.setSoTimeout(10_000);
+        client.connect(serverChannel.getLocalAddress());
+        return client;
+    }
+
+    private ChannelConnection accept() throws IOException {
+        return accept(endpoint -> new ChannelConnection(endpoint, 1024, new QueueDelayMetrics(),
+            new OutboundBudget(1 << 20, Duration.ofMinutes(1))));
+    }
+
+    private <C extends ChannelConnection> C accept(
+        Function<ChannelEndpoint<Payload>, C> connectionFactory) throws IOException {
+        ChannelEndpoint<Payload> endpoint = new ChannelEndpoint<>(serverChannel.accept(),
+            eventLoop, new PayloadCodec());
+        C connection = connectionFactory.apply(endpoint);
+        endpoint.open(payload -> {
+        }, () -> {
+        });
+        return connection;
+    }
+
+    /**
+     * A connection recording the payloads sent to it, including those dropped because the
+     * connection has already been closed.
+     */
+    private static class RecordingConnection extends ChannelConnection {
+
+        private final List<Payload> sent = new ArrayList<>();
+
+        private RecordingConnection(ChannelEndpoint<Payload> endpoint) {
+            super(endpoint, 1024, new QueueDelayMetrics(),
+                new OutboundBudget(1 << 20, Duration.ofMinutes(1)));
+        }
+
+        @Override
+        public void sendPayload(Payload payload) {
+            sent.add(payload);
+            super.sendPayload(payload);
+        }
+
+    }
+
+    private void onLoop(Runnable task) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    private static List<Payload> receiveUntilClosed(DataInputStream input) throws IOException {
+        PayloadCodec codec = new PayloadCodec();
+        List<Payload> received = new ArrayList<>();
+        try {
+            while (true) {
+                received.addAll(receive(input, codec));
+            }
+        } catch (EOFException e) {
+            return received;
+        }
+    }
+
+    private static List<Payload> receive(DataInputStream input, PayloadCodec codec)
+        throws IOException {
+        int length = input.readInt();
+        checkFrameSize(length);
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        Payload payload = codec.decode(ByteBuffer.wrap(frame), 0, length);
+        return payload.type() == BATCH ? payload.parts() : List.of(payload);
+    }
+
+}
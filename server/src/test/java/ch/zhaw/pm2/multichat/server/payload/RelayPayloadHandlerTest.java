@@ -0,0 +1,109 @@
+package ch.zhaw.pm2.multichat.server.payload;
+
+import static ch.zhaw.pm2.multichat.protocol.Identifiers.SYSTEM;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRelayPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createRelayedErrorPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.RELAY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.NetworkHandler.NetworkEndpoint;
+import ch.zhaw.pm2.multichat.protocol.connection.Connection;
+import ch.zhaw.pm2.multichat.protocol.exception.ConnectionException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.connection.BroadcastRing;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.connection.SlowConsumerPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the handling of messages relayed by another node by {@link RelayPayloadHandler}.
+ */
+class RelayPayloadHandlerTest {
+
+    private static final NodeAddress HOME = new NodeAddress("127.0.0.1", 1001);
+    private static final NodeAddress ORIGIN = new NodeAddress("127.0.0.1", 1002);
+    private static final String SECRET = "s3cret";
+
+    private final ClusterNode homeNode = new ClusterNode(HOME, List.of(ORIGIN), SECRET);
+    private final RelayPayloadHandler handler = new RelayPayloadHandler(homeNode,
+        new ConnectionRegistry(homeNode, List.of(),
+            new BroadcastRing(16, SlowConsumerPolicy.SKIP), ForkJoinPool.commonPool(), 1));
+    private final List<Payload> sent = new ArrayList<>();
+    private final Connection<Payload> link = new Connection<>(new RecordingEndpoint(sent));
+
+    @BeforeEach
+    void setUp() throws ConnectionException {
+        ClusterNode originNode = new ClusterNode(ORIGIN, List.of(HOME), SECRET);
+        homeNode.acceptLink(link);
+        homeNode.registerLink(originNode.createIntroduction(HOME.toString()), link);
+        sent.clear();
+    }
+
+    @Test
+    void relaysErrorBackForUnknownReceiver() throws Exception {
+        handler.handle(createRelayPayload("alice", "bob", "hello"), link);
+
+        assertEquals(1, sent.size());
+        Payload error = sent.get(0);
+        assertEquals(RELAY, error.type());
+        assertEquals(SYSTEM, error.sender());
+        assertEquals("alice", error.receiver());
+        assertEquals("Username bob is not registered", error.content());
+    }
+
+    @Test
+    void doesNotAnswerRelayedErrorForUnknownReceiver() throws Exception {
+        handler.handle(createRelayedErrorPayload("alice", "Username bob is not registered"),
+            link);
+
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void rejectsRelayFromConnectionOtherThanLink() {
+        Connection<Payload> client = new Connection<>(new RecordingEndpoint(sent));
+
+        assertThrows(ConnectionException.class,
+            () -> handler.handle(createRelayPayload("alice", "bob", "hello"), client));
+    }
+
+    /**
+     * A network endpoint recording the payloads sent over it.
+     */
+    private record RecordingEndpoint(List<Payload> sent) implements NetworkEndpoint<Payload> {
+
+        @Override
+        public void send(Payload data) {
+            sent.add(data);
+        }
+
+        @Override
+        public Payload receive() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
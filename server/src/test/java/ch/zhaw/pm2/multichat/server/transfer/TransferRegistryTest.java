@@ -0,0 +1,179 @@
+package ch.zhaw.pm2.multichat.server.transfer;
+
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadFactory.createTransferPayload;
+import static ch.zhaw.pm2.multichat.protocol.payload.PayloadType.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.zhaw.pm2.multichat.protocol.exception.ChatProtocolException;
+import ch.zhaw.pm2.multichat.protocol.payload.Payload;
+import ch.zhaw.pm2.multichat.protocol.payload.PayloadCodec;
+import ch.zhaw.pm2.multichat.server.cluster.ClusterNode;
+import ch.zhaw.pm2.multichat.server.cluster.NodeAddress;
+import ch.zhaw.pm2.multichat.server.connection.BroadcastRing;
+import ch.zhaw.pm2.multichat.server.connection.ChannelConnection;
+import ch.zhaw.pm2.multichat.server.connection.ConnectionRegistry;
+import ch.zhaw.pm2.multichat.server.connection.OutboundBudget;
+import ch.zhaw.pm2.multichat.server.connection.QueueDelayMetrics;
+import ch.zhaw.pm2.multichat.server.connection.ServerConnectionListener;
+import ch.zhaw.pm2.multichat.server.connection.SlowConsumerPolicy;
+import ch.zhaw.pm2.multichat.server.loop.ChannelEndpoint;
+import ch.zhaw.pm2.multichat.server.loop.EventLoop;
+import ch.zhaw.pm2.multichat.server.loop.StageMetrics;
+import ch.zhaw.pm2.multichat.server.payload.TransferPayloadHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests file transfers relayed by {@link TransferRegistry} between two data connections served by
+ * different loops, so the splice has to move one of the channels to its own loop.
+ */
+class TransferRegistryTest {
+
+    private static final String TRANSFER_ID = "transfer-1";
+    private static final int BYTES_PER_SECOND = 2 * 1024 * 1024;
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final int PREFIX_SIZE = 1000;
+
+    private final ClusterNode clusterNode = new ClusterNode(
+        new NodeAddress("127.0.0.1", 1001), List.of(), "");
+    private final List<Socket> clients = new ArrayList<>();
+    private EventLoop senderLoop;
+    private EventLoop receiverLoop;
+    private ServerSocketChannel serverChannel;
+    private ConnectionRegistry connectionRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        senderLoop = new EventLoop("sender-loop", 1 << 10, new StageMetrics());
+        senderLoop.start();
+        receiverLoop = new EventLoop("receiver-loop", 1 << 10, new StageMetrics());
+        receiverLoop.start();
+        serverChannel = ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        connectionRegistry = new ConnectionRegistry(clusterNode,
+            List.of(senderLoop, receiverLoop), new BroadcastRing(16, SlowConsumerPolicy.SKIP),
+            ForkJoinPool.commonPool(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        serverChannel.close();
+        senderLoop.close();
+        receiverLoop.close();
+    }
+
+    @Test
+    void relaysFileByteForByteWithinThroughput() throws Exception {
+        TransferRegistry transferRegistry = new TransferRegistry(BYTES_PER_SECOND);
+        transferRegistry.offer(TRANSFER_ID, "alice", "bob", senderLoop);
+        assertEquals("alice", transferRegistry.accept(TRANSFER_ID, "bob"));
+        byte[] file = new byte[FILE_SIZE];
+        new Random(42).nextBytes(file);
+
+        // the start of the file arrives together with the transfer payload, so the endpoint has
+        // already received it when the channel is detached
+        Socket sender = connect();
+        OutputStream output = sender.getOutputStream();
+        output.write(concat(transferFrame("alice"), Arrays.copyOf(file, PREFIX_SIZE)));
+        output.flush();
+        serve(transferRegistry, senderLoop);
+        CompletableFuture<Void> upload = CompletableFuture.runAsync(() -> {
+            try {
+                output.write(file, PREFIX_SIZE, FILE_SIZE - PREFIX_SIZE);
+                sender.shutdownOutput();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        long start = System.nanoTime();
+        Socket receiver = connect();
+        receiver.getOutputStream().write(transferFrame("bob"));
+        serve(transferRegistry, receiverLoop);
+        byte[] received = receiver.getInputStream().readAllBytes();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        upload.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(file, received);
+        // a period may exceed its share by up to one read, but never by more than the share
+        assertTrue(elapsed.toMillis() >= 1000L * FILE_SIZE / (2 * BYTES_PER_SECOND),
+            () -> "Transfer took only " + elapsed.toMillis() + " ms");
+    }
+
+    @Test
+    void discardsTransferNotStartedWithinTimeout() throws Exception {
+        TransferRegistry transferRegistry = new TransferRegistry(BYTES_PER_SECOND,
+            Duration.ofMillis(200));
+        transferRegistry.offer(TRANSFER_ID, "alice", "bob", senderLoop);
+        Socket sender = connect();
+        sender.getOutputStream().write(transferFrame("alice"));
+        serve(transferRegistry, senderLoop);
+
+        assertEquals(-1, sender.getInputStream().read());
+        assertThrows(ChatProtocolException.class,
+            () -> transferRegistry.accept(TRANSFER_ID, "bob"));
+
+        Socket receiver = connect();
+        receiver.getOutputStream().write(transferFrame("bob"));
+        serve(transferRegistry, receiverLoop);
+        assertEquals(-1, receiver.getInputStream().read());
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket();
+        clients.add(client);
+        client.setSoTimeout(10_000);
+        client.connect(serverChannel.getLocalAddress());
+        return client;
+    }
+
+    private void serve(TransferRegistry transferRegistry, EventLoop eventLoop)
+        throws IOException {
+        ChannelEndpoint<Payload> endpoint = new ChannelEndpoint<>(serverChannel.accept(),
+            eventLoop, new PayloadCodec());
+        ChannelConnection connection = new ChannelConnection(endpoint, 1024,
+            new QueueDelayMetrics(), new OutboundBudget(1 << 20, Duration.ofMinutes(1)));
+        ServerConnectionListener listener = new ServerConnectionListener(connection,
+            Map.of(TRANSFER, new TransferPayloadHandler(transferRegistry)), connectionRegistry,
+            clusterNode);
+        endpoint.open(listener::dispatch, listener::handleClose);
+    }
+
+    private static byte[] transferFrame(String username) throws IOException {
+        ByteBuffer frame = new PayloadCodec().encodeFrame(
+            createTransferPayload(username, TRANSFER_ID));
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+}